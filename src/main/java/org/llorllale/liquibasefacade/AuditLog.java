@@ -0,0 +1,379 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An append-only file recording every migration performed by the {@link LinearProgressionFacade facades} it is
+ * {@link LinearProgressionFacade#setAuditLog(org.llorllale.liquibasefacade.AuditLog) set} on.<br>
+ * Each migration is written as one line of JSON holding who performed it, when, the version it started from and
+ * the target version, the versions planned and those remaining, the timing of each changeSet, and its outcome:
+ * <pre>
+ * {"timestamp":"...","actor":"...","operation":"upgrade","from":"1.0.0","target":"2.0.0","reached":"2.0.0",
+ *  "plan":["1.1.0","2.0.0"],"remaining":[],"outcome":"complete","durationNanos":...,"versions":[...]}
+ * </pre>
+ * Failed migrations are recorded with an {@code "outcome":"failed"} and the error's message instead of versions.<br>
+ * Records are handed to a background thread through a bounded queue, so that migrations do not wait on the file
+ * system unless the queue is full. The thread writes records through a {@link FileChannel} as they arrive, and
+ * forces them to the storage device at most once every {@code syncInterval}, and when the log is
+ * {@link #close() closed}.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+public final class AuditLog implements AutoCloseable {
+  //the end of the log, compared by identity
+  private static final String END = new String();
+
+  private final Path file;
+  private final String actor;
+  private final Duration syncInterval;
+  private final BlockingQueue<String> queue;
+  private final FileChannel channel;
+  private final Thread writer;
+  //held by appenders while they enqueue, and by close() while it closes the log, so that no record follows the end
+  private final ReadWriteLock closing = new ReentrantReadWriteLock();
+  private volatile boolean closed;
+  private volatile IOException failure;
+
+  /**
+   * Opens the audit log at {@code file}, recording the current OS user as the actor, with room for {@code 1024}
+   * pending records and forcing records to the storage device at most once per second.
+   * @param file the file records are appended to; created if it does not exist
+   * @throws IOException if the file cannot be opened
+   * @throws NullPointerException if {@code file} is {@code null}
+   * @since 1.3.0
+   */
+  public AuditLog(Path file) throws IOException {
+    this(file, System.getProperty("user.name"), 1024, Duration.ofSeconds(1));
+  }
+
+  /**
+   *
+   * @param file the file records are appended to; created if it does not exist
+   * @param actor who performs the migrations recorded
+   * @param capacity the maximum number of records waiting to be written; migrations wait for room once it is reached
+   * @param syncInterval the minimum time between two forces of the file to the storage device
+   * @throws IOException if the file cannot be opened
+   * @throws NullPointerException if any of the parameters are {@code null}
+   * @throws IllegalArgumentException if {@code capacity} is less than {@code 1}, or if {@code syncInterval} is negative
+   * @since 1.3.0
+   */
+  public AuditLog(Path file, String actor, int capacity, Duration syncInterval) throws IOException {
+    this.file = Objects.requireNonNull(file, "null file.");
+    this.actor = Objects.requireNonNull(actor, "null actor.");
+    this.syncInterval = Objects.requireNonNull(syncInterval, "null syncInterval.");
+
+    if(capacity < 1){
+      throw new IllegalArgumentException("Illegal argument for 'capacity' - must be at least 1: " + capacity);
+    }
+
+    if(syncInterval.isNegative()){
+      throw new IllegalArgumentException("syncInterval cannot be negative: " + syncInterval);
+    }
+
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    this.writer = new Thread(this::write, "liquibase-facade-audit");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /**
+   * Returns the file records are appended to.
+   * @return the file records are appended to
+   * @since 1.3.0
+   */
+  public Path getFile() {
+    return file;
+  }
+
+  /**
+   * Returns who performs the migrations recorded.
+   * @return who performs the migrations recorded
+   * @since 1.3.0
+   */
+  public String getActor() {
+    return actor;
+  }
+
+  /**
+   * Returns whether the log is closed.
+   * @return whether the log is closed
+   * @since 1.3.0
+   */
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Writes the records still queued, forces them to the storage device, and closes the file.
+   * @throws IOException if any record could not be written
+   * @since 1.3.0
+   */
+  @Override
+  public void close() throws IOException {
+    closing.writeLock().lock();
+
+    try{
+      if(closed){
+        return;
+      }
+
+      closed = true;
+    }finally{
+      closing.writeLock().unlock();
+    }
+
+    boolean interrupted = false;
+
+    try{
+      while(true){
+        try{
+          queue.put(END);
+          writer.join();
+          break;
+        }catch(InterruptedException e){
+          interrupted = true;
+        }
+      }
+    }finally{
+      channel.close();
+
+      if(interrupted){
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    if(failure != null){
+      throw failure;
+    }
+  }
+
+  /**
+   * Records a migration that completed, fully or within its budget.
+   * @param started when the migration started
+   * @param target the version the migration was asked to reach
+   * @param result the result of the migration
+   * @throws IllegalStateException if the log is closed
+   */
+  void succeeded(Instant started, Version target, MigrationResult result) {
+    StringBuilder json = header(started, operation(result.getFromVersion(), target), target);
+    List<Version> plan = new ArrayList<>();
+    result.getVersions().forEach(v -> plan.add(v.getVersion()));
+    plan.addAll(result.getRemainingVersions());
+    json.append(",\"from\":").append(quote(result.getFromVersion().string()))
+            .append(",\"reached\":").append(quote(result.getToVersion().string()))
+            .append(",\"plan\":").append(versions(plan))
+            .append(",\"remaining\":").append(versions(result.getRemainingVersions()))
+            .append(",\"outcome\":").append(quote(result.isComplete() ? "complete" : "partial"))
+            .append(",\"durationNanos\":").append(result.getDuration().toNanos())
+            .append(",\"versions\":[");
+
+    for(int v = 0; v < result.getVersions().size(); v++){
+      final VersionResult version = result.getVersions().get(v);
+      json.append(v == 0 ? "{" : ",{")
+              .append("\"version\":").append(quote(version.getVersion().string()))
+              .append(",\"durationNanos\":").append(version.getDuration().toNanos())
+              .append(",\"changeSets\":[");
+
+      for(int c = 0; c < version.getChangeSets().size(); c++){
+        final ChangeSetResult changeSet = version.getChangeSets().get(c);
+        json.append(c == 0 ? "{" : ",{")
+                .append("\"id\":").append(quote(changeSet.getId()))
+                .append(",\"author\":").append(quote(changeSet.getAuthor()))
+                .append(",\"filePath\":").append(quote(changeSet.getFilePath()))
+                .append(",\"durationNanos\":").append(changeSet.getDuration().toNanos())
+                .append(",\"executionNanos\":").append(changeSet.getExecutionTime().toNanos())
+                .append(",\"statements\":").append(changeSet.getStatementsExecuted())
+                .append(",\"rows\":").append(changeSet.getRowsAffected())
+                .append(",\"batches\":").append(changeSet.getBatchesExecuted())
+                .append('}');
+      }
+
+      json.append("]}");
+    }
+
+    append(json.append("]}").toString());
+  }
+
+  /**
+   * Records a migration that failed.
+   * @param started when the migration started
+   * @param from the version the migration started from; {@code null} if it failed before it could be read
+   * @param target the version the migration was asked to reach
+   * @param error the reason the migration failed
+   * @throws IllegalStateException if the log is closed
+   */
+  void failed(Instant started, Version from, Version target, Exception error) {
+    StringBuilder json = header(started, from == null ? "unknown" : operation(from, target), target);
+
+    if(from != null){
+      json.append(",\"from\":").append(quote(from.string()));
+    }
+
+    json.append(",\"outcome\":\"failed\"")
+            .append(",\"durationNanos\":").append(Duration.between(started, Instant.now()).toNanos())
+            .append(",\"error\":").append(quote(String.valueOf(error.getMessage())))
+            .append('}');
+    append(json.toString());
+  }
+
+  private void append(String record) {
+    closing.readLock().lock();
+
+    try{
+      if(closed){
+        throw new IllegalStateException("Audit log is closed: " + file);
+      }
+
+      queue.put(record);
+    }catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while appending to audit log " + file, e);
+    }finally{
+      closing.readLock().unlock();
+    }
+  }
+
+  /**
+   * Body of the writer thread: writes records as they arrive until the end of the log is reached. Records are dropped
+   * once a write fails, and the failure is reported by {@link #close()}.
+   */
+  private void write() {
+    List<String> records = new ArrayList<>();
+    final long interval = syncInterval.toNanos();
+    long lastSync = System.nanoTime();
+    boolean unsynced = false;
+    boolean end = false;
+
+    while(!end){
+      try{
+        final String first = queue.poll(Math.max(1, interval - (System.nanoTime() - lastSync)), TimeUnit.NANOSECONDS);
+
+        if(first != null){
+          records.add(first);
+          queue.drainTo(records);
+        }
+      }catch(InterruptedException e){
+        //only close() stops the writer
+        continue;
+      }
+
+      try{
+        for(String record : records){
+          if(record == END){
+            end = true;
+          }else if(failure == null){
+            ByteBuffer buffer = ByteBuffer.wrap((record + "\n").getBytes(StandardCharsets.UTF_8));
+
+            while(buffer.hasRemaining()){
+              channel.write(buffer);
+            }
+
+            unsynced = true;
+          }
+        }
+
+        if(unsynced && failure == null && (end || System.nanoTime() - lastSync >= interval)){
+          channel.force(false);
+          lastSync = System.nanoTime();
+          unsynced = false;
+        }
+      }catch(IOException e){
+        failure = e;
+      }
+
+      records.clear();
+    }
+  }
+
+  private StringBuilder header(Instant started, String operation, Version target) {
+    return new StringBuilder("{\"timestamp\":").append(quote(started.toString()))
+            .append(",\"actor\":").append(quote(actor))
+            .append(",\"operation\":").append(quote(operation))
+            .append(",\"target\":").append(quote(target.string()));
+  }
+
+  private static String operation(Version from, Version target) {
+    if(from.isLessThan(target)){
+      return "upgrade";
+    }else if(from.isGreaterThan(target)){
+      return "downgrade";
+    }
+
+    return "none";
+  }
+
+  private static String versions(List<Version> versions) {
+    StringBuilder json = new StringBuilder("[");
+
+    for(int i = 0; i < versions.size(); i++){
+      json.append(i == 0 ? "" : ",").append(quote(versions.get(i).string()));
+    }
+
+    return json.append(']').toString();
+  }
+
+  private static String quote(String value) {
+    StringBuilder json = new StringBuilder("\"");
+
+    for(int i = 0; i < value.length(); i++){
+      final char c = value.charAt(i);
+
+      switch(c){
+        case '"':
+          json.append("\\\"");
+          break;
+        case '\\':
+          json.append("\\\\");
+          break;
+        case '\n':
+          json.append("\\n");
+          break;
+        case '\r':
+          json.append("\\r");
+          break;
+        case '\t':
+          json.append("\\t");
+          break;
+        default:
+          if(c < 0x20){
+            json.append(String.format("\\u%04x", (int) c));
+          }else{
+            json.append(c);
+          }
+      }
+    }
+
+    return json.append('"').toString();
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import liquibase.change.Change;
+import liquibase.database.Database;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.DatabaseException;
+import liquibase.executor.Executor;
+import liquibase.executor.ExecutorService;
+import liquibase.executor.jvm.JdbcExecutor;
+import liquibase.executor.jvm.RowMapper;
+import liquibase.sql.visitor.SqlVisitor;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.DeleteStatement;
+import liquibase.statement.core.InsertStatement;
+import liquibase.statement.core.RawSqlStatement;
+import liquibase.statement.core.UpdateStatement;
+
+/**
+ * A liquibase executor that groups consecutive DML statements of changes into JDBC batches.<br>
+ * Statements of {@code sql}, {@code sqlFile}, {@code insert}, {@code update} and {@code delete} changes that render
+ * to a single {@code INSERT}, {@code UPDATE}, {@code DELETE} or {@code MERGE} are added to a batch, which is executed
+ * once it holds {@code batchSize} statements. Any other statement or query, liquibase's own bookkeeping included,
+ * first executes the pending batch, so that statements always reach the database in changelog order. The
+ * {@link LinearProgressionFacade facade} also {@link #flush() flushes} the batch after each change, so that a failed
+ * batch fails its own change. Liquibase notifies no listener of the changes it rolls back, so the facade does not
+ * install this executor for rollbacks.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+final class BatchingExecutor extends JdbcExecutor {
+  private final int batchSize;
+  private Statement batch;
+  private int pending;
+  private long batchesExecuted;
+  private long statementsBatched;
+
+  /**
+   *
+   * @param batchSize the maximum number of statements per batch
+   * @throws IllegalArgumentException if {@code batchSize} is less than {@code 2}
+   */
+  BatchingExecutor(int batchSize) {
+    if(batchSize < 2){
+      throw new IllegalArgumentException("batchSize must be greater than 1: " + batchSize);
+    }
+
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Installs a new batching executor for {@code database}, replacing the one liquibase would otherwise use.
+   * @param database the database liquibase runs on
+   * @param batchSize the maximum number of statements per batch
+   * @return the installed executor
+   */
+  static BatchingExecutor install(Database database, int batchSize) {
+    BatchingExecutor executor = new BatchingExecutor(batchSize);
+    executor.setDatabase(database);
+    ExecutorService.getInstance().setExecutor(database, executor);
+    return executor;
+  }
+
+  /**
+   * Flushes the pending batch of the executor used for {@code database}, if it is a batching executor.
+   * @param database the database liquibase runs on
+   * @throws DatabaseException wrapping any SQLException
+   */
+  static void flush(Database database) throws DatabaseException {
+    final Executor executor = ExecutorService.getInstance().getExecutor(database);
+
+    if(executor instanceof BatchingExecutor){
+      ((BatchingExecutor) executor).flush();
+    }
+  }
+
+  /**
+   * Executes the pending batch, if any.
+   * @throws DatabaseException wrapping any SQLException
+   */
+  void flush() throws DatabaseException {
+    if(batch == null){
+      return;
+    }
+
+    try{
+      if(pending > 0){
+        batch.executeBatch();
+        batchesExecuted++;
+      }
+    }catch(SQLException e){
+      throw new DatabaseException("Error executing batch of " + pending + " statements.", e);
+    }finally{
+      pending = 0;
+
+      try{
+        batch.close();
+      }catch(SQLException e){
+        //ignore
+      }
+
+      batch = null;
+    }
+  }
+
+  /**
+   *
+   * @return the number of batches executed
+   */
+  long getBatchesExecuted() {
+    return batchesExecuted;
+  }
+
+  /**
+   *
+   * @return the number of statements executed as part of a batch
+   */
+  long getStatementsBatched() {
+    return statementsBatched;
+  }
+
+  @Override
+  public void execute(SqlStatement sql, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+    final String dml = batchable(sql, sqlVisitors);
+
+    if(dml == null){
+      flush();
+      super.execute(sql, sqlVisitors);
+      return;
+    }
+
+    try{
+      if(batch == null){
+        batch = ((JdbcConnection) database.getConnection()).getUnderlyingConnection().createStatement();
+      }
+
+      batch.addBatch(dml);
+      pending++;
+      statementsBatched++;
+    }catch(SQLException e){
+      throw new DatabaseException("Error adding statement to batch: " + dml, e);
+    }
+
+    if(pending >= batchSize){
+      flush();
+    }
+  }
+
+  @Override
+  public void execute(Change change, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+    flush();
+    super.execute(change, sqlVisitors);
+  }
+
+  //every other query method of JdbcExecutor delegates to this one
+  @Override
+  public List<?> query(SqlStatement sql, RowMapper rowMapper, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+    flush();
+    return super.query(sql, rowMapper, sqlVisitors);
+  }
+
+  @Override
+  public int update(SqlStatement sql, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+    flush();
+    return super.update(sql, sqlVisitors);
+  }
+
+  @Override
+  public void comment(String message) throws DatabaseException {
+    flush();
+    super.comment(message);
+  }
+
+  /**
+   * Returns the SQL of {@code sql} if it is a single DML statement that can be batched, or {@code null} otherwise.
+   */
+  private String batchable(SqlStatement sql, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+    if(!(sql instanceof RawSqlStatement || sql instanceof InsertStatement || sql instanceof UpdateStatement || sql instanceof DeleteStatement)){
+      return null;
+    }
+
+    if(!(database.getConnection() instanceof JdbcConnection)){
+      return null;
+    }
+
+    final String[] rendered = applyVisitors(sql, sqlVisitors);
+
+    if(rendered == null || rendered.length != 1){
+      return null;
+    }
+
+    String statement = rendered[0].trim();
+
+    if(database instanceof OracleDatabase){
+      statement = statement.replaceFirst("/\\s*$", "").trim();
+    }
+
+    if(statement.endsWith(";")){
+      statement = statement.substring(0, statement.length() - 1);
+    }
+
+    //statements holding several commands are left to the driver
+    if(statement.indexOf(';') >= 0){
+      return null;
+    }
+
+    final String keyword = firstKeyword(statement);
+    return "insert".equals(keyword) || "update".equals(keyword) || "delete".equals(keyword) || "merge".equals(keyword) ? statement : null;
+  }
+
+  /**
+   * Returns the first word of {@code statement} in lower case, skipping leading comments.
+   */
+  private static String firstKeyword(String statement) {
+    int i = 0;
+
+    while(i < statement.length()){
+      if(Character.isWhitespace(statement.charAt(i))){
+        i++;
+      }else if(statement.startsWith("--", i)){
+        final int end = statement.indexOf('\n', i);
+        i = end < 0 ? statement.length() : end + 1;
+      }else if(statement.startsWith("/*", i)){
+        final int end = statement.indexOf("*/", i + 2);
+        i = end < 0 ? statement.length() : end + 2;
+      }else{
+        break;
+      }
+    }
+
+    int j = i;
+
+    while(j < statement.length() && Character.isLetter(statement.charAt(j))){
+      j++;
+    }
+
+    return statement.substring(i, j).toLowerCase();
+  }
+}
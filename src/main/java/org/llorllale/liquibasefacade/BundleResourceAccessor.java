@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.InflaterInputStream;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * Reads the files of a {@link ChangelogBundle bundle} straight from its memory-mapped data: finding a file is a lookup
+ * in the bundle's index, and reading it inflates its bytes as they are consumed.<br>
+ * Classes, such as those of custom changes, are loaded by the class loader that loaded this one.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+public final class BundleResourceAccessor implements ResourceAccessor {
+  private final ByteBuffer data;
+  private final Map<String, Entry> entries;
+
+  /**
+   * Where a file lies within the bundle.
+   */
+  static final class Entry {
+    private final int position;
+    private final int compressedLength;
+    private final int length;
+
+    Entry(int position, int compressedLength, int length) {
+      this.position = position;
+      this.compressedLength = compressedLength;
+      this.length = length;
+    }
+  }
+
+  /**
+   *
+   * @param data the whole of the bundle
+   * @param entries the position of each file within {@code data}, by path
+   */
+  BundleResourceAccessor(ByteBuffer data, Map<String, Entry> entries) {
+    this.data = data;
+    this.entries = entries;
+  }
+
+  /**
+   * Returns the paths of the bundled files.
+   * @return an unmodifiable view of the paths of the bundled files
+   * @since 1.3.0
+   */
+  public Set<String> getPaths() {
+    return Collections.unmodifiableSet(entries.keySet());
+  }
+
+  /**
+   * Returns the length of the file at {@code path}, once inflated.
+   * @param path the path of a bundled file
+   * @return the length of the file, or {@code -1} if it is not bundled
+   * @since 1.3.0
+   */
+  public int getLength(String path) {
+    final Entry entry = entries.get(path);
+    return entry == null ? -1 : entry.length;
+  }
+
+  @Override
+  public Set<InputStream> getResourcesAsStream(String path) throws IOException {
+    final Entry entry = entries.get(path);
+
+    if(entry == null){
+      return null;
+    }
+
+    ByteBuffer slice = data.duplicate();
+    slice.position(entry.position).limit(entry.position + entry.compressedLength);
+    return new HashSet<>(Collections.singleton(new InflaterInputStream(new ByteBufferInputStream(slice.slice()))));
+  }
+
+  /**
+   * Lists the bundled files and directories under {@code path}, resolved against the directory of {@code relativeTo}
+   * if given.
+   */
+  @Override
+  public Set<String> list(String relativeTo, String path, boolean includeFiles, boolean includeDirectories, boolean recursive) throws IOException {
+    String directory = path.replace('\\', '/');
+
+    if(relativeTo != null){
+      final String base = relativeTo.replace('\\', '/');
+      directory = base.substring(0, base.lastIndexOf('/') + 1) + directory;
+    }
+
+    if(!directory.isEmpty() && !directory.endsWith("/")){
+      directory += "/";
+    }
+
+    Set<String> found = new HashSet<>(); //return variable
+
+    for(String file : entries.keySet()){
+      if(!file.startsWith(directory)){
+        continue;
+      }
+
+      final String rest = file.substring(directory.length());
+      final int slash = rest.indexOf('/');
+
+      if(slash < 0){
+        if(includeFiles){
+          found.add(file);
+        }
+      }else if(recursive){
+        if(includeFiles){
+          found.add(file);
+        }
+
+        if(includeDirectories){
+          for(int s = slash; s >= 0; s = rest.indexOf('/', s + 1)){
+            found.add(directory + rest.substring(0, s + 1));
+          }
+        }
+      }else if(includeDirectories){
+        found.add(directory + rest.substring(0, slash + 1));
+      }
+    }
+
+    return found;
+  }
+
+  @Override
+  public ClassLoader toClassLoader() {
+    return BundleResourceAccessor.class.getClassLoader();
+  }
+
+  @Override
+  public String toString() {
+    return "BundleResourceAccessor{" + "files=" + entries.size() + '}';
+  }
+
+  /**
+   * Reads a buffer of its own, so that streams on the same bundle do not share a position.
+   */
+  private static final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if(len == 0){
+        return 0;
+      }
+
+      if(!buffer.hasRemaining()){
+        return -1;
+      }
+
+      final int read = Math.min(len, buffer.remaining());
+      buffer.get(b, off, read);
+      return read;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
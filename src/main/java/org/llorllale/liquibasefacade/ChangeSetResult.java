@@ -0,0 +1,129 @@
+/* 
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.time.Duration;
+
+/**
+ * Outcome of running (or rolling back) a single changeSet.<br>
+ * The changeSet's {@link #getDuration() duration} is split between the time spent executing its changes' DDL/DML
+ * and the time spent by liquibase on bookkeeping: acquiring the lock, reading and validating the changelog's state,
+ * and recording the changeSet in the {@code DATABASECHANGELOG} table.<br>
+ * Liquibase does not report individual changes while rolling back, so for rollbacks the whole duration is reported
+ * as execution time and the statement counts include liquibase's own statements.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+public final class ChangeSetResult {
+  private final String id;
+  private final String author;
+  private final String filePath;
+  private final Duration duration;
+  private final Duration executionTime;
+  private final long statementsExecuted;
+  private final long rowsAffected;
+  private final long batchesExecuted;
+
+  ChangeSetResult(String id, String author, String filePath, Duration duration, Duration executionTime, long statementsExecuted, long rowsAffected, long batchesExecuted) {
+    this.id = id;
+    this.author = author;
+    this.filePath = filePath;
+    this.duration = duration;
+    this.executionTime = executionTime;
+    this.statementsExecuted = statementsExecuted;
+    this.rowsAffected = rowsAffected;
+    this.batchesExecuted = batchesExecuted;
+  }
+
+  /**
+   *
+   * @return the changeSet's id
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   *
+   * @return the changeSet's author
+   */
+  public String getAuthor() {
+    return author;
+  }
+
+  /**
+   *
+   * @return the path of the changelog that defines the changeSet
+   */
+  public String getFilePath() {
+    return filePath;
+  }
+
+  /**
+   *
+   * @return the total time spent on the changeSet
+   */
+  public Duration getDuration() {
+    return duration;
+  }
+
+  /**
+   *
+   * @return the time spent executing the changeSet's changes
+   */
+  public Duration getExecutionTime() {
+    return executionTime;
+  }
+
+  /**
+   *
+   * @return the time spent by liquibase on bookkeeping for the changeSet
+   */
+  public Duration getBookkeepingTime() {
+    return duration.minus(executionTime);
+  }
+
+  /**
+   *
+   * @return the number of JDBC statements executed by the changeSet's changes
+   */
+  public long getStatementsExecuted() {
+    return statementsExecuted;
+  }
+
+  /**
+   *
+   * @return the number of rows affected by the changeSet's changes, as reported by the JDBC driver
+   */
+  public long getRowsAffected() {
+    return rowsAffected;
+  }
+
+  /**
+   * Returns the number of JDBC batches executed by the changeSet's changes. Batched statements are also counted by
+   * {@link #getStatementsExecuted()}.
+   * @return the number of JDBC batches executed by the changeSet's changes
+   * @see LinearProgressionFacade#setBatchSize(int) 
+   */
+  public long getBatchesExecuted() {
+    return batchesExecuted;
+  }
+
+  @Override
+  public String toString() {
+    return "ChangeSetResult{" + "id=" + id + ", author=" + author + ", filePath=" + filePath + ", duration=" + duration + ", executionTime=" + executionTime + ", statementsExecuted=" + statementsExecuted + ", rowsAffected=" + rowsAffected + ", batchesExecuted=" + batchesExecuted + '}';
+  }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.zip.DeflaterOutputStream;
+import liquibase.changelog.ChangeLogParameters;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.exception.LiquibaseException;
+import liquibase.parser.ChangeLogParserFactory;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * A single file holding the changelogs of every version, and every file they include, compressed and indexed so that
+ * a version's changelog is found with a lookup instead of a scan of the classpath.<br>
+ * A bundle is {@link #write(java.nio.file.Path, java.util.List, java.util.function.Function, java.util.function.Function) written}
+ * at build time from the same locator and resource accessors a facade would use, and {@link #open(java.nio.file.Path) opened}
+ * at run time:
+ * <pre>
+ * ChangelogBundle bundle = ChangelogBundle.open(path);
+ * new LinearProgressionFacade(connection, bundle.getVersions(), bundle::getChangeLogPath, v -&gt; bundle.getResourceAccessor());
+ * </pre>
+ * Files keep the paths they were read from, so that liquibase's history is the same whether changelogs are read from
+ * the bundle or from their original location. A bundle therefore holds a single file per path: versions whose resource
+ * accessors read different contents at the same path cannot be bundled together.<br>
+ * The file starts with a magic number and the length of the header, followed by the header and the data. The header
+ * lists each file's path, offset within the data, compressed length and length, then each version and the index of its
+ * changelog among the files. Each file is compressed on its own with {@link java.util.zip.Deflater deflate}. Opening
+ * a bundle maps it into memory and reads the header; files are only inflated when liquibase reads them.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+public final class ChangelogBundle {
+  static final int MAGIC = 0x4C514231;
+
+  private final List<Version> versions;
+  private final Map<Version, String> changeLogs;
+  private final BundleResourceAccessor resourceAccessor;
+
+  private ChangelogBundle(List<Version> versions, Map<Version, String> changeLogs, BundleResourceAccessor resourceAccessor) {
+    this.versions = versions;
+    this.changeLogs = changeLogs;
+    this.resourceAccessor = resourceAccessor;
+  }
+
+  /**
+   * Writes the changelogs of {@code versions} to a bundle at {@code file}, replacing it if it exists. Each changelog
+   * is parsed, and its changeSets' checksums computed, so that every file liquibase reads while doing so, such as
+   * included changelogs and SQL files, is written along with it.
+   * @param file where to write the bundle
+   * @param versions the versions whose changelogs are bundled
+   * @param changesetFileLocator A function that returns the path to where the liquibase changeset file is located for a given version.
+   * @param resourceAccessorGenerator A function that returns the {@code ResourceAccessor} used to fetch a given version's changeset file.
+   * @throws NullPointerException if any of the parameters are {@code null}
+   * @throws IllegalArgumentException if {@code versions} is empty, or if two versions read different contents at the same
+   * path
+   * @throws LiquibaseException if any of the changelogs cannot be parsed
+   * @throws IOException if the bundle cannot be written
+   * @since 1.3.0
+   */
+  public static void write(
+          Path file, 
+          List<Version> versions, 
+          Function<Version, String> changesetFileLocator, 
+          Function<Version, ResourceAccessor> resourceAccessorGenerator
+  ) throws LiquibaseException, IOException {
+    Objects.requireNonNull(file, "null file.");
+    Objects.requireNonNull(changesetFileLocator, "null changesetFileLocator function.");
+    Objects.requireNonNull(resourceAccessorGenerator, "null resourceAccessorGenerator function.");
+
+    if(Objects.requireNonNull(versions, "null version list.").isEmpty()){
+      throw new IllegalArgumentException("empty version list.");
+    }
+
+    Map<String, byte[]> files = new LinkedHashMap<>();
+    Map<Version, String> changeLogs = new LinkedHashMap<>();
+
+    for(Version version : versions){
+      final String path = changesetFileLocator.apply(version);
+      Map<String, byte[]> read = new LinkedHashMap<>();
+      RecordingResourceAccessor recorder = new RecordingResourceAccessor(resourceAccessorGenerator.apply(version), read);
+      DatabaseChangeLog changeLog = ChangeLogParserFactory.getInstance()
+              .getParser(path, recorder)
+              .parse(path, new ChangeLogParameters(), recorder);
+
+      for(ChangeSet changeSet : changeLog.getChangeSets()){
+        changeSet.generateCheckSum();
+      }
+
+      for(Map.Entry<String, byte[]> entry : read.entrySet()){
+        final byte[] bundled = files.putIfAbsent(entry.getKey(), entry.getValue());
+
+        if(bundled != null && !Arrays.equals(bundled, entry.getValue())){
+          throw new IllegalArgumentException(
+                  String.format("Version %s reads different contents at %s than an earlier version does.", version, entry.getKey())
+          );
+        }
+      }
+
+      changeLogs.put(version, path);
+    }
+
+    List<String> paths = new ArrayList<>(files.keySet());
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(header);
+    out.writeInt(paths.size());
+
+    for(String path : paths){
+      final byte[] content = files.get(path);
+      final int offset = data.size();
+
+      //closing a ByteArrayOutputStream has no effect
+      try(DeflaterOutputStream deflater = new DeflaterOutputStream(data)){
+        deflater.write(content);
+      }
+
+      out.writeUTF(path);
+      out.writeLong(offset);
+      out.writeInt(data.size() - offset);
+      out.writeInt(content.length);
+    }
+
+    out.writeInt(changeLogs.size());
+
+    for(Map.Entry<Version, String> changeLog : changeLogs.entrySet()){
+      out.writeInt(changeLog.getKey().getMajor());
+      out.writeInt(changeLog.getKey().getMinor());
+      out.writeInt(changeLog.getKey().getRelease());
+      out.writeInt(paths.indexOf(changeLog.getValue()));
+    }
+
+    out.flush();
+
+    try(DataOutputStream bundle = new DataOutputStream(Files.newOutputStream(file))){
+      bundle.writeInt(MAGIC);
+      bundle.writeInt(header.size());
+      header.writeTo(bundle);
+      data.writeTo(bundle);
+    }
+  }
+
+  /**
+   * Opens the bundle at {@code file}, mapping it into memory.
+   * @param file the bundle
+   * @return the bundle
+   * @throws NullPointerException if {@code file} is {@code null}
+   * @throws IOException if the file cannot be read, or is not a bundle
+   * @since 1.3.0
+   */
+  public static ChangelogBundle open(Path file) throws IOException {
+    final MappedByteBuffer buffer;
+
+    try(FileChannel channel = FileChannel.open(Objects.requireNonNull(file, "null file."), StandardOpenOption.READ)){
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    try{
+      if(buffer.getInt(0) != MAGIC){
+        throw new IOException("Not a changelog bundle: " + file);
+      }
+
+      final int headerLength = buffer.getInt(4);
+      ByteBuffer headerBuffer = buffer.duplicate();
+      headerBuffer.position(8).limit(8 + headerLength);
+      byte[] header = new byte[headerLength];
+      headerBuffer.get(header);
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+      final int dataStart = 8 + headerLength;
+      Map<String, BundleResourceAccessor.Entry> entries = new HashMap<>();
+      List<String> paths = new ArrayList<>();
+
+      for(int i = in.readInt(); i > 0; i--){
+        final String path = in.readUTF();
+        final long offset = in.readLong();
+        final int compressedLength = in.readInt();
+        final int length = in.readInt();
+
+        if(offset < 0 || dataStart + offset + compressedLength > buffer.capacity()){
+          throw new IOException(String.format("Entry %s lies outside of changelog bundle %s", path, file));
+        }
+
+        entries.put(path, new BundleResourceAccessor.Entry((int) (dataStart + offset), compressedLength, length));
+        paths.add(path);
+      }
+
+      List<Version> versions = new ArrayList<>();
+      Map<Version, String> changeLogs = new HashMap<>();
+
+      for(int i = in.readInt(); i > 0; i--){
+        Version version = new Version(in.readInt(), in.readInt(), in.readInt());
+        versions.add(version);
+        changeLogs.put(version, paths.get(in.readInt()));
+      }
+
+      return new ChangelogBundle(Collections.unmodifiableList(versions), changeLogs, new BundleResourceAccessor(buffer, entries));
+    }catch(IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e){
+      throw new IOException("Corrupt changelog bundle: " + file, e);
+    }
+  }
+
+  /**
+   * Returns the versions whose changelogs are bundled, in the order they were written.
+   * @return an unmodifiable list of the versions bundled
+   * @since 1.3.0
+   */
+  public List<Version> getVersions() {
+    return versions;
+  }
+
+  /**
+   * Returns the path of {@code version}'s changelog, to be read with the {@link #getResourceAccessor() bundle's resource accessor}.
+   * @param version a bundled version
+   * @return the path of {@code version}'s changelog
+   * @throws IllegalArgumentException if {@code version} is not bundled
+   * @since 1.3.0
+   */
+  public String getChangeLogPath(Version version) {
+    final String path = changeLogs.get(version);
+
+    if(path == null){
+      throw new IllegalArgumentException(
+              String.format("Illegal argument for 'version' - version not found in bundle. Version: %s Bundled versions: %s", version, versions)
+      );
+    }
+
+    return path;
+  }
+
+  /**
+   * Returns the resource accessor reading the files of the bundle, shared by all of its versions.
+   * @return the resource accessor reading the files of the bundle
+   * @since 1.3.0
+   */
+  public ResourceAccessor getResourceAccessor() {
+    return resourceAccessor;
+  }
+
+  /**
+   * Reads resources from another accessor, keeping a copy of the first one found at each path, for a single version.
+   */
+  private static final class RecordingResourceAccessor implements ResourceAccessor {
+    private final ResourceAccessor delegate;
+    private final Map<String, byte[]> files;
+
+    private RecordingResourceAccessor(ResourceAccessor delegate, Map<String, byte[]> files) {
+      this.delegate = Objects.requireNonNull(delegate, "null resource accessor.");
+      this.files = files;
+    }
+
+    @Override
+    public Set<InputStream> getResourcesAsStream(String path) throws IOException {
+      byte[] content = files.get(path);
+
+      if(content == null){
+        final Set<InputStream> streams = delegate.getResourcesAsStream(path);
+
+        if(streams == null || streams.isEmpty()){
+          return streams;
+        }
+
+        try{
+          content = readFully(streams.iterator().next());
+        }finally{
+          for(InputStream stream : streams){
+            stream.close();
+          }
+        }
+
+        files.put(path, content);
+      }
+
+      return new HashSet<>(Collections.singleton(new ByteArrayInputStream(content)));
+    }
+
+    @Override
+    public Set<String> list(String relativeTo, String path, boolean includeFiles, boolean includeDirectories, boolean recursive) throws IOException {
+      return delegate.list(relativeTo, path, includeFiles, includeDirectories, recursive);
+    }
+
+    @Override
+    public ClassLoader toClassLoader() {
+      return delegate.toClassLoader();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+
+      for(int read = in.read(buffer); read >= 0; read = in.read(buffer)){
+        out.write(buffer, 0, read);
+      }
+
+      return out.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import liquibase.changelog.ChangeSet;
+import liquibase.exception.LiquibaseException;
+
+/**
+ * Records, per changeSet, the progress made on a version whose tag has not been written yet.<br>
+ * Each record holds the changeSet's ordinal position within its version's changelog, so that an interrupted
+ * upgrade can resume at the first unapplied changeSet by reading a single row instead of walking the whole changelog.
+ * Records for a version are removed once that version is tagged.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+final class CheckpointLog {
+  static final String CHECKPOINT_TABLE = "databasechangelogcheckpoint".toUpperCase();
+
+  private static final String SQL_CREATE_TABLE = String.format(
+          "create table %s (tag varchar(255) not null, ordinal int not null, id varchar(255) not null, author varchar(255) not null, filename varchar(255) not null, dateexecuted timestamp not null, primary key (tag, ordinal))",
+          CHECKPOINT_TABLE
+  );
+
+  private static final String SQL_INSERT = String.format("insert into %s (tag, ordinal, id, author, filename, dateexecuted) values (?,?,?,?,?,?)", CHECKPOINT_TABLE);
+
+  private static final String SQL_GET_LAST = String.format("select ordinal, id, author from %s where tag = ? order by ordinal desc", CHECKPOINT_TABLE);
+
+  private static final String SQL_DELETE = String.format("delete from %s where tag = ?", CHECKPOINT_TABLE);
+
+  private final Connection connection;
+  private final String namespace;
+  private boolean tableExists;
+
+  /**
+   *
+   * @param connection the JDBC connection holding the checkpoint records
+   * @param namespace the namespace of the progression whose versions are recorded; {@code null} if it has none
+   */
+  CheckpointLog(Connection connection, String namespace) {
+    this.connection = connection;
+    this.namespace = namespace;
+  }
+
+  /**
+   * Returns the ordinal of the first changeSet of {@code version} that has not been checkpointed.
+   * @param version the version being upgraded to
+   * @param changeSets the changeSets of {@code version}'s changelog, in order
+   * @return the index within {@code changeSets} to resume from; {@code 0} if there are no checkpoints for {@code version}
+   * @throws LiquibaseException wrapping any underlying SQLException
+   * @throws IllegalStateException if the last checkpoint does not match the changeSet found at its position in {@code changeSets}
+   */
+  int resumeIndex(Version version, List<ChangeSet> changeSets) throws LiquibaseException {
+    if(!tableExists()){
+      return 0;
+    }
+
+    try(PreparedStatement stmt = connection.prepareStatement(SQL_GET_LAST)){
+      stmt.setString(1, key(version));
+
+      try(ResultSet result = stmt.executeQuery()){
+        if(!result.next()){
+          return 0;
+        }
+
+        final int ordinal = result.getInt(1);
+
+        if(ordinal >= changeSets.size()
+                || !changeSets.get(ordinal).getId().equals(result.getString(2))
+                || !changeSets.get(ordinal).getAuthor().equals(result.getString(3))){
+          throw new IllegalStateException(
+                  String.format(
+                          "Checkpoint %d for version %s does not match the version's changelog. Make sure the changelog has not been modified since the interrupted upgrade.",
+                          ordinal,
+                          version.string()
+                  )
+          );
+        }
+
+        return ordinal + 1;
+      }
+    }catch(SQLException e){
+      throw new LiquibaseException("Unable to read checkpoints for version " + version, e);
+    }
+  }
+
+  /**
+   * Records that the changeSet at position {@code ordinal} of {@code version}'s changelog has been applied.
+   * @param version the version being upgraded to
+   * @param ordinal the changeSet's position within its version's changelog
+   * @param changeSet the applied changeSet
+   * @throws LiquibaseException wrapping any underlying SQLException
+   */
+  void record(Version version, int ordinal, ChangeSet changeSet) throws LiquibaseException {
+    try{
+      if(!tableExists()){
+        try(Statement stmt = connection.createStatement()){
+          stmt.execute(SQL_CREATE_TABLE);
+        }
+
+        tableExists = true;
+      }
+
+      try(PreparedStatement stmt = connection.prepareStatement(SQL_INSERT)){
+        stmt.setString(1, key(version));
+        stmt.setInt(2, ordinal);
+        stmt.setString(3, changeSet.getId());
+        stmt.setString(4, changeSet.getAuthor());
+        stmt.setString(5, changeSet.getFilePath());
+        stmt.setTimestamp(6, Timestamp.from(Instant.now()));
+        stmt.execute();
+      }
+    }catch(SQLException e){
+      throw new LiquibaseException("Unable to record checkpoint for version " + version, e);
+    }
+  }
+
+  /**
+   * Removes all checkpoints recorded for {@code version}.
+   * @param version the version that has been tagged
+   * @throws LiquibaseException wrapping any underlying SQLException
+   */
+  void clear(Version version) throws LiquibaseException {
+    if(!tableExists()){
+      return;
+    }
+
+    try(PreparedStatement stmt = connection.prepareStatement(SQL_DELETE)){
+      stmt.setString(1, key(version));
+      stmt.execute();
+    }catch(SQLException e){
+      throw new LiquibaseException("Unable to clear checkpoints for version " + version, e);
+    }
+  }
+
+  /**
+   * Returns the key under which the checkpoints of {@code version} are recorded, so that progressions sharing the
+   * table do not see each other's checkpoints.
+   */
+  private String key(Version version) {
+    return namespace == null ? version.string() : namespace + ':' + version.string();
+  }
+
+  private boolean tableExists() throws LiquibaseException {
+    if(!tableExists){
+      try{
+        DatabaseMetaData md = connection.getMetaData();
+
+        try(ResultSet r = md.getTables(null, null, CHECKPOINT_TABLE, new String[]{"TABLE"})){
+          tableExists = r.next();
+        }
+      }catch(SQLException e){
+        throw new LiquibaseException("Unable to determine if the checkpoint table exists.", e);
+      }
+    }
+
+    return tableExists;
+  }
+}
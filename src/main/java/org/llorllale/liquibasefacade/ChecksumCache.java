@@ -0,0 +1,240 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import liquibase.change.CheckSum;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.database.Database;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * Caches the checksums of the changeSets of parsed changelogs, so that they are computed once per changelog instead
+ * of on every liquibase update.<br>
+ * Entries are keyed by the changelog's path, the database type it was parsed for, and the last-modified time and size
+ * of every file its changeSets were read from, as reported by the resource accessor's class loader: modifying any of
+ * those files results in a new entry. Only files whose last-modified time cannot be determined are read and hashed. A cache can be shared by
+ * several {@link LinearProgressionFacade facades} (eg. across tenants) and is safe for concurrent use.<br>
+ * Changelog parameters are not part of the key; changelogs whose changeSets depend on parameters that change between
+ * migrations should not use a shared cache.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+public final class ChecksumCache {
+  private static final String ANY = "1:any";
+
+  /**
+   * The mutable set behind {@link ChangeSet#getValidCheckSums()}, which liquibase offers no way to remove from;
+   * {@code null} if it cannot be reached, in which case no changeSet is marked as verified.
+   */
+  private static final Field VALID_CHECKSUMS = validCheckSumsField();
+
+  private final Map<String, List<CheckSum>> entries = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the number of changelogs cached.
+   * @return the number of changelogs cached
+   * @since 1.3.0
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Removes all entries from the cache.
+   * @since 1.3.0
+   */
+  public void clear() {
+    entries.clear();
+  }
+
+  /**
+   * Returns the checksums of {@code changeLog}'s changeSets, computing them only if the changelog's files are not
+   * already cached.
+   * @param path the changelog's path
+   * @param changeLog the parsed changelog
+   * @param resourceAccessor the accessor the changelog was read with
+   * @param database the database the changelog was parsed for
+   * @return the checksums of the changelog's changeSets, in changelog order
+   * @throws LiquibaseException if the changelog's files cannot be read
+   */
+  List<CheckSum> checkSums(String path, DatabaseChangeLog changeLog, ResourceAccessor resourceAccessor, Database database) throws LiquibaseException {
+    final String key = path + "|" + database.getShortName() + "|" + contentHash(changeLog, resourceAccessor);
+    List<CheckSum> checkSums = entries.get(key);
+
+    if(checkSums == null || checkSums.size() != changeLog.getChangeSets().size()){
+      checkSums = new ArrayList<>();
+
+      for(ChangeSet changeSet : changeLog.getChangeSets()){
+        checkSums.add(changeSet.generateCheckSum());
+      }
+
+      checkSums = Collections.unmodifiableList(checkSums);
+      entries.put(key, checkSums);
+    }
+
+    return checkSums;
+  }
+
+  /**
+   * Compares {@code checkSums} against the checksums recorded in liquibase's history and marks the changeSets that
+   * match, so that liquibase's own validation does not recompute their checksums. ChangeSets that do not match, or
+   * that run on change, are left for liquibase to validate.<br>
+   * The marks must be {@link #unmark(java.util.List) removed} once liquibase has run, so that a changelog reused
+   * across migrations (eg. a {@link LinearProgressionFacade#prepare() prepared} one) is validated against the history
+   * as it is then.
+   * @param changeLog the parsed changelog
+   * @param checkSums the checksums of the changelog's changeSets, in changelog order
+   * @param history the checksums recorded in liquibase's history, keyed by {@link PreparedChangeLog#historyKey(java.lang.String, java.lang.String, java.lang.String) changeSet}
+   * @return the changeSets marked as verified
+   */
+  static List<ChangeSet> markVerified(DatabaseChangeLog changeLog, List<CheckSum> checkSums, Map<String, String> history) {
+    List<ChangeSet> verified = new ArrayList<>(); //return variable
+
+    if(VALID_CHECKSUMS == null){
+      return verified;
+    }
+
+    for(int i = 0; i < checkSums.size(); i++){
+      final ChangeSet changeSet = changeLog.getChangeSets().get(i);
+      final String stored = history.get(PreparedChangeLog.historyKey(changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor()));
+
+      if(stored != null && !changeSet.isRunOnChange() && !changeSet.isAlwaysRun() && checkSums.get(i).equals(CheckSum.parse(stored))
+              && !changeSet.getValidCheckSums().contains(CheckSum.parse(ANY))){
+        changeSet.addValidCheckSum(ANY);
+        verified.add(changeSet);
+      }
+    }
+
+    return verified;
+  }
+
+  /**
+   * Removes the marks {@link #markVerified(liquibase.changelog.DatabaseChangeLog, java.util.List, java.util.Map)} added
+   * to {@code changeSets}.
+   * @param changeSets the changeSets marked as verified
+   */
+  static void unmark(List<ChangeSet> changeSets) {
+    for(ChangeSet changeSet : changeSets){
+      try{
+        ((Set<?>) VALID_CHECKSUMS.get(changeSet)).remove(CheckSum.parse(ANY));
+      }catch(IllegalAccessException e){
+        throw new IllegalStateException("Unable to unmark changeSet " + changeSet, e);
+      }
+    }
+  }
+
+  private static Field validCheckSumsField() {
+    try{
+      Field field = ChangeSet.class.getDeclaredField("validCheckSums");
+      field.setAccessible(true);
+      return Set.class.isAssignableFrom(field.getType()) ? field : null;
+    }catch(NoSuchFieldException | RuntimeException e){
+      return null;
+    }
+  }
+
+  /**
+   * Returns a key for the current state of the files {@code changeLog} was read from: each file's URL, last-modified
+   * time and size, or the hash of its contents if its last-modified time cannot be determined.
+   */
+  private static String contentHash(DatabaseChangeLog changeLog, ResourceAccessor resourceAccessor) throws LiquibaseException {
+    Set<String> files = new LinkedHashSet<>();
+    files.add(changeLog.getPhysicalFilePath());
+    changeLog.getChangeSets().forEach(changeSet -> files.add(changeSet.getFilePath()));
+    StringBuilder key = new StringBuilder();
+
+    try{
+      for(String file : files){
+        final URL url = resourceAccessor.toClassLoader() == null ? null : resourceAccessor.toClassLoader().getResource(file);
+        long lastModified = 0;
+        long length = -1;
+
+        if(url != null){
+          URLConnection conn = url.openConnection();
+          lastModified = conn.getLastModified();
+          length = conn.getContentLengthLong();
+
+          try{
+            conn.getInputStream().close();
+          }catch(IOException e){
+            //only opened to release the connection's resources
+          }
+        }
+
+        key.append(file).append('|');
+
+        if(lastModified > 0){
+          key.append(url).append('@').append(lastModified).append(':').append(length);
+        }else{
+          key.append(hash(file, resourceAccessor));
+        }
+
+        key.append('|');
+      }
+    }catch(IOException e){
+      throw new LiquibaseException("Unable to read changelog " + changeLog.getPhysicalFilePath(), e);
+    }
+
+    return key.toString();
+  }
+
+  private static String hash(String file, ResourceAccessor resourceAccessor) throws IOException, LiquibaseException {
+    Set<InputStream> streams = resourceAccessor.getResourcesAsStream(file);
+
+    if(streams == null || streams.isEmpty()){
+      throw new LiquibaseException("Unable to read changelog file " + file);
+    }
+
+    try{
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] buffer = new byte[8192];
+
+      for(InputStream stream : streams){
+        try(InputStream in = stream){
+          for(int read = in.read(buffer); read != -1; read = in.read(buffer)){
+            digest.update(buffer, 0, read);
+          }
+        }
+      }
+
+      StringBuilder hex = new StringBuilder();
+
+      for(byte b : digest.digest()){
+        hex.append(String.format("%02x", b));
+      }
+
+      return hex.toString();
+    }catch(NoSuchAlgorithmException e){
+      throw new LiquibaseException("Unable to hash changelog file " + file, e);
+    }
+  }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.change.custom.CustomTaskRollback;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.RollbackImpossibleException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * Data migration that updates the rows of a table in ranges of its numeric key, committing after each range
+ * instead of running a single statement over the whole table.<br>
+ * Usage:
+ * <pre>
+ * &lt;changeSet id="7" author="..." runInTransaction="false"&gt;
+ *   &lt;customChange class="org.llorllale.liquibasefacade.ChunkedUpdateChange"
+ *       tableName="big_table" keyColumn="id" set="status = 'ACTIVE'" where="status is null"
+ *       rollbackSet="status = null" rollbackWhere="status = 'ACTIVE'" chunkSize="10000"/&gt;
+ * &lt;/changeSet&gt;
+ * </pre>
+ * The last key committed is recorded in the {@code DATABASECHANGELOGCHUNK} table in the same transaction as each
+ * range, so a migration that is interrupted resumes after the last committed range. The record is removed with the
+ * last range. Since the changeSet only completes once every range is committed, the facade tags its version only
+ * after all ranges are done.<br>
+ * If {@code rollbackSet} is given, rolling back runs it over the same ranges, restricted to the rows matching
+ * {@code rollbackWhere} rather than {@code where}, which the updated rows usually no longer match; otherwise the change
+ * cannot be rolled back.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+public class ChunkedUpdateChange implements CustomTaskChange, CustomTaskRollback {
+  static final String PROGRESS_TABLE = "databasechangelogchunk".toUpperCase();
+
+  private static final String SQL_CREATE_TABLE = String.format("create table %s (progress_id varchar(255) not null primary key, last_key bigint not null)", PROGRESS_TABLE);
+  private static final String SQL_GET_PROGRESS = String.format("select last_key from %s where progress_id = ?", PROGRESS_TABLE);
+  private static final String SQL_UPDATE_PROGRESS = String.format("update %s set last_key = ? where progress_id = ?", PROGRESS_TABLE);
+  private static final String SQL_INSERT_PROGRESS = String.format("insert into %s (last_key, progress_id) values (?,?)", PROGRESS_TABLE);
+  private static final String SQL_DELETE_PROGRESS = String.format("delete from %s where progress_id = ?", PROGRESS_TABLE);
+
+  private String tableName;
+  private String keyColumn;
+  private String set;
+  private String rollbackSet;
+  private String where;
+  private String rollbackWhere;
+  private Integer chunkSize = 1000;
+  private String progressId;
+  private long rowsUpdated;
+  private int chunks;
+
+  public String getTableName() {
+    return tableName;
+  }
+
+  /**
+   *
+   * @param tableName the table to update
+   */
+  public void setTableName(String tableName) {
+    this.tableName = tableName;
+  }
+
+  public String getKeyColumn() {
+    return keyColumn;
+  }
+
+  /**
+   *
+   * @param keyColumn the table's numeric key column, used to split the table into ranges
+   */
+  public void setKeyColumn(String keyColumn) {
+    this.keyColumn = keyColumn;
+  }
+
+  public String getSet() {
+    return set;
+  }
+
+  /**
+   *
+   * @param set the body of the update's {@code set} clause, eg. {@code status = 'ACTIVE'}
+   */
+  public void setSet(String set) {
+    this.set = set;
+  }
+
+  public String getRollbackSet() {
+    return rollbackSet;
+  }
+
+  /**
+   *
+   * @param rollbackSet the body of the {@code set} clause that undoes {@link #setSet(java.lang.String) set}, if any
+   */
+  public void setRollbackSet(String rollbackSet) {
+    this.rollbackSet = rollbackSet;
+  }
+
+  public String getWhere() {
+    return where;
+  }
+
+  /**
+   *
+   * @param where an optional predicate restricting the rows to update
+   */
+  public void setWhere(String where) {
+    this.where = where;
+  }
+
+  public String getRollbackWhere() {
+    return rollbackWhere;
+  }
+
+  /**
+   *
+   * @param rollbackWhere an optional predicate restricting the rows {@link #setRollbackSet(java.lang.String) rollbackSet}
+   * is applied to
+   */
+  public void setRollbackWhere(String rollbackWhere) {
+    this.rollbackWhere = rollbackWhere;
+  }
+
+  public Integer getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   *
+   * @param chunkSize the width of each key range; defaults to {@code 1000}
+   */
+  public void setChunkSize(Integer chunkSize) {
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Returns the identifier under which progress is recorded. Unless {@link #setProgressId(java.lang.String) set},
+   * it is derived from the table, key column and update clauses.
+   * @return the identifier under which progress is recorded
+   */
+  public String getProgressId() {
+    if(progressId == null){
+      return String.format("%s.%s:%08x", tableName, keyColumn, (set + "|" + where).hashCode());
+    }
+
+    return progressId;
+  }
+
+  /**
+   *
+   * @param progressId the identifier under which progress is recorded
+   */
+  public void setProgressId(String progressId) {
+    this.progressId = progressId;
+  }
+
+  @Override
+  public void execute(Database database) throws CustomChangeException {
+    run(database, set, where, getProgressId());
+  }
+
+  @Override
+  public void rollback(Database database) throws CustomChangeException, RollbackImpossibleException {
+    if(rollbackSet == null){
+      throw new RollbackImpossibleException("No rollbackSet given for chunked update of " + tableName);
+    }
+
+    run(database, rollbackSet, rollbackWhere, getProgressId() + ":rollback");
+  }
+
+  @Override
+  public String getConfirmationMessage() {
+    return String.format("Updated %d rows of %s in %d chunks", rowsUpdated, tableName, chunks);
+  }
+
+  @Override
+  public void setUp() {
+  }
+
+  @Override
+  public void setFileOpener(ResourceAccessor resourceAccessor) {
+  }
+
+  @Override
+  public ValidationErrors validate(Database database) {
+    ValidationErrors errors = new ValidationErrors();
+    errors.checkRequiredField("tableName", tableName);
+    errors.checkRequiredField("keyColumn", keyColumn);
+    errors.checkRequiredField("set", set);
+
+    if(chunkSize == null || chunkSize < 1){
+      errors.addError("chunkSize must be at least 1");
+    }
+
+    return errors;
+  }
+
+  private void run(Database database, String setClause, String whereClause, String id) throws CustomChangeException {
+    Connection connection = ((JdbcConnection) database.getConnection()).getWrappedConnection();
+    String predicate = whereClause == null ? "" : " and (" + whereClause + ")";
+    rowsUpdated = 0;
+    chunks = 0;
+
+    try{
+      final boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+
+      try{
+        ensureProgressTable(connection);
+        long[] range = keyRange(connection, predicate);
+        Long last = lastKey(connection, id);
+        long lo = range == null ? 0 : last == null ? range[0] : last + 1;
+
+        //nothing is left to update, possibly after an interrupted run
+        if(range == null || lo > range[1]){
+          deleteProgress(connection, id);
+          connection.commit();
+          return;
+        }
+        final String sql = String.format("update %s set %s where %s between ? and ?%s", tableName, setClause, keyColumn, predicate);
+
+        try(PreparedStatement update = connection.prepareStatement(sql)){
+          while(lo <= range[1]){
+            final long hi = Math.min(range[1], lo + chunkSize - 1);
+            update.setLong(1, lo);
+            update.setLong(2, hi);
+            rowsUpdated += update.executeUpdate();
+
+            if(hi == range[1]){
+              deleteProgress(connection, id);
+            }else{
+              saveProgress(connection, id, hi, last != null || chunks > 0);
+            }
+
+            connection.commit();
+            chunks++;
+            lo = hi + 1;
+          }
+        }
+      }catch(SQLException e){
+        connection.rollback();
+        throw e;
+      }finally{
+        connection.setAutoCommit(autoCommit);
+      }
+    }catch(SQLException e){
+      throw new CustomChangeException("Chunked update of " + tableName + " failed after " + chunks + " chunks.", e);
+    }
+  }
+
+  private long[] keyRange(Connection connection, String predicate) throws SQLException {
+    final String sql = String.format("select min(%s), max(%s) from %s where 1 = 1%s", keyColumn, keyColumn, tableName, predicate);
+
+    try(Statement stmt = connection.createStatement();
+            ResultSet result = stmt.executeQuery(sql)){
+      result.next();
+      final long min = result.getLong(1);
+
+      if(result.wasNull()){
+        return null;
+      }
+
+      return new long[]{min, result.getLong(2)};
+    }
+  }
+
+  static void ensureProgressTable(Connection connection) throws SQLException {
+    try(ResultSet r = connection.getMetaData().getTables(null, null, PROGRESS_TABLE, new String[]{"TABLE"})){
+      if(r.next()){
+        return;
+      }
+    }
+
+    try(Statement stmt = connection.createStatement()){
+      stmt.execute(SQL_CREATE_TABLE);
+    }
+
+    connection.commit();
+  }
+
+  static Long lastKey(Connection connection, String id) throws SQLException {
+    try(PreparedStatement stmt = connection.prepareStatement(SQL_GET_PROGRESS)){
+      stmt.setString(1, id);
+
+      try(ResultSet result = stmt.executeQuery()){
+        return result.next() ? result.getLong(1) : null;
+      }
+    }
+  }
+
+  static void saveProgress(Connection connection, String id, long lastKey, boolean exists) throws SQLException {
+    try(PreparedStatement stmt = connection.prepareStatement(exists ? SQL_UPDATE_PROGRESS : SQL_INSERT_PROGRESS)){
+      stmt.setLong(1, lastKey);
+      stmt.setString(2, id);
+      stmt.execute();
+    }
+  }
+
+  static void deleteProgress(Connection connection, String id) throws SQLException {
+    try(PreparedStatement stmt = connection.prepareStatement(SQL_DELETE_PROGRESS)){
+      stmt.setString(1, id);
+      stmt.execute();
+    }
+  }
+}
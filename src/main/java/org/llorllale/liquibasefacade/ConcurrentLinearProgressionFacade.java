@@ -0,0 +1,344 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.StampedLock;
+import javax.sql.DataSource;
+import liquibase.exception.LiquibaseException;
+
+/**
+ * A thread-safe {@link LinearProgressionFacade facade}: its methods can be called from any number of threads, eg. to
+ * report the schema's version from a health check while another thread migrates the database.<br>
+ * Migrations and estimates use the wrapped facade's connection, and run one at a time. Reads of the current version
+ * never wait for them: they borrow a connection of their own from a {@link DataSource}, of the same database or of a
+ * replica kept in sync with it, and the version they read is cached for up to {@code maxStaleness}. While a migration
+ * runs, reads return the version it started from without touching the database, whose history the migration may be
+ * holding locks on; once it ends, the version it reached is published to readers right away.<br>
+ * Migrations are serialized with a {@link StampedLock}, which readers only ever check optimistically: a version read
+ * while a migration started is returned but not cached, since the migration publishes its own.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+public final class ConcurrentLinearProgressionFacade {
+  private final LinearProgressionFacade facade;
+  private final ReadReplica readers;
+  private final Duration maxStaleness;
+  private final StampedLock lock = new StampedLock();
+  private final AtomicReference<Observation> observed;
+
+  /**
+   * An operation on the wrapped facade.
+   * @param <T> the type of the operation's result
+   */
+  @FunctionalInterface
+  private interface Operation<T> {
+    T run() throws LiquibaseException;
+  }
+
+  /**
+   * Wraps {@code facade}, which must not be used directly afterwards, reading its current version with
+   * {@code readConnections}.
+   * @param facade the facade to make thread-safe, configured as needed
+   * @param readConnections the data source connections are borrowed from for each read of the current version
+   * @param maxStaleness how long a version read is cached for; {@link Duration#ZERO} to read it every time
+   * @throws NullPointerException if any of the parameters is {@code null}
+   * @throws IllegalArgumentException if {@code maxStaleness} is negative
+   * @throws LiquibaseException wrapping any SQLException thrown while reading the current version
+   * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
+   * versions found to have already been applied to the database schema.
+   * @since 1.3.0
+   */
+  public ConcurrentLinearProgressionFacade(LinearProgressionFacade facade, DataSource readConnections, Duration maxStaleness) throws LiquibaseException {
+    this.facade = Objects.requireNonNull(facade, "null facade.");
+
+    if(Objects.requireNonNull(maxStaleness, "null maxStaleness.").isNegative()){
+      throw new IllegalArgumentException("Negative maxStaleness: " + maxStaleness);
+    }
+
+    this.readers = new ReadReplica(Objects.requireNonNull(readConnections, "null readConnections."), maxStaleness);
+    this.maxStaleness = maxStaleness;
+    this.observed = new AtomicReference<>(observation(readers.read(facade::readCurrentVersion)));
+  }
+
+  /**
+   * Returns the reference versions.
+   * @return an unmodifiable view of the reference versions
+   * @since 1.3.0
+   */
+  public List<Version> getVersions() {
+    return facade.getVersions();
+  }
+
+  /**
+   * Returns how long a version read is cached for.
+   * @return how long a version read is cached for
+   * @since 1.3.0
+   */
+  public Duration getMaxStaleness() {
+    return maxStaleness;
+  }
+
+  /**
+   * Returns whether a migration is running.
+   * @return whether a migration is running
+   * @since 1.3.0
+   */
+  public boolean isMigrating() {
+    return lock.isWriteLocked();
+  }
+
+  /**
+   * Same as {@link LinearProgressionFacade#getCurrentVersion()}, without waiting for migrations: while one runs, this
+   * returns the version it started from.
+   * @return the schema's current version
+   * @throws LiquibaseException wrapping any {@link java.sql.SQLException}
+   * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
+   * versions found to have already been applied to the database schema.
+   * @since 1.3.0
+   */
+  public Version getCurrentVersion() throws LiquibaseException {
+    final Observation last = observed.get();
+    final long stamp = lock.tryOptimisticRead();
+
+    if(stamp == 0 || System.nanoTime() - last.expiresAt < 0){
+      return last.version;
+    }
+
+    final Version version = readers.read(facade::readCurrentVersion);
+
+    //a migration that started meanwhile publishes the version it reaches
+    if(lock.validate(stamp)){
+      observed.compareAndSet(last, observation(version));
+    }
+
+    return version;
+  }
+
+  /**
+   * Same as {@link LinearProgressionFacade#isVersioned()}, without waiting for migrations.
+   * @return whether the database schema is versioned.
+   * @throws LiquibaseException wrapping any underlying SQLException
+   * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
+   * versions found to have already been applied to the database schema.
+   * @since 1.3.0
+   */
+  public boolean isVersioned() throws LiquibaseException {
+    return !UndefinedVersion.isUndefinedVersion(getCurrentVersion());
+  }
+
+  /**
+   * Same as {@link LinearProgressionFacade#isUpgrade(org.llorllale.liquibasefacade.Version)}, without waiting for
+   * migrations.
+   * @param version a version that must be part of the list of reference versions.
+   * @return whether {@code version} is an 'upgrade' over the database schema's current version.
+   * @throws LiquibaseException wrapping any underlying SQLException
+   * @throws IllegalArgumentException if {@code version} is not included in list of {@code versions}.
+   * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
+   * versions found to have already been applied to the database schema.
+   * @since 1.3.0
+   */
+  public boolean isUpgrade(Version version) throws LiquibaseException {
+    facade.errorIfInvalidInput(version);
+    return getCurrentVersion().isLessThan(version);
+  }
+
+  /**
+   * Same as {@link LinearProgressionFacade#isDowngrade(org.llorllale.liquibasefacade.Version)}, without waiting for
+   * migrations.
+   * @param version a version that must be part of the list of reference versions.
+   * @return whether {@code version} is a 'downgrade' under the database schema's current version.
+   * @throws LiquibaseException wrapping any underlying SQLException
+   * @throws IllegalArgumentException if {@code version} is not included in list of {@code versions}.
+   * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
+   * versions found to have already been applied to the database schema.
+   * @since 1.3.0
+   */
+  public boolean isDowngrade(Version version) throws LiquibaseException {
+    facade.errorIfInvalidInput(version);
+    return getCurrentVersion().isGreaterThan(version);
+  }
+
+  /**
+   * Same as {@link LinearProgressionFacade#estimate(org.llorllale.liquibasefacade.Version)}, waiting for any running
+   * migration to end first.
+   * @param targetVersion the version the schema would be brought to
+   * @return the estimate of each version that would be applied or rolled back, in the order they would be
+   * @throws LiquibaseException wrapping any underlying SQLException
+   * @throws IllegalArgumentException if {@code targetVersion} is not included in list of {@code versions}.
+   * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
+   * versions found to have already been applied to the database schema.
+   * @since 1.3.0
+   */
+  public List<VersionEstimate> estimate(Version targetVersion) throws LiquibaseException {
+    return exclusively(() -> facade.estimate(targetVersion));
+  }
+
+  /**
+   * Same as {@link LinearProgressionFacade#apply(org.llorllale.liquibasefacade.Version)}, waiting for any running
+   * migration to end first.
+   * @param targetVersion applies the changes required to bring the schema's version to the given {@code targetVersion}.
+   * @return the number of changes (changeSets) applied
+   * @throws LiquibaseException thrown by liquibase, or wrapping any underlying SQLException
+   * @throws IllegalArgumentException if {@code targetVersion} is not included in list of {@code versions}.
+   * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
+   * versions found to have already been applied to the database schema.
+   * @throws NullPointerException if {@code targetVersion} is {@code null}.
+   * @since 1.3.0
+   */
+  public int apply(Version targetVersion) throws LiquibaseException {
+    return applyWithResult(targetVersion).getChangeCount();
+  }
+
+  /**
+   * Same as {@link LinearProgressionFacade#applyWithResult(org.llorllale.liquibasefacade.Version)}, waiting for any
+   * running migration to end first.
+   * @param targetVersion applies the changes required to bring the schema's version to the given {@code targetVersion}.
+   * @return the details of the migration
+   * @throws LiquibaseException thrown by liquibase, or wrapping any underlying SQLException
+   * @throws IllegalArgumentException if {@code targetVersion} is not included in list of {@code versions}.
+   * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
+   * versions found to have already been applied to the database schema.
+   * @throws NullPointerException if {@code targetVersion} is {@code null}.
+   * @since 1.3.0
+   */
+  public MigrationResult applyWithResult(Version targetVersion) throws LiquibaseException {
+    return migrate(() -> facade.applyWithResult(targetVersion));
+  }
+
+  /**
+   * Same as {@link LinearProgressionFacade#apply(org.llorllale.liquibasefacade.Version, java.time.Duration)}, waiting
+   * for any running migration to end first; the wait does not count against {@code budget}.
+   * @param targetVersion applies the changes required to bring the schema's version to the given {@code targetVersion}.
+   * @param budget the time allowed for the migration
+   * @return the details of the migration, including the versions left to reach {@code targetVersion}
+   * @throws LiquibaseException thrown by liquibase, or wrapping any underlying SQLException
+   * @throws IllegalArgumentException if {@code targetVersion} is not included in list of {@code versions}, or if 
+   * {@code budget} is negative.
+   * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
+   * versions found to have already been applied to the database schema.
+   * @throws NullPointerException if any of the parameters is {@code null}.
+   * @since 1.3.0
+   */
+  public MigrationResult apply(Version targetVersion, Duration budget) throws LiquibaseException {
+    return migrate(() -> facade.apply(targetVersion, budget));
+  }
+
+  /**
+   * Same as {@link LinearProgressionFacade#applyAll()}, waiting for any running migration to end first.
+   * @return the number of changes applied.
+   * @throws LiquibaseException thrown by liquibase, or wrapping any underlying SQLException
+   * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
+   * versions found to have already been applied to the database schema.
+   * @since 1.3.0
+   */
+  public int applyAll() throws LiquibaseException {
+    return applyAllWithResult().getChangeCount();
+  }
+
+  /**
+   * Same as {@link LinearProgressionFacade#applyAllWithResult()}, waiting for any running migration to end first.
+   * @return the details of the migration
+   * @throws LiquibaseException thrown by liquibase, or wrapping any underlying SQLException
+   * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
+   * versions found to have already been applied to the database schema.
+   * @since 1.3.0
+   */
+  public MigrationResult applyAllWithResult() throws LiquibaseException {
+    return migrate(facade::applyAllWithResult);
+  }
+
+  /**
+   * Same as {@link LinearProgressionFacade#rollbackAll()}, waiting for any running migration to end first.
+   * @return the number of changes rolled back.
+   * @throws LiquibaseException thrown by liquibase, or wrapping any underlying SQLException
+   * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
+   * versions found to have already been applied to the database schema.
+   * @since 1.3.0
+   */
+  public int rollbackAll() throws LiquibaseException {
+    return rollbackAllWithResult().getChangeCount();
+  }
+
+  /**
+   * Same as {@link LinearProgressionFacade#rollbackAllWithResult()}, waiting for any running migration to end first.
+   * @return the details of the migration
+   * @throws LiquibaseException thrown by liquibase, or wrapping any underlying SQLException
+   * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
+   * versions found to have already been applied to the database schema.
+   * @since 1.3.0
+   */
+  public MigrationResult rollbackAllWithResult() throws LiquibaseException {
+    return migrate(facade::rollbackAllWithResult);
+  }
+
+  /**
+   * Runs {@code migration} and publishes the version it reached. A failed migration may have stopped at any version,
+   * so the version is then read back from the facade's connection; if that fails too, the next read goes to the
+   * database.
+   */
+  private MigrationResult migrate(Operation<MigrationResult> migration) throws LiquibaseException {
+    return exclusively(() -> {
+      final MigrationResult result;
+
+      try{
+        result = migration.run();
+      }catch(LiquibaseException | RuntimeException e){
+        try{
+          observed.set(observation(facade.readCurrentVersion(facade.getConnection())));
+        }catch(LiquibaseException | RuntimeException suppressed){
+          e.addSuppressed(suppressed);
+          observed.set(new Observation(observed.get().version, System.nanoTime()));
+        }
+
+        throw e;
+      }
+
+      observed.set(observation(result.getToVersion()));
+      return result;
+    });
+  }
+
+  private <T> T exclusively(Operation<T> operation) throws LiquibaseException {
+    final long stamp = lock.writeLock();
+
+    try{
+      return operation.run();
+    }finally{
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  private Observation observation(Version version) {
+    return new Observation(version, System.nanoTime() + maxStaleness.toNanos());
+  }
+
+  /**
+   * A version read or reached, and when it stops being relied upon, as per {@link System#nanoTime()}.
+   */
+  private static final class Observation {
+    private final Version version;
+    private final long expiresAt;
+
+    private Observation(Version version, long expiresAt) {
+      this.version = version;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import liquibase.exception.LiquibaseException;
+
+/**
+ * Hands out copies of in-memory HSQLDB databases already migrated to a given version, so that test suites need not
+ * replay every changelog for each test.<br>
+ * The first time a version is requested, a template database is created and migrated to it by a facade obtained from
+ * the {@link FacadeFactory}; every call then returns a connection to a new in-memory database holding a copy of the
+ * template's schema and rows, liquibase's history included, so that a facade on it finds the database already at that
+ * version. The schema is copied from the DDL returned by HSQLDB's {@code SCRIPT} statement, and rows are copied table
+ * by table.<br>
+ * Templates live as long as this object: keep it in a static field to migrate once per JVM, and {@link #close() close}
+ * it to drop the templates. Each copy is dropped when its connection is closed.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+public final class DatabaseTemplates implements AutoCloseable {
+  private static final AtomicInteger DATABASES = new AtomicInteger();
+
+  private final FacadeFactory facades;
+  private final Map<Version, Template> templates = new HashMap<>();
+  private Set<String> defaultScript;
+
+  /**
+   * Creates the facade used to migrate a template.
+   * @since 1.3.0
+   */
+  @FunctionalInterface
+  public interface FacadeFactory {
+    /**
+     *
+     * @param connection the connection to the template's database
+     * @return the facade that migrates the template
+     * @throws LiquibaseException if the facade cannot be created
+     */
+    LinearProgressionFacade create(Connection connection) throws LiquibaseException;
+  }
+
+  /**
+   *
+   * @param facades creates the facade used to migrate a template, given the connection to the template's database
+   * @throws NullPointerException if {@code facades} is {@code null}
+   * @since 1.3.0
+   */
+  public DatabaseTemplates(FacadeFactory facades) {
+    this.facades = Objects.requireNonNull(facades, "null facades.");
+  }
+
+  /**
+   * Returns a connection to a new in-memory database holding a copy of the template migrated to {@code version},
+   * creating the template first if needed.
+   * @param version the version the copy must be at
+   * @return a connection to the copy, which is dropped when the connection is closed
+   * @throws NullPointerException if {@code version} is {@code null}
+   * @throws LiquibaseException if the template cannot be migrated, or wrapping any SQLException thrown while copying it
+   * @since 1.3.0
+   */
+  public synchronized Connection copyOf(Version version) throws LiquibaseException {
+    Objects.requireNonNull(version, "null version.");
+    Template template = templates.get(version);
+
+    if(template == null){
+      template = new Template(version);
+      templates.put(version, template);
+    }
+
+    return template.copy();
+  }
+
+  /**
+   * Returns the number of templates created so far.
+   * @return the number of templates created so far
+   * @since 1.3.0
+   */
+  public synchronized int size() {
+    return templates.size();
+  }
+
+  /**
+   * Drops every template. Copies already handed out are not affected.
+   * @throws LiquibaseException wrapping any SQLException thrown while dropping the templates
+   * @since 1.3.0
+   */
+  @Override
+  public synchronized void close() throws LiquibaseException {
+    LiquibaseException error = null;
+
+    for(Template template : templates.values()){
+      try(Connection connection = template.connection;
+              Statement stmt = connection.createStatement()){
+        stmt.execute("SHUTDOWN");
+      }catch(SQLException e){
+        if(error == null){
+          error = new LiquibaseException("Unable to drop template for version " + template.version.string(), e);
+        }
+      }
+    }
+
+    templates.clear();
+
+    if(error != null){
+      throw error;
+    }
+  }
+
+  private static Connection newDatabase(String kind) throws SQLException {
+    return DriverManager.getConnection("jdbc:hsqldb:mem:" + kind + DATABASES.incrementAndGet() + ";shutdown=true");
+  }
+
+  private static List<String> script(Connection connection) throws SQLException {
+    List<String> script = new ArrayList<>(); //return variable
+
+    try(Statement stmt = connection.createStatement();
+            ResultSet result = stmt.executeQuery("SCRIPT")){
+      while(result.next()){
+        script.add(result.getString(1));
+      }
+    }
+
+    return script;
+  }
+
+  /**
+   * Returns the DDL every new database starts with, which copies must not replay.
+   */
+  private Set<String> defaultScript() throws SQLException {
+    if(defaultScript == null){
+      try(Connection empty = newDatabase("empty")){
+        defaultScript = new HashSet<>(script(empty));
+      }
+    }
+
+    return defaultScript;
+  }
+
+  private final class Template {
+    private final Version version;
+    private final Connection connection;
+    private final List<String> ddl = new ArrayList<>();
+    private final List<String> tables = new ArrayList<>();
+
+    private Template(Version version) throws LiquibaseException {
+      this.version = version;
+
+      try{
+        connection = newDatabase("template");
+      }catch(SQLException e){
+        throw new LiquibaseException("Unable to create template for version " + version.string(), e);
+      }
+
+      try{
+        facades.create(connection).apply(version);
+
+        for(String statement : script(connection)){
+          if(!defaultScript().contains(statement) && !statement.startsWith("SET DATABASE UNIQUE NAME")){
+            ddl.add(statement);
+          }
+        }
+
+        try(ResultSet result = connection.getMetaData().getTables(null, null, null, new String[]{"TABLE"})){
+          while(result.next()){
+            final String schema = result.getString("TABLE_SCHEM");
+
+            if(!"INFORMATION_SCHEMA".equals(schema) && !"SYSTEM_LOBS".equals(schema)){
+              tables.add(String.format("\"%s\".\"%s\"", schema, result.getString("TABLE_NAME")));
+            }
+          }
+        }
+      }catch(LiquibaseException | SQLException | RuntimeException e){
+        try{
+          connection.close();
+        }catch(SQLException suppressed){
+          e.addSuppressed(suppressed);
+        }
+
+        if(e instanceof LiquibaseException){
+          throw (LiquibaseException) e;
+        }
+
+        throw new LiquibaseException("Unable to create template for version " + version.string(), e);
+      }
+    }
+
+    private Connection copy() throws LiquibaseException {
+      Connection copy = null;
+
+      try{
+        copy = newDatabase("copy");
+
+        try(Statement stmt = copy.createStatement()){
+          for(String statement : ddl){
+            stmt.execute(statement);
+          }
+
+          //rows are copied table by table, in no particular order
+          stmt.execute("SET DATABASE REFERENTIAL INTEGRITY FALSE");
+
+          for(String table : tables){
+            copyRows(table, copy);
+          }
+
+          stmt.execute("SET DATABASE REFERENTIAL INTEGRITY TRUE");
+        }
+
+        return copy;
+      }catch(SQLException e){
+        if(copy != null){
+          try{
+            copy.close();
+          }catch(SQLException suppressed){
+            e.addSuppressed(suppressed);
+          }
+        }
+
+        throw new LiquibaseException("Unable to copy template for version " + version.string(), e);
+      }
+    }
+
+    private void copyRows(String table, Connection copy) throws SQLException {
+      try(Statement select = connection.createStatement();
+              ResultSet rows = select.executeQuery("select * from " + table)){
+        final int columns = rows.getMetaData().getColumnCount();
+        StringBuilder values = new StringBuilder();
+
+        for(int c = 1; c <= columns; c++){
+          values.append(c == 1 ? "?" : ", ?");
+        }
+
+        try(PreparedStatement insert = copy.prepareStatement(String.format("insert into %s values (%s)", table, values))){
+          int pending = 0;
+
+          while(rows.next()){
+            for(int c = 1; c <= columns; c++){
+              insert.setObject(c, rows.getObject(c));
+            }
+
+            insert.addBatch();
+            pending++;
+          }
+
+          if(pending > 0){
+            insert.executeBatch();
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import liquibase.exception.LiquibaseException;
+
+/**
+ * Detects changes made to a schema's tables outside of the facade (eg. manual hotfixes).<br>
+ * Instead of a full liquibase snapshot and diff, every table is reduced to a compact 64-bit hash of its catalog
+ * metadata (columns and indexes), gathered in a single pass over {@link DatabaseMetaData#getColumns(java.lang.String, java.lang.String, java.lang.String, java.lang.String) columns}
+ * plus one {@link DatabaseMetaData#getIndexInfo(java.lang.String, java.lang.String, java.lang.String, boolean, boolean) index lookup} per table.
+ * {@link #snapshot(java.sql.Connection) Snapshots} are stored, one row per table, in the {@code DATABASECHANGELOGSNAPSHOT}
+ * table so that later {@link #detect(java.sql.Connection) checks} only need to compare hashes.<br>
+ * Liquibase's own tables are ignored.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+public class DriftDetector {
+  private static final String SNAPSHOT_TABLE_NAME = "DATABASECHANGELOGSNAPSHOT";
+  private static final String IGNORED_PREFIX = "DATABASECHANGELOG";
+  private static final String SQL_CREATE_TABLE = String.format("create table %s (object_name varchar(255) not null primary key, hash bigint not null)", SNAPSHOT_TABLE_NAME);
+  private static final String SQL_SELECT = String.format("select object_name, hash from %s", SNAPSHOT_TABLE_NAME);
+  private static final String SQL_DELETE = String.format("delete from %s", SNAPSHOT_TABLE_NAME);
+  private static final String SQL_INSERT = String.format("insert into %s (object_name, hash) values (?,?)", SNAPSHOT_TABLE_NAME);
+
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final String schema;
+
+  /**
+   * The kind of drift found for a table.
+   * @since 1.3.0
+   */
+  public enum Drift {
+    /** The table did not exist when the snapshot was taken. */
+    ADDED,
+    /** The table existed when the snapshot was taken but no longer does. */
+    REMOVED,
+    /** The table's columns or indexes differ from when the snapshot was taken. */
+    CHANGED
+  }
+
+  /**
+   * Detects drift in the connection's current schema.
+   * @since 1.3.0
+   */
+  public DriftDetector() {
+    this(null);
+  }
+
+  /**
+   *
+   * @param schema the schema to inspect; {@code null} for the connection's current schema
+   * @since 1.3.0
+   */
+  public DriftDetector(String schema) {
+    this.schema = schema;
+  }
+
+  /**
+   * Hashes every table of the schema and stores the hashes as the baseline for future {@link #detect(java.sql.Connection) checks}.
+   * @param connection the connection to the database
+   * @return the number of tables hashed
+   * @throws LiquibaseException wrapping any underlying SQLException
+   * @since 1.3.0
+   */
+  public int snapshot(Connection connection) throws LiquibaseException {
+    try{
+      Map<String, Long> hashes = hash(connection);
+
+      if(!snapshotTableExists(connection)){
+        try(Statement stmt = connection.createStatement()){
+          stmt.execute(SQL_CREATE_TABLE);
+        }
+      }
+
+      try(Statement delete = connection.createStatement();
+              PreparedStatement insert = connection.prepareStatement(SQL_INSERT)){
+        delete.execute(SQL_DELETE);
+
+        for(Map.Entry<String, Long> hash : hashes.entrySet()){
+          insert.setString(1, hash.getKey());
+          insert.setLong(2, hash.getValue());
+          insert.addBatch();
+        }
+
+        insert.executeBatch();
+      }
+
+      return hashes.size();
+    }catch(SQLException e){
+      throw new LiquibaseException("Unable to take a snapshot of the schema.", e);
+    }
+  }
+
+  /**
+   * Compares the schema's tables against the last {@link #snapshot(java.sql.Connection) snapshot}.
+   * @param connection the connection to the database
+   * @return the tables that drifted since the last snapshot, sorted by name; empty if there is no drift
+   * @throws LiquibaseException wrapping any underlying SQLException
+   * @throws IllegalStateException if no snapshot has been taken
+   * @since 1.3.0
+   */
+  public Map<String, Drift> detect(Connection connection) throws LiquibaseException {
+    try{
+      if(!snapshotTableExists(connection)){
+        throw new IllegalStateException("No snapshot has been taken of the schema.");
+      }
+
+      Map<String, Long> baseline = new HashMap<>();
+
+      try(Statement stmt = connection.createStatement();
+              ResultSet result = stmt.executeQuery(SQL_SELECT)){
+        while(result.next()){
+          baseline.put(result.getString(1), result.getLong(2));
+        }
+      }
+
+      Map<String, Drift> drift = new TreeMap<>(); //return variable
+
+      for(Map.Entry<String, Long> hash : hash(connection).entrySet()){
+        Long expected = baseline.remove(hash.getKey());
+
+        if(expected == null){
+          drift.put(hash.getKey(), Drift.ADDED);
+        }else if(expected.longValue() != hash.getValue()){
+          drift.put(hash.getKey(), Drift.CHANGED);
+        }
+      }
+
+      baseline.keySet().forEach(table -> drift.put(table, Drift.REMOVED));
+      return Collections.unmodifiableMap(drift);
+    }catch(SQLException e){
+      throw new LiquibaseException("Unable to detect drift in the schema.", e);
+    }
+  }
+
+  private Map<String, Long> hash(Connection connection) throws SQLException {
+    DatabaseMetaData md = connection.getMetaData();
+    String schemaPattern = schema == null ? connection.getSchema() : schema;
+    Map<String, Long> hashes = new HashMap<>();
+
+    try(ResultSet tables = md.getTables(null, schemaPattern, "%", new String[]{"TABLE"})){
+      while(tables.next()){
+        String table = tables.getString("TABLE_NAME");
+
+        if(!table.toUpperCase().startsWith(IGNORED_PREFIX)){
+          hashes.put(table, FNV_OFFSET);
+        }
+      }
+    }
+
+    try(ResultSet columns = md.getColumns(null, schemaPattern, "%", "%")){
+      while(columns.next()){
+        String table = columns.getString("TABLE_NAME");
+        Long hash = hashes.get(table);
+
+        if(hash != null){
+          long h = hash;
+          h = fnv(h, columns.getString("COLUMN_NAME"));
+          h = fnv(h, columns.getString("TYPE_NAME"));
+          h = fnv(h, columns.getString("COLUMN_SIZE"));
+          h = fnv(h, columns.getString("DECIMAL_DIGITS"));
+          h = fnv(h, columns.getString("IS_NULLABLE"));
+          h = fnv(h, columns.getString("COLUMN_DEF"));
+          hashes.put(table, h);
+        }
+      }
+    }
+
+    for(Map.Entry<String, Long> hash : hashes.entrySet()){
+      long h = hash.getValue();
+
+      try(ResultSet indexes = md.getIndexInfo(null, schemaPattern, hash.getKey(), false, true)){
+        while(indexes.next()){
+          h = fnv(h, indexes.getString("INDEX_NAME"));
+          h = fnv(h, indexes.getString("COLUMN_NAME"));
+          h = fnv(h, indexes.getString("NON_UNIQUE"));
+        }
+      }
+
+      hash.setValue(h);
+    }
+
+    return hashes;
+  }
+
+  private boolean snapshotTableExists(Connection connection) throws SQLException {
+    try(ResultSet r = connection.getMetaData().getTables(null, null, SNAPSHOT_TABLE_NAME, new String[]{"TABLE"})){
+      return r.next();
+    }
+  }
+
+  /**
+   * 64-bit FNV-1a over the chars of {@code value}, with a separator so that adjacent values cannot collide by concatenation.
+   */
+  private static long fnv(long hash, String value) {
+    long h = hash;
+
+    if(value != null){
+      for(int i = 0; i < value.length(); i++){
+        h ^= value.charAt(i);
+        h *= FNV_PRIME;
+      }
+    }
+
+    h ^= 0x1f;
+    h *= FNV_PRIME;
+    return h;
+  }
+}
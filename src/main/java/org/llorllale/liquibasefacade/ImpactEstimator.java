@@ -0,0 +1,339 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import liquibase.change.AddColumnConfig;
+import liquibase.change.Change;
+import liquibase.change.core.AbstractModifyDataChange;
+import liquibase.change.core.AddColumnChange;
+import liquibase.change.core.AddForeignKeyConstraintChange;
+import liquibase.change.core.AddNotNullConstraintChange;
+import liquibase.change.core.AddPrimaryKeyChange;
+import liquibase.change.core.AddUniqueConstraintChange;
+import liquibase.change.core.CreateIndexChange;
+import liquibase.change.core.DropColumnChange;
+import liquibase.change.core.MergeColumnChange;
+import liquibase.change.core.ModifyDataTypeChange;
+import liquibase.change.custom.CustomChangeWrapper;
+import liquibase.changelog.ChangeSet;
+import liquibase.exception.LiquibaseException;
+
+/**
+ * Estimates the time versions will take to be applied or rolled back, before running them.<br>
+ * A changeSet whose timing was recorded the last time it was run or rolled back is estimated at that time. Any other
+ * changeSet is modelled on its changes: each change costs {@link #CHANGE_NANOS}, plus, for every row of the table it
+ * works on, {@link #INDEX_ROW_NANOS} if it builds an index or validates a constraint, or {@link #REWRITE_ROW_NANOS}
+ * if it rewrites, updates or deletes the table's rows. Rows are read from the statistics the database reports through
+ * JDBC, or else from the row count its catalog maintains, on HSQLDB, H2 and PostgreSQL; tables created earlier in the
+ * plan have none. Rows are never counted, since counting is a scan of the very tables that make a migration slow: a
+ * table whose size is unknown only costs the time of its changes, and is reported as
+ * {@link VersionEstimate#getUnsizedTables() unsized}.<br>
+ * When some changeSets of the plan have recorded timings, modelled estimates are scaled by the ratio of their
+ * recorded to their modelled time, so that the model fits the speed of this database.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+final class ImpactEstimator {
+  static final long CHANGE_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+  static final long INDEX_ROW_NANOS = 2_000;
+  static final long REWRITE_ROW_NANOS = 1_000;
+
+  //the number of rows of a table whose size is unknown
+  private static final long UNKNOWN = -1;
+
+  //queries for the row count maintained by the catalog, by database product name, taking the schema and table names
+  private static final Map<String, String> CATALOG_ROWS = catalogQueries();
+
+  private final Connection connection;
+  private final TimingHistory.Estimates history;
+  private final String catalogRows;
+  private final Map<String, Long> rows = new HashMap<>();
+
+  /**
+   *
+   * @param connection the JDBC connection to the database to be migrated
+   * @param history the timings recorded for the direction of the migration
+   * @param catalogRows the query for the row count the database's catalog maintains for a table, taking the schema
+   * and table names; {@code null} if the catalog maintains none
+   * @see #catalogRows(java.sql.Connection) 
+   */
+  ImpactEstimator(Connection connection, TimingHistory.Estimates history, String catalogRows) {
+    this.connection = connection;
+    this.history = history;
+    this.catalogRows = catalogRows;
+  }
+
+  /**
+   * Returns the query for the row count the catalog of the database at {@code connection} maintains for a table.
+   * @param connection the JDBC connection to the database to be migrated
+   * @return the query, taking the schema and table names; {@code null} if the database is not one whose catalog is
+   * known
+   * @throws LiquibaseException wrapping any underlying SQLException
+   */
+  static String catalogRows(Connection connection) throws LiquibaseException {
+    try{
+      return CATALOG_ROWS.get(connection.getMetaData().getDatabaseProductName());
+    }catch(SQLException e){
+      throw new LiquibaseException("Unable to read the database's product name.", e);
+    }
+  }
+
+  private static Map<String, String> catalogQueries() {
+    Map<String, String> queries = new HashMap<>();
+    queries.put("HSQL Database Engine", "select cardinality from information_schema.system_tablestats where table_schema = ? and table_name = ?");
+    queries.put("H2", "select row_count_estimate from information_schema.tables where table_schema = ? and table_name = ?");
+    queries.put("PostgreSQL", "select c.reltuples from pg_class c join pg_namespace n on n.oid = c.relnamespace where n.nspname = ? and c.relname = ?");
+    return Collections.unmodifiableMap(queries);
+  }
+
+  /**
+   * Estimates each version of {@code plan}.
+   * @param plan the changeSets to be run or rolled back for each version, in the order they would be
+   * @return the estimate of each version, in the order of {@code plan}
+   * @throws LiquibaseException wrapping any underlying SQLException
+   */
+  List<VersionEstimate> estimate(Map<Version, List<ChangeSet>> plan) throws LiquibaseException {
+    Map<ChangeSet, Long> modelled = new HashMap<>();
+    Map<Version, Map<String, Long>> tables = new LinkedHashMap<>();
+    Map<Version, Set<String>> unsized = new LinkedHashMap<>();
+    long measuredNanos = 0;
+    long measuredModel = 0;
+
+    for(Map.Entry<Version, List<ChangeSet>> version : plan.entrySet()){
+      Map<String, Long> tableRows = new LinkedHashMap<>();
+      Set<String> unsizedTables = new LinkedHashSet<>();
+
+      for(ChangeSet changeSet : version.getValue()){
+        final long model = model(changeSet, tableRows, unsizedTables);
+        final OptionalLong recorded = history.recorded(changeSet);
+        modelled.put(changeSet, model);
+
+        if(recorded.isPresent()){
+          measuredNanos += recorded.getAsLong();
+          measuredModel += model;
+        }
+      }
+
+      tables.put(version.getKey(), tableRows);
+      unsized.put(version.getKey(), unsizedTables);
+    }
+
+    final double scale = measuredModel > 0 ? (double) measuredNanos / measuredModel : 1;
+    List<VersionEstimate> estimates = new ArrayList<>(); //return variable
+
+    for(Map.Entry<Version, List<ChangeSet>> version : plan.entrySet()){
+      long nanos = 0;
+      int measured = 0;
+
+      for(ChangeSet changeSet : version.getValue()){
+        final OptionalLong recorded = history.recorded(changeSet);
+
+        if(recorded.isPresent()){
+          nanos += recorded.getAsLong();
+          measured++;
+        }else{
+          nanos += (long) (modelled.get(changeSet) * scale);
+        }
+      }
+
+      estimates.add(new VersionEstimate(version.getKey(), Duration.ofNanos(nanos), version.getValue().size(), measured, tables.get(version.getKey()), unsized.get(version.getKey())));
+    }
+
+    return estimates;
+  }
+
+  /**
+   * Returns the modelled time of {@code changeSet}, adding the tables its changes scale with to {@code tableRows}, or
+   * to {@code unsizedTables} if their size is unknown.
+   */
+  private long model(ChangeSet changeSet, Map<String, Long> tableRows, Set<String> unsizedTables) throws LiquibaseException {
+    long nanos = 0; //return variable
+
+    for(Change change : changeSet.getChanges()){
+      nanos += CHANGE_NANOS;
+      final String[] table = new String[2];
+      final long rowNanos = rowNanos(change, table);
+
+      if(rowNanos > 0 && table[1] != null){
+        final String name = table[0] == null ? table[1] : table[0] + '.' + table[1];
+        final long count = rows(table[0], table[1]);
+
+        if(count == UNKNOWN){
+          unsizedTables.add(name);
+        }else{
+          tableRows.put(name, count);
+          nanos += rowNanos * count;
+        }
+      }
+    }
+
+    return nanos;
+  }
+
+  /**
+   * Returns the cost per row of the table {@code change} works on, storing the table's schema and name in
+   * {@code table}; {@code 0} if its cost does not depend on the table's size.
+   */
+  private static long rowNanos(Change change, String[] table) {
+    if(change instanceof CreateIndexChange){
+      return scaling(INDEX_ROW_NANOS, table, ((CreateIndexChange) change).getSchemaName(), ((CreateIndexChange) change).getTableName());
+    }else if(change instanceof AddPrimaryKeyChange){
+      return scaling(INDEX_ROW_NANOS, table, ((AddPrimaryKeyChange) change).getSchemaName(), ((AddPrimaryKeyChange) change).getTableName());
+    }else if(change instanceof AddUniqueConstraintChange){
+      return scaling(INDEX_ROW_NANOS, table, ((AddUniqueConstraintChange) change).getSchemaName(), ((AddUniqueConstraintChange) change).getTableName());
+    }else if(change instanceof AddForeignKeyConstraintChange){
+      return scaling(INDEX_ROW_NANOS, table, ((AddForeignKeyConstraintChange) change).getBaseTableSchemaName(), ((AddForeignKeyConstraintChange) change).getBaseTableName());
+    }else if(change instanceof AddNotNullConstraintChange){
+      return scaling(REWRITE_ROW_NANOS, table, ((AddNotNullConstraintChange) change).getSchemaName(), ((AddNotNullConstraintChange) change).getTableName());
+    }else if(change instanceof ModifyDataTypeChange){
+      return scaling(REWRITE_ROW_NANOS, table, ((ModifyDataTypeChange) change).getSchemaName(), ((ModifyDataTypeChange) change).getTableName());
+    }else if(change instanceof DropColumnChange){
+      return scaling(REWRITE_ROW_NANOS, table, ((DropColumnChange) change).getSchemaName(), ((DropColumnChange) change).getTableName());
+    }else if(change instanceof MergeColumnChange){
+      return scaling(REWRITE_ROW_NANOS, table, ((MergeColumnChange) change).getSchemaName(), ((MergeColumnChange) change).getTableName());
+    }else if(change instanceof AbstractModifyDataChange){
+      return scaling(REWRITE_ROW_NANOS, table, ((AbstractModifyDataChange) change).getSchemaName(), ((AbstractModifyDataChange) change).getTableName());
+    }else if(change instanceof AddColumnChange){
+      //nullable columns without a default are only added to the catalog
+      for(AddColumnConfig column : ((AddColumnChange) change).getColumns()){
+        if(column.getDefaultValueObject() != null 
+                || (column.getConstraints() != null && Boolean.FALSE.equals(column.getConstraints().isNullable()))){
+          return scaling(REWRITE_ROW_NANOS, table, ((AddColumnChange) change).getSchemaName(), ((AddColumnChange) change).getTableName());
+        }
+      }
+    }else if(change instanceof CustomChangeWrapper && (ChunkedUpdateChange.class.getName().equals(((CustomChangeWrapper) change).getClassName())
+            || OnlineAlterTableChange.class.getName().equals(((CustomChangeWrapper) change).getClassName()))){
+      return scaling(REWRITE_ROW_NANOS, table, null, ((CustomChangeWrapper) change).getParamValue("tableName"));
+    }
+
+    return 0;
+  }
+
+  private static long scaling(long rowNanos, String[] table, String schemaName, String tableName) {
+    table[0] = schemaName;
+    table[1] = tableName;
+    return rowNanos;
+  }
+
+  /**
+   * Returns the number of rows of a table, from the database's statistics if it has any, from its catalog otherwise;
+   * {@link #UNKNOWN} if neither knows it. Tables that do not exist have no rows.
+   */
+  private long rows(String schemaName, String tableName) throws LiquibaseException {
+    final String key = schemaName == null ? tableName : schemaName + '.' + tableName;
+    Long count = rows.get(key);
+
+    if(count != null){
+      return count;
+    }
+
+    try{
+      DatabaseMetaData md = connection.getMetaData();
+      String schema = identifier(md, schemaName);
+      final String table = identifier(md, tableName);
+
+      try(ResultSet result = md.getTables(null, schema, table, new String[]{"TABLE"})){
+        if(!result.next()){
+          rows.put(key, 0L);
+          return 0;
+        }
+
+        schema = result.getString("TABLE_SCHEM");
+      }
+
+      try(ResultSet result = md.getIndexInfo(null, schema, table, false, true)){
+        while(count == null && result.next()){
+          final long cardinality = result.getLong("CARDINALITY");
+          final boolean known = !result.wasNull();
+
+          if(known && cardinality > 0 && result.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic){
+            count = cardinality;
+          }
+        }
+      }
+
+      if(count == null){
+        count = catalogRows(schema, table);
+      }
+    }catch(SQLException e){
+      throw new LiquibaseException("Unable to read the number of rows of table " + key, e);
+    }
+
+    rows.put(key, count);
+    return count;
+  }
+
+  /**
+   * Returns the number of rows the catalog of the database holds for a table; {@link #UNKNOWN} if it holds none, or
+   * if the estimator was given no query for it.
+   */
+  private long catalogRows(String schema, String table) {
+    if(catalogRows == null){
+      return UNKNOWN;
+    }
+
+    try(PreparedStatement stmt = connection.prepareStatement(catalogRows)){
+      stmt.setString(1, schema);
+      stmt.setString(2, table);
+
+      try(ResultSet result = stmt.executeQuery()){
+        if(result.next()){
+          final long count = result.getLong(1);
+
+          //eg. PostgreSQL reports -1 for tables never analyzed
+          if(!result.wasNull() && count >= 0){
+            return count;
+          }
+        }
+      }
+    }catch(SQLException e){
+      //the catalog is not readable with this user or version
+    }
+
+    return UNKNOWN;
+  }
+
+  /**
+   * Returns {@code name} in the case the database stores unquoted identifiers in.
+   */
+  static String identifier(DatabaseMetaData md, String name) throws SQLException {
+    if(name == null){
+      return null;
+    }else if(md.storesUpperCaseIdentifiers()){
+      return name.toUpperCase();
+    }else if(md.storesLowerCaseIdentifiers()){
+      return name.toLowerCase();
+    }
+
+    return name;
+  }
+}
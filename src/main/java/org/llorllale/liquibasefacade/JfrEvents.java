@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The JDK Flight Recorder events emitted by the facade, all under the {@code Liquibase Facade} category.<br>
+ * This class must only be loaded through {@link Tracing}, which checks that the JVM supports JFR. Since it is compiled
+ * against {@code jdk.jfr}, building the library requires JDK 8u262 or later, as enforced by the build.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+final class JfrEvents {
+  private static final String PREFIX = "org.llorllale.liquibasefacade.";
+  private static final String CATEGORY = "Liquibase Facade";
+
+  private JfrEvents() {
+  }
+
+  @Name(PREFIX + "Migration")
+  @Label("Version Migration")
+  @Description("Upgrade to, or downgrade from, a version")
+  @Category(CATEGORY)
+  static final class MigrationEvent extends Event {
+    @Label("Version")
+    String version;
+
+    @Label("Upgrade")
+    boolean upgrade;
+  }
+
+  @Name(PREFIX + "ChangeSet")
+  @Label("ChangeSet Execution")
+  @Description("Execution or rollback of a changeSet, including liquibase's bookkeeping")
+  @Category(CATEGORY)
+  static final class ChangeSetEvent extends Event {
+    @Label("Version")
+    String version;
+
+    @Label("ChangeSet Id")
+    String id;
+
+    @Label("Author")
+    String author;
+
+    @Label("File")
+    String filePath;
+
+    @Label("Rollback")
+    boolean rollback;
+  }
+
+  @Name(PREFIX + "HistoryQuery")
+  @Label("History Query")
+  @Description("Query against liquibase's history table")
+  @Category(CATEGORY)
+  static final class HistoryQueryEvent extends Event {
+    @Label("Query")
+    String query;
+  }
+
+  @Name(PREFIX + "ConsistencyValidation")
+  @Label("Consistency Validation")
+  @Description("Validation of the applied versions against the reference list of versions")
+  @Category(CATEGORY)
+  static final class ConsistencyValidationEvent extends Event {
+  }
+
+  @Name(PREFIX + "LockAcquisition")
+  @Label("Lock Acquisition")
+  @Description("Wait for the lock held for the whole of a migration")
+  @Category(CATEGORY)
+  static final class LockAcquisitionEvent extends Event {
+    @Label("Version")
+    String version;
+  }
+
+  static Tracing.Span migration(String version, boolean upgrade) {
+    MigrationEvent event = new MigrationEvent();
+    event.version = version;
+    event.upgrade = upgrade;
+    return span(event);
+  }
+
+  static Tracing.Span changeSet(String version, String id, String author, String filePath, boolean rollback) {
+    ChangeSetEvent event = new ChangeSetEvent();
+    event.version = version;
+    event.id = id;
+    event.author = author;
+    event.filePath = filePath;
+    event.rollback = rollback;
+    return span(event);
+  }
+
+  static Tracing.Span historyQuery(String query) {
+    HistoryQueryEvent event = new HistoryQueryEvent();
+    event.query = query;
+    return span(event);
+  }
+
+  static Tracing.Span consistencyValidation() {
+    return span(new ConsistencyValidationEvent());
+  }
+
+  static Tracing.Span lockAcquisition(String version) {
+    LockAcquisitionEvent event = new LockAcquisitionEvent();
+    event.version = version;
+    return span(event);
+  }
+
+  private static Tracing.Span span(Event event) {
+    if(!event.isEnabled()){
+      return () -> {};
+    }
+
+    event.begin();
+    return () -> {
+      event.end();
+
+      if(event.shouldCommit()){
+        event.commit();
+      }
+    };
+  }
+}
@@ -20,22 +20,46 @@ import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.Stack;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.Lock;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import javax.sql.DataSource;
 import liquibase.Liquibase;
+import liquibase.change.Change;
+import liquibase.change.CheckSum;
+import liquibase.change.custom.CustomChangeWrapper;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
 import liquibase.database.Database;
 import liquibase.database.DatabaseFactory;
 import liquibase.database.jvm.JdbcConnection;
 import liquibase.exception.LiquibaseException;
+import liquibase.lockservice.LockService;
+import liquibase.lockservice.LockServiceFactory;
+import liquibase.logging.LogFactory;
+import liquibase.resource.CompositeResourceAccessor;
 import liquibase.resource.ResourceAccessor;
 
 /**
- *
+ * Instances are not thread-safe: wrap them in a {@link ConcurrentLinearProgressionFacade} to share them between threads.
  * @author George Aristy
  * @since 1.0.0
  */
@@ -44,20 +68,50 @@ public class LinearProgressionFacade {
   private final List<Version> versions;
   private final Function<Version, String> changesetFileLocator;
   private final Function<Version, ResourceAccessor> resourceAccessorGenerator;
+  private final VersionScheme scheme;
+  private final String namespace;
+  private final long[] catalogKeys;
+  private final Version[] catalog;
+  private final CheckpointLog checkpoints;
+  private final BitSet appliedVersions;
+  private final TimingHistory timings;
+  private final OperationLock operationLock;
+  private final RollbackPlans rollbackPlans;
+  private boolean resumable;
+  private boolean jumpUpgrades;
+  private boolean recordTimings;
+  private boolean precomputeRollbacks;
+  private int batchSize;
+  private LockWaitStrategy lockWaitStrategy = LockWaitStrategy.defaults();
+  private Lock liquibaseMutex;
+  private DriftDetector driftDetector;
+  private AuditLog auditLog;
+  private Map<Version, PreparedChangeLog> prepared = Collections.emptyMap();
+  private ChecksumCache checksumCache = new ChecksumCache();
+  private ReadReplica replica;
+  private Version primaryVersion;
+  private long primaryObservedAt;
 
   private static final String CHANGELOG_TABLE = "databasechangelog".toUpperCase();
 
+  private static final String SQL_GET_CHECKSUMS = String.format("select filename, id, author, md5sum from %s where md5sum is not null", CHANGELOG_TABLE);
+
   private static final String SQL_GET_APPLIED_VERSIONS = String.format("select tag from %s where tag is not null order by orderexecuted desc", CHANGELOG_TABLE);
 
+  private static final String SQL_TAG_CHANGESET = String.format("update %s set tag = ? where filename = ? and id = ? and author = ?", CHANGELOG_TABLE);
+
   /**
-   * 
+   * Same as {@link #LinearProgressionFacade(java.sql.Connection, java.util.List, java.util.function.Function, java.util.function.Function, org.llorllale.liquibasefacade.VersionScheme)}
+   * with the {@link VersionScheme#dotted() default} version scheme.
    * @param connection The JDBC connection to work on.
    * @param versions The versions used as reference.
    * @param changesetFileLocator A function that returns the path to where the liquibase changeset file is located for a given version.
    * @param resourceAccessorGenerator A function that returns the {@code ResourceAccessor} used to fetch a given version's changeset file.
    * @throws NullPointerException if any of the parameters are {@code null}
-   * @throws IllegalArgumentException if {@code versions} is empty
-   * @throws IllegalStateException if {@code versions} does not contain the {@link Version versions} already applied to the database schema
+   * @throws IllegalArgumentException if {@code versions} is empty, if any two of them are equal, or if any of their
+   * numbers is {@code 2^21} or more
+   * @throws IllegalStateException if {@code versions} does not contain the {@link Version versions} already applied to the database schema,
+   * or if the database's history holds a tag that is not a valid version
    * @since 1.0.0
    */
   public LinearProgressionFacade(
@@ -65,6 +119,30 @@ public class LinearProgressionFacade {
           List<Version> versions, 
           Function<Version, String> changesetFileLocator, 
           Function<Version, ResourceAccessor> resourceAccessorGenerator
+  ) throws LiquibaseException {
+    this(connection, versions, changesetFileLocator, resourceAccessorGenerator, VersionScheme.dotted());
+  }
+
+  /**
+   * 
+   * @param connection The JDBC connection to work on.
+   * @param versions The versions used as reference.
+   * @param changesetFileLocator A function that returns the path to where the liquibase changeset file is located for a given version.
+   * @param resourceAccessorGenerator A function that returns the {@code ResourceAccessor} used to fetch a given version's changeset file.
+   * @param scheme The scheme used to write versions as tags in liquibase's history, and to read them back.
+   * @throws NullPointerException if any of the parameters are {@code null}
+   * @throws IllegalArgumentException if {@code versions} is empty, or if any two of them map to the same tag in {@code scheme}
+   * or cannot be represented in it
+   * @throws IllegalStateException if {@code versions} does not contain the {@link Version versions} already applied to the database schema,
+   * or if the database's history holds a tag owned by {@code scheme} that is not valid in it
+   * @since 1.3.0
+   */
+  public LinearProgressionFacade(
+          Connection connection, 
+          List<Version> versions, 
+          Function<Version, String> changesetFileLocator, 
+          Function<Version, ResourceAccessor> resourceAccessorGenerator,
+          VersionScheme scheme
   ) throws LiquibaseException {
     this.connection = Objects.requireNonNull(connection, "null connection.");
     this.versions = Optional.of(new ArrayList<>(Objects.requireNonNull(versions, "null version list.")))
@@ -72,8 +150,27 @@ public class LinearProgressionFacade {
             .orElseThrow(() -> new IllegalArgumentException("empty version list."));
     this.changesetFileLocator = Objects.requireNonNull(changesetFileLocator, "null changesetFileLocator function.");
     this.resourceAccessorGenerator = Objects.requireNonNull(resourceAccessorGenerator, "null resourceAccessorGenerator function.");
+    this.scheme = Objects.requireNonNull(scheme, "null scheme.");
+    this.catalog = this.versions.toArray(new Version[this.versions.size()]);
+    this.catalogKeys = new long[catalog.length];
+    Arrays.sort(catalog, (v1, v2) -> Long.compare(scheme.key(v1), scheme.key(v2)));
+
+    for(int i = 0; i < catalog.length; i++){
+      catalogKeys[i] = scheme.key(catalog[i]);
+
+      if(i > 0 && catalogKeys[i] == catalogKeys[i - 1]){
+        throw new IllegalArgumentException(String.format("Versions %s and %s map to the same tag.", catalog[i - 1], catalog[i]));
+      }
+    }
+
+    this.namespace = Schemes.namespaceOf(scheme);
+    this.checkpoints = new CheckpointLog(this.connection, namespace);
+    this.appliedVersions = new BitSet(catalog.length);
+    this.timings = new TimingHistory(this.connection);
+    this.operationLock = new OperationLock(this.connection, namespace);
+    this.rollbackPlans = new RollbackPlans(this.connection, namespace);
 
-    errorOnInconsistentDatabaseRevisions();
+    errorOnInconsistentDatabaseRevisions(this.connection);
   }
 
   /**
@@ -85,6 +182,15 @@ public class LinearProgressionFacade {
     return connection;
   }
 
+  /**
+   * Returns the scheme used to write versions as tags in liquibase's history, and to read them back.
+   * @return the version scheme
+   * @since 1.3.0
+   */
+  public VersionScheme getVersionScheme() {
+    return scheme;
+  }
+
   /**
    * Returns the reference list of versions used.
    * @return the reference list of versions used
@@ -95,6 +201,370 @@ public class LinearProgressionFacade {
     return Collections.unmodifiableList(versions);
   }
 
+  /**
+   * Returns whether upgrades record a checkpoint after each applied changeSet.
+   * @return whether upgrades are resumable
+   * @see #setResumable(boolean) 
+   * @since 1.3.0
+   */
+  public boolean isResumable() {
+    return resumable;
+  }
+
+  /**
+   * Enables or disables checkpointing of upgrades.<br>
+   * When enabled, a checkpoint is recorded after each changeSet is applied, and an upgrade that was interrupted before
+   * its version could be tagged resumes at the first changeSet of that version that has no checkpoint: liquibase is
+   * given a changelog holding only the changeSets past it, so that it neither validates nor filters the changeSets
+   * already applied. Checkpoints are removed once the version is tagged.
+   * @param resumable whether upgrades should be resumable
+   * @since 1.3.0
+   */
+  public void setResumable(boolean resumable) {
+    this.resumable = resumable;
+  }
+
+  /**
+   * Returns whether upgrades spanning several versions are applied as a single liquibase update.
+   * @return whether upgrades jump straight to the target version
+   * @see #setJumpUpgrades(boolean) 
+   * @since 1.3.0
+   */
+  public boolean isJumpUpgrades() {
+    return jumpUpgrades;
+  }
+
+  /**
+   * Enables or disables jumping over intermediate versions on upgrades.<br>
+   * When enabled, the changeSets of every version after the current one up to the target version are merged into a 
+   * single changelog and applied by one liquibase update, and every version is then tagged on its last changeSet 
+   * with one batch of updates, so that the history is the same as if each version had been applied in turn. If the 
+   * update fails, the versions whose changeSets were all applied are still tagged.<br>
+   * Upgrades fall back to applying one version at a time when any of the versions involved has no changeSets, has 
+   * changelog preconditions, or has changeSets already recorded in liquibase's history.
+   * @param jumpUpgrades whether upgrades should jump straight to the target version
+   * @since 1.3.0
+   */
+  public void setJumpUpgrades(boolean jumpUpgrades) {
+    this.jumpUpgrades = jumpUpgrades;
+  }
+
+  /**
+   * Returns whether the duration of each changeSet applied or rolled back is recorded.
+   * @return whether changeSet timings are recorded
+   * @see #setRecordTimings(boolean) 
+   * @since 1.3.0
+   */
+  public boolean isRecordTimings() {
+    return recordTimings;
+  }
+
+  /**
+   * Enables or disables recording of changeSet timings.<br>
+   * When enabled, the duration of each changeSet applied or rolled back is recorded in its own table, replacing the
+   * timing recorded the previous time, for use by {@link #apply(org.llorllale.liquibasefacade.Version, java.time.Duration)}
+   * in estimating how many versions fit in a budget. Timings are kept when versions are rolled back.
+   * @param recordTimings whether changeSet timings should be recorded
+   * @since 1.3.0
+   */
+  public void setRecordTimings(boolean recordTimings) {
+    this.recordTimings = recordTimings;
+  }
+
+  /**
+   * Returns whether the SQL that rolls back each version is generated and stored when the version is applied.
+   * @return whether rollbacks are precomputed
+   * @see #setPrecomputeRollbacks(boolean) 
+   * @since 1.3.0
+   */
+  public boolean isPrecomputeRollbacks() {
+    return precomputeRollbacks;
+  }
+
+  /**
+   * Enables or disables precomputing rollbacks.<br>
+   * When enabled, the SQL that rolls back each changeSet of a version is generated right after the version is applied,
+   * and stored in its own table. Downgrades then run the stored SQL of each version directly, without parsing its
+   * changelog or resolving its resource accessor, as long as the changeSets applied still have the checksums they
+   * were planned with; other versions are rolled back from their changelogs. No SQL is stored for versions with
+   * changeSets whose rollback cannot be generated ahead of time, such as custom changes.
+   * @param precomputeRollbacks whether rollbacks should be precomputed
+   * @since 1.3.0
+   */
+  public void setPrecomputeRollbacks(boolean precomputeRollbacks) {
+    this.precomputeRollbacks = precomputeRollbacks;
+  }
+
+  /**
+   * Returns the maximum number of DML statements sent to the database in a single JDBC batch.
+   * @return the batch size; {@code 0} if statements are not batched
+   * @see #setBatchSize(int) 
+   * @since 1.3.0
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Sets the maximum number of DML statements sent to the database in a single JDBC batch.<br>
+   * When greater than {@code 1}, consecutive {@code INSERT}, {@code UPDATE}, {@code DELETE} and {@code MERGE} 
+   * statements of a change (eg. the statements of an {@code sqlFile} loading reference data) are executed with 
+   * {@link java.sql.Statement#executeBatch()} instead of one round trip each. A batch never spans changes: it is 
+   * executed when a statement that cannot be batched is reached, when it is full, and at the end of each change. The 
+   * number of batches executed is reported by {@link ChangeSetResult#getBatchesExecuted()}. Rollbacks are never
+   * batched, since liquibase does not report the end of each change it rolls back.<br>
+   * Statements are not batched by default.
+   * @param batchSize the batch size; {@code 0} (or {@code 1}) to execute each statement on its own
+   * @throws IllegalArgumentException if {@code batchSize} is negative
+   * @since 1.3.0
+   */
+  public void setBatchSize(int batchSize) {
+    if(batchSize < 0){
+      throw new IllegalArgumentException("batchSize cannot be negative: " + batchSize);
+    }
+
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Returns the lock held around each liquibase update and rollback, if any.
+   * @return the lock; {@code null} if none
+   */
+  Lock getLiquibaseMutex() {
+    return liquibaseMutex;
+  }
+
+  /**
+   * Sets the lock held around each liquibase update and rollback, shared by facades running in the same JVM at the
+   * same time: liquibase resets its services globally after each call, which other threads' calls in flight would
+   * see. The facades of the {@link MultiProgressionFacade progressions} of a database also share it because liquibase
+   * takes the same changelog lock for each of them, and waits for it by polling every ten seconds; those of the
+   * tenants of a {@link TenantMigrationExecutor} because of the reset alone.
+   * @param liquibaseMutex the lock; {@code null} for none
+   */
+  void setLiquibaseMutex(Lock liquibaseMutex) {
+    this.liquibaseMutex = liquibaseMutex;
+  }
+
+  /**
+   * Returns how the facade waits for other migrations of the same database to finish.
+   * @return the lock wait strategy
+   * @see #setLockWaitStrategy(org.llorllale.liquibasefacade.LockWaitStrategy) 
+   * @since 1.3.0
+   */
+  public LockWaitStrategy getLockWaitStrategy() {
+    return lockWaitStrategy;
+  }
+
+  /**
+   * Sets how the facade waits for other migrations of the same database to finish.<br>
+   * Each upgrade, downgrade and rollback holds a lock on the database from start to finish, so that migrations by 
+   * several instances run one after the other instead of interleaving their versions, and liquibase's own changelog 
+   * lock, taken around each of the facade's liquibase calls, is never contended. The lock is kept in the 
+   * {@code DATABASECHANGELOGFACADELOCK} table. The time spent waiting for it is reported by 
+   * {@link MigrationResult#getLockWaitTime()}.<br>
+   * The default strategy is {@link LockWaitStrategy#defaults()}.
+   * @param lockWaitStrategy the lock wait strategy
+   * @throws NullPointerException if {@code lockWaitStrategy} is {@code null}
+   * @since 1.3.0
+   */
+  public void setLockWaitStrategy(LockWaitStrategy lockWaitStrategy) {
+    this.lockWaitStrategy = Objects.requireNonNull(lockWaitStrategy, "null lockWaitStrategy.");
+  }
+
+  /**
+   * Returns the {@link AuditLog} migrations are recorded in, if any.
+   * @return the audit log, or {@code null} if none has been set
+   * @see #setAuditLog(org.llorllale.liquibasefacade.AuditLog) 
+   * @since 1.3.0
+   */
+  public AuditLog getAuditLog() {
+    return auditLog;
+  }
+
+  /**
+   * Sets the {@link AuditLog} every upgrade, downgrade and rollback performed by this facade is recorded in, whether it
+   * succeeds or fails. The audit log is not closed by the facade, and migrations fail without running once it is closed.
+   * A migration whose outcome cannot be recorded, eg. because the log was closed while it ran, keeps its outcome.
+   * @param auditLog the audit log; {@code null} to stop recording migrations
+   * @since 1.3.0
+   */
+  public void setAuditLog(AuditLog auditLog) {
+    this.auditLog = auditLog;
+  }
+
+  /**
+   * Returns the {@link DriftDetector} that snapshots the schema after each migration, if any.
+   * @return the drift detector, or {@code null} if none has been set
+   * @see #setDriftDetector(org.llorllale.liquibasefacade.DriftDetector) 
+   * @since 1.3.0
+   */
+  public DriftDetector getDriftDetector() {
+    return driftDetector;
+  }
+
+  /**
+   * Sets the {@link DriftDetector} used to {@link DriftDetector#snapshot(java.sql.Connection) snapshot} the schema
+   * after each successful upgrade or downgrade, so that changes made outside of the facade can later be 
+   * {@link DriftDetector#detect(java.sql.Connection) detected}.
+   * @param driftDetector the drift detector; {@code null} to stop taking snapshots
+   * @since 1.3.0
+   */
+  public void setDriftDetector(DriftDetector driftDetector) {
+    this.driftDetector = driftDetector;
+  }
+
+  /**
+   * Returns the cache holding the checksums of the changelogs used by this facade.
+   * @return the checksum cache
+   * @see #setChecksumCache(org.llorllale.liquibasefacade.ChecksumCache) 
+   * @since 1.3.0
+   */
+  public ChecksumCache getChecksumCache() {
+    return checksumCache;
+  }
+
+  /**
+   * Sets the cache holding the checksums of the changelogs used by this facade, eg. to share it with other facades
+   * applying the same changelogs. Each facade has its own cache by default.
+   * @param checksumCache the checksum cache
+   * @throws NullPointerException if {@code checksumCache} is {@code null}
+   * @since 1.3.0
+   */
+  public void setChecksumCache(ChecksumCache checksumCache) {
+    this.checksumCache = Objects.requireNonNull(checksumCache, "null checksumCache.");
+  }
+
+  /**
+   * Sends {@link #getCurrentVersion()}, {@link #isVersioned()}, {@link #isUpgrade(org.llorllale.liquibasefacade.Version)} 
+   * and {@link #isDowngrade(org.llorllale.liquibasefacade.Version)} to a read-only replica instead of the 
+   * {@link #getConnection() primary} connection. Migrations always run on the primary.<br>
+   * The facade remembers the primary's version as of its last migration or as last read from the primary, for at 
+   * most {@code maxStaleness}; once that observation is older, the next read refreshes it from the primary. Reads 
+   * fall back to the primary whenever the replica's version lags the remembered one, or the replica cannot be read.
+   * @param replica the connection to the replica
+   * @param maxStaleness how long an observation of the primary's version is relied upon
+   * @throws NullPointerException if any of the parameters is {@code null}
+   * @throws IllegalArgumentException if {@code maxStaleness} is negative
+   * @since 1.3.0
+   */
+  public void setReadReplica(Connection replica, Duration maxStaleness) {
+    this.replica = new ReadReplica(Objects.requireNonNull(replica, "null replica."), checkStaleness(maxStaleness));
+  }
+
+  /**
+   * Same as {@link #setReadReplica(java.sql.Connection, java.time.Duration)}, borrowing a connection from
+   * {@code replica} for each read.
+   * @param replica the data source of the replica
+   * @param maxStaleness how long an observation of the primary's version is relied upon
+   * @throws NullPointerException if any of the parameters is {@code null}
+   * @throws IllegalArgumentException if {@code maxStaleness} is negative
+   * @since 1.3.0
+   */
+  public void setReadReplica(DataSource replica, Duration maxStaleness) {
+    this.replica = new ReadReplica(Objects.requireNonNull(replica, "null replica."), checkStaleness(maxStaleness));
+  }
+
+  /**
+   * Stops using the read replica, if any: all reads go to the primary connection.
+   * @since 1.3.0
+   */
+  public void clearReadReplica() {
+    this.replica = null;
+  }
+
+  /**
+   * Returns whether reads are sent to a replica.
+   * @return whether a read replica has been set
+   * @see #setReadReplica(java.sql.Connection, java.time.Duration) 
+   * @since 1.3.0
+   */
+  public boolean hasReadReplica() {
+    return replica != null;
+  }
+
+  /**
+   * Same as {@link #prepare(java.util.concurrent.ForkJoinPool)} using the {@link ForkJoinPool#commonPool() common pool}.
+   * @throws LiquibaseException if any of the changelogs cannot be parsed or is invalid, or wrapping any underlying SQLException
+   * @see #prepare(java.util.concurrent.ForkJoinPool) 
+   * @since 1.3.0
+   */
+  public void prepare() throws LiquibaseException {
+    prepare(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Parses and validates the changelogs of all versions in parallel on {@code pool}, ahead of any migration.<br>
+   * Each changelog is parsed, the checksums of its changeSets are computed, every change is validated, and the 
+   * checksums of changeSets already applied to the database are compared against liquibase's history. The parsed 
+   * changelogs are then used by subsequent migrations instead of parsing them again, so that broken changelogs are 
+   * found before any change is made to the schema. Changelogs modified after this method is called are therefore not 
+   * seen until it is called again.
+   * @param pool the pool to parse the changelogs on
+   * @throws LiquibaseException if any of the changelogs cannot be parsed or is invalid, or wrapping any underlying SQLException;
+   * failures for other versions are added as {@link Throwable#getSuppressed() suppressed} exceptions
+   * @throws NullPointerException if {@code pool} is {@code null}
+   * @since 1.3.0
+   */
+  public void prepare(ForkJoinPool pool) throws LiquibaseException {
+    Objects.requireNonNull(pool, "null pool.");
+    LiquibaseServices.initialize();
+    final Database database = getLiquibaseDatabase(connection);
+    final Map<String, String> history = getAppliedCheckSums();
+    List<ForkJoinTask<PreparedChangeLog>> tasks = new ArrayList<>();
+
+    for(Version version : versions){
+      final String path = changesetFileLocator.apply(version);
+      final ResourceAccessor resourceAccessor = resourceAccessorGenerator.apply(version);
+      tasks.add(pool.submit(() -> PreparedChangeLog.prepare(version, path, resourceAccessor, database, checksumCache, history)));
+    }
+
+    Map<Version, PreparedChangeLog> changeLogs = new HashMap<>();
+    LiquibaseException failure = null;
+
+    for(ForkJoinTask<PreparedChangeLog> task : tasks){
+      try{
+        PreparedChangeLog changeLog = task.get();
+        changeLogs.put(changeLog.getVersion(), changeLog);
+      }catch(ExecutionException e){
+        //fork-join tasks wrap the checked exceptions thrown by callables
+        Throwable cause = e.getCause();
+
+        while(!(cause instanceof LiquibaseException) && cause.getCause() != null){
+          cause = cause.getCause();
+        }
+
+        LiquibaseException error = cause instanceof LiquibaseException 
+                ? (LiquibaseException) cause 
+                : new LiquibaseException("Unable to prepare changelog.", e.getCause());
+
+        if(failure == null){
+          failure = error;
+        }else{
+          failure.addSuppressed(error);
+        }
+      }catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+        throw new LiquibaseException("Interrupted while preparing changelogs.", e);
+      }
+    }
+
+    if(failure != null){
+      throw failure;
+    }
+
+    prepared = Collections.unmodifiableMap(changeLogs);
+  }
+
+  /**
+   * Returns whether {@link #prepare() prepared} changelogs are available for all versions.
+   * @return whether the changelogs have been prepared
+   * @since 1.3.0
+   */
+  public boolean isPrepared() {
+    return !prepared.isEmpty();
+  }
+
   /**
    * Returns whether the input {@link Version version} is an 'upgrade' over the database schema's current version.
    * @param version a version that must be included in the list of reference versions.
@@ -102,13 +572,12 @@ public class LinearProgressionFacade {
    * @throws LiquibaseException wrapping any underlying SQLException
    * @throws IllegalArgumentException if {@code version} is not included in list of {@code versions}.
    * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
-   * versions found to have already been applied to the database schema.
+   * versions found to have already been applied to the database schema, or if a tag found is not a valid version.
    * @see #getCurrentVersion() 
    * @since 1.0.0
    */
   public boolean isUpgrade(Version version) throws LiquibaseException {
     errorIfInvalidInput(version);
-    errorOnInconsistentDatabaseRevisions();
     return getCurrentVersion().isLessThan(version);
   }
 
@@ -119,16 +588,77 @@ public class LinearProgressionFacade {
    * @throws LiquibaseException wrapping any underlying SQLException
    * @throws IllegalArgumentException if {@code version} is not included in list of {@code versions}.
    * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
-   * versions found to have already been applied to the database schema.
+   * versions found to have already been applied to the database schema, or if a tag found is not a valid version.
    * @see #getCurrentVersion() 
    * @since 1.0.0
    */
   public boolean isDowngrade(Version version) throws LiquibaseException {
     errorIfInvalidInput(version);
-    errorOnInconsistentDatabaseRevisions();
     return getCurrentVersion().isGreaterThan(version);
   }
 
+  /**
+   * Estimates how long bringing the database schema to {@code targetVersion} will take, version by version, without
+   * changing the schema, so that expensive migrations can be scheduled for maintenance windows.<br>
+   * ChangeSets whose timings were {@link #setRecordTimings(boolean) recorded} the last time they were run or rolled
+   * back are estimated at that time. Other changeSets are modelled on the types of their changes and the number of 
+   * rows of the tables they work on: adding an index or a constraint, or updating, deleting or rewriting the rows of a
+   * table costs in proportion to its rows, while most other changes only touch the catalog. Rows are read from the 
+   * database's table statistics, or else from the row count its catalog maintains, on HSQLDB, H2 and PostgreSQL; they
+   * are never counted. Tables whose size is unknown only cost the time of their changes, and are reported as
+   * {@link VersionEstimate#getUnsizedTables() unsized}. Modelled estimates are scaled to fit the recorded timings of
+   * the other changeSets of the migration, if any. Rollbacks are modelled on the changes they undo.
+   * @param targetVersion the version the schema would be brought to
+   * @return the estimate of each version that would be applied or rolled back, in the order it would be; empty if the
+   * schema is already at {@code targetVersion}
+   * @throws LiquibaseException thrown by liquibase while parsing changelogs, or wrapping any underlying SQLException
+   * @throws IllegalArgumentException if {@code targetVersion} is not included in list of {@code versions}.
+   * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
+   * versions found to have already been applied to the database schema, or if a tag found is not a valid version.
+   * @since 1.3.0
+   */
+  public List<VersionEstimate> estimate(Version targetVersion) throws LiquibaseException {
+    errorIfInvalidInput(targetVersion);
+    final Version currentVersion = getPrimaryVersion();
+    final boolean rollback = currentVersion.isGreaterThan(targetVersion);
+    List<Version> versions = new ArrayList<>();
+
+    for(Version version : catalog){
+      if(rollback ? version.isEqualOrLessThan(currentVersion) && version.isGreaterThan(targetVersion) 
+              : version.isGreaterThan(currentVersion) && version.isEqualOrLessThan(targetVersion)){
+        versions.add(version);
+      }
+    }
+
+    Collections.sort(versions);
+
+    if(rollback){
+      Collections.reverse(versions);
+    }
+
+    final Map<String, String> history = getAppliedCheckSums();
+    Map<Version, List<ChangeSet>> plan = new LinkedHashMap<>();
+
+    for(Version version : versions){
+      List<ChangeSet> changeSets = new ArrayList<>();
+
+      for(ChangeSet changeSet : getLiquibaseInstance(version, changesetFileLocator, resourceAccessorGenerator, connection).getDatabaseChangeLog().getChangeSets()){
+        //upgrades skip the changeSets already run by an interrupted upgrade
+        if(rollback || !history.containsKey(PreparedChangeLog.historyKey(changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor()))){
+          changeSets.add(changeSet);
+        }
+      }
+
+      if(rollback){
+        Collections.reverse(changeSets);
+      }
+
+      plan.put(version, changeSets);
+    }
+
+    return new ImpactEstimator(connection, timings.read(rollback), ImpactEstimator.catalogRows(connection)).estimate(plan);
+  }
+
   /**
    * Shorthand for {@link #apply(org.llorllale.liquibasefacade.Version)}.<br>
    * @param major the major version number
@@ -139,7 +669,7 @@ public class LinearProgressionFacade {
    * @throws IllegalArgumentException as per the rules in {@link Version#of(int, int, int)} or if 
    * the values define a {@link Version} that is not included in list of {@code versions}.
    * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
-   * versions found to have already been applied to the database schema.
+   * versions found to have already been applied to the database schema, or if a tag found is not a valid version.
    * @see #apply(org.llorllale.liquibasefacade.Version) 
    * @since 1.0.0
    */
@@ -152,12 +682,25 @@ public class LinearProgressionFacade {
    * @return the number of changes applied.
    * @throws LiquibaseException thrown by liquibase, or wrapping any underlying SQLException
    * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
-   * versions found to have already been applied to the database schema.
+   * versions found to have already been applied to the database schema, or if a tag found is not a valid version.
    * @see #LinearProgressionFacade(java.sql.Connection, java.util.List, java.util.function.Function, java.util.function.Function) 
    * @since 1.0.0
    */
   public int applyAll() throws LiquibaseException {
-    return apply(versions.stream().max((v1, v2) -> v1.compareTo(v2)).get());
+    return applyAllWithResult().getChangeCount();
+  }
+
+  /**
+   * Same as {@link #applyAll()}, but returns the details of the migration.
+   * @return the details of the migration
+   * @throws LiquibaseException thrown by liquibase, or wrapping any underlying SQLException
+   * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
+   * versions found to have already been applied to the database schema, or if a tag found is not a valid version.
+   * @see #applyAll() 
+   * @since 1.3.0
+   */
+  public MigrationResult applyAllWithResult() throws LiquibaseException {
+    return applyWithResult(versions.stream().max((v1, v2) -> v1.compareTo(v2)).get());
   }
 
   /**
@@ -165,11 +708,25 @@ public class LinearProgressionFacade {
    * @return the number of changes applied.
    * @throws LiquibaseException thrown by liquibase, or wrapping any underlying SQLException
    * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
-   * versions found to have already been applied to the database schema.
+   * versions found to have already been applied to the database schema, or if a tag found is not a valid version.
    * @since 1.0.0
    */
   public int rollbackAll() throws LiquibaseException {
-    return downgradeDatabase(new NullVersion());
+    return rollbackAllWithResult().getChangeCount();
+  }
+
+  /**
+   * Same as {@link #rollbackAll()}, but returns the details of the migration.
+   * @return the details of the migration
+   * @throws LiquibaseException thrown by liquibase, or wrapping any underlying SQLException
+   * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
+   * versions found to have already been applied to the database schema, or if a tag found is not a valid version.
+   * @see #rollbackAll() 
+   * @since 1.3.0
+   */
+  public MigrationResult rollbackAllWithResult() throws LiquibaseException {
+    final long start = System.nanoTime();
+    return audited(new NullVersion(), currentVersion -> locked(new NullVersion(), lockedVersion -> downgradeDatabase(new NullVersion(), null, start)));
   }
 
   /**
@@ -186,22 +743,160 @@ public class LinearProgressionFacade {
    * @throws LiquibaseException thrown by liquibase, or wrapping any underlying SQLException
    * @throws IllegalArgumentException if {@code targetVersion} is not included in list of {@code versions}.
    * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
-   * versions found to have already been applied to the database schema.
+   * versions found to have already been applied to the database schema, or if a tag found is not a valid version.
    * @throws NullPointerException if {@code targetVersion} is {@code null}.
    * @see #LinearProgressionFacade(java.sql.Connection, java.util.List, java.util.function.Function, java.util.function.Function) 
    * @since 1.0.0
    */
   public int apply(Version targetVersion) throws LiquibaseException {
+    return applyWithResult(targetVersion).getChangeCount();
+  }
+
+  /**
+   * Same as {@link #apply(org.llorllale.liquibasefacade.Version)}, but returns the details of the migration: the versions
+   * applied or rolled back and, for each changeSet, its duration, execution time, statements executed and rows affected.
+   * @param targetVersion applies the changes required to bring the schema's version to the given {@code targetVersion}.
+   * @return the details of the migration; with no versions if the schema is already at {@code targetVersion}
+   * @throws LiquibaseException thrown by liquibase, or wrapping any underlying SQLException
+   * @throws IllegalArgumentException if {@code targetVersion} is not included in list of {@code versions}.
+   * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
+   * versions found to have already been applied to the database schema, or if a tag found is not a valid version.
+   * @throws NullPointerException if {@code targetVersion} is {@code null}.
+   * @see #apply(org.llorllale.liquibasefacade.Version) 
+   * @since 1.3.0
+   */
+  public MigrationResult applyWithResult(Version targetVersion) throws LiquibaseException {
+    return migrate(targetVersion, null);
+  }
+
+  /**
+   * Same as {@link #applyWithResult(org.llorllale.liquibasefacade.Version)}, but stops at the last version boundary
+   * that can be reached within {@code budget}.<br>
+   * Before applying or rolling back each version, the time it will take is estimated from the changeSet timings 
+   * {@link #setRecordTimings(boolean) recorded} on earlier migrations; the version is only started if the time 
+   * elapsed so far plus that estimate is within {@code budget}. ChangeSets with no recorded timing are estimated at
+   * the mean of the recorded ones, or at zero if none have been recorded, in which case migrations stop at the first
+   * version boundary past the deadline. Versions are never interrupted halfway: the schema is always left tagged.
+   * @param targetVersion applies the changes required to bring the schema's version to the given {@code targetVersion}.
+   * @param budget the time allowed for the migration
+   * @return the details of the migration, including the {@link MigrationResult#getRemainingVersions() versions left}
+   * to reach {@code targetVersion}
+   * @throws LiquibaseException thrown by liquibase, or wrapping any underlying SQLException
+   * @throws IllegalArgumentException if {@code targetVersion} is not included in list of {@code versions}, or if 
+   * {@code budget} is negative.
+   * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
+   * versions found to have already been applied to the database schema, or if a tag found is not a valid version.
+   * @throws NullPointerException if any of the parameters is {@code null}.
+   * @since 1.3.0
+   */
+  public MigrationResult apply(Version targetVersion, Duration budget) throws LiquibaseException {
+    if(Objects.requireNonNull(budget, "null budget.").isNegative()){
+      throw new IllegalArgumentException("Negative budget: " + budget);
+    }
+
+    return migrate(targetVersion, budget);
+  }
+
+  private MigrationResult migrate(Version targetVersion, Duration budget) throws LiquibaseException {
+    final long start = System.nanoTime();
     errorIfInvalidInput(targetVersion);
-    int changes = 0;
+    final Migration migration = currentVersion -> {
+      if(currentVersion.isGreaterThan(targetVersion)){
+        return downgradeDatabase(targetVersion, budget, start);
+      }else if(currentVersion.isLessThan(targetVersion)){
+        return upgradeDatabase(targetVersion, budget, start);
+      }
+
+      return new MigrationResult(targetVersion, targetVersion, Collections.emptyList(), Duration.ZERO);
+    };
+    return audited(targetVersion, currentVersion -> currentVersion.equals(targetVersion) ? migration.run(currentVersion) : locked(targetVersion, migration));
+  }
+
+  /**
+   * A liquibase update or rollback.
+   */
+  @FunctionalInterface
+  private interface LiquibaseCall {
+    void run() throws LiquibaseException;
+  }
+
+  /**
+   * A migration starting from the database's current version.
+   */
+  @FunctionalInterface
+  private interface Migration {
+    MigrationResult run(Version currentVersion) throws LiquibaseException;
+  }
+
+  /**
+   * Runs {@code migration} and records its outcome in the {@link #setAuditLog(org.llorllale.liquibasefacade.AuditLog) audit log}, if any.
+   * Failures to record the outcome never change it: they are suppressed by the migration's error, or logged if the
+   * migration succeeded.
+   */
+  private MigrationResult audited(Version targetVersion, Migration migration) throws LiquibaseException {
+    if(auditLog != null && auditLog.isClosed()){
+      throw new IllegalStateException("Audit log is closed: " + auditLog.getFile());
+    }
+
+    final Instant started = Instant.now();
+    Version currentVersion = null;
+    final MigrationResult result;
+
+    try{
+      currentVersion = getPrimaryVersion();
+      result = migration.run(currentVersion);
+    }catch(LiquibaseException | RuntimeException e){
+      if(auditLog != null){
+        try{
+          auditLog.failed(started, currentVersion, targetVersion, e);
+        }catch(RuntimeException suppressed){
+          e.addSuppressed(suppressed);
+        }
+      }
+
+      throw e;
+    }
+
+    if(auditLog != null){
+      //the schema has been migrated: failing to record it must not fail the migration
+      try{
+        auditLog.succeeded(started, targetVersion, result);
+      }catch(RuntimeException e){
+        LogFactory.getInstance().getLog().warning("Unable to record the migration to version " + targetVersion + " in audit log " + auditLog.getFile(), e);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Runs {@code migration} while holding the {@link OperationLock migration lock}, from the version found once the lock
+   * is held: another facade may have migrated the database in the meantime.
+   */
+  @SuppressWarnings("try")
+  private MigrationResult locked(Version targetVersion, Migration migration) throws LiquibaseException {
+    final Duration lockWait;
+
+    try(Tracing.Span span = Tracing.lockAcquisition(targetVersion)){
+      lockWait = operationLock.acquire(lockWaitStrategy);
+    }
+
+    final MigrationResult result;
+
+    try{
+      result = migration.run(getPrimaryVersion());
+    }catch(LiquibaseException | RuntimeException e){
+      try{
+        operationLock.release();
+      }catch(LiquibaseException | RuntimeException suppressed){
+        e.addSuppressed(suppressed);
+      }
 
-    if(isDowngrade(targetVersion)){
-      changes = downgradeDatabase(targetVersion);
-    }else if(isUpgrade(targetVersion)){
-      changes = upgradeDatabase(targetVersion);
+      throw e;
     }
 
-    return changes;
+    operationLock.release();
+    return result.withLockWaitTime(lockWait);
   }
 
   /**
@@ -212,12 +907,17 @@ public class LinearProgressionFacade {
    * @return the schema's current version
    * @throws LiquibaseException wrapping any {@link java.sql.SQLException}
    * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
-   * versions found to have already been applied to the database schema.
+   * versions found to have already been applied to the database schema, or if a tag found is not a valid version.
    * @since 1.0.0
    */
   public Version getCurrentVersion() throws LiquibaseException {
-    errorOnInconsistentDatabaseRevisions();
-    return _getCurrentVersion();
+    return read(
+            c -> {
+              errorOnInconsistentDatabaseRevisions(c);
+              return _getCurrentVersion(c);
+            },
+            version -> version.isLessThan(primaryVersion)
+    );
   }
 
   /**
@@ -231,6 +931,10 @@ public class LinearProgressionFacade {
    * @since 1.0.0
    */
   public boolean isVersioned() throws LiquibaseException {
+    return read(this::isVersioned, versioned -> !versioned && !UndefinedVersion.isUndefinedVersion(primaryVersion));
+  }
+
+  private boolean isVersioned(Connection connection) throws LiquibaseException {
     ResultSet r = null;
 
     try{
@@ -248,12 +952,69 @@ public class LinearProgressionFacade {
     }
   }
 
+  /**
+   * Performs {@code read} on the {@link #setReadReplica(java.sql.Connection, java.time.Duration) replica}, if any,
+   * unless its result {@code lags} the primary's last observed version; otherwise on the primary.
+   */
+  private <T> T read(ReadReplica.Read<T> read, Predicate<T> lags) throws LiquibaseException {
+    final ReadReplica current = replica;
+
+    if(current != null){
+      if(primaryVersion == null || System.nanoTime() - primaryObservedAt > current.getMaxStaleness().toNanos()){
+        observePrimary(_getCurrentVersion(connection));
+      }
+
+      try{
+        T result = current.read(read);
+
+        if(!lags.test(result)){
+          return result;
+        }
+      }catch(LiquibaseException | IllegalStateException e){
+        //the primary is authoritative
+      }
+    }
+
+    return read.read(connection);
+  }
+
+  /**
+   * Reads the current version from the primary connection, validating it against the reference list of versions.
+   */
+  private Version getPrimaryVersion() throws LiquibaseException {
+    errorOnInconsistentDatabaseRevisions(connection);
+    Version version = _getCurrentVersion(connection);
+    observePrimary(version);
+    return version;
+  }
+
+  /**
+   * Returns whether work estimated to take {@code estimate} nanoseconds can still be done within {@code budget}.
+   * @param budget the time allowed since {@code start}; {@code null} for no limit
+   */
+  private static boolean fits(long estimate, Duration budget, long start) {
+    return budget == null || System.nanoTime() - start + estimate <= budget.toNanos();
+  }
+
+  private void observePrimary(Version version) {
+    primaryVersion = version;
+    primaryObservedAt = System.nanoTime();
+  }
+
+  private static Duration checkStaleness(Duration maxStaleness) {
+    if(Objects.requireNonNull(maxStaleness, "null maxStaleness.").isNegative()){
+      throw new IllegalArgumentException("Negative maxStaleness: " + maxStaleness);
+    }
+
+    return maxStaleness;
+  }
+
   /**
    * Intended for use in validating user input
    * @param version 
    * @throws IllegalArgumentException 
    */
-  private void errorIfInvalidInput(Version version){
+  void errorIfInvalidInput(Version version){
     if(UndefinedVersion.isUndefinedVersion(version)){
       throw new IllegalArgumentException("Illegal argument for 'version' - version is 'UndefinedVersion'.");
     }
@@ -282,91 +1043,119 @@ public class LinearProgressionFacade {
    * 
    * @see #getCurrentVersion() 
    */
-  private Version _getCurrentVersion() throws LiquibaseException {
-    Version version = null;
+  @SuppressWarnings("try")
+  private Version _getCurrentVersion(Connection connection) throws LiquibaseException {
+    String tag = null;
 
-    if(isVersioned()){
-      try(PreparedStatement stmt = connection.prepareStatement(SQL_GET_APPLIED_VERSIONS); 
-               ResultSet result = stmt.executeQuery()){
-        if(result.next()){
-          version = Version.valueOf(result.getString(1));
-        }else{
-          version = new NullVersion();
-        }
-      }catch(Exception e){
-        throw new LiquibaseException("Unable to read the current version from the database.", e);
-      }
-    }else{
-      version = new UndefinedVersion();
+    if(!isVersioned(connection)){
+      return new UndefinedVersion();
     }
 
-    if(!NullVersion.isNullVersion(version) && !UndefinedVersion.isUndefinedVersion(version)){
-      if(!versions.contains(version)){
-        throw new IllegalStateException(
-                String.format(
-                        "Version %s not found in the database is NOT found in the supplied list of versions. Make sure the calling code and the database state are mutually consistent.",
-                        version.string()
-                )
-        );
+    try(Tracing.Span span = Tracing.historyQuery("current-version");
+            PreparedStatement stmt = connection.prepareStatement(SQL_GET_APPLIED_VERSIONS); 
+            ResultSet result = stmt.executeQuery()){
+      //skips the versions of other progressions sharing the history
+      while(tag == null && result.next()){
+        final String candidate = result.getString(1);
+        tag = scheme.owns(candidate) ? candidate : null;
       }
+    }catch(SQLException e){
+      throw new LiquibaseException("Unable to read the current version from the database.", e);
     }
-    return version;
+
+    return tag == null ? new NullVersion() : versionOf(tag);
+  }
+
+  @SuppressWarnings("try")
+  private void errorOnInconsistentDatabaseRevisions(Connection connection) throws LiquibaseException {
+    try(Tracing.Span span = Tracing.consistencyValidation()){
+      validateDatabaseRevisions(connection, appliedVersions);
+    }
+  }
+
+  /**
+   * Same as {@link #getCurrentVersion()}, but reads from {@code connection} and leaves the facade's state untouched,
+   * so that it can be called while the facade migrates the database on another thread.
+   * @param connection the connection to read from
+   * @return the schema's current version
+   * @throws LiquibaseException wrapping any {@link java.sql.SQLException}
+   * @throws IllegalStateException if inconsistencies are found between the user-supplied list of {@code versions} and the 
+   * versions found to have already been applied to the database schema, or if a tag found is not a valid version.
+   */
+  @SuppressWarnings("try")
+  Version readCurrentVersion(Connection connection) throws LiquibaseException {
+    try(Tracing.Span span = Tracing.consistencyValidation()){
+      validateDatabaseRevisions(connection, new BitSet(catalog.length));
+    }
+
+    return _getCurrentVersion(connection);
   }
 
   /**
    * Validates the user-supplied list of {@link #versions} against the versions found to have been
-   * applied in the database schema. If any versions are found to have been applied, the two lists 
-   * (user-supplied and those of the database) are sorted and their elements compared one on one to make
-   * sure that all of the versions found in the database are included contiguously in the user-supplied list.
-   * Also, the oldest version found in the database should correspond to the first version in the 
-   * user-supplied list.
-   */
-  private void errorOnInconsistentDatabaseRevisions() throws LiquibaseException {
-    Version currentVersion = _getCurrentVersion();
-
-    if(!NullVersion.isNullVersion(currentVersion) && !UndefinedVersion.isUndefinedVersion(currentVersion)){
-      List<Version> copy = new ArrayList<>(this.versions);
-      Collections.sort(copy);
-      Stack<Version> databaseVersions = new Stack<>();
-  
-      try(PreparedStatement stmt = connection.prepareStatement(SQL_GET_APPLIED_VERSIONS);
-              ResultSet result = stmt.executeQuery()){
-        while(result.next()){
-          databaseVersions.push(Version.valueOf(result.getString(1)));
+   * applied in the database schema. All of the versions found in the database must be included contiguously 
+   * in the user-supplied list, without repetition, starting with its oldest version.<br>
+   * The history is scanned once, in a single query, marking the position of each applied version in the sorted
+   * {@link #catalog} on {@code applied}, a bitset that is reused between calls, so that memory does not grow with the history.
+   */
+  @SuppressWarnings("try")
+  private void validateDatabaseRevisions(Connection connection, BitSet applied) throws LiquibaseException {
+    if(!isVersioned(connection)){
+      return;
+    }
+
+    applied.clear();
+    int count = 0;
+
+    try(Tracing.Span span = Tracing.historyQuery("applied-versions");
+            PreparedStatement stmt = connection.prepareStatement(SQL_GET_APPLIED_VERSIONS);
+            ResultSet result = stmt.executeQuery()){
+      while(result.next()){
+        final String tag = result.getString(1);
+
+        //versions of other progressions sharing the history
+        if(!scheme.owns(tag)){
+          continue;
         }
-      }catch(SQLException e){
-        throw new LiquibaseException("Error reading database schema metadata!", e);
-      }
-  
-      Collections.sort(databaseVersions);
-  
-      //list of applied versions in the database must be at least a subset of the user-supplied list of versions
-      if(databaseVersions.size() > copy.size()){
-        throw new IllegalStateException(
-                String.format(
-                        "The database' schema has been applied versions not found in the supplied list of versions. Make sure the calling code and the database state are mutually consistent."
-                )
-        );
-      }
-  
-      //list of applied versions in the database must be at least a subset of the user-supplied list of versions
-      //and must correspond to a single user-supplied version in a contiguous fashion
-      for(int i = 0; i < databaseVersions.size(); i++){
-        if(!databaseVersions.get(i).equals(copy.get(i))){
+
+        final int index = indexOf(tag);
+
+        if(applied.get(index)){
           throw new IllegalStateException(
                   String.format(
-                          "The database' schema has been applied versions not found in the supplied list of versions. Make sure the calling code and the database state are mutually consistent."
+                          "Version %s has been applied more than once to the database' schema. Make sure the calling code and the database state are mutually consistent.",
+                          catalog[index]
                   )
           );
         }
+
+        applied.set(index);
+        count++;
       }
+    }catch(SQLException e){
+      throw new LiquibaseException("Error reading database schema metadata!", e);
+    }
+
+    //the applied versions must correspond to the oldest user-supplied versions in a contiguous fashion
+    if(applied.nextClearBit(0) != count){
+      throw new IllegalStateException(
+              String.format(
+                      "The database' schema has been applied versions not found in the supplied list of versions. Make sure the calling code and the database state are mutually consistent."
+              )
+      );
     }
   }
 
-  private int upgradeDatabase(Version targetVersion) throws LiquibaseException {
-    errorOnInconsistentDatabaseRevisions();
-    Version currentVersion = getCurrentVersion();
-    int changesApplied = 0; //return variable
+  /**
+   * @param budget the time allowed for the upgrade; {@code null} for no limit
+   * @param start when the upgrade started, as per {@link System#nanoTime()}
+   */
+  @SuppressWarnings("try")
+  private MigrationResult upgradeDatabase(Version targetVersion, Duration budget, long start) throws LiquibaseException {
+    Version currentVersion = getPrimaryVersion();
+    Version reached = currentVersion;
+    List<VersionResult> results = new ArrayList<>();
+    List<Version> remaining = Collections.emptyList();
 
     if(targetVersion.isEqualOrLessThan(currentVersion)){
       throw new LiquibaseException(
@@ -378,34 +1167,307 @@ public class LinearProgressionFacade {
       );
     }
 
-    List<Version> forwardList = new ArrayList<>(versions);
+    List<Version> forwardList = new ArrayList<>();
+
+    for(Version version : catalog){
+      if(version.isGreaterThan(currentVersion) && version.isEqualOrLessThan(targetVersion)){
+        forwardList.add(version);
+      }
+    }
+
     Collections.sort(forwardList);
 
+    final List<ChangeSet> marked = new ArrayList<>();
+
     try{
-      for(Version version : forwardList){
-        if(version.isGreaterThan(currentVersion) && version.isEqualOrLessThan(targetVersion)){
-          Liquibase liquibase = getLiquibaseInstance(version, changesetFileLocator, resourceAccessorGenerator, connection);
-          int changeSetCount = getChangesetCount(liquibase);
-
-          for(int i = 0; i < changeSetCount; i++){
-            liquibase.update(1, null);
-            changesApplied++;
+      final Map<String, String> history = getAppliedCheckSums();
+      final TimingHistory.Estimates estimates = budget == null ? null : timings.read(false);
+      final int jumped = jumpUpgrades && forwardList.size() > 1 ? jumpDatabase(forwardList, history, marked, results, estimates, budget, start) : -1;
+
+      if(jumped >= 0){
+        reached = jumped > 0 ? forwardList.get(jumped - 1) : currentVersion;
+        remaining = forwardList.subList(jumped, forwardList.size());
+        forwardList = Collections.emptyList();
+      }
+
+      for(int v = 0; v < forwardList.size(); v++){
+        final Version version = forwardList.get(v);
+
+        try(Tracing.Span span = Tracing.migration(version, true)){
+          final long versionStart = System.nanoTime();
+          StatementMetrics metrics = new StatementMetrics();
+          Liquibase liquibase = getLiquibaseInstance(version, changesetFileLocator, resourceAccessorGenerator, metrics.wrap(connection));
+          List<ChangeSet> changeSets = verifyCheckSums(liquibase, history, marked);
+          int first = resumable ? checkpoints.resumeIndex(version, changeSets) : 0;
+
+          if(estimates != null && !fits(estimates.estimate(changeSets.subList(first, changeSets.size())), budget, start)){
+            remaining = forwardList.subList(v, forwardList.size());
+            break;
+          }
+
+          Map<ChangeSet, Integer> ordinals = new IdentityHashMap<>();
+
+          for(int i = 0; i < changeSets.size(); i++){
+            ordinals.put(changeSets.get(i), i);
           }
 
-          liquibase.tag(version.string());
+          MigrationRecorder recorder = new MigrationRecorder(version, metrics, changeSet -> {
+            if(resumable){
+              checkpoints.record(version, ordinals.get(changeSet), changeSet);
+            }
+          });
+
+          //a single update per version, so that liquibase validates the changelog and reads its history only once
+          if(first < changeSets.size()){
+            final Liquibase updater = first > 0 ? resumeFrom(liquibase, version, changeSets.subList(first, changeSets.size())) : liquibase;
+            updater.setChangeExecListener(recorder);
+            exclusively(() -> {
+              installExecutor(updater);
+              recorder.begin(false);
+              updater.update((String) null);
+            });
+            recorder.end();
+          }
+
+          tag(liquibase, version, changeSets);
+
+          if(resumable){
+            checkpoints.clear(version);
+          }
+
+          if(precomputeRollbacks){
+            exclusively(() -> rollbackPlans.store(version, changeSets, liquibase.getDatabase()));
+          }
+
+          if(recordTimings){
+            timings.record(recorder.getResults(), false);
+          }
+
+          reached = version;
+          results.add(new VersionResult(version, Duration.ofNanos(System.nanoTime() - versionStart), recorder.getResults()));
         }
       }
     }catch(Exception e){
       throw new LiquibaseException("Error while attempting to upgrade the schema to version " + targetVersion, e);
+    }finally{
+      ChecksumCache.unmark(marked);
+    }
+
+    observePrimary(reached);
+    snapshotSchema();
+    return new MigrationResult(currentVersion, reached, results, Duration.ofNanos(System.nanoTime() - start), remaining);
+  }
+
+  /**
+   * Applies the changeSets of all of {@code forwardList} with a single liquibase update of a changelog merging those
+   * of each version, then tags each version on its last changeSet with one JDBC batch. Versions whose changeSets were
+   * all applied are tagged even if the update fails, leaving the history as consistent as a walk through the
+   * versions would. With a {@code budget}, only the leading versions whose estimated total fits in it are applied.
+   * @param marked the changeSets marked as verified so far, to which those of {@code forwardList} are added
+   * @param estimates the estimates of the time versions will take; {@code null} if there is no budget
+   * @return the number of leading versions of {@code forwardList} that were applied, or {@code -1}, without touching
+   * the database, if the versions cannot be applied in one update
+   * @see #setJumpUpgrades(boolean) 
+   */
+  @SuppressWarnings("try")
+  private int jumpDatabase(List<Version> forwardList, Map<String, String> history, List<ChangeSet> marked, List<VersionResult> results, TimingHistory.Estimates estimates, Duration budget, long start) throws LiquibaseException {
+    StatementMetrics metrics = new StatementMetrics();
+    Connection wrapped = metrics.wrap(connection);
+    Map<String, Version> owners = new HashMap<>();
+    Map<ChangeSet, Integer> ordinals = new IdentityHashMap<>();
+    Map<Version, ChangeSet> lastChangeSets = new LinkedHashMap<>();
+    Map<Version, List<ChangeSet>> versionChangeSets = new HashMap<>();
+    Set<ResourceAccessor> accessors = new LinkedHashSet<>();
+    List<ChangeSet> planned = new ArrayList<>();
+    long estimate = 0;
+
+    for(Version version : forwardList){
+      Liquibase liquibase = getLiquibaseInstance(version, changesetFileLocator, resourceAccessorGenerator, wrapped);
+      DatabaseChangeLog changeLog = liquibase.getDatabaseChangeLog();
+      List<ChangeSet> changeSets = verifyCheckSums(liquibase, history, marked);
+
+      if(changeSets.isEmpty() || (changeLog.getPreconditions() != null && !changeLog.getPreconditions().getNestedPreconditions().isEmpty())){
+        return -1;
+      }
+
+      final long versionEstimate = estimates == null ? 0 : estimates.estimate(changeSets);
+
+      if(!fits(estimate + versionEstimate, budget, start)){
+        break;
+      }
+
+      for(int i = 0; i < changeSets.size(); i++){
+        final ChangeSet changeSet = changeSets.get(i);
+        final String key = PreparedChangeLog.historyKey(changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor());
+
+        if(history.containsKey(key)){
+          return -1;
+        }
+
+        owners.put(key, version);
+        ordinals.put(changeSet, i);
+      }
+
+      planned.addAll(changeSets);
+      estimate += versionEstimate;
+      lastChangeSets.put(version, changeSets.get(changeSets.size() - 1));
+      versionChangeSets.put(version, changeSets);
+      accessors.add(liquibase.getResourceAccessor());
+    }
+
+    if(lastChangeSets.isEmpty()){
+      return 0;
+    }
+
+    final Version targetVersion = forwardList.get(lastChangeSets.size() - 1);
+
+    try(Tracing.Span span = Tracing.migration(targetVersion, true)){
+      DatabaseChangeLog composite = new DatabaseChangeLog(changesetFileLocator.apply(targetVersion));
+      planned.forEach(composite::addChangeSet);
+      final Set<Version> completed = new LinkedHashSet<>();
+      Liquibase liquibase = new Liquibase(
+              composite, 
+              new CompositeResourceAccessor(new ArrayList<>(accessors)), 
+              getLiquibaseDatabase(wrapped)
+      );
+      MigrationRecorder recorder = new MigrationRecorder(targetVersion, metrics, changeSet -> {
+        final Version version = owners.get(PreparedChangeLog.historyKey(changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor()));
+
+        if(resumable){
+          checkpoints.record(version, ordinals.get(changeSet), changeSet);
+        }
+
+        if(lastChangeSets.get(version) == changeSet){
+          completed.add(version);
+        }
+      });
+      liquibase.setChangeExecListener(recorder);
+
+      try{
+        exclusively(() -> {
+          installExecutor(liquibase);
+          recorder.begin(false);
+          liquibase.update((String) null);
+        });
+        recorder.end();
+      }finally{
+        tag(completed, lastChangeSets);
+      }
+
+      Map<Version, List<ChangeSetResult>> byVersion = new LinkedHashMap<>();
+      lastChangeSets.keySet().forEach(version -> byVersion.put(version, new ArrayList<>()));
+
+      for(ChangeSetResult changeSet : recorder.getResults()){
+        byVersion.get(owners.get(PreparedChangeLog.historyKey(changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor()))).add(changeSet);
+      }
+
+      for(Map.Entry<Version, List<ChangeSetResult>> entry : byVersion.entrySet()){
+        Duration duration = entry.getValue().stream().map(ChangeSetResult::getDuration).reduce(Duration.ZERO, Duration::plus);
+        results.add(new VersionResult(entry.getKey(), duration, entry.getValue()));
+      }
+
+      if(recordTimings){
+        timings.record(recorder.getResults(), false);
+      }
+
+      if(precomputeRollbacks){
+        for(Version version : lastChangeSets.keySet()){
+          exclusively(() -> rollbackPlans.store(version, versionChangeSets.get(version), liquibase.getDatabase()));
+        }
+      }
+    }
+
+    return lastChangeSets.size();
+  }
+
+  /**
+   * Returns a liquibase instance whose changelog holds only {@code changeSets}, the changeSets of {@code version} past
+   * its last checkpoint, so that liquibase validates and runs none of the changeSets an interrupted upgrade already
+   * applied. The changelog is built like the one of a {@link #jumpDatabase(java.util.List, java.util.Map, java.util.List, java.util.List, org.llorllale.liquibasefacade.TimingHistory.Estimates, java.time.Duration, long) jump}.
+   * @param liquibase the liquibase instance of {@code version}'s whole changelog
+   */
+  private Liquibase resumeFrom(Liquibase liquibase, Version version, List<ChangeSet> changeSets) throws LiquibaseException {
+    DatabaseChangeLog remaining = new DatabaseChangeLog(changesetFileLocator.apply(version));
+    remaining.setPreconditions(liquibase.getDatabaseChangeLog().getPreconditions());
+    changeSets.forEach(remaining::addChangeSet);
+    return new Liquibase(remaining, liquibase.getResourceAccessor(), liquibase.getDatabase());
+  }
+
+  /**
+   * Tags {@code version} once its changeSets have been applied, on the row of its last changeSet in liquibase's 
+   * history. Liquibase's own tagging updates every row executed at the latest time, which may be several of them, or
+   * rows of another progression when the scheme is
+   * {@link VersionScheme#namespaced(java.lang.String, org.llorllale.liquibasefacade.VersionScheme) namespaced}; it is
+   * only used for versions of progressions without a namespace whose last changeSet has no row.
+   * @param changeSets the changeSets of {@code version}'s changelog
+   */
+  private void tag(Liquibase liquibase, Version version, List<ChangeSet> changeSets) throws LiquibaseException {
+    if(!changeSets.isEmpty()){
+      final ChangeSet changeSet = changeSets.get(changeSets.size() - 1);
+
+      try(PreparedStatement stmt = connection.prepareStatement(SQL_TAG_CHANGESET)){
+        stmt.setString(1, scheme.format(version));
+        stmt.setString(2, changeSet.getFilePath());
+        stmt.setString(3, changeSet.getId());
+        stmt.setString(4, changeSet.getAuthor());
+
+        if(stmt.executeUpdate() == 1){
+          return;
+        }
+      }catch(SQLException e){
+        throw new LiquibaseException("Unable to tag version " + version, e);
+      }
+    }
+
+    if(namespace != null){
+      throw new LiquibaseException(
+              String.format("Version %s of progression %s cannot be tagged: its last changeSet was not applied.", version, namespace)
+      );
+    }
+
+    liquibase.tag(scheme.format(version));
+  }
+
+  /**
+   * Tags each of {@code versions} on its last changeSet's row of liquibase's history, in a single batch.
+   */
+  private void tag(Set<Version> versions, Map<Version, ChangeSet> lastChangeSets) throws LiquibaseException {
+    if(versions.isEmpty()){
+      return;
+    }
+
+    try(PreparedStatement stmt = connection.prepareStatement(SQL_TAG_CHANGESET)){
+      for(Version version : versions){
+        final ChangeSet changeSet = lastChangeSets.get(version);
+        stmt.setString(1, scheme.format(version));
+        stmt.setString(2, changeSet.getFilePath());
+        stmt.setString(3, changeSet.getId());
+        stmt.setString(4, changeSet.getAuthor());
+        stmt.addBatch();
+      }
+
+      stmt.executeBatch();
+    }catch(SQLException e){
+      throw new LiquibaseException("Unable to tag versions " + versions, e);
     }
 
-    return changesApplied;
+    if(resumable){
+      for(Version version : versions){
+        checkpoints.clear(version);
+      }
+    }
   }
 
-  private int downgradeDatabase(Version targetVersion) throws LiquibaseException {
-    errorOnInconsistentDatabaseRevisions();
-    Version currentVersion = getCurrentVersion();
-    int changesApplied = 0; //return variable
+  /**
+   * @param budget the time allowed for the downgrade; {@code null} for no limit
+   * @param start when the downgrade started, as per {@link System#nanoTime()}
+   */
+  @SuppressWarnings("try")
+  private MigrationResult downgradeDatabase(Version targetVersion, Duration budget, long start) throws LiquibaseException {
+    Version currentVersion = getPrimaryVersion();
+    Version reached = currentVersion;
+    List<VersionResult> results = new ArrayList<>();
+    List<Version> remaining = Collections.emptyList();
 
     if(targetVersion.isEqualOrGreaterThan(currentVersion)){
       throw new LiquibaseException(
@@ -420,24 +1482,194 @@ public class LinearProgressionFacade {
     List<Version> reversedList = new ArrayList<>(versions);
     Collections.sort(reversedList);
     Collections.reverse(reversedList);
+    List<Version> backwardList = new ArrayList<>();
+
+    for(Version version : reversedList){
+      if(version.isEqualOrLessThan(currentVersion) && version.isGreaterThan(targetVersion)){
+        backwardList.add(version);
+      }
+    }
+
+    final List<ChangeSet> marked = new ArrayList<>();
 
     try{
-      for(Version version : reversedList){
-        if(version.isEqualOrLessThan(currentVersion) && version.isGreaterThan(targetVersion)){
-          Liquibase liquibase = getLiquibaseInstance(version, changesetFileLocator, resourceAccessorGenerator, connection);
-          int changeSetCount = getChangesetCount(liquibase);
-
-          for(int i = 0; i < changeSetCount; i++){
-            liquibase.rollback(1, null);
-            changesApplied++;
+      final Map<String, String> history = getAppliedCheckSums();
+      final TimingHistory.Estimates estimates = budget == null ? null : timings.read(true);
+
+      for(int v = 0; v < backwardList.size(); v++){
+        final Version version = backwardList.get(v);
+
+        try(Tracing.Span span = Tracing.migration(version, false)){
+          final long versionStart = System.nanoTime();
+          final List<RollbackPlans.Step> plan = precomputeRollbacks ? rollbackPlans.read(version, history) : null;
+
+          if(plan != null){
+            if(estimates != null && !fits(plan.stream().mapToLong(step -> estimates.estimate(step.historyKey())).sum(), budget, start)){
+              remaining = backwardList.subList(v, backwardList.size());
+              break;
+            }
+
+            List<ChangeSetResult> rolledBack = new ArrayList<>();
+
+            //under liquibase's changelog lock, as liquibase's own rollbacks are, so that no liquibase update runs meanwhile
+            exclusively(() -> {
+              LockService lockService = LockServiceFactory.getInstance().getLockService(getLiquibaseDatabase(connection));
+              lockService.waitForLock();
+
+              try{
+                for(RollbackPlans.Step step : plan){
+                  try(Tracing.Span changeSetSpan = Tracing.changeSet(version, step.getId(), step.getAuthor(), step.getFilePath(), true)){
+                    rolledBack.add(rollbackPlans.run(step));
+                  }
+                }
+
+                rollbackPlans.delete(version);
+              }finally{
+                lockService.releaseLock();
+              }
+            });
+
+            if(recordTimings){
+              timings.record(rolledBack, true);
+            }
+
+            final int below = reversedList.indexOf(version) + 1;
+            reached = below < reversedList.size() ? reversedList.get(below) : new NullVersion();
+            results.add(new VersionResult(version, Duration.ofNanos(System.nanoTime() - versionStart), rolledBack));
+            continue;
+          }
+
+          StatementMetrics metrics = new StatementMetrics();
+          MigrationRecorder recorder = new MigrationRecorder(version, metrics);
+          Liquibase liquibase = getLiquibaseInstance(version, changesetFileLocator, resourceAccessorGenerator, metrics.wrap(connection));
+          List<ChangeSet> changeSets = verifyCheckSums(liquibase, history, marked);
+
+          if(estimates != null && !fits(estimates.estimate(changeSets), budget, start)){
+            remaining = backwardList.subList(v, backwardList.size());
+            break;
+          }
+
+          //each rollback undoes the latest changeSet of the version still applied
+          for(int i = changeSets.size() - 1; i >= 0; i--){
+            try(Tracing.Span changeSetSpan = Tracing.changeSet(version, changeSets.get(i), true)){
+              //not batched: liquibase notifies no listener of rolled back changes, so batches could not be flushed per change
+              exclusively(() -> {
+                recorder.begin(true);
+                liquibase.rollback(1, null);
+              });
+              recorder.rolledBack(changeSets.get(i));
+              recorder.end();
+            }
           }
+
+          if(recordTimings){
+            timings.record(recorder.getResults(), true);
+          }
+
+          if(precomputeRollbacks){
+            rollbackPlans.delete(version);
+          }
+
+          final int below = reversedList.indexOf(version) + 1;
+          reached = below < reversedList.size() ? reversedList.get(below) : new NullVersion();
+          results.add(new VersionResult(version, Duration.ofNanos(System.nanoTime() - versionStart), recorder.getResults()));
         }
       }
     }catch(Exception e){
       throw new LiquibaseException("Error while attempting to downgrade the schema to version " + targetVersion, e);
+    }finally{
+      ChecksumCache.unmark(marked);
+    }
+
+    observePrimary(reached);
+    snapshotSchema();
+    return new MigrationResult(currentVersion, reached, results, Duration.ofNanos(System.nanoTime() - start), remaining);
+  }
+
+  /**
+   * Marks the changeSets of {@code liquibase}'s changelog whose cached checksums match liquibase's {@code history},
+   * so that liquibase does not recompute them each time it validates the changelog.
+   * @param marked the changeSets marked so far, to which those marked now are added; they must be
+   * {@link ChecksumCache#unmark(java.util.List) unmarked} once liquibase has run
+   * @return the changelog's changeSets
+   * @throws LiquibaseException if a changeSet running in a transaction alters a table online, before any of the
+   * changelog's changeSets run
+   */
+  private List<ChangeSet> verifyCheckSums(Liquibase liquibase, Map<String, String> history, List<ChangeSet> marked) throws LiquibaseException {
+    DatabaseChangeLog changeLog = liquibase.getDatabaseChangeLog();
+    List<CheckSum> checkSums = checksumCache.checkSums(changeLog.getPhysicalFilePath(), changeLog, liquibase.getResourceAccessor(), liquibase.getDatabase());
+    marked.addAll(ChecksumCache.markVerified(changeLog, checkSums, history));
+
+    for(ChangeSet changeSet : changeLog.getChangeSets()){
+      if(changeSet.isRunInTransaction() && altersOnline(changeSet)){
+        throw new LiquibaseException(
+                String.format(
+                        "ChangeSet %s alters a table online and must be run with runInTransaction=\"false\", so that its version is tagged only after the swap.",
+                        changeSet
+                )
+        );
+      }
+    }
+
+    return changeLog.getChangeSets();
+  }
+
+  private static boolean altersOnline(ChangeSet changeSet) {
+    for(Change change : changeSet.getChanges()){
+      if(change instanceof CustomChangeWrapper && OnlineAlterTableChange.class.getName().equals(((CustomChangeWrapper) change).getClassName())){
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Maps a tag found in liquibase's history to one of the reference versions.
+   * @throws IllegalStateException if the tag does not stand for any of the reference versions
+   */
+  private Version versionOf(String tag) {
+    return catalog[indexOf(tag)];
+  }
+
+  /**
+   * Finds the position in the {@link #catalog} of the version {@code tag} stands for.
+   * @throws IllegalStateException if the tag is not a valid tag of the scheme, or does not stand for any of the
+   * reference versions
+   */
+  private int indexOf(String tag) {
+    final long key;
+
+    try{
+      key = scheme.parseKey(tag);
+    }catch(IllegalArgumentException e){
+      throw new IllegalStateException(
+              String.format(
+                      "Tag %s found in the database is not a valid version tag. Make sure the calling code and the database state are mutually consistent.",
+                      tag
+              ),
+              e
+      );
+    }
+
+    final int index = Arrays.binarySearch(catalogKeys, key);
+
+    if(index < 0){
+      throw new IllegalStateException(
+              String.format(
+                      "Version %s not found in the database is NOT found in the supplied list of versions. Make sure the calling code and the database state are mutually consistent.",
+                      tag
+              )
+      );
     }
 
-    return changesApplied;
+    return index;
+  }
+
+  private void snapshotSchema() throws LiquibaseException {
+    if(driftDetector != null){
+      driftDetector.snapshot(connection);
+    }
   }
 
   private Database getLiquibaseDatabase(Connection connection) throws LiquibaseException {
@@ -451,11 +1683,63 @@ public class LinearProgressionFacade {
     return database;
   }
 
-  private int getChangesetCount(Liquibase liquibase) throws LiquibaseException {
-    return liquibase.getDatabaseChangeLog().getChangeSets().size();
+  /**
+   * Installs a {@link BatchingExecutor} for {@code liquibase}'s database if statements are batched. Liquibase resets 
+   * its executors after every update and rollback, so this is done before each of them.
+   */
+  private void installExecutor(Liquibase liquibase) {
+    if(batchSize > 1){
+      BatchingExecutor.install(liquibase.getDatabase(), batchSize);
+    }
+  }
+
+  /**
+   * Performs a liquibase update or rollback while holding the {@link #setLiquibaseMutex(java.util.concurrent.locks.Lock) 
+   * liquibase mutex}, if any.
+   */
+  private void exclusively(LiquibaseCall call) throws LiquibaseException {
+    final Lock mutex = liquibaseMutex;
+
+    if(mutex == null){
+      call.run();
+      return;
+    }
+
+    mutex.lock();
+
+    try{
+      call.run();
+    }finally{
+      mutex.unlock();
+    }
+  }
+
+  @SuppressWarnings("try")
+  private Map<String, String> getAppliedCheckSums() throws LiquibaseException {
+    Map<String, String> checkSums = new HashMap<>(); //return variable
+
+    if(isVersioned(connection)){
+      try(Tracing.Span span = Tracing.historyQuery("checksums");
+              PreparedStatement stmt = connection.prepareStatement(SQL_GET_CHECKSUMS);
+              ResultSet result = stmt.executeQuery()){
+        while(result.next()){
+          checkSums.put(PreparedChangeLog.historyKey(result.getString(1), result.getString(2), result.getString(3)), result.getString(4));
+        }
+      }catch(SQLException e){
+        throw new LiquibaseException("Unable to read checksums from the database.", e);
+      }
+    }
+
+    return checkSums;
   }
 
   private Liquibase getLiquibaseInstance(Version version, Function<Version, String> locator, Function<Version, ResourceAccessor> generator, Connection connection) throws LiquibaseException{
+    PreparedChangeLog changeLog = prepared.get(version);
+
+    if(changeLog != null){
+      return new Liquibase(changeLog.getChangeLog(), changeLog.getResourceAccessor(), getLiquibaseDatabase(connection));
+    }
+
     return new Liquibase(locator.apply(version), generator.apply(version), getLiquibaseDatabase(connection));
   }
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import liquibase.change.ChangeFactory;
+import liquibase.changelog.ChangeLogHistoryServiceFactory;
+import liquibase.database.DatabaseFactory;
+import liquibase.datatype.DataTypeFactory;
+import liquibase.executor.ExecutorService;
+import liquibase.lockservice.LockServiceFactory;
+import liquibase.logging.LogFactory;
+import liquibase.parser.ChangeLogParserFactory;
+import liquibase.precondition.PreconditionFactory;
+import liquibase.servicelocator.ServiceLocator;
+import liquibase.snapshot.SnapshotGeneratorFactory;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+
+/**
+ * Liquibase's service factories are lazily created, unsynchronized singletons: when the first uses of a factory
+ * race on several threads, the factory may end up with an incomplete registry (eg. with no changelog parsers).<br>
+ * Code that drives liquibase from several threads must call {@link #initialize()} beforehand.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+final class LiquibaseServices {
+  private LiquibaseServices() {
+  }
+
+  /**
+   * Creates liquibase's service factories on the calling thread. Only the first invocation has any effect.
+   */
+  static void initialize() {
+    Initializer.touch();
+  }
+
+  private static final class Initializer {
+    static {
+      ServiceLocator.getInstance();
+      LogFactory.getInstance();
+      ChangeLogParserFactory.getInstance();
+      ChangeFactory.getInstance();
+      PreconditionFactory.getInstance();
+      DatabaseFactory.getInstance();
+      DataTypeFactory.getInstance();
+      SqlGeneratorFactory.getInstance();
+      SnapshotGeneratorFactory.getInstance();
+      ExecutorService.getInstance();
+      LockServiceFactory.getInstance();
+      ChangeLogHistoryServiceFactory.getInstance();
+    }
+
+    private static void touch() {
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Defines how long a {@link LinearProgressionFacade facade} waits between attempts to take the lock that serializes
+ * migrations of the same database, and how long it waits in total before giving up.<br>
+ * The delay before the {@code n}th retry is {@code initialDelay * 2^n}, capped at {@code maxDelay}, and reduced by a
+ * random fraction of up to {@code jitter} of itself so that instances waiting on the same lock spread their attempts.
+ * The default strategy is {@link #defaults()}.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+public final class LockWaitStrategy {
+  private static final LockWaitStrategy DEFAULTS = exponentialBackoff(Duration.ofMillis(100), Duration.ofSeconds(5), 0.5, Duration.ofMinutes(5));
+
+  private final Duration initialDelay;
+  private final Duration maxDelay;
+  private final double jitter;
+  private final Duration maxWait;
+
+  private LockWaitStrategy(Duration initialDelay, Duration maxDelay, double jitter, Duration maxWait) {
+    this.initialDelay = initialDelay;
+    this.maxDelay = maxDelay;
+    this.jitter = jitter;
+    this.maxWait = maxWait;
+  }
+
+  /**
+   * The default strategy: exponential backoff from {@code 100ms} up to {@code 5s} with a jitter of {@code 0.5}, giving
+   * up after {@code 5} minutes like liquibase's own lock service.
+   * @return the default strategy
+   * @since 1.3.0
+   */
+  public static LockWaitStrategy defaults() {
+    return DEFAULTS;
+  }
+
+  /**
+   * Retries after a delay that doubles with each attempt.
+   * @param initialDelay the delay before the first retry
+   * @param maxDelay the maximum delay between two attempts
+   * @param jitter the maximum fraction, between {@code 0} and {@code 1}, by which each delay is randomly shortened
+   * @param maxWait the time after which to give up
+   * @return an exponential backoff strategy
+   * @throws NullPointerException if any of the durations are {@code null}
+   * @throws IllegalArgumentException if {@code initialDelay} is not positive, if any of the other durations are
+   * negative, if {@code maxDelay} is less than {@code initialDelay}, or if {@code jitter} is not between {@code 0} and
+   * {@code 1}
+   * @since 1.3.0
+   */
+  public static LockWaitStrategy exponentialBackoff(Duration initialDelay, Duration maxDelay, double jitter, Duration maxWait) {
+    //a zero delay would retry the lock in a busy loop until maxWait runs out
+    if(Objects.requireNonNull(initialDelay, "null initialDelay.").isNegative() || initialDelay.isZero()){
+      throw new IllegalArgumentException("initialDelay must be positive: " + initialDelay);
+    }
+
+    checkNotNegative(Objects.requireNonNull(maxDelay, "null maxDelay."), "maxDelay");
+    checkNotNegative(Objects.requireNonNull(maxWait, "null maxWait."), "maxWait");
+
+    if(maxDelay.compareTo(initialDelay) < 0){
+      throw new IllegalArgumentException(String.format("maxDelay %s is less than initialDelay %s", maxDelay, initialDelay));
+    }
+
+    if(!(jitter >= 0 && jitter <= 1)){
+      throw new IllegalArgumentException("jitter must be between 0 and 1: " + jitter);
+    }
+
+    return new LockWaitStrategy(initialDelay, maxDelay, jitter, maxWait);
+  }
+
+  /**
+   * Retries at a fixed interval, as liquibase's own lock service does.
+   * @param delay the delay between two attempts
+   * @param maxWait the time after which to give up
+   * @return a fixed delay strategy
+   * @throws NullPointerException if any of the parameters are {@code null}
+   * @throws IllegalArgumentException if {@code delay} is not positive, or if {@code maxWait} is negative
+   * @since 1.3.0
+   */
+  public static LockWaitStrategy fixedDelay(Duration delay, Duration maxWait) {
+    return exponentialBackoff(delay, delay, 0, maxWait);
+  }
+
+  /**
+   *
+   * @return the delay before the first retry
+   * @since 1.3.0
+   */
+  public Duration getInitialDelay() {
+    return initialDelay;
+  }
+
+  /**
+   *
+   * @return the maximum delay between two attempts
+   * @since 1.3.0
+   */
+  public Duration getMaxDelay() {
+    return maxDelay;
+  }
+
+  /**
+   *
+   * @return the maximum fraction by which each delay is randomly shortened
+   * @since 1.3.0
+   */
+  public double getJitter() {
+    return jitter;
+  }
+
+  /**
+   *
+   * @return the time after which to give up
+   * @since 1.3.0
+   */
+  public Duration getMaxWait() {
+    return maxWait;
+  }
+
+  /**
+   * Returns the delay before retrying after the {@code attempt}th failed attempt.
+   * @param attempt the number of attempts that failed before this one, starting at {@code 0}
+   * @param random the source of the jitter
+   * @return the delay in nanoseconds
+   */
+  long delayNanos(int attempt, Random random) {
+    final long max = maxDelay.toNanos();
+    long delay = initialDelay.toNanos();
+
+    for(int i = 0; i < attempt && delay < max; i++){
+      delay *= 2;
+    }
+
+    delay = Math.min(delay, max);
+    return delay - (long) (delay * jitter * random.nextDouble());
+  }
+
+  private static void checkNotNegative(Duration duration, String name) {
+    if(duration.isNegative()){
+      throw new IllegalArgumentException(name + " cannot be negative: " + duration);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "LockWaitStrategy{" + "initialDelay=" + initialDelay + ", maxDelay=" + maxDelay + ", jitter=" + jitter + ", maxWait=" + maxWait + '}';
+  }
+}
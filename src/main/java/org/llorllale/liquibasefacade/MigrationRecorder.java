@@ -0,0 +1,209 @@
+/* 
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import liquibase.change.Change;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.changelog.visitor.ChangeExecListener;
+import liquibase.database.Database;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.LiquibaseException;
+import liquibase.exception.PreconditionErrorException;
+import liquibase.exception.PreconditionFailedException;
+import liquibase.exception.UnexpectedLiquibaseException;
+import liquibase.precondition.core.PreconditionContainer;
+
+/**
+ * Builds the {@link ChangeSetResult results} of the changeSets run by liquibase between calls to {@link #begin(boolean)}
+ * and {@link #end()}.<br>
+ * A changeSet's window starts when the previous changeSet's window ends (or at {@link #begin(boolean)}), and ends when
+ * the next changeSet is about to run (or at {@link #end()}), so that liquibase's bookkeeping before and after running
+ * a changeSet is accounted for. Time spent between liquibase's notifications for each of the changeSet's changes is
+ * reported as execution time.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+final class MigrationRecorder implements ChangeExecListener {
+  private final Version version;
+  private final StatementMetrics metrics;
+  private final Completion completion;
+  private Tracing.Span span;
+  private final List<ChangeSetResult> results = new ArrayList<>();
+  private boolean rollback;
+  private long windowStart;
+  private long changeStart;
+  private long executionNanos;
+  private long statementsBase;
+  private long rowsBase;
+  private long batchesBase;
+  private ChangeSet pending;
+
+  /**
+   * Notified of each changeSet once liquibase has finished with it, including recording it in its history.
+   */
+  @FunctionalInterface
+  interface Completion {
+    void completed(ChangeSet changeSet) throws LiquibaseException;
+  }
+
+  /**
+   *
+   * @param version the version whose changeSets are run
+   * @param metrics the metrics of the connection liquibase runs on
+   */
+  MigrationRecorder(Version version, StatementMetrics metrics) {
+    this(version, metrics, changeSet -> {});
+  }
+
+  /**
+   *
+   * @param version the version whose changeSets are run
+   * @param metrics the metrics of the connection liquibase runs on
+   * @param completion notified of each changeSet when its window ends
+   */
+  MigrationRecorder(Version version, StatementMetrics metrics, Completion completion) {
+    this.version = version;
+    this.metrics = metrics;
+    this.completion = completion;
+  }
+
+  /**
+   * Marks the start of a liquibase update or rollback.
+   * @param rollback whether liquibase is about to roll back changeSets
+   */
+  void begin(boolean rollback) {
+    this.rollback = rollback;
+    openWindow(System.nanoTime());
+  }
+
+  /**
+   * Marks the end of the liquibase update or rollback started with {@link #begin(boolean)}.
+   */
+  void end() {
+    closeWindow(System.nanoTime());
+    metrics.stop();
+  }
+
+  /**
+   *
+   * @return the results of the changeSets run so far, in execution order
+   */
+  List<ChangeSetResult> getResults() {
+    return results;
+  }
+
+  @Override
+  public void willRun(ChangeSet changeSet, DatabaseChangeLog databaseChangeLog, Database database, ChangeSet.RunStatus runStatus) {
+    closeWindow(System.nanoTime());
+    span = Tracing.changeSet(version, changeSet, false);
+  }
+
+  @Override
+  public void willRun(Change change, ChangeSet changeSet, DatabaseChangeLog changeLog, Database database) {
+    changeStart = System.nanoTime();
+    metrics.start();
+  }
+
+  @Override
+  public void ran(Change change, ChangeSet changeSet, DatabaseChangeLog changeLog, Database database) {
+    //a batch still pending belongs to this change, and must fail it rather than the next one
+    try{
+      BatchingExecutor.flush(database);
+    }catch(DatabaseException e){
+      throw new UnexpectedLiquibaseException(e);
+    }finally{
+      metrics.stop();
+    }
+
+    executionNanos += System.nanoTime() - changeStart;
+  }
+
+  @Override
+  public void ran(ChangeSet changeSet, DatabaseChangeLog databaseChangeLog, Database database, ChangeSet.ExecType execType) {
+    pending = changeSet;
+
+    if(span != null){
+      span.close();
+      span = null;
+    }
+  }
+
+  @Override
+  public void rolledBack(ChangeSet changeSet, DatabaseChangeLog databaseChangeLog, Database database) {
+    rolledBack(changeSet);
+  }
+
+  /**
+   * Records {@code changeSet} as rolled back by the current window. Liquibase's {@code rollback(int, ...)} does not
+   * notify its listener, so the facade reports rolled back changeSets itself.
+   * @param changeSet the changeSet that was rolled back
+   */
+  void rolledBack(ChangeSet changeSet) {
+    final long now = System.nanoTime();
+    executionNanos = now - windowStart;
+    pending = changeSet;
+    closeWindow(now);
+  }
+
+  @Override
+  public void preconditionFailed(PreconditionFailedException error, PreconditionContainer.FailOption onFail) {
+  }
+
+  @Override
+  public void preconditionErrored(PreconditionErrorException error, PreconditionContainer.ErrorOption onError) {
+  }
+
+  private void openWindow(long now) {
+    windowStart = now;
+    executionNanos = 0;
+    statementsBase = metrics.getStatements();
+    rowsBase = metrics.getRows();
+    batchesBase = metrics.getBatches();
+
+    if(rollback){
+      metrics.start();
+    }
+  }
+
+  private void closeWindow(long now) {
+    if(pending != null){
+      results.add(new ChangeSetResult(
+              pending.getId(),
+              pending.getAuthor(),
+              pending.getFilePath(),
+              Duration.ofNanos(now - windowStart),
+              Duration.ofNanos(executionNanos),
+              metrics.getStatements() - statementsBase,
+              metrics.getRows() - rowsBase,
+              metrics.getBatches() - batchesBase
+      ));
+      final ChangeSet completed = pending;
+      pending = null;
+
+      try{
+        completion.completed(completed);
+      }catch(LiquibaseException e){
+        throw new UnexpectedLiquibaseException(e);
+      }
+
+      openWindow(System.nanoTime());
+    }
+  }
+}
@@ -0,0 +1,144 @@
+/* 
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Outcome of a migration performed by {@link LinearProgressionFacade}: the versions applied or rolled back and,
+ * for each of them, the changeSets that were run.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+public final class MigrationResult {
+  private final Version fromVersion;
+  private final Version toVersion;
+  private final List<VersionResult> versions;
+  private final Duration duration;
+  private final List<Version> remainingVersions;
+  private final Duration lockWaitTime;
+
+  MigrationResult(Version fromVersion, Version toVersion, List<VersionResult> versions, Duration duration) {
+    this(fromVersion, toVersion, versions, duration, Collections.emptyList());
+  }
+
+  MigrationResult(Version fromVersion, Version toVersion, List<VersionResult> versions, Duration duration, List<Version> remainingVersions) {
+    this(fromVersion, toVersion, versions, duration, remainingVersions, Duration.ZERO);
+  }
+
+  private MigrationResult(Version fromVersion, Version toVersion, List<VersionResult> versions, Duration duration, List<Version> remainingVersions, Duration lockWaitTime) {
+    this.fromVersion = fromVersion;
+    this.toVersion = toVersion;
+    this.versions = Collections.unmodifiableList(new ArrayList<>(versions));
+    this.duration = duration;
+    this.remainingVersions = Collections.unmodifiableList(new ArrayList<>(remainingVersions));
+    this.lockWaitTime = lockWaitTime;
+  }
+
+  /**
+   * Returns a copy of this result that waited {@code lockWaitTime} for the migration lock.
+   */
+  MigrationResult withLockWaitTime(Duration lockWaitTime) {
+    return new MigrationResult(fromVersion, toVersion, versions, duration, remainingVersions, lockWaitTime);
+  }
+
+  /**
+   *
+   * @return the schema's version before the migration
+   */
+  public Version getFromVersion() {
+    return fromVersion;
+  }
+
+  /**
+   *
+   * @return the schema's version after the migration
+   */
+  public Version getToVersion() {
+    return toVersion;
+  }
+
+  /**
+   *
+   * @return the versions that were applied or rolled back, in execution order
+   */
+  public List<VersionResult> getVersions() {
+    return versions;
+  }
+
+  /**
+   *
+   * @return the changeSets that were run or rolled back across all versions, in execution order
+   */
+  public List<ChangeSetResult> getChangeSets() {
+    return versions.stream().flatMap(v -> v.getChangeSets().stream()).collect(Collectors.toList());
+  }
+
+  /**
+   *
+   * @return the total time spent on the migration, including consistency checks
+   */
+  public Duration getDuration() {
+    return duration;
+  }
+
+  /**
+   *
+   * @return the number of changes (changeSets) applied
+   */
+  public int getChangeCount() {
+    return versions.stream().mapToInt(VersionResult::getChangeCount).sum();
+  }
+
+  /**
+   *
+   * @return the versions left to apply or roll back to reach the requested target, in execution order; empty unless 
+   * the migration was {@link LinearProgressionFacade#apply(org.llorllale.liquibasefacade.Version, java.time.Duration) cut short by its budget}
+   * @since 1.3.0
+   */
+  public List<Version> getRemainingVersions() {
+    return remainingVersions;
+  }
+
+  /**
+   *
+   * @return the time spent waiting for other migrations of the same database to finish; included in the 
+   * {@link #getDuration() duration} of upgrades and downgrades
+   * @see LinearProgressionFacade#setLockWaitStrategy(org.llorllale.liquibasefacade.LockWaitStrategy) 
+   * @since 1.3.0
+   */
+  public Duration getLockWaitTime() {
+    return lockWaitTime;
+  }
+
+  /**
+   *
+   * @return whether the schema reached the requested target version
+   * @since 1.3.0
+   */
+  public boolean isComplete() {
+    return remainingVersions.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return "MigrationResult{" + "fromVersion=" + fromVersion + ", toVersion=" + toVersion + ", versions=" + versions + ", duration=" + duration + ", remainingVersions=" + remainingVersions + ", lockWaitTime=" + lockWaitTime + '}';
+  }
+}
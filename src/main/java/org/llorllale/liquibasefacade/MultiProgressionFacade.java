@@ -0,0 +1,406 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.LiquibaseException;
+import liquibase.lockservice.LockServiceFactory;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * Manages several named linear progressions of versions sharing the same database, eg. one per module of an
+ * application, each with its own changelogs.<br>
+ * Each progression is migrated by its own {@link LinearProgressionFacade} with a
+ * {@link VersionScheme#namespaced(java.lang.String, org.llorllale.liquibasefacade.VersionScheme) namespaced} version
+ * scheme, so that its versions are tagged in liquibase's history as {@code name:version} and it ignores the versions
+ * of the other progressions. A progression may depend on progressions added before it: {@link #applyAll()} migrates
+ * a progression once all of its dependencies have been migrated, and progressions that do not depend on one another
+ * concurrently, each on its own connection.<br>
+ * Liquibase holds a single changelog lock for the whole of each update and rollback, so the changeSets of concurrent
+ * progressions are applied one version at a time rather than in parallel: the facade's progressions take turns
+ * through a lock of their own instead of polling liquibase's. What runs concurrently is the rest of each migration,
+ * such as parsing changelogs, verifying checksums, validating and tagging versions.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+public class MultiProgressionFacade {
+  private final ConnectionProvider connectionProvider;
+  private final int concurrency;
+  private final Map<String, Progression> progressions = new LinkedHashMap<>();
+  private final ChecksumCache checksumCache = new ChecksumCache();
+  private final Lock liquibaseMutex = new ReentrantLock(true);
+  private LockWaitStrategy lockWaitStrategy = LockWaitStrategy.defaults();
+
+  /**
+   * Supplies the JDBC connections to the database shared by the progressions. The facade closes each connection once
+   * its progression has been migrated.
+   * @since 1.3.0
+   */
+  @FunctionalInterface
+  public interface ConnectionProvider {
+    /**
+     *
+     * @param progression the name of the progression the connection is for
+     * @return a new connection to the database
+     * @throws SQLException if the connection cannot be obtained
+     */
+    Connection getConnection(String progression) throws SQLException;
+  }
+
+  /**
+   *
+   * @param connectionProvider supplies a new connection to the database for each progression migrated
+   * @param concurrency the maximum number of progressions migrated at the same time
+   * @throws NullPointerException if {@code connectionProvider} is {@code null}
+   * @throws IllegalArgumentException if {@code concurrency} is less than {@code 1}
+   * @since 1.3.0
+   */
+  public MultiProgressionFacade(ConnectionProvider connectionProvider, int concurrency) {
+    this.connectionProvider = Objects.requireNonNull(connectionProvider, "null connectionProvider.");
+
+    if(concurrency < 1){
+      throw new IllegalArgumentException("Illegal argument for 'concurrency' - must be at least 1: " + concurrency);
+    }
+
+    this.concurrency = concurrency;
+  }
+
+  /**
+   * Same as {@link #addProgression(java.lang.String, java.util.List, java.util.function.Function, java.util.function.Function, org.llorllale.liquibasefacade.VersionScheme, java.util.Collection)}
+   * with the {@link VersionScheme#dotted() default} version scheme.
+   * @param name the name of the progression, which namespaces its tags
+   * @param versions The versions used as reference.
+   * @param changesetFileLocator A function that returns the path to where the liquibase changeset file is located for a given version.
+   * @param resourceAccessorGenerator A function that returns the {@code ResourceAccessor} used to fetch a given version's changeset file.
+   * @param dependencies the names of the progressions that must be migrated before this one
+   * @throws NullPointerException if any of the parameters are {@code null}
+   * @throws IllegalArgumentException if {@code versions} is empty, if {@code name} is not a valid namespace or is
+   * already taken, or if any of the {@code dependencies} has not been added
+   * @since 1.3.0
+   */
+  public void addProgression(
+          String name, 
+          List<Version> versions, 
+          Function<Version, String> changesetFileLocator, 
+          Function<Version, ResourceAccessor> resourceAccessorGenerator, 
+          String... dependencies
+  ) {
+    addProgression(name, versions, changesetFileLocator, resourceAccessorGenerator, VersionScheme.dotted(), Arrays.asList(dependencies));
+  }
+
+  /**
+   * Adds a progression.
+   * @param name the name of the progression, which namespaces its tags
+   * @param versions The versions used as reference.
+   * @param changesetFileLocator A function that returns the path to where the liquibase changeset file is located for a given version.
+   * @param resourceAccessorGenerator A function that returns the {@code ResourceAccessor} used to fetch a given version's changeset file.
+   * @param scheme The scheme of the versions within the progression's namespace.
+   * @param dependencies the names of the progressions that must be migrated before this one
+   * @throws NullPointerException if any of the parameters are {@code null}
+   * @throws IllegalArgumentException if {@code versions} is empty, if {@code name} is not a valid namespace or is
+   * already taken, if {@code scheme} is already namespaced, or if any of the {@code dependencies} has not been added
+   * @see VersionScheme#namespaced(java.lang.String, org.llorllale.liquibasefacade.VersionScheme) 
+   * @since 1.3.0
+   */
+  public synchronized void addProgression(
+          String name, 
+          List<Version> versions, 
+          Function<Version, String> changesetFileLocator, 
+          Function<Version, ResourceAccessor> resourceAccessorGenerator, 
+          VersionScheme scheme,
+          Collection<String> dependencies
+  ) {
+    final VersionScheme namespaced = VersionScheme.namespaced(name, scheme);
+
+    if(progressions.containsKey(name)){
+      throw new IllegalArgumentException("Progression already added: " + name);
+    }
+
+    if(Objects.requireNonNull(versions, "null version list.").isEmpty()){
+      throw new IllegalArgumentException("empty version list.");
+    }
+
+    for(String dependency : Objects.requireNonNull(dependencies, "null dependencies.")){
+      if(!progressions.containsKey(dependency)){
+        throw new IllegalArgumentException(String.format("Progression %s depends on %s, which has not been added.", name, dependency));
+      }
+    }
+
+    progressions.put(
+            name, 
+            new Progression(
+                    name, 
+                    new ArrayList<>(versions), 
+                    Objects.requireNonNull(changesetFileLocator, "null changesetFileLocator function."), 
+                    Objects.requireNonNull(resourceAccessorGenerator, "null resourceAccessorGenerator function."), 
+                    namespaced, 
+                    new LinkedHashSet<>(dependencies)
+            )
+    );
+  }
+
+  /**
+   * Returns the names of the progressions, in the order they were added.
+   * @return the names of the progressions
+   * @since 1.3.0
+   */
+  public synchronized Set<String> getProgressions() {
+    return Collections.unmodifiableSet(new LinkedHashSet<>(progressions.keySet()));
+  }
+
+  /**
+   * Returns the names of the progressions that must be migrated before {@code progression}.
+   * @param progression the name of the progression
+   * @return the names of its dependencies
+   * @throws IllegalArgumentException if there is no such progression
+   * @since 1.3.0
+   */
+  public synchronized Set<String> getDependencies(String progression) {
+    return Collections.unmodifiableSet(progression(progression).dependencies);
+  }
+
+  /**
+   * Returns how each progression's facade waits for other migrations of the same progression to finish.
+   * @return the lock wait strategy
+   * @see LinearProgressionFacade#setLockWaitStrategy(org.llorllale.liquibasefacade.LockWaitStrategy) 
+   * @since 1.3.0
+   */
+  public LockWaitStrategy getLockWaitStrategy() {
+    return lockWaitStrategy;
+  }
+
+  /**
+   * Sets how each progression's facade waits for other migrations of the same progression to finish.
+   * @param lockWaitStrategy the lock wait strategy
+   * @throws NullPointerException if {@code lockWaitStrategy} is {@code null}
+   * @see LinearProgressionFacade#setLockWaitStrategy(org.llorllale.liquibasefacade.LockWaitStrategy) 
+   * @since 1.3.0
+   */
+  public void setLockWaitStrategy(LockWaitStrategy lockWaitStrategy) {
+    this.lockWaitStrategy = Objects.requireNonNull(lockWaitStrategy, "null lockWaitStrategy.");
+  }
+
+  /**
+   * Returns the current version of {@code progression}.
+   * @param progression the name of the progression
+   * @return its current version
+   * @throws IllegalArgumentException if there is no such progression
+   * @throws LiquibaseException wrapping any underlying SQLException
+   * @see LinearProgressionFacade#getCurrentVersion() 
+   * @since 1.3.0
+   */
+  public Version getCurrentVersion(String progression) throws LiquibaseException {
+    final Progression p = progression(progression);
+
+    try(Connection connection = connectionProvider.getConnection(p.name)){
+      return p.facade(connection).getCurrentVersion();
+    }catch(SQLException e){
+      throw new LiquibaseException("Unable to read the current version of progression " + p.name, e);
+    }
+  }
+
+  /**
+   * Brings {@code progression} to {@code targetVersion}. Its dependencies are left as they are.
+   * @param progression the name of the progression
+   * @param targetVersion the version to bring it to
+   * @return the result of the migration
+   * @throws IllegalArgumentException if there is no such progression, or if {@code targetVersion} is not one of its versions
+   * @throws LiquibaseException if the migration fails
+   * @see LinearProgressionFacade#applyWithResult(org.llorllale.liquibasefacade.Version) 
+   * @since 1.3.0
+   */
+  public MigrationResult apply(String progression, Version targetVersion) throws LiquibaseException {
+    Objects.requireNonNull(targetVersion, "null targetVersion.");
+    return migrate(progression(progression), targetVersion);
+  }
+
+  /**
+   * Brings every progression to its latest version. Each progression is migrated once all of its dependencies have
+   * been, and up to {@code concurrency} progressions that do not depend on one another are migrated at the same time.
+   * When a progression fails, the progressions that depend on it, directly or not, are not migrated; the others are.
+   * @return the result of each progression's migration, in the order they were added
+   * @throws LiquibaseException if any progression failed, with the first failure as its cause and the others 
+   * suppressed
+   * @throws InterruptedException if interrupted while waiting for the migrations to complete
+   * @see LinearProgressionFacade#applyAllWithResult() 
+   * @since 1.3.0
+   */
+  public Map<String, MigrationResult> applyAll() throws LiquibaseException, InterruptedException {
+    final List<Progression> graph;
+
+    synchronized(this){
+      graph = new ArrayList<>(progressions.values());
+    }
+
+    Map<String, CompletableFuture<MigrationResult>> futures = new LinkedHashMap<>();
+    Map<String, MigrationResult> results = new LinkedHashMap<>(); //return variable
+    Set<String> failed = new LinkedHashSet<>();
+    Set<String> skipped = new LinkedHashSet<>();
+    List<Exception> failures = new ArrayList<>();
+    LiquibaseServices.initialize();
+
+    if(!graph.isEmpty()){
+      initializeLockTable(graph.get(0).name);
+    }
+
+    ExecutorService executor = newExecutor();
+
+    try{
+      //progressions are added after their dependencies
+      for(Progression progression : graph){
+        CompletableFuture<?>[] dependencies = progression.dependencies.stream().map(futures::get).toArray(CompletableFuture<?>[]::new);
+        futures.put(progression.name, CompletableFuture.allOf(dependencies).thenApplyAsync(ignored -> {
+          try{
+            return migrate(progression, null);
+          }catch(LiquibaseException e){
+            throw new CompletionException(e);
+          }
+        }, executor));
+      }
+
+      for(Progression progression : graph){
+        try{
+          results.put(progression.name, futures.get(progression.name).get());
+        }catch(ExecutionException e){
+          if(progression.dependencies.stream().anyMatch(d -> failed.contains(d) || skipped.contains(d))){
+            skipped.add(progression.name);
+            continue;
+          }
+
+          failed.add(progression.name);
+          failures.add(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        }
+      }
+    }catch(InterruptedException e){
+      futures.values().forEach(f -> f.cancel(true));
+      throw e;
+    }finally{
+      executor.shutdown();
+    }
+
+    if(!failures.isEmpty()){
+      LiquibaseException error = new LiquibaseException(
+              String.format("Progressions %s failed; %s were not migrated; %s were migrated.", failed, skipped, results.keySet()),
+              failures.get(0)
+      );
+      failures.subList(1, failures.size()).forEach(error::addSuppressed);
+      throw error;
+    }
+
+    return Collections.unmodifiableMap(results);
+  }
+
+  /**
+   * @param targetVersion the version to bring the progression to; {@code null} for its latest
+   */
+  private MigrationResult migrate(Progression progression, Version targetVersion) throws LiquibaseException {
+    try(Connection connection = connectionProvider.getConnection(progression.name)){
+      LinearProgressionFacade facade = progression.facade(connection);
+      return targetVersion == null ? facade.applyAllWithResult() : facade.applyWithResult(targetVersion);
+    }catch(SQLException e){
+      throw new LiquibaseException("Unable to migrate progression " + progression.name, e);
+    }
+  }
+
+  /**
+   * Liquibase creates its changelog lock table, if missing, before taking the lock, so that progressions migrated
+   * concurrently on a new database would race to create it: it is created beforehand.
+   */
+  private void initializeLockTable(String progression) throws LiquibaseException {
+    try(Connection connection = connectionProvider.getConnection(progression)){
+      Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+      LockServiceFactory.getInstance().getLockService(database).init();
+    }catch(SQLException e){
+      throw new LiquibaseException("Unable to create liquibase's changelog lock table.", e);
+    }
+  }
+
+  private synchronized Progression progression(String name) {
+    Progression progression = progressions.get(Objects.requireNonNull(name, "null progression."));
+
+    if(progression == null){
+      throw new IllegalArgumentException("No such progression: " + name);
+    }
+
+    return progression;
+  }
+
+  private ExecutorService newExecutor() {
+    final AtomicInteger count = new AtomicInteger();
+
+    return Executors.newFixedThreadPool(concurrency, r -> {
+      Thread thread = new Thread(r, "liquibase-facade-progression-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  private final class Progression {
+    private final String name;
+    private final List<Version> versions;
+    private final Function<Version, String> changesetFileLocator;
+    private final Function<Version, ResourceAccessor> resourceAccessorGenerator;
+    private final VersionScheme scheme;
+    private final Set<String> dependencies;
+
+    private Progression(
+            String name, 
+            List<Version> versions, 
+            Function<Version, String> changesetFileLocator, 
+            Function<Version, ResourceAccessor> resourceAccessorGenerator, 
+            VersionScheme scheme, 
+            Set<String> dependencies
+    ) {
+      this.name = name;
+      this.versions = versions;
+      this.changesetFileLocator = changesetFileLocator;
+      this.resourceAccessorGenerator = resourceAccessorGenerator;
+      this.scheme = scheme;
+      this.dependencies = dependencies;
+    }
+
+    private LinearProgressionFacade facade(Connection connection) throws LiquibaseException {
+      LinearProgressionFacade facade = new LinearProgressionFacade(connection, versions, changesetFileLocator, resourceAccessorGenerator, scheme);
+      facade.setChecksumCache(checksumCache);
+      facade.setLockWaitStrategy(lockWaitStrategy);
+      facade.setLiquibaseMutex(liquibaseMutex);
+      return facade;
+    }
+  }
+}
@@ -0,0 +1,446 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.change.custom.CustomTaskRollback;
+import liquibase.database.Database;
+import liquibase.database.core.HsqlDatabase;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.RollbackImpossibleException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * Alters a large table without blocking its writers for the whole of the alteration, by altering a copy of it and
+ * swapping the copy in once it has caught up.<br>
+ * Usage:
+ * <pre>
+ * &lt;changeSet id="8" author="..." runInTransaction="false"&gt;
+ *   &lt;customChange class="org.llorllale.liquibasefacade.OnlineAlterTableChange"
+ *       tableName="big_table" keyColumn="id" alter="add column status varchar(10) default 'NEW' not null"
+ *       rollbackAlter="drop column status" chunkSize="10000"/&gt;
+ * &lt;/changeSet&gt;
+ * </pre>
+ * The change:
+ * <ol>
+ * <li>creates the shadow table {@code <tableName>_OSC} with the table's columns, their defaults and nullability, and its
+ * primary key, and applies each of the {@code ;}-separated {@code alter} clauses to it as
+ * {@code alter table <shadow> <clause>};</li>
+ * <li>creates triggers on the table that replay its inserts, updates and deletes on the shadow;</li>
+ * <li>copies the table's rows to the shadow in ranges of its numeric key, committing after each range;</li>
+ * <li>renames the table to {@code <shadow>_OLD}, drops the triggers, renames the shadow to the table's name and drops
+ * the old table.</li>
+ * </ol>
+ * Only the columns the table and the shadow have in common are copied, so columns added by {@code alter} take their
+ * default values. Indexes and constraints other than the primary key are not copied: add them with {@code alter}
+ * clauses. Tables referenced by foreign keys cannot be altered online, since the keys would not follow the swap.<br>
+ * Writers are only held up while a range is copied, and see the table missing for the instant between the two
+ * renames. The shadow and its triggers are created with HSQLDB's dialect of SQL, so the change only runs on HSQLDB;
+ * validation fails on any other database.<br>
+ * Progress is recorded in the {@code DATABASECHANGELOGCHUNK} table after each range, so a migration that is
+ * interrupted resumes where it stopped. Since the changeSet only completes once the shadow is swapped in, the facade
+ * tags its version only after the swap; the facade refuses to run the change within a transaction.<br>
+ * If {@code rollbackAlter} is given, rolling back alters the table online again with it; otherwise the change cannot
+ * be rolled back.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+public class OnlineAlterTableChange implements CustomTaskChange, CustomTaskRollback {
+  private String tableName;
+  private String keyColumn;
+  private String alter;
+  private String rollbackAlter;
+  private Integer chunkSize = 1000;
+  private long rowsCopied;
+  private int chunks;
+
+  public String getTableName() {
+    return tableName;
+  }
+
+  /**
+   *
+   * @param tableName the table to alter
+   */
+  public void setTableName(String tableName) {
+    this.tableName = tableName;
+  }
+
+  public String getKeyColumn() {
+    return keyColumn;
+  }
+
+  /**
+   *
+   * @param keyColumn the table's numeric primary key column, used to split the table into ranges
+   */
+  public void setKeyColumn(String keyColumn) {
+    this.keyColumn = keyColumn;
+  }
+
+  public String getAlter() {
+    return alter;
+  }
+
+  /**
+   *
+   * @param alter the {@code ;}-separated clauses of the {@code alter table} statements to apply, eg.
+   * {@code add column status varchar(10)}
+   */
+  public void setAlter(String alter) {
+    this.alter = alter;
+  }
+
+  public String getRollbackAlter() {
+    return rollbackAlter;
+  }
+
+  /**
+   *
+   * @param rollbackAlter the {@code ;}-separated clauses that undo {@link #setAlter(java.lang.String) alter}, if any
+   */
+  public void setRollbackAlter(String rollbackAlter) {
+    this.rollbackAlter = rollbackAlter;
+  }
+
+  public Integer getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   *
+   * @param chunkSize the width of each key range copied; defaults to {@code 1000}
+   */
+  public void setChunkSize(Integer chunkSize) {
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   *
+   * @return the name of the copy of the table that is altered
+   */
+  public String getShadowTableName() {
+    return tableName + "_OSC";
+  }
+
+  @Override
+  public void execute(Database database) throws CustomChangeException {
+    run(database, alter, "online:" + tableName);
+  }
+
+  @Override
+  public void rollback(Database database) throws CustomChangeException, RollbackImpossibleException {
+    if(rollbackAlter == null){
+      throw new RollbackImpossibleException("No rollbackAlter given for online alteration of " + tableName);
+    }
+
+    run(database, rollbackAlter, "online:" + tableName + ":rollback");
+  }
+
+  @Override
+  public String getConfirmationMessage() {
+    return String.format("Altered %s online, copying %d rows in %d chunks", tableName, rowsCopied, chunks);
+  }
+
+  @Override
+  public void setUp() {
+  }
+
+  @Override
+  public void setFileOpener(ResourceAccessor resourceAccessor) {
+  }
+
+  @Override
+  public ValidationErrors validate(Database database) {
+    ValidationErrors errors = new ValidationErrors();
+    errors.checkRequiredField("tableName", tableName);
+    errors.checkRequiredField("keyColumn", keyColumn);
+    errors.checkRequiredField("alter", alter);
+
+    if(chunkSize == null || chunkSize < 1){
+      errors.addError("chunkSize must be at least 1");
+    }
+
+    if(database != null && !(database instanceof HsqlDatabase)){
+      errors.addError("Online alteration is only supported on HSQLDB, not on " + database.getShortName());
+    }
+
+    return errors;
+  }
+
+  private void run(Database database, String clauses, String id) throws CustomChangeException {
+    Connection connection = ((JdbcConnection) database.getConnection()).getWrappedConnection();
+    rowsCopied = 0;
+    chunks = 0;
+
+    try{
+      final boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+
+      try{
+        ChunkedUpdateChange.ensureProgressTable(connection);
+        Tables tables = new Tables(connection);
+        Long last = ChunkedUpdateChange.lastKey(connection, id);
+
+        //an interrupted swap has already renamed the table
+        if(last == null || !tables.exists(tables.old)){
+          if(last == null){
+            tables.errorIfReferenced();
+            tables.dropShadow();
+            tables.createShadow(clauses);
+            ChunkedUpdateChange.saveProgress(connection, id, Long.MIN_VALUE, false);
+            connection.commit();
+          }
+
+          copy(connection, tables, id, last);
+        }
+
+        tables.swap();
+        ChunkedUpdateChange.deleteProgress(connection, id);
+        connection.commit();
+      }catch(SQLException e){
+        connection.rollback();
+        throw e;
+      }finally{
+        connection.setAutoCommit(autoCommit);
+      }
+    }catch(SQLException e){
+      throw new CustomChangeException("Online alteration of " + tableName + " failed after " + chunks + " chunks.", e);
+    }
+  }
+
+  /**
+   * Copies the rows of the table missing from the shadow, range by range, starting after {@code last}.
+   */
+  private void copy(Connection connection, Tables tables, String id, Long last) throws SQLException {
+    final String columns = String.join(", ", tables.columns());
+    final String sql = String.format(
+            "insert into %s (%s) select %s from %s t where t.%s between ? and ? and not exists (select 1 from %s s where s.%s = t.%s)",
+            tables.shadow, columns, columns, tables.table, tables.key, tables.shadow, tables.key, tables.key
+    );
+    long[] range = keyRange(connection, tables);
+
+    if(range == null){
+      return;
+    }
+
+    long lo = last == null || last == Long.MIN_VALUE ? range[0] : Math.max(range[0], last + 1);
+
+    try(PreparedStatement insert = connection.prepareStatement(sql)){
+      while(lo <= range[1]){
+        final long hi = Math.min(range[1], lo + chunkSize - 1);
+        insert.setLong(1, lo);
+        insert.setLong(2, hi);
+        rowsCopied += insert.executeUpdate();
+        ChunkedUpdateChange.saveProgress(connection, id, hi, true);
+        connection.commit();
+        chunks++;
+        lo = hi + 1;
+      }
+    }
+  }
+
+  private static long[] keyRange(Connection connection, Tables tables) throws SQLException {
+    try(Statement stmt = connection.createStatement();
+            ResultSet result = stmt.executeQuery(String.format("select min(%s), max(%s) from %s", tables.key, tables.key, tables.table))){
+      result.next();
+      final long min = result.getLong(1);
+
+      if(result.wasNull()){
+        return null;
+      }
+
+      return new long[]{min, result.getLong(2)};
+    }
+  }
+
+  /**
+   * The names of the table, its shadow and the triggers between them, quoted in the case the database stores them.
+   */
+  private final class Tables {
+    private final Connection connection;
+    private final DatabaseMetaData md;
+    private final String schema;
+    private final String tableName;
+    private final String shadowName;
+    private final String table;
+    private final String shadow;
+    private final String old;
+    private final String key;
+    private final String[] triggers;
+    private List<String> columns;
+
+    private Tables(Connection connection) throws SQLException {
+      this.connection = connection;
+      this.md = connection.getMetaData();
+      this.schema = connection.getSchema();
+      this.tableName = ImpactEstimator.identifier(md, OnlineAlterTableChange.this.tableName);
+      this.shadowName = ImpactEstimator.identifier(md, getShadowTableName());
+      this.table = quote(tableName);
+      this.shadow = quote(shadowName);
+      this.old = quote(shadowName + "_OLD");
+      this.key = quote(ImpactEstimator.identifier(md, keyColumn));
+      this.triggers = new String[]{quote(shadowName + "_INS"), quote(shadowName + "_UPD"), quote(shadowName + "_DEL")};
+    }
+
+    private String quote(String name) throws SQLException {
+      final String quote = md.getIdentifierQuoteString().trim();
+      return quote + name + quote;
+    }
+
+    private boolean exists(String quoted) throws SQLException {
+      try(ResultSet result = md.getTables(null, schema, quoted.substring(1, quoted.length() - 1), new String[]{"TABLE"})){
+        return result.next();
+      }
+    }
+
+    private void errorIfReferenced() throws SQLException {
+      try(ResultSet result = md.getExportedKeys(null, schema, tableName)){
+        if(result.next()){
+          throw new SQLException(
+                  String.format(
+                          "%s is referenced by foreign key %s of %s, which would not follow it to its altered copy",
+                          tableName,
+                          result.getString("FK_NAME"),
+                          result.getString("FKTABLE_NAME")
+                  )
+          );
+        }
+      }
+    }
+
+    /**
+     * Drops the leftovers of an attempt interrupted before the shadow was set up.
+     */
+    private void dropShadow() throws SQLException {
+      try(Statement stmt = connection.createStatement()){
+        for(String trigger : triggers){
+          stmt.execute(String.format("drop trigger %s if exists", trigger));
+        }
+
+        if(exists(shadow)){
+          stmt.execute("drop table " + shadow);
+        }
+      }
+    }
+
+    private void createShadow(String clauses) throws SQLException {
+      try(Statement stmt = connection.createStatement()){
+        stmt.execute(String.format("create table %s (like %s including defaults)", shadow, table));
+
+        //like copies neither nullability nor the primary key
+        try(ResultSet result = md.getColumns(null, schema, tableName, null)){
+          while(result.next()){
+            if("NO".equals(result.getString("IS_NULLABLE"))){
+              stmt.addBatch(String.format("alter table %s alter column %s set not null", shadow, quote(result.getString("COLUMN_NAME"))));
+            }
+          }
+        }
+
+        stmt.executeBatch();
+        stmt.execute(String.format("alter table %s add primary key (%s)", shadow, key));
+
+        for(String clause : clauses.split(";")){
+          if(!clause.trim().isEmpty()){
+            stmt.execute(String.format("alter table %s %s", shadow, clause.trim()));
+          }
+        }
+
+        final String columns = String.join(", ", columns());
+        final String values = "n." + String.join(", n.", this.columns);
+        stmt.execute(
+                String.format(
+                        "create trigger %s after insert on %s referencing new row as n for each row insert into %s (%s) values (%s)",
+                        triggers[0], table, shadow, columns, values
+                )
+        );
+        stmt.execute(
+                String.format(
+                        "create trigger %s after update on %s referencing old row as o new row as n for each row "
+                                + "begin atomic delete from %s where %s = o.%s; insert into %s (%s) values (%s); end",
+                        triggers[1], table, shadow, key, key, shadow, columns, values
+                )
+        );
+        stmt.execute(
+                String.format(
+                        "create trigger %s after delete on %s referencing old row as o for each row delete from %s where %s = o.%s",
+                        triggers[2], table, shadow, key, key
+                )
+        );
+      }
+    }
+
+    /**
+     * Returns the columns the table and its shadow have in common, in the table's order.
+     */
+    private List<String> columns() throws SQLException {
+      if(columns == null){
+        Set<String> shadowColumns = new HashSet<>();
+
+        try(ResultSet result = md.getColumns(null, schema, shadowName, null)){
+          while(result.next()){
+            shadowColumns.add(result.getString("COLUMN_NAME"));
+          }
+        }
+
+        columns = new ArrayList<>();
+
+        try(ResultSet result = md.getColumns(null, schema, tableName, null)){
+          while(result.next()){
+            if(shadowColumns.contains(result.getString("COLUMN_NAME"))){
+              columns.add(quote(result.getString("COLUMN_NAME")));
+            }
+          }
+        }
+      }
+
+      return columns;
+    }
+
+    /**
+     * Swaps the shadow in, skipping the steps an interrupted swap already took.
+     */
+    private void swap() throws SQLException {
+      try(Statement stmt = connection.createStatement()){
+        if(!exists(old)){
+          stmt.execute(String.format("alter table %s rename to %s", table, old));
+        }
+
+        for(String trigger : triggers){
+          stmt.execute(String.format("drop trigger %s if exists", trigger));
+        }
+
+        if(exists(shadow)){
+          stmt.execute(String.format("alter table %s rename to %s", shadow, table));
+        }
+
+        stmt.execute("drop table " + old);
+      }
+    }
+  }
+}
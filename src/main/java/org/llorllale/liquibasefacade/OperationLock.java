@@ -0,0 +1,212 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import liquibase.exception.LiquibaseException;
+import liquibase.exception.LockException;
+
+/**
+ * The lock held by a facade for the whole of an upgrade or downgrade, so that concurrent migrations of the same
+ * database run one after the other.<br>
+ * Liquibase takes and releases its own lock around every update, rollback and tag, and the facade runs several of
+ * those per migration; between them, another instance could take liquibase's lock and interleave its own changes.
+ * Holding this lock for the whole migration means liquibase's lock is never contended, so liquibase's fixed
+ * polling never kicks in, and instances that must wait do so with a {@link LockWaitStrategy}.<br>
+ * The lock is a row of its own table: it is taken by inserting the row, and released by deleting it. Each
+ * {@link VersionScheme#namespaced(java.lang.String, org.llorllale.liquibasefacade.VersionScheme) namespaced}
+ * progression has a row of its own, named after its namespace, so that progressions sharing a database do not wait for
+ * one another; the row of progressions without a namespace is named {@code *}.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+final class OperationLock {
+  static final String LOCK_TABLE = "databasechangelogfacadelock".toUpperCase();
+
+  private static final String SQL_CREATE_TABLE = String.format(
+          "create table %s (name varchar(255) not null, lockedby varchar(255) not null, lockgranted timestamp not null, primary key (name))",
+          LOCK_TABLE
+  );
+
+  private static final String SQL_INSERT = String.format("insert into %s (name, lockedby, lockgranted) values (?,?,?)", LOCK_TABLE);
+
+  private static final String SQL_DELETE = String.format("delete from %s where name = ?", LOCK_TABLE);
+
+  private static final String SQL_GET_HOLDER = String.format("select lockedby, lockgranted from %s where name = ?", LOCK_TABLE);
+
+  private static final String HOLDER = ManagementFactory.getRuntimeMXBean().getName();
+
+  private final Connection connection;
+  private final String name;
+  private boolean tableExists;
+
+  /**
+   *
+   * @param connection the JDBC connection holding the lock
+   * @param namespace the namespace of the progression taking the lock; {@code null} if it has none
+   */
+  OperationLock(Connection connection, String namespace) {
+    this.connection = connection;
+    this.name = namespace == null ? "*" : namespace;
+  }
+
+  /**
+   * Takes the lock, waiting for it as per {@code strategy} if another facade holds it.
+   * @param strategy how to wait for the lock
+   * @return the time spent waiting for the lock
+   * @throws LockException if the lock could not be taken within the strategy's maximum wait, or if the thread was
+   * interrupted while waiting for it
+   * @throws LiquibaseException wrapping any underlying SQLException
+   */
+  Duration acquire(LockWaitStrategy strategy) throws LiquibaseException {
+    final long start = System.nanoTime();
+    final long deadline = start + strategy.getMaxWait().toNanos();
+
+    for(int attempt = 0; !tryAcquire(); attempt++){
+      final long now = System.nanoTime();
+
+      if(now - deadline >= 0){
+        throw new LockException(
+                String.format(
+                        "Could not acquire the migration lock within %s: %s. If its holder is gone, delete the row named '%s' from %s.",
+                        strategy.getMaxWait(),
+                        holder(),
+                        name,
+                        LOCK_TABLE
+                )
+        );
+      }
+
+      try{
+        TimeUnit.NANOSECONDS.sleep(Math.min(strategy.delayNanos(attempt, ThreadLocalRandom.current()), deadline - now));
+      }catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+        throw new LockException(e);
+      }
+    }
+
+    return Duration.ofNanos(System.nanoTime() - start);
+  }
+
+  /**
+   * Releases the lock.
+   * @throws LiquibaseException wrapping any underlying SQLException
+   */
+  void release() throws LiquibaseException {
+    try(PreparedStatement stmt = connection.prepareStatement(SQL_DELETE)){
+      stmt.setString(1, name);
+      stmt.execute();
+      commit();
+    }catch(SQLException e){
+      throw new LiquibaseException("Unable to release the migration lock.", e);
+    }
+  }
+
+  private boolean tryAcquire() throws LiquibaseException {
+    try{
+      if(!tableExists()){
+        createTable();
+      }
+
+      try(PreparedStatement stmt = connection.prepareStatement(SQL_INSERT)){
+        stmt.setString(1, name);
+        stmt.setString(2, HOLDER);
+        stmt.setTimestamp(3, Timestamp.from(Instant.now()));
+        stmt.execute();
+      }
+
+      commit();
+      return true;
+    }catch(SQLException e){
+      rollback(e);
+
+      //integrity constraint violation: the row is already there
+      if(e.getSQLState() != null && e.getSQLState().startsWith("23")){
+        return false;
+      }
+
+      throw new LiquibaseException("Unable to acquire the migration lock.", e);
+    }
+  }
+
+  private void createTable() throws SQLException {
+    try(Statement stmt = connection.createStatement()){
+      stmt.execute(SQL_CREATE_TABLE);
+      commit();
+    }catch(SQLException e){
+      rollback(e);
+      tableExists = false;
+
+      //another instance may have created it first
+      if(!tableExists()){
+        throw e;
+      }
+    }
+
+    tableExists = true;
+  }
+
+  private String holder() throws LiquibaseException {
+    try(PreparedStatement stmt = connection.prepareStatement(SQL_GET_HOLDER)){
+      stmt.setString(1, name);
+
+      try(ResultSet result = stmt.executeQuery()){
+        return result.next() ? String.format("held by %s since %s", result.getString(1), result.getTimestamp(2)) : "released";
+      }
+    }catch(SQLException e){
+      throw new LiquibaseException("Unable to read the migration lock's holder.", e);
+    }
+  }
+
+  private void commit() throws SQLException {
+    if(!connection.getAutoCommit()){
+      connection.commit();
+    }
+  }
+
+  private void rollback(SQLException cause) {
+    try{
+      if(!connection.getAutoCommit()){
+        connection.rollback();
+      }
+    }catch(SQLException e){
+      cause.addSuppressed(e);
+    }
+  }
+
+  private boolean tableExists() throws SQLException {
+    if(!tableExists){
+      DatabaseMetaData md = connection.getMetaData();
+
+      try(ResultSet r = md.getTables(null, null, LOCK_TABLE, new String[]{"TABLE"})){
+        tableExists = r.next();
+      }
+    }
+
+    return tableExists;
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import liquibase.change.Change;
+import liquibase.change.CheckSum;
+import liquibase.changelog.ChangeLogParameters;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.database.Database;
+import liquibase.exception.LiquibaseException;
+import liquibase.exception.ValidationErrors;
+import liquibase.parser.ChangeLogParserFactory;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * A version's changelog, parsed and validated ahead of the migrations that use it.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+final class PreparedChangeLog {
+  private final Version version;
+  private final ResourceAccessor resourceAccessor;
+  private final DatabaseChangeLog changeLog;
+  private final List<CheckSum> checkSums;
+
+  private PreparedChangeLog(Version version, ResourceAccessor resourceAccessor, DatabaseChangeLog changeLog, List<CheckSum> checkSums) {
+    this.version = version;
+    this.resourceAccessor = resourceAccessor;
+    this.changeLog = changeLog;
+    this.checkSums = checkSums;
+  }
+
+  /**
+   * Parses the changelog at {@code path}, computes the checksums of its changeSets and validates them.<br>
+   * Validation covers duplicate changeSets, each change's own validation, and the checksums of changeSets already
+   * recorded in liquibase's history.
+   * @param version the version the changelog belongs to
+   * @param path the changelog's path
+   * @param resourceAccessor the accessor used to read the changelog
+   * @param database the database the changelog will be applied to; only used to parse and validate
+   * @param checksumCache the cache the changeSets' checksums are taken from
+   * @param history the checksums recorded in liquibase's history, keyed by {@link #historyKey(java.lang.String, java.lang.String, java.lang.String) changeSet}
+   * @return the prepared changelog
+   * @throws LiquibaseException if the changelog cannot be parsed or is invalid
+   */
+  static PreparedChangeLog prepare(Version version, String path, ResourceAccessor resourceAccessor, Database database, ChecksumCache checksumCache, Map<String, String> history) throws LiquibaseException {
+    final DatabaseChangeLog changeLog;
+
+    try{
+      changeLog = ChangeLogParserFactory.getInstance()
+              .getParser(path, resourceAccessor)
+              .parse(path, new ChangeLogParameters(database), resourceAccessor);
+    }catch(LiquibaseException e){
+      throw new LiquibaseException(String.format("Unable to parse changelog %s for version %s.", path, version.string()), e);
+    }
+
+    final List<CheckSum> checkSums = checksumCache.checkSums(path, changeLog, resourceAccessor, database);
+    ValidationErrors errors = new ValidationErrors();
+    Set<String> seen = new HashSet<>();
+
+    for(int i = 0; i < checkSums.size(); i++){
+      final ChangeSet changeSet = changeLog.getChangeSets().get(i);
+      final CheckSum checkSum = checkSums.get(i);
+      final String key = historyKey(changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor());
+
+      if(!seen.add(key)){
+        errors.addError("Duplicate changeSet " + changeSet);
+      }
+
+      for(Change change : changeSet.getChanges()){
+        errors.addAll(change.validate(database), changeSet);
+      }
+
+      final String stored = history.get(key);
+
+      if(stored != null && !changeSet.isRunOnChange()){
+        final CheckSum storedCheckSum = CheckSum.parse(stored);
+
+        if(storedCheckSum.getVersion() == checkSum.getVersion() && !changeSet.isCheckSumValid(storedCheckSum)){
+          errors.addError(String.format("Checksum of changeSet %s changed since it was applied. Was %s but is now %s", changeSet, stored, checkSum));
+        }
+      }
+    }
+
+    if(errors.hasErrors()){
+      throw new LiquibaseException(String.format("Invalid changelog %s for version %s: %s", path, version.string(), errors.getErrorMessages()));
+    }
+
+    return new PreparedChangeLog(version, resourceAccessor, changeLog, checkSums);
+  }
+
+  static String historyKey(String filePath, String id, String author) {
+    return filePath + "::" + id + "::" + author;
+  }
+
+  Version getVersion() {
+    return version;
+  }
+
+  ResourceAccessor getResourceAccessor() {
+    return resourceAccessor;
+  }
+
+  DatabaseChangeLog getChangeLog() {
+    return changeLog;
+  }
+
+  /**
+   *
+   * @return the checksums of the changelog's changeSets, in changelog order
+   */
+  List<CheckSum> getCheckSums() {
+    return checkSums;
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import javax.sql.DataSource;
+import liquibase.exception.LiquibaseException;
+
+/**
+ * A read-only replica of the facade's database, given either as a single {@link Connection} or as a
+ * {@link DataSource} from which a connection is borrowed for each read.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+final class ReadReplica {
+  private final Connection connection;
+  private final DataSource dataSource;
+  private final Duration maxStaleness;
+
+  /**
+   * A read performed on a connection.
+   * @param <T> the type of the value read
+   */
+  @FunctionalInterface
+  interface Read<T> {
+    T read(Connection connection) throws LiquibaseException;
+  }
+
+  ReadReplica(Connection connection, Duration maxStaleness) {
+    this.connection = connection;
+    this.dataSource = null;
+    this.maxStaleness = maxStaleness;
+  }
+
+  ReadReplica(DataSource dataSource, Duration maxStaleness) {
+    this.connection = null;
+    this.dataSource = dataSource;
+    this.maxStaleness = maxStaleness;
+  }
+
+  Duration getMaxStaleness() {
+    return maxStaleness;
+  }
+
+  /**
+   * Performs {@code read} on the replica, returning the borrowed connection to the data source afterwards.
+   * @param <T> the type of the value read
+   * @param read the read to perform
+   * @return the value read
+   * @throws LiquibaseException thrown by {@code read}, or wrapping any SQLException thrown while borrowing or
+   * returning the connection
+   */
+  <T> T read(Read<T> read) throws LiquibaseException {
+    if(connection != null){
+      return read.read(connection);
+    }
+
+    try(Connection borrowed = dataSource.getConnection()){
+      return read.read(borrowed);
+    }catch(SQLException e){
+      throw new LiquibaseException("Unable to read from the replica.", e);
+    }
+  }
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import liquibase.change.Change;
+import liquibase.change.custom.CustomChangeWrapper;
+import liquibase.changelog.ChangeSet;
+import liquibase.database.Database;
+import liquibase.datatype.DataTypeFactory;
+import liquibase.exception.LiquibaseException;
+import liquibase.exception.RollbackImpossibleException;
+import liquibase.sql.Sql;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.statement.SqlStatement;
+
+/**
+ * Stores, per version, the SQL that rolls back each of its changeSets, generated right after the version is applied,
+ * so that downgrades can run it without parsing changelogs or resolving resource accessors.<br>
+ * Each row holds one statement of a changeSet's rollback, in the order they are to be run; a row without a statement
+ * follows the statements of each changeSet, marking the point where the changeSet is removed from liquibase's
+ * history and the transaction is committed. Plans are run while holding liquibase's changelog lock, like liquibase's
+ * own rollbacks. Each row also holds the checksum of its changeSet, so that a plan is only
+ * run against the changeSets it was generated from.<br>
+ * Versions holding changeSets whose rollback depends on the database's state at the time it is run, or on Java code,
+ * or on SQL visitors, get no plan: they are rolled back from their changelogs.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+final class RollbackPlans {
+  static final String PLAN_TABLE = "databasechangelogrollback".toUpperCase();
+
+  private static final String CHANGELOG_TABLE = "databasechangelog".toUpperCase();
+
+  private static final String SQL_CREATE_TABLE = "create table %s (tag varchar(255) not null, ordinal int not null, id varchar(255) not null, author varchar(255) not null, filename varchar(255) not null, md5sum varchar(35), statement %s, primary key (tag, ordinal))";
+
+  private static final String SQL_INSERT = String.format("insert into %s (tag, ordinal, id, author, filename, md5sum, statement) values (?,?,?,?,?,?,?)", PLAN_TABLE);
+
+  private static final String SQL_GET_PLAN = String.format("select id, author, filename, md5sum, statement from %s where tag = ? order by ordinal", PLAN_TABLE);
+
+  private static final String SQL_DELETE = String.format("delete from %s where tag = ?", PLAN_TABLE);
+
+  private static final String SQL_DELETE_HISTORY = String.format("delete from %s where id = ? and author = ? and filename = ?", CHANGELOG_TABLE);
+
+  private final Connection connection;
+  private final String namespace;
+  private boolean tableExists;
+
+  /**
+   * The rollback of one changeSet.
+   */
+  static final class Step {
+    private final String id;
+    private final String author;
+    private final String filePath;
+    private final String checkSum;
+    private final List<String> statements;
+
+    private Step(String id, String author, String filePath, String checkSum, List<String> statements) {
+      this.id = id;
+      this.author = author;
+      this.filePath = filePath;
+      this.checkSum = checkSum;
+      this.statements = statements;
+    }
+
+    String getId() {
+      return id;
+    }
+
+    String getAuthor() {
+      return author;
+    }
+
+    String getFilePath() {
+      return filePath;
+    }
+
+    List<String> getStatements() {
+      return statements;
+    }
+
+    String historyKey() {
+      return PreparedChangeLog.historyKey(filePath, id, author);
+    }
+  }
+
+  /**
+   *
+   * @param connection the JDBC connection holding the plans
+   * @param namespace the namespace of the progression whose versions are planned; {@code null} if it has none
+   */
+  RollbackPlans(Connection connection, String namespace) {
+    this.connection = connection;
+    this.namespace = namespace;
+  }
+
+  /**
+   * Generates and stores the plan that rolls back {@code changeSets}, replacing any plan stored for {@code version}.
+   * @param version the version just applied
+   * @param changeSets the changeSets of {@code version}'s changelog, in the order they were applied
+   * @param database the database liquibase applied them on
+   * @return whether a plan could be generated; if not, any plan stored for {@code version} is removed
+   * @throws LiquibaseException if the statements cannot be generated, or wrapping any underlying SQLException
+   */
+  boolean store(Version version, List<ChangeSet> changeSets, Database database) throws LiquibaseException {
+    List<Step> plan = new ArrayList<>();
+
+    for(int i = changeSets.size() - 1; i >= 0; i--){
+      final ChangeSet changeSet = changeSets.get(i);
+      final List<String> statements = rollbackSql(changeSet, database);
+
+      if(statements == null){
+        delete(version);
+        return false;
+      }
+
+      plan.add(new Step(changeSet.getId(), changeSet.getAuthor(), changeSet.getFilePath(), changeSet.generateCheckSum().toString(), statements));
+    }
+
+    try{
+      if(!tableExists()){
+        try(Statement stmt = connection.createStatement()){
+          stmt.execute(String.format(SQL_CREATE_TABLE, PLAN_TABLE, DataTypeFactory.getInstance().fromDescription("clob", database).toDatabaseDataType(database)));
+        }
+
+        tableExists = true;
+      }
+
+      delete(version);
+
+      try(PreparedStatement stmt = connection.prepareStatement(SQL_INSERT)){
+        int ordinal = 0;
+
+        for(Step step : plan){
+          for(int s = 0; s <= step.statements.size(); s++){
+            stmt.setString(1, key(version));
+            stmt.setInt(2, ordinal++);
+            stmt.setString(3, step.id);
+            stmt.setString(4, step.author);
+            stmt.setString(5, step.filePath);
+            stmt.setString(6, step.checkSum);
+            stmt.setString(7, s < step.statements.size() ? step.statements.get(s) : null);
+            stmt.addBatch();
+          }
+        }
+
+        stmt.executeBatch();
+      }
+
+      commit();
+    }catch(SQLException e){
+      throw new LiquibaseException("Unable to store the rollback plan of version " + version, e);
+    }
+
+    return true;
+  }
+
+  /**
+   * Returns the plan stored for {@code version}, if it still matches the changeSets applied.
+   * @param version the version to roll back
+   * @param history the checksums of the changeSets applied, by {@link PreparedChangeLog#historyKey(java.lang.String, java.lang.String, java.lang.String) history key}
+   * @return the rollback of each changeSet, in the order they are to be run; {@code null} if there is no plan for
+   * {@code version}, or if any of its changeSets is not applied with the checksum it was planned with
+   * @throws LiquibaseException wrapping any underlying SQLException
+   */
+  List<Step> read(Version version, Map<String, String> history) throws LiquibaseException {
+    if(!tableExists()){
+      return null;
+    }
+
+    List<Step> plan = new ArrayList<>(); //return variable
+
+    try(PreparedStatement stmt = connection.prepareStatement(SQL_GET_PLAN)){
+      stmt.setString(1, key(version));
+
+      try(ResultSet result = stmt.executeQuery()){
+        List<String> statements = new ArrayList<>();
+
+        while(result.next()){
+          final String statement = result.getString(5);
+
+          if(statement != null){
+            statements.add(statement);
+          }else{
+            Step step = new Step(result.getString(1), result.getString(2), result.getString(3), result.getString(4), statements);
+
+            if(step.checkSum == null || !step.checkSum.equals(history.get(step.historyKey()))){
+              return null;
+            }
+
+            plan.add(step);
+            statements = new ArrayList<>();
+          }
+        }
+      }
+    }catch(SQLException e){
+      throw new LiquibaseException("Unable to read the rollback plan of version " + version, e);
+    }
+
+    return plan.isEmpty() ? null : plan;
+  }
+
+  /**
+   * Runs the rollback of one changeSet and removes the changeSet from liquibase's history in a single transaction,
+   * restoring the connection's auto-commit mode afterwards. Databases that commit DDL implicitly commit the
+   * statements run before it regardless.<br>
+   * The caller is expected to hold liquibase's changelog lock.
+   * @param step the rollback to run
+   * @return the result of the rollback
+   * @throws LiquibaseException wrapping any underlying SQLException
+   */
+  ChangeSetResult run(Step step) throws LiquibaseException {
+    final long start = System.nanoTime();
+    long rows = 0;
+
+    try{
+      final boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+
+      try{
+        try(Statement stmt = connection.createStatement()){
+          for(String statement : step.statements){
+            if(!stmt.execute(statement) && stmt.getUpdateCount() > 0){
+              rows += stmt.getUpdateCount();
+            }
+          }
+        }
+
+        try(PreparedStatement stmt = connection.prepareStatement(SQL_DELETE_HISTORY)){
+          stmt.setString(1, step.id);
+          stmt.setString(2, step.author);
+          stmt.setString(3, step.filePath);
+          stmt.execute();
+        }
+
+        connection.commit();
+      }catch(SQLException e){
+        try{
+          connection.rollback();
+        }catch(SQLException suppressed){
+          e.addSuppressed(suppressed);
+        }
+
+        throw e;
+      }finally{
+        connection.setAutoCommit(autoCommit);
+      }
+    }catch(SQLException e){
+      throw new LiquibaseException(String.format("Unable to roll back changeSet %s::%s::%s", step.filePath, step.id, step.author), e);
+    }
+
+    final Duration duration = Duration.ofNanos(System.nanoTime() - start);
+    return new ChangeSetResult(step.id, step.author, step.filePath, duration, duration, step.statements.size(), rows, 0);
+  }
+
+  /**
+   * Removes the plan stored for {@code version}, if any.
+   * @param version the version whose plan is no longer needed
+   * @throws LiquibaseException wrapping any underlying SQLException
+   */
+  void delete(Version version) throws LiquibaseException {
+    if(!tableExists()){
+      return;
+    }
+
+    try(PreparedStatement stmt = connection.prepareStatement(SQL_DELETE)){
+      stmt.setString(1, key(version));
+      stmt.execute();
+      commit();
+    }catch(SQLException e){
+      throw new LiquibaseException("Unable to delete the rollback plan of version " + version, e);
+    }
+  }
+
+  /**
+   * Returns the SQL that rolls back {@code changeSet}, the way liquibase would, or {@code null} if it cannot be
+   * generated ahead of time.
+   */
+  private static List<String> rollbackSql(ChangeSet changeSet, Database database) throws LiquibaseException {
+    if(!changeSet.getSqlVisitors().isEmpty()){
+      return null;
+    }
+
+    List<SqlStatement> statements = new ArrayList<>();
+
+    if(changeSet.getRollBackChanges().length > 0){
+      for(Change change : changeSet.getRollBackChanges()){
+        if(change instanceof CustomChangeWrapper || change.generateStatementsVolatile(database)){
+          return null;
+        }
+
+        Collections.addAll(statements, change.generateStatements(database));
+      }
+    }else{
+      List<Change> changes = new ArrayList<>(changeSet.getChanges());
+      Collections.reverse(changes);
+
+      for(Change change : changes){
+        if(change instanceof CustomChangeWrapper || !change.supportsRollback(database) || change.generateRollbackStatementsVolatile(database)){
+          return null;
+        }
+
+        try{
+          Collections.addAll(statements, change.generateRollbackStatements(database));
+        }catch(RollbackImpossibleException e){
+          return null;
+        }
+      }
+    }
+
+    List<String> sql = new ArrayList<>(); //return variable
+
+    for(SqlStatement statement : statements){
+      for(Sql generated : SqlGeneratorFactory.getInstance().generateSql(statement, database)){
+        sql.add(generated.toSql());
+      }
+    }
+
+    return sql;
+  }
+
+  private void commit() throws SQLException {
+    if(!connection.getAutoCommit()){
+      connection.commit();
+    }
+  }
+
+  /**
+   * Returns the key under which the plan of {@code version} is stored, so that progressions sharing the table do not
+   * see each other's plans.
+   */
+  private String key(Version version) {
+    return namespace == null ? version.string() : namespace + ':' + version.string();
+  }
+
+  private boolean tableExists() throws LiquibaseException {
+    if(!tableExists){
+      try{
+        DatabaseMetaData md = connection.getMetaData();
+
+        try(ResultSet r = md.getTables(null, null, PLAN_TABLE, new String[]{"TABLE"})){
+          tableExists = r.next();
+        }
+      }catch(SQLException e){
+        throw new LiquibaseException("Unable to determine if the rollback plan table exists.", e);
+      }
+    }
+
+    return tableExists;
+  }
+}
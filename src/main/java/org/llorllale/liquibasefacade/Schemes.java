@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.util.Objects;
+
+/**
+ * The built-in {@link VersionScheme version schemes}. All of them pack the major, minor and release numbers into
+ * 21 bits each, most significant first.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+final class Schemes {
+  private static final int BITS = 21;
+  private static final long MAX = (1L << BITS) - 1;
+
+  static final VersionScheme DOTTED = new VersionScheme() {
+    @Override
+    public long key(Version version) {
+      return pack(version.getMajor(), version.getMinor(), version.getRelease());
+    }
+
+    @Override
+    public long parseKey(CharSequence tag) {
+      return parse(tag, '.', 3, "X.Y.Z");
+    }
+
+    @Override
+    public String format(Version version) {
+      return version.string();
+    }
+  };
+
+  static final VersionScheme BUILD_NUMBER = new VersionScheme() {
+    @Override
+    public long key(Version version) {
+      if(version.getMinor() != 0 || version.getRelease() != 0){
+        throw new IllegalArgumentException("Build number versions must have minor and release numbers of 0: " + version.string());
+      }
+
+      return pack(version.getMajor(), 0, 0);
+    }
+
+    @Override
+    public long parseKey(CharSequence tag) {
+      return parse(tag, '.', 1, "N");
+    }
+
+    @Override
+    public String format(Version version) {
+      key(version);
+      return String.valueOf(version.getMajor());
+    }
+  };
+
+  static final VersionScheme DATE = new VersionScheme() {
+    @Override
+    public long key(Version version) {
+      return checkDate(pack(version.getMajor(), version.getMinor(), version.getRelease()), version.string());
+    }
+
+    @Override
+    public long parseKey(CharSequence tag) {
+      return checkDate(parse(tag, '-', 3, "yyyy-MM-dd"), tag);
+    }
+
+    @Override
+    public String format(Version version) {
+      key(version);
+      return String.format("%04d-%02d-%02d", version.getMajor(), version.getMinor(), version.getRelease());
+    }
+  };
+
+  private Schemes() {
+  }
+
+  /**
+   * Returns the namespace of {@code scheme}, or {@code null} if it is not {@link Namespaced namespaced}.
+   */
+  static String namespaceOf(VersionScheme scheme) {
+    return scheme instanceof Namespaced ? ((Namespaced) scheme).namespace : null;
+  }
+
+  /**
+   * Prefixes the tags of another scheme with a namespace and a colon.
+   */
+  static final class Namespaced implements VersionScheme {
+    private final String namespace;
+    private final String prefix;
+    private final VersionScheme scheme;
+
+    Namespaced(String namespace, VersionScheme scheme) {
+      if(!Objects.requireNonNull(namespace, "null namespace.").matches("[A-Za-z0-9_.-]+")){
+        throw new IllegalArgumentException("Namespaces may only hold letters, digits, '_', '.' and '-': " + namespace);
+      }
+
+      if(Objects.requireNonNull(scheme, "null scheme.") instanceof Namespaced){
+        throw new IllegalArgumentException("Scheme is already namespaced: " + ((Namespaced) scheme).namespace);
+      }
+
+      this.namespace = namespace;
+      this.prefix = namespace + ':';
+      this.scheme = scheme;
+    }
+
+    @Override
+    public long key(Version version) {
+      return scheme.key(version);
+    }
+
+    @Override
+    public long parseKey(CharSequence tag) {
+      if(!owns(tag)){
+        throw new IllegalArgumentException(String.format("Tag %s is not in namespace %s.", tag, namespace));
+      }
+
+      return scheme.parseKey(tag.subSequence(prefix.length(), tag.length()));
+    }
+
+    @Override
+    public String format(Version version) {
+      return prefix + scheme.format(version);
+    }
+
+    @Override
+    public boolean owns(CharSequence tag) {
+      if(tag == null || tag.length() < prefix.length()){
+        return false;
+      }
+
+      for(int i = 0; i < prefix.length(); i++){
+        if(tag.charAt(i) != prefix.charAt(i)){
+          return false;
+        }
+      }
+
+      return true;
+    }
+  }
+
+  static long pack(long major, long minor, long release) {
+    if(major > MAX || minor > MAX || release > MAX){
+      throw new IllegalArgumentException(String.format("Version numbers must be less than %d: %d.%d.%d", MAX + 1, major, minor, release));
+    }
+
+    return major << (2 * BITS) | minor << BITS | release;
+  }
+
+  /**
+   * Parses {@code parts} non-negative numbers separated by {@code separator} without creating intermediate objects.
+   */
+  private static long parse(CharSequence tag, char separator, int parts, String format) {
+    if(tag == null || tag.length() == 0){
+      throw new IllegalArgumentException("Null or empty tag.");
+    }
+
+    long[] numbers = {0, 0, 0};
+    int part = 0;
+    boolean digits = false;
+
+    for(int i = 0; i < tag.length(); i++){
+      final char c = tag.charAt(i);
+
+      if(c >= '0' && c <= '9'){
+        numbers[part] = numbers[part] * 10 + (c - '0');
+        digits = true;
+
+        if(numbers[part] > MAX){
+          throw new IllegalArgumentException(String.format("Version number too large in tag %s.", tag));
+        }
+      }else if(c == separator && digits && part < parts - 1){
+        part++;
+        digits = false;
+      }else{
+        throw new IllegalArgumentException(String.format("Wrong format in tag %s. The format is %s", tag, format));
+      }
+    }
+
+    if(!digits || part != parts - 1){
+      throw new IllegalArgumentException(String.format("Wrong format in tag %s. The format is %s", tag, format));
+    }
+
+    return pack(numbers[0], numbers[1], numbers[2]);
+  }
+
+  private static long checkDate(long key, CharSequence source) {
+    final long month = key >>> BITS & MAX;
+    final long day = key & MAX;
+
+    if(month < 1 || month > 12 || day < 1 || day > 31){
+      throw new IllegalArgumentException("Not a valid date: " + source);
+    }
+
+    return key;
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Counts the statements executed, rows affected and batches executed through a {@link #wrap(java.sql.Connection) wrapped} connection
+ * while {@link #start() recording}.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+final class StatementMetrics {
+  private boolean recording;
+  private long statements;
+  private long rows;
+  private long batches;
+
+  /**
+   * Returns a connection that delegates to {@code connection} and counts the statements executed through it.
+   * @param connection the connection to wrap
+   * @return the wrapped connection
+   */
+  Connection wrap(Connection connection) {
+    return proxy(Connection.class, connection, (delegate, method, result) -> {
+      if(result instanceof Statement){
+        return proxy(statementType(method.getReturnType()), result, this::count);
+      }
+
+      return result;
+    });
+  }
+
+  void start() {
+    recording = true;
+  }
+
+  void stop() {
+    recording = false;
+  }
+
+  long getStatements() {
+    return statements;
+  }
+
+  long getRows() {
+    return rows;
+  }
+
+  long getBatches() {
+    return batches;
+  }
+
+  private Object count(Object statement, Method method, Object result) throws SQLException {
+    if(!recording){
+      return result;
+    }
+
+    switch(method.getName()){
+      case "executeQuery":
+        statements++;
+        break;
+      case "execute":
+        statements++;
+
+        if(Boolean.FALSE.equals(result)){
+          rows += Math.max(0, ((Statement) statement).getUpdateCount());
+        }
+        break;
+      case "executeUpdate":
+      case "executeLargeUpdate":
+        statements++;
+        rows += ((Number) result).longValue();
+        break;
+      case "executeBatch":
+        batches++;
+
+        for(int count : (int[]) result){
+          statements++;
+          rows += Math.max(0, count);
+        }
+        break;
+      case "executeLargeBatch":
+        batches++;
+
+        for(long count : (long[]) result){
+          statements++;
+          rows += Math.max(0, count);
+        }
+        break;
+      default:
+    }
+
+    return result;
+  }
+
+  private static Class<? extends Statement> statementType(Class<?> declared) {
+    if(CallableStatement.class.isAssignableFrom(declared)){
+      return CallableStatement.class;
+    }else if(PreparedStatement.class.isAssignableFrom(declared)){
+      return PreparedStatement.class;
+    }
+
+    return Statement.class;
+  }
+
+  @FunctionalInterface
+  private interface ResultHandler {
+    Object handle(Object delegate, Method method, Object result) throws SQLException;
+  }
+
+  private <T> T proxy(Class<T> type, Object delegate, ResultHandler handler) {
+    return type.cast(Proxy.newProxyInstance(
+            StatementMetrics.class.getClassLoader(),
+            new Class<?>[]{type},
+            (proxy, method, args) -> {
+              final Object result;
+
+              try{
+                result = method.invoke(delegate, args);
+              }catch(InvocationTargetException e){
+                throw e.getCause();
+              }
+
+              return handler.handle(delegate, method, result);
+            }
+    ));
+  }
+}
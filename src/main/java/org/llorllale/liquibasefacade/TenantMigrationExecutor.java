@@ -0,0 +1,236 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * Migrates many tenant databases sharing the same reference list of versions, each through its own
+ * {@link LinearProgressionFacade}.<br>
+ * Migrating small schemas is bound by JDBC round-trip latency rather than CPU, so each tenant's migration runs
+ * on its own virtual thread when the JVM supports them, falling back to a fixed pool of platform threads otherwise.
+ * In both cases no more than {@code concurrency} migrations are in flight at any time. All tenants share a
+ * {@link ChecksumCache}, so each changelog's checksums are computed once.<br>
+ * Liquibase resets its services, which are global to the JVM, after each update and rollback, under any other
+ * update or rollback in flight. The tenants' facades therefore take turns for their liquibase calls through a lock
+ * they share; what runs concurrently is the rest of each migration, such as opening connections, reading the
+ * history, verifying checksums and tagging versions.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+public class TenantMigrationExecutor {
+  private final List<Version> versions;
+  private final Function<Version, String> changesetFileLocator;
+  private final Function<Version, ResourceAccessor> resourceAccessorGenerator;
+  private final int concurrency;
+  private final ChecksumCache checksumCache = new ChecksumCache();
+  private final Lock liquibaseMutex = new ReentrantLock(true);
+
+  /**
+   * Supplies the JDBC connection to a tenant's database. The executor closes the connection once the tenant has been migrated.
+   * @since 1.3.0
+   */
+  @FunctionalInterface
+  public interface ConnectionProvider {
+    /**
+     *
+     * @param tenant the tenant's identifier
+     * @return a connection to the tenant's database
+     * @throws SQLException if the connection cannot be obtained
+     */
+    Connection getConnection(String tenant) throws SQLException;
+  }
+
+  /**
+   *
+   * @param versions The versions used as reference for every tenant.
+   * @param changesetFileLocator A function that returns the path to where the liquibase changeset file is located for a given version.
+   * @param resourceAccessorGenerator A function that returns the {@code ResourceAccessor} used to fetch a given version's changeset file.
+   * @param concurrency The maximum number of tenants migrated at the same time.
+   * @throws NullPointerException if any of the parameters are {@code null}
+   * @throws IllegalArgumentException if {@code concurrency} is less than {@code 1}
+   * @see LinearProgressionFacade#LinearProgressionFacade(java.sql.Connection, java.util.List, java.util.function.Function, java.util.function.Function)
+   * @since 1.3.0
+   */
+  public TenantMigrationExecutor(
+          List<Version> versions,
+          Function<Version, String> changesetFileLocator,
+          Function<Version, ResourceAccessor> resourceAccessorGenerator,
+          int concurrency
+  ) {
+    this.versions = new ArrayList<>(Objects.requireNonNull(versions, "null version list."));
+    this.changesetFileLocator = Objects.requireNonNull(changesetFileLocator, "null changesetFileLocator function.");
+    this.resourceAccessorGenerator = Objects.requireNonNull(resourceAccessorGenerator, "null resourceAccessorGenerator function.");
+
+    if(concurrency < 1){
+      throw new IllegalArgumentException("Illegal argument for 'concurrency' - must be at least 1: " + concurrency);
+    }
+
+    this.concurrency = concurrency;
+  }
+
+  /**
+   * Applies all changes defined in the reference list of versions to every tenant's database.
+   * @param tenants the identifiers of the tenants to migrate
+   * @param connectionProvider supplies the connection to each tenant's database
+   * @return the result of each tenant's migration, in the iteration order of {@code tenants}
+   * @throws InterruptedException if interrupted while waiting for the migrations to complete
+   * @see LinearProgressionFacade#applyAll()
+   * @since 1.3.0
+   */
+  public Map<String, TenantMigrationResult> applyAll(Collection<String> tenants, ConnectionProvider connectionProvider) throws InterruptedException {
+    return migrate(tenants, connectionProvider, null);
+  }
+
+  /**
+   * Brings every tenant's database to {@code targetVersion}.
+   * @param tenants the identifiers of the tenants to migrate
+   * @param connectionProvider supplies the connection to each tenant's database
+   * @param targetVersion the version each tenant's database is brought to
+   * @return the result of each tenant's migration, in the iteration order of {@code tenants}
+   * @throws InterruptedException if interrupted while waiting for the migrations to complete
+   * @throws NullPointerException if {@code targetVersion} is {@code null}
+   * @see LinearProgressionFacade#apply(org.llorllale.liquibasefacade.Version)
+   * @since 1.3.0
+   */
+  public Map<String, TenantMigrationResult> apply(Collection<String> tenants, ConnectionProvider connectionProvider, Version targetVersion) throws InterruptedException {
+    return migrate(tenants, connectionProvider, Objects.requireNonNull(targetVersion, "null targetVersion."));
+  }
+
+  /**
+   *
+   * @return whether this JVM is able to run migrations on virtual threads
+   * @since 1.3.0
+   */
+  public static boolean isVirtualThreadSupported() {
+    return newVirtualThreadExecutor().map(executor -> {
+      executor.shutdown();
+      return true;
+    }).orElse(false);
+  }
+
+  private Map<String, TenantMigrationResult> migrate(Collection<String> tenants, ConnectionProvider connectionProvider, Version targetVersion) throws InterruptedException {
+    Objects.requireNonNull(tenants, "null tenants.");
+    Objects.requireNonNull(connectionProvider, "null connectionProvider.");
+    Map<String, Future<TenantMigrationResult>> futures = new LinkedHashMap<>();
+    Map<String, TenantMigrationResult> results = new LinkedHashMap<>(); //return variable
+    Semaphore permits = new Semaphore(concurrency);
+    LiquibaseServices.initialize();
+    ExecutorService executor = newExecutor();
+
+    try{
+      for(String tenant : tenants){
+        permits.acquire();
+
+        try{
+          futures.put(tenant, executor.submit(() -> {
+            try{
+              return migrate(tenant, connectionProvider, targetVersion);
+            }finally{
+              permits.release();
+            }
+          }));
+        }catch(RuntimeException e){
+          permits.release();
+          throw e;
+        }
+      }
+
+      for(Map.Entry<String, Future<TenantMigrationResult>> future : futures.entrySet()){
+        try{
+          results.put(future.getKey(), future.getValue().get());
+        }catch(ExecutionException e){
+          Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+          results.put(future.getKey(), new TenantMigrationResult(future.getKey(), 0, Duration.ZERO, cause));
+        }
+      }
+    }catch(InterruptedException e){
+      futures.values().forEach(f -> f.cancel(true));
+      throw e;
+    }finally{
+      executor.shutdown();
+    }
+
+    return Collections.unmodifiableMap(results);
+  }
+
+  private TenantMigrationResult migrate(String tenant, ConnectionProvider connectionProvider, Version targetVersion) {
+    final long start = System.nanoTime();
+
+    try(Connection connection = connectionProvider.getConnection(tenant)){
+      LinearProgressionFacade facade = newFacade(connection);
+      int changes = targetVersion == null ? facade.applyAll() : facade.apply(targetVersion);
+      return new TenantMigrationResult(tenant, changes, Duration.ofNanos(System.nanoTime() - start), null);
+    }catch(Exception e){
+      return new TenantMigrationResult(tenant, 0, Duration.ofNanos(System.nanoTime() - start), e);
+    }
+  }
+
+  /**
+   * Returns the facade migrating the tenant database of {@code connection}.
+   */
+  LinearProgressionFacade newFacade(Connection connection) throws LiquibaseException {
+    LinearProgressionFacade facade = new LinearProgressionFacade(connection, versions, changesetFileLocator, resourceAccessorGenerator);
+    facade.setChecksumCache(checksumCache);
+    facade.setLiquibaseMutex(liquibaseMutex);
+    return facade;
+  }
+
+  private ExecutorService newExecutor() {
+    return newVirtualThreadExecutor().orElseGet(() -> {
+      final AtomicInteger count = new AtomicInteger();
+
+      return Executors.newFixedThreadPool(concurrency, r -> {
+        Thread thread = new Thread(r, "liquibase-facade-tenant-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    });
+  }
+
+  /**
+   * {@code Executors.newVirtualThreadPerTaskExecutor()} is looked up reflectively so that the library keeps 
+   * running on JVMs that predate virtual threads.
+   */
+  private static Optional<ExecutorService> newVirtualThreadExecutor() {
+    try{
+      return Optional.of((ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null));
+    }catch(ReflectiveOperationException | RuntimeException e){
+      return Optional.empty();
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Outcome of migrating a single tenant's database with a {@link TenantMigrationExecutor}.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+public final class TenantMigrationResult {
+  private final String tenant;
+  private final int changes;
+  private final Duration elapsed;
+  private final Exception error;
+
+  TenantMigrationResult(String tenant, int changes, Duration elapsed, Exception error) {
+    this.tenant = tenant;
+    this.changes = changes;
+    this.elapsed = elapsed;
+    this.error = error;
+  }
+
+  /**
+   *
+   * @return the tenant's identifier
+   */
+  public String getTenant() {
+    return tenant;
+  }
+
+  /**
+   *
+   * @return the number of changes (changeSets) applied to the tenant's database; {@code 0} if the migration failed
+   */
+  public int getChanges() {
+    return changes;
+  }
+
+  /**
+   *
+   * @return the time spent migrating the tenant's database, including acquiring its connection
+   */
+  public Duration getElapsed() {
+    return elapsed;
+  }
+
+  /**
+   *
+   * @return the error that caused the tenant's migration to fail, if any
+   */
+  public Optional<Exception> getError() {
+    return Optional.ofNullable(error);
+  }
+
+  /**
+   *
+   * @return whether the tenant's database was migrated without errors
+   */
+  public boolean isSuccess() {
+    return error == null;
+  }
+
+  @Override
+  public String toString() {
+    return "TenantMigrationResult{" + "tenant=" + tenant + ", changes=" + changes + ", elapsed=" + elapsed + ", error=" + error + '}';
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import liquibase.changelog.ChangeSet;
+import liquibase.exception.LiquibaseException;
+
+/**
+ * Records how long each changeSet took the last time it was applied or rolled back, so that the time a migration
+ * will take can be estimated before running it.<br>
+ * Records are kept in their own table and survive rollbacks, so that the timings of a version that was rolled back
+ * are available the next time it is applied.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+final class TimingHistory {
+  static final String TIMING_TABLE = "databasechangelogtiming".toUpperCase();
+
+  private static final String SQL_CREATE_TABLE = String.format(
+          "create table %s (filename varchar(255) not null, id varchar(255) not null, author varchar(255) not null, rollback int not null, nanos bigint not null, dateexecuted timestamp not null, primary key (filename, id, author, rollback))",
+          TIMING_TABLE
+  );
+
+  private static final String SQL_DELETE = String.format("delete from %s where filename = ? and id = ? and author = ? and rollback = ?", TIMING_TABLE);
+
+  private static final String SQL_INSERT = String.format("insert into %s (filename, id, author, rollback, nanos, dateexecuted) values (?,?,?,?,?,?)", TIMING_TABLE);
+
+  private static final String SQL_GET_TIMINGS = String.format("select filename, id, author, nanos from %s where rollback = ?", TIMING_TABLE);
+
+  private final Connection connection;
+  private boolean tableExists;
+
+  /**
+   *
+   * @param connection the JDBC connection holding the timing records
+   */
+  TimingHistory(Connection connection) {
+    this.connection = connection;
+  }
+
+  /**
+   * Reads the timings recorded so far.
+   * @param rollback whether to read the timings of rollbacks instead of those of updates
+   * @return the timings recorded so far
+   * @throws LiquibaseException wrapping any underlying SQLException
+   */
+  Estimates read(boolean rollback) throws LiquibaseException {
+    Map<String, Long> nanos = new HashMap<>();
+
+    if(tableExists()){
+      try(PreparedStatement stmt = connection.prepareStatement(SQL_GET_TIMINGS)){
+        stmt.setInt(1, rollback ? 1 : 0);
+
+        try(ResultSet result = stmt.executeQuery()){
+          while(result.next()){
+            nanos.put(PreparedChangeLog.historyKey(result.getString(1), result.getString(2), result.getString(3)), result.getLong(4));
+          }
+        }
+      }catch(SQLException e){
+        throw new LiquibaseException("Unable to read changeSet timings.", e);
+      }
+    }
+
+    return new Estimates(nanos);
+  }
+
+  /**
+   * Records the durations of {@code changeSets}, replacing any earlier timings of the same changeSets.
+   * @param changeSets the changeSets that were run or rolled back
+   * @param rollback whether the changeSets were rolled back
+   * @throws LiquibaseException wrapping any underlying SQLException
+   */
+  void record(List<ChangeSetResult> changeSets, boolean rollback) throws LiquibaseException {
+    if(changeSets.isEmpty()){
+      return;
+    }
+
+    try{
+      if(!tableExists()){
+        try(Statement stmt = connection.createStatement()){
+          stmt.execute(SQL_CREATE_TABLE);
+        }
+
+        tableExists = true;
+      }
+
+      final Timestamp now = Timestamp.from(Instant.now());
+
+      try(PreparedStatement delete = connection.prepareStatement(SQL_DELETE);
+              PreparedStatement insert = connection.prepareStatement(SQL_INSERT)){
+        for(ChangeSetResult changeSet : changeSets){
+          delete.setString(1, changeSet.getFilePath());
+          delete.setString(2, changeSet.getId());
+          delete.setString(3, changeSet.getAuthor());
+          delete.setInt(4, rollback ? 1 : 0);
+          delete.addBatch();
+          insert.setString(1, changeSet.getFilePath());
+          insert.setString(2, changeSet.getId());
+          insert.setString(3, changeSet.getAuthor());
+          insert.setInt(4, rollback ? 1 : 0);
+          insert.setLong(5, changeSet.getDuration().toNanos());
+          insert.setTimestamp(6, now);
+          insert.addBatch();
+        }
+
+        delete.executeBatch();
+        insert.executeBatch();
+      }
+    }catch(SQLException e){
+      throw new LiquibaseException("Unable to record changeSet timings.", e);
+    }
+  }
+
+  private boolean tableExists() throws LiquibaseException {
+    if(!tableExists){
+      try{
+        DatabaseMetaData md = connection.getMetaData();
+
+        try(ResultSet r = md.getTables(null, null, TIMING_TABLE, new String[]{"TABLE"})){
+          tableExists = r.next();
+        }
+      }catch(SQLException e){
+        throw new LiquibaseException("Unable to determine if the timing table exists.", e);
+      }
+    }
+
+    return tableExists;
+  }
+
+  /**
+   * Estimates the time changeSets will take from the timings recorded for them. ChangeSets with no recorded timing
+   * are estimated at the mean of all recorded timings, or at zero if there are none.
+   */
+  static final class Estimates {
+    private final Map<String, Long> nanos;
+    private final long mean;
+
+    Estimates(Map<String, Long> nanos) {
+      this.nanos = nanos;
+      this.mean = nanos.isEmpty() ? 0 : nanos.values().stream().mapToLong(Long::longValue).sum() / nanos.size();
+    }
+
+    /**
+     *
+     * @param changeSets the changeSets to be run or rolled back
+     * @return the estimated time, in nanoseconds, that {@code changeSets} will take
+     */
+    long estimate(List<ChangeSet> changeSets) {
+      long total = 0; //return variable
+
+      for(ChangeSet changeSet : changeSets){
+        total += estimate(PreparedChangeLog.historyKey(changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor()));
+      }
+
+      return total;
+    }
+
+    /**
+     *
+     * @param historyKey the {@link PreparedChangeLog#historyKey(java.lang.String, java.lang.String, java.lang.String) history key}
+     * of the changeSet to be run or rolled back
+     * @return the estimated time, in nanoseconds, that the changeSet will take
+     */
+    long estimate(String historyKey) {
+      return nanos.getOrDefault(historyKey, mean);
+    }
+
+    /**
+     *
+     * @param changeSet the changeSet to be run or rolled back
+     * @return the time, in nanoseconds, {@code changeSet} took the last time it was run or rolled back, if recorded
+     */
+    OptionalLong recorded(ChangeSet changeSet) {
+      final Long recorded = nanos.get(PreparedChangeLog.historyKey(changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor()));
+      return recorded == null ? OptionalLong.empty() : OptionalLong.of(recorded);
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import liquibase.changelog.ChangeSet;
+
+/**
+ * Entry point for the facade's tracing. When the JVM supports JDK Flight Recorder, each {@link Span} is backed by one
+ * of the {@link JfrEvents JFR events}; otherwise spans do nothing and the event classes are never loaded.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+final class Tracing {
+  private static final boolean JFR = isJfrAvailable();
+
+  private static final Span NOOP = () -> {};
+
+  /**
+   * A traced section of code, ended by {@link #close()}.
+   */
+  interface Span extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  private Tracing() {
+  }
+
+  static Span migration(Version version, boolean upgrade) {
+    return JFR ? JfrEvents.migration(version.string(), upgrade) : NOOP;
+  }
+
+  static Span changeSet(Version version, ChangeSet changeSet, boolean rollback) {
+    return changeSet(version, changeSet.getId(), changeSet.getAuthor(), changeSet.getFilePath(), rollback);
+  }
+
+  static Span changeSet(Version version, String id, String author, String filePath, boolean rollback) {
+    return JFR ? JfrEvents.changeSet(version.string(), id, author, filePath, rollback) : NOOP;
+  }
+
+  static Span historyQuery(String query) {
+    return JFR ? JfrEvents.historyQuery(query) : NOOP;
+  }
+
+  static Span consistencyValidation() {
+    return JFR ? JfrEvents.consistencyValidation() : NOOP;
+  }
+
+  static Span lockAcquisition(Version version) {
+    return JFR ? JfrEvents.lockAcquisition(version.string()) : NOOP;
+  }
+
+  static boolean isJfrAvailable() {
+    try{
+      Class.forName("jdk.jfr.Event");
+      return true;
+    }catch(ClassNotFoundException | LinkageError e){
+      return false;
+    }
+  }
+}
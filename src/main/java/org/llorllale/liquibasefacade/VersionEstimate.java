@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Estimate of the time it will take to bring the database schema up to, or down from, a single {@link Version}.
+ * @author George Aristy
+ * @since 1.3.0
+ * @see LinearProgressionFacade#estimate(org.llorllale.liquibasefacade.Version) 
+ */
+public final class VersionEstimate {
+  private final Version version;
+  private final Duration estimate;
+  private final int changeCount;
+  private final int measuredChangeCount;
+  private final Map<String, Long> tableRows;
+  private final Set<String> unsizedTables;
+
+  VersionEstimate(Version version, Duration estimate, int changeCount, int measuredChangeCount, Map<String, Long> tableRows, Set<String> unsizedTables) {
+    this.version = version;
+    this.estimate = estimate;
+    this.changeCount = changeCount;
+    this.measuredChangeCount = measuredChangeCount;
+    this.tableRows = Collections.unmodifiableMap(new LinkedHashMap<>(tableRows));
+    this.unsizedTables = Collections.unmodifiableSet(new LinkedHashSet<>(unsizedTables));
+  }
+
+  /**
+   *
+   * @return the version to be applied or rolled back
+   */
+  public Version getVersion() {
+    return version;
+  }
+
+  /**
+   *
+   * @return the estimated time the version's changeSets will take
+   */
+  public Duration getEstimate() {
+    return estimate;
+  }
+
+  /**
+   *
+   * @return the number of changeSets to be run or rolled back
+   */
+  public int getChangeCount() {
+    return changeCount;
+  }
+
+  /**
+   *
+   * @return the number of changeSets whose estimate is the time they took the last time they were run or rolled back
+   * @see LinearProgressionFacade#setRecordTimings(boolean) 
+   */
+  public int getMeasuredChangeCount() {
+    return measuredChangeCount;
+  }
+
+  /**
+   *
+   * @return the tables whose size the version's changes scale with, and their number of rows
+   */
+  public Map<String, Long> getTableRows() {
+    return tableRows;
+  }
+
+  /**
+   *
+   * @return the tables whose size the version's changes scale with but whose number of rows the database does not
+   * know without counting them; the estimate leaves their rows out
+   */
+  public Set<String> getUnsizedTables() {
+    return unsizedTables;
+  }
+
+  @Override
+  public String toString() {
+    return "VersionEstimate{" + "version=" + version + ", estimate=" + estimate + ", changeCount=" + changeCount + ", measuredChangeCount=" + measuredChangeCount + ", tableRows=" + tableRows + ", unsizedTables=" + unsizedTables + '}';
+  }
+}
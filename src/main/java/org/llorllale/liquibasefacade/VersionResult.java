@@ -0,0 +1,75 @@
+/* 
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of bringing the database schema up to, or down from, a single {@link Version}.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+public final class VersionResult {
+  private final Version version;
+  private final Duration duration;
+  private final List<ChangeSetResult> changeSets;
+
+  VersionResult(Version version, Duration duration, List<ChangeSetResult> changeSets) {
+    this.version = version;
+    this.duration = duration;
+    this.changeSets = Collections.unmodifiableList(new ArrayList<>(changeSets));
+  }
+
+  /**
+   *
+   * @return the version that was applied or rolled back
+   */
+  public Version getVersion() {
+    return version;
+  }
+
+  /**
+   *
+   * @return the total time spent on the version, including tagging
+   */
+  public Duration getDuration() {
+    return duration;
+  }
+
+  /**
+   *
+   * @return the changeSets that were run or rolled back, in execution order
+   */
+  public List<ChangeSetResult> getChangeSets() {
+    return changeSets;
+  }
+
+  /**
+   *
+   * @return the number of changeSets that were run or rolled back
+   */
+  public int getChangeCount() {
+    return changeSets.size();
+  }
+
+  @Override
+  public String toString() {
+    return "VersionResult{" + "version=" + version + ", duration=" + duration + ", changeSets=" + changeSets + '}';
+  }
+}
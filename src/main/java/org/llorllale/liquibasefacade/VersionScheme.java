@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+/**
+ * Defines how {@link Version versions} are written to, and read back from, the tags of liquibase's history table.<br>
+ * Every version maps to a packed {@code long} {@link #key(org.llorllale.liquibasefacade.Version) key} whose natural
+ * ordering must agree with the ordering of the versions themselves. When reading the history, tags are
+ * {@link #parseKey(java.lang.CharSequence) parsed} straight into keys, which are then looked up among the facade's
+ * reference versions, so no intermediate objects are created per row.<br>
+ * The default scheme is {@link #dotted()}.
+ * @author George Aristy
+ * @since 1.3.0
+ */
+public interface VersionScheme {
+  /**
+   * Returns the packed key of {@code version}.
+   * @param version the version
+   * @return the packed key of {@code version}
+   * @throws IllegalArgumentException if {@code version} cannot be represented in this scheme
+   */
+  long key(Version version);
+
+  /**
+   * Parses a tag found in liquibase's history table into a packed key.
+   * @param tag the tag
+   * @return the packed key of the version the tag stands for
+   * @throws IllegalArgumentException if {@code tag} is not a valid tag in this scheme
+   */
+  long parseKey(CharSequence tag);
+
+  /**
+   * Returns the tag under which {@code version} is recorded in liquibase's history table.
+   * @param version the version
+   * @return the tag for {@code version}
+   * @throws IllegalArgumentException if {@code version} cannot be represented in this scheme
+   */
+  String format(Version version);
+
+  /**
+   * Returns whether {@code tag} was written by this scheme. Tags that are not are ignored when reading liquibase's
+   * history, so that several {@link MultiProgressionFacade progressions} can share it.<br>
+   * The default implementation claims every tag.
+   * @param tag the tag
+   * @return whether {@code tag} belongs to this scheme
+   */
+  default boolean owns(CharSequence tag) {
+    return true;
+  }
+
+  /**
+   * The default scheme: tags of the form {@code X.Y.Z}, as returned by {@link Version#string()}. Each of the
+   * version numbers must be less than {@code 2^21}.
+   * @return the default scheme
+   */
+  static VersionScheme dotted() {
+    return Schemes.DOTTED;
+  }
+
+  /**
+   * Tags that are a single build number, eg. {@code 1234}. The build number is the version's
+   * {@link Version#getMajor() major} number; the minor and release numbers must be {@code 0}.
+   * @return a scheme for build number tags
+   */
+  static VersionScheme buildNumber() {
+    return Schemes.BUILD_NUMBER;
+  }
+
+  /**
+   * Date tags of the form {@code yyyy-MM-dd}, eg. {@code 2015-06-30}. The version's major, minor and release numbers
+   * are the year, month and day respectively.
+   * @return a scheme for date tags
+   */
+  static VersionScheme date() {
+    return Schemes.DATE;
+  }
+
+  /**
+   * Tags of {@code scheme} prefixed with {@code namespace} and a colon, eg. {@code billing:1.2.0}, so that the
+   * versions of several independent progressions can be recorded in the same history table. The returned scheme
+   * only {@link #owns(java.lang.CharSequence) owns} the tags of its namespace.
+   * @param namespace the namespace; letters, digits, {@code _}, {@code .} and {@code -} only
+   * @param scheme the scheme of the versions within the namespace
+   * @return a namespaced scheme
+   * @throws NullPointerException if any of the parameters are {@code null}
+   * @throws IllegalArgumentException if {@code namespace} is empty or holds other characters, or if {@code scheme} is 
+   * already namespaced
+   * @see MultiProgressionFacade
+   */
+  static VersionScheme namespaced(String namespace, VersionScheme scheme) {
+    return new Schemes.Namespaced(namespace, scheme);
+  }
+}
@@ -0,0 +1,27 @@
+-- reference data loaded in two runs around an index
+insert into Country (code, name) values ('AR', 'Argentina');
+insert into Country (code, name) values ('BO', 'Bolivia');
+insert into Country (code, name) values ('BR', 'Brazil');
+insert into Country (code, name) values ('CA', 'Canada');
+insert into Country (code, name) values ('CL', 'Chile');
+insert into Country (code, name) values ('CO', 'Colombia');
+insert into Country (code, name) values ('CR', 'Costa Rica');
+insert into Country (code, name) values ('CU', 'Cuba');
+insert into Country (code, name) values ('DO', 'Dominican Republic');
+insert into Country (code, name) values ('EC', 'Ecuador');
+insert into Country (code, name) values ('GT', 'Guatemala');
+insert into Country (code, name) values ('HN', 'Honduras');
+create index Country_name on Country (name);
+insert into Country (code, name) values ('HT', 'Haiti');
+insert into Country (code, name) values ('JM', 'Jamaica');
+insert into Country (code, name) values ('MX', 'Mexico');
+insert into Country (code, name) values ('NI', 'Nicaragua');
+insert into Country (code, name) values ('PA', 'Panama');
+insert into Country (code, name) values ('PE', 'Peru');
+insert into Country (code, name) values ('PR', 'Puerto Rico');
+insert into Country (code, name) values ('PY', 'Paraguay');
+insert into Country (code, name) values ('SV', 'El Salvador');
+insert into Country (code, name) values ('TT', 'Trinidad and Tobago');
+insert into Country (code, name) values ('US', 'United States');
+insert into Country (code, name) values ('UY', 'Uruguay');
+insert into Country (code, name) values ('VE', 'Venezuela');
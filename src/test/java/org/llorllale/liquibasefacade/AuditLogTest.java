@@ -0,0 +1,242 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class AuditLogTest {
+  private static final String DB_URL = "jdbc:hsqldb:mem:audit;shutdown=true";
+
+  private static final List<Version> versions = Arrays.asList(new Version(1,0,0), new Version(1,1,0), new Version(2,0,0));
+
+  private static final Function<Version, ResourceAccessor> resourceAccessorGenerator = v -> new ClassLoaderResourceAccessor();
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Connection connection;
+
+  private Path file;
+
+  private AuditLog auditLog;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection(DB_URL);
+    file = folder.getRoot().toPath().resolve("audit.log");
+    auditLog = new AuditLog(file, "ci", 2, Duration.ofMillis(50));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    auditLog.close();
+    connection.close();
+  }
+
+  @Test
+  public void everyMigrationMustBeRecorded() throws Exception {
+    LinearProgressionFacade facade = facade("test");
+    facade.apply(Version.of(1, 1, 0));
+    facade.applyAll();
+    facade.apply(Version.of(1, 0, 0));
+    facade.rollbackAll();
+    List<String> records = close();
+    assertEquals(4, records.size());
+    assertTrue(records.get(0).startsWith("{\"timestamp\":"));
+    assertTrue(records.get(0).contains("\"actor\":\"ci\",\"operation\":\"upgrade\",\"target\":\"1.1.0\",\"from\":\"UndefinedVersion\",\"reached\":\"1.1.0\",\"plan\":[\"1.0.0\",\"1.1.0\"],\"remaining\":[],\"outcome\":\"complete\""));
+    assertTrue(records.get(0).contains("{\"id\":\"1\",\"author\":\"George Aristy\",\"filePath\":\"test/Version-1.0.0.xml\",\"durationNanos\":"));
+    assertTrue(records.get(1).contains("\"operation\":\"upgrade\",\"target\":\"2.0.0\",\"from\":\"1.1.0\""));
+    assertTrue(records.get(2).contains("\"operation\":\"downgrade\",\"target\":\"1.0.0\",\"from\":\"2.0.0\",\"reached\":\"1.0.0\",\"plan\":[\"2.0.0\",\"1.1.0\"]"));
+    assertTrue(records.get(3).contains("\"operation\":\"downgrade\",\"target\":\"NullVersion\",\"from\":\"1.0.0\",\"reached\":\"NullVersion\""));
+  }
+
+  @Test
+  public void failedMigrationMustBeRecorded() throws Exception {
+    LinearProgressionFacade facade = facade("test/broken");
+
+    try{
+      facade.applyAll();
+      fail("broken changelog was applied");
+    }catch(LiquibaseException e){
+      //expected
+    }
+
+    List<String> records = close();
+    assertEquals(1, records.size());
+    assertTrue(records.get(0).contains("\"operation\":\"upgrade\",\"target\":\"2.0.0\",\"from\":\"UndefinedVersion\",\"outcome\":\"failed\""));
+    assertTrue(records.get(0).contains("\"error\":\""));
+  }
+
+  @Test
+  public void closeMustWriteEveryQueuedRecord() throws Exception {
+    LinearProgressionFacade facade = facade("test");
+
+    for(int i = 0; i < 10; i++){
+      facade.apply(Version.of(1, 0, 0));
+    }
+
+    List<String> records = close();
+    assertEquals(10, records.size());
+    assertTrue(records.get(9).contains("\"operation\":\"none\""));
+  }
+
+  @Test
+  public void recordsMustBeAppendedToExistingFile() throws Exception {
+    facade("test").apply(Version.of(1, 0, 0));
+    close();
+    auditLog = new AuditLog(file, "ci", 2, Duration.ZERO);
+    facade("test").rollbackAll();
+    assertEquals(2, close().size());
+  }
+
+  @Test
+  public void migrationMustNotRunIfAuditLogIsClosed() throws Exception {
+    LinearProgressionFacade facade = facade("test");
+    auditLog.close();
+
+    try{
+      facade.applyAll();
+      fail("migration ran without being recorded");
+    }catch(IllegalStateException e){
+      //expected
+    }
+
+    assertFalse(facade.isVersioned());
+  }
+
+  @Test
+  public void migrationMustSucceedIfAuditLogIsClosedWhileItRuns() throws Exception {
+    LinearProgressionFacade facade = facade("test", Version.of(2, 0, 0));
+    assertEquals(5, facade.applyAll());
+    assertEquals(Version.of(2, 0, 0), facade.getCurrentVersion());
+    assertTrue(close().isEmpty());
+  }
+
+  @Test
+  public void migrationErrorMustNotBeReplacedIfAuditLogIsClosedWhileItRuns() throws Exception {
+    LinearProgressionFacade facade = facade("test/broken", Version.of(2, 0, 0));
+
+    try{
+      facade.applyAll();
+      fail("broken changelog was applied");
+    }catch(LiquibaseException e){
+      assertEquals(1, e.getSuppressed().length);
+      assertTrue(e.getSuppressed()[0] instanceof IllegalStateException);
+    }
+  }
+
+  /**
+   * Every record appended before the log is closed must be written, however the appends and the close interleave.
+   */
+  @Test
+  public void appendsRacingCloseMustBeWrittenOrRejected() throws Exception {
+    final AtomicInteger appended = new AtomicInteger();
+    final Instant started = Instant.now();
+    List<Thread> threads = new ArrayList<>();
+
+    for(int t = 0; t < 4; t++){
+      threads.add(new Thread(() -> {
+        try{
+          while(true){
+            auditLog.failed(started, Version.of(1, 0, 0), Version.of(2, 0, 0), new LiquibaseException("failed"));
+            appended.incrementAndGet();
+          }
+        }catch(IllegalStateException e){
+          //closed
+        }
+      }));
+    }
+
+    threads.forEach(Thread::start);
+    Thread.sleep(50);
+    List<String> records = close();
+
+    for(Thread thread : threads){
+      thread.join();
+    }
+
+    assertEquals(appended.get(), records.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void capacityMustBePositive() throws Exception {
+    new AuditLog(folder.newFile().toPath(), "ci", 0, Duration.ZERO);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void syncIntervalMustNotBeNegative() throws Exception {
+    new AuditLog(folder.newFile().toPath(), "ci", 1, Duration.ofMillis(-1));
+  }
+
+  private LinearProgressionFacade facade(String directory) throws LiquibaseException {
+    return facade(directory, null);
+  }
+
+  /**
+   * @param closingVersion the version whose changelog, once read, closes the audit log; {@code null} for none
+   */
+  private LinearProgressionFacade facade(String directory, Version closingVersion) throws LiquibaseException {
+    LinearProgressionFacade facade = new LinearProgressionFacade(
+            connection, 
+            versions, 
+            v -> String.format(directory.equals("test/broken") && v.getMajor() == 2 ? "test/broken/Version-%s.xml" : "test/Version-%s.xml", v.string()), 
+            v -> {
+              if(v.equals(closingVersion)){
+                try{
+                  auditLog.close();
+                }catch(IOException e){
+                  throw new UncheckedIOException(e);
+                }
+              }
+
+              return resourceAccessorGenerator.apply(v);
+            }
+    );
+    facade.setAuditLog(auditLog);
+    return facade;
+  }
+
+  private List<String> close() throws IOException {
+    auditLog.close();
+    return Files.readAllLines(file, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class BatchingExecutorTest {
+  private static final String DB_URL = "jdbc:hsqldb:mem:batching;shutdown=true";
+
+  private static final List<Version> versions = Collections.singletonList(new Version(1,0,0));
+
+  private static final Function<Version, String> changesetFileLocator = v -> String.format("test/batched/Version-%d.%d.%d.xml", v.getMajor(), v.getMinor(), v.getRelease());
+
+  private static final Function<Version, ResourceAccessor> resourceAccessorGenerator = v -> new ClassLoaderResourceAccessor();
+
+  private Connection connection;
+
+  private LinearProgressionFacade facade;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection(DB_URL);
+    facade = new LinearProgressionFacade(connection, versions, changesetFileLocator, resourceAccessorGenerator);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  @Test
+  public void statementsMustNotBeBatchedByDefault() throws Exception {
+    assertEquals(0, facade.getBatchSize());
+    ChangeSetResult sqlFile = facade.applyAllWithResult().getChangeSets().get(1);
+    assertEquals(25, countries());
+    assertEquals(0, sqlFile.getBatchesExecuted());
+    assertEquals(25, sqlFile.getRowsAffected());
+  }
+
+  @Test
+  public void consecutiveInsertsMustBeBatched() throws Exception {
+    facade.setBatchSize(5);
+    ChangeSetResult sqlFile = facade.applyAllWithResult().getChangeSets().get(1);
+    assertEquals(Version.of(1, 0, 0), facade.getCurrentVersion());
+    assertEquals(25, countries());
+    //12 inserts as 5 + 5 + 2, the index, then 13 inserts as 5 + 5 + 3
+    assertEquals(6, sqlFile.getBatchesExecuted());
+    assertEquals(26, sqlFile.getStatementsExecuted());
+    assertEquals(25, sqlFile.getRowsAffected());
+  }
+
+  @Test
+  public void batchedChangesMustRollBack() throws Exception {
+    facade.setBatchSize(5);
+    facade.applyAll();
+    MigrationResult rollback = facade.rollbackAllWithResult();
+    assertEquals(2, rollback.getChangeCount());
+    //rollbacks are not batched
+    rollback.getChangeSets().forEach(c -> assertEquals(0, c.getBatchesExecuted()));
+    assertEquals(0, tables());
+    assertEquals(new NullVersion(), facade.getCurrentVersion());
+  }
+
+  @Test
+  public void batchesMustNotSpanOtherStatements() throws Exception {
+    facade.setBatchSize(100);
+    ChangeSetResult sqlFile = facade.applyAllWithResult().getChangeSets().get(1);
+    //the index ends the first batch, and the end of the change ends the second
+    assertEquals(2, sqlFile.getBatchesExecuted());
+    assertEquals(25, sqlFile.getRowsAffected());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeBatchSizeMustFail() {
+    facade.setBatchSize(-1);
+  }
+
+  private int tables() throws Exception {
+    try(ResultSet result = connection.getMetaData().getTables(null, null, "COUNTRY", null)){
+      return result.next() ? 1 : 0;
+    }
+  }
+
+  private int countries() throws Exception {
+    try(Statement stmt = connection.createStatement();
+            ResultSet result = stmt.executeQuery("select count(*) from Country")){
+      result.next();
+      return result.getInt(1);
+    }
+  }
+}
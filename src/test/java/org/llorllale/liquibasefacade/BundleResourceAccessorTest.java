@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class BundleResourceAccessorTest {
+  private BundleResourceAccessor accessor;
+
+  @Before
+  public void setUp() {
+    Map<String, BundleResourceAccessor.Entry> entries = new HashMap<>();
+
+    for(String path : Arrays.asList("db/master.xml", "db/v1/changes.xml", "db/v1/sql/data.sql", "db/v2/changes.xml")){
+      entries.put(path, new BundleResourceAccessor.Entry(0, 0, 0));
+    }
+
+    accessor = new BundleResourceAccessor(ByteBuffer.allocate(0), entries);
+  }
+
+  @Test
+  public void listMustReturnDirectChildren() throws Exception {
+    assertEquals(new HashSet<>(Arrays.asList("db/master.xml")), accessor.list(null, "db", true, false, false));
+    assertEquals(new HashSet<>(Arrays.asList("db/v1/", "db/v2/")), accessor.list(null, "db/", false, true, false));
+  }
+
+  @Test
+  public void listMustRecurse() throws Exception {
+    assertEquals(
+            new HashSet<>(Arrays.asList("db/v1/changes.xml", "db/v1/sql/data.sql", "db/v1/sql/")),
+            accessor.list("db/master.xml", "v1", true, true, true)
+    );
+  }
+
+  @Test
+  public void missingFilesMustNotBeFound() throws Exception {
+    assertNull(accessor.getResourcesAsStream("db/v3/changes.xml"));
+    assertEquals(-1, accessor.getLength("db/v3/changes.xml"));
+  }
+
+  @Test
+  public void classesMustBeLoadedByTheAccessorsClassLoader() {
+    assertSame(BundleResourceAccessor.class.getClassLoader(), accessor.toClassLoader());
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class ChangelogBundleTest {
+  private static final String DB_URL = "jdbc:hsqldb:mem:bundle;shutdown=true";
+
+  private static final List<Version> versions = Arrays.asList(new Version(1,0,0), new Version(1,1,0), new Version(2,0,0));
+
+  private static final Function<Version, String> changeLogFileGenerator = v -> String.format("test/Version-%s.xml", v.string());
+
+  private static final Function<Version, ResourceAccessor> resourceAccessorGenerator = v -> new ClassLoaderResourceAccessor();
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Connection connection;
+
+  private Path file;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection(DB_URL);
+    file = folder.getRoot().toPath().resolve("changelogs.bundle");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  @Test
+  public void bundleMustMapEachVersionToItsChangeLog() throws Exception {
+    ChangelogBundle.write(file, versions, changeLogFileGenerator, resourceAccessorGenerator);
+    ChangelogBundle bundle = ChangelogBundle.open(file);
+    assertEquals(versions, bundle.getVersions());
+
+    for(Version version : versions){
+      assertEquals(changeLogFileGenerator.apply(version), bundle.getChangeLogPath(version));
+    }
+  }
+
+  @Test
+  public void bundledFilesMustBeReadUnchanged() throws Exception {
+    ChangelogBundle.write(file, versions, changeLogFileGenerator, resourceAccessorGenerator);
+    ResourceAccessor bundled = ChangelogBundle.open(file).getResourceAccessor();
+
+    for(Version version : versions){
+      final String path = changeLogFileGenerator.apply(version);
+
+      try(InputStream expected = new ClassLoaderResourceAccessor().getResourcesAsStream(path).iterator().next();
+              InputStream actual = bundled.getResourcesAsStream(path).iterator().next()){
+        assertArrayEquals(read(expected), read(actual));
+      }
+    }
+  }
+
+  @Test
+  public void facadeMustMigrateFromTheBundleAlone() throws Exception {
+    ChangelogBundle.write(file, versions, changeLogFileGenerator, resourceAccessorGenerator);
+    ChangelogBundle bundle = ChangelogBundle.open(file);
+    new LinearProgressionFacade(connection, bundle.getVersions(), bundle::getChangeLogPath, v -> bundle.getResourceAccessor()).applyAll();
+
+    //the history is the same as if the changelogs had been read from the classpath
+    LinearProgressionFacade facade = new LinearProgressionFacade(connection, versions, changeLogFileGenerator, resourceAccessorGenerator);
+    assertEquals(Version.of(2, 0, 0), facade.getCurrentVersion());
+    facade.rollbackAll();
+  }
+
+  @Test
+  public void filesReadByChangeLogsMustBeBundled() throws Exception {
+    List<Version> batched = Arrays.asList(new Version(1, 0, 0));
+    ChangelogBundle.write(file, batched, v -> "test/batched/Version-1.0.0.xml", resourceAccessorGenerator);
+    ChangelogBundle bundle = ChangelogBundle.open(file);
+    assertTrue(((BundleResourceAccessor) bundle.getResourceAccessor()).getPaths().contains("test/batched/countries.sql"));
+    LinearProgressionFacade facade = new LinearProgressionFacade(connection, batched, bundle::getChangeLogPath, v -> bundle.getResourceAccessor());
+    facade.applyAll();
+    assertEquals(Version.of(1, 0, 0), facade.getCurrentVersion());
+    facade.rollbackAll();
+  }
+
+  @Test
+  public void samePathWithTheSameContentsMustBeBundledOnce() throws Exception {
+    ChangelogBundle.write(file, versions.subList(0, 1), changeLogFileGenerator, resourceAccessorGenerator);
+    final Set<String> single = ((BundleResourceAccessor) ChangelogBundle.open(file).getResourceAccessor()).getPaths();
+    ChangelogBundle.write(file, versions, v -> "test/Version-1.0.0.xml", resourceAccessorGenerator);
+    assertEquals(single, ((BundleResourceAccessor) ChangelogBundle.open(file).getResourceAccessor()).getPaths());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void samePathWithDifferentContentsMustBeRejected() throws Exception {
+    //each version's accessor finds its own changelog at the same path, as in one jar per version
+    ChangelogBundle.write(
+            file, 
+            versions, 
+            v -> "db/changelog.xml", 
+            v -> new ClassLoaderResourceAccessor(){
+              @Override
+              public Set<InputStream> getResourcesAsStream(String path) throws IOException {
+                return super.getResourcesAsStream("db/changelog.xml".equals(path) ? changeLogFileGenerator.apply(v) : path);
+              }
+            }
+    );
+  }
+
+  @Test(expected = IOException.class)
+  public void otherFilesMustNotBeOpened() throws Exception {
+    Files.write(file, "<databaseChangeLog/>".getBytes("UTF-8"));
+    ChangelogBundle.open(file);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownVersionMustBeRejected() throws Exception {
+    ChangelogBundle.write(file, versions.subList(0, 1), changeLogFileGenerator, resourceAccessorGenerator);
+    ChangelogBundle.open(file).getChangeLogPath(Version.of(2, 0, 0));
+  }
+
+  private static byte[] read(InputStream in) throws IOException {
+    java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+
+    for(int n = in.read(buffer); n >= 0; n = in.read(buffer)){
+      out.write(buffer, 0, n);
+    }
+
+    return out.toByteArray();
+  }
+}
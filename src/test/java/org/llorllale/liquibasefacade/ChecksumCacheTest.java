@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.FileSystemResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class ChecksumCacheTest {
+  private static final String DB_URL = "jdbc:hsqldb:mem:checksums;shutdown=true";
+
+  private static final List<Version> versions = Arrays.asList(new Version(1,0,0), new Version(1,1,0), new Version(2,0,0));
+
+  private static final Function<Version, String> changesetFileLocator = v -> String.format("test/Version-%d.%d.%d.xml", v.getMajor(), v.getMinor(), v.getRelease());
+
+  private static final Function<Version, ResourceAccessor> resourceAccessorGenerator = v -> new ClassLoaderResourceAccessor();
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Connection connection;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection(DB_URL);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  @Test
+  public void checksumsMustBeComputedOncePerChangeLog() throws Exception {
+    ChecksumCache cache = new ChecksumCache();
+    LinearProgressionFacade facade = new LinearProgressionFacade(connection, versions, changesetFileLocator, resourceAccessorGenerator);
+    facade.setChecksumCache(cache);
+    assertEquals(5, facade.applyAll());
+    assertEquals(3, cache.size());
+    assertEquals(5, facade.rollbackAll());
+    assertEquals(5, facade.applyAll());
+    assertEquals(3, cache.size());
+  }
+
+  @Test
+  public void cacheMustBeSharedBetweenFacades() throws Exception {
+    LinearProgressionFacade first = new LinearProgressionFacade(connection, versions, changesetFileLocator, resourceAccessorGenerator);
+    first.applyAll();
+    LinearProgressionFacade second = new LinearProgressionFacade(connection, versions, changesetFileLocator, resourceAccessorGenerator);
+    second.setChecksumCache(first.getChecksumCache());
+    assertEquals(5, second.rollbackAll());
+    assertEquals(3, first.getChecksumCache().size());
+  }
+
+  @Test
+  public void modifiedChangeLogMustStillFailValidation() throws Exception {
+    Path file = Paths.get(folder.getRoot().getPath(), "Version-1.0.0.xml");
+    Files.write(file, Files.readAllBytes(Paths.get(getClass().getResource("/test/Version-1.0.0.xml").toURI())));
+    List<Version> single = Arrays.asList(new Version(1,0,0));
+    Function<Version, ResourceAccessor> generator = v -> new FileSystemResourceAccessor(folder.getRoot().getPath());
+    LinearProgressionFacade facade = new LinearProgressionFacade(connection, single, v -> "Version-1.0.0.xml", generator);
+    facade.applyAll();
+
+    String modified = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).replace("varchar(20)", "varchar(40)");
+    Files.write(file, modified.getBytes(StandardCharsets.UTF_8));
+
+    try{
+      facade.rollbackAll();
+      fail("modified changelog not detected");
+    }catch(LiquibaseException e){
+      assertEquals(2, facade.getChecksumCache().size());
+      assertEquals(Version.of(1, 0, 0), facade.getCurrentVersion());
+    }
+  }
+
+  /**
+   * A prepared changelog is reused across migrations: the changeSets it verified during one migration must be
+   * validated again by the next, against the history as it is then.
+   */
+  @Test
+  public void preparedChangeLogMustBeValidatedOnEveryMigration() throws Exception {
+    LinearProgressionFacade facade = new LinearProgressionFacade(connection, versions, changesetFileLocator, resourceAccessorGenerator);
+    facade.prepare();
+    facade.applyAll();
+    facade.apply(1, 1, 0);
+    facade.applyAll();
+
+    try(Statement stmt = connection.createStatement()){
+      stmt.execute("update databasechangelog set md5sum = '7:00000000000000000000000000000000' where filename = 'test/Version-2.0.0.xml'");
+    }
+
+    try{
+      facade.apply(1, 1, 0);
+      fail("tampered checksum not detected");
+    }catch(LiquibaseException e){
+      assertEquals(Version.of(2, 0, 0), facade.getCurrentVersion());
+    }
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void nullCacheMustBeRejected() throws Exception {
+    new LinearProgressionFacade(connection, versions, changesetFileLocator, resourceAccessorGenerator).setChecksumCache(null);
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class ChunkedUpdateChangeTest {
+  private static final String DB_URL = "jdbc:hsqldb:mem:chunked;shutdown=true";
+
+  private static final List<Version> versions = Arrays.asList(new Version(1,0,0), new Version(1,1,0));
+
+  private static final Function<Version, String> changesetFileLocator = v -> String.format("test/chunked/Version-%d.%d.%d.xml", v.getMajor(), v.getMinor(), v.getRelease());
+
+  private static final Function<Version, ResourceAccessor> resourceAccessorGenerator = v -> new ClassLoaderResourceAccessor();
+
+  private Connection connection;
+
+  private LinearProgressionFacade facade;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection(DB_URL);
+    facade = new LinearProgressionFacade(connection, versions, changesetFileLocator, resourceAccessorGenerator);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  @Test
+  public void applyMustUpdateAllRows() throws Exception {
+    facade.applyAll();
+    assertEquals(10, count("select count(*) from Item where status = 'ACTIVE'"));
+    assertEquals(0, count("select count(*) from " + ChunkedUpdateChange.PROGRESS_TABLE));
+    assertEquals(Version.of(1, 1, 0), facade.getCurrentVersion());
+  }
+
+  @Test
+  public void rollbackMustApplyRollbackSet() throws Exception {
+    facade.applyAll();
+    facade.apply(1, 0, 0);
+    assertEquals(10, count("select count(*) from Item where status is null"));
+  }
+
+  @Test
+  public void interruptedUpdateMustResumeAfterLastCommittedChunk() throws Exception {
+    facade.apply(1, 0, 0);
+    ChunkedUpdateChange change = new ChunkedUpdateChange();
+    change.setTableName("Item");
+    change.setKeyColumn("id");
+    change.setSet("status = 'ACTIVE'");
+    ChunkedUpdateChange.ensureProgressTable(connection);
+
+    try(PreparedStatement stmt = connection.prepareStatement("insert into " + ChunkedUpdateChange.PROGRESS_TABLE + " values (?, 20)")){
+      stmt.setString(1, change.getProgressId());
+      stmt.execute();
+    }
+
+    facade.apply(1, 1, 0);
+    assertEquals(6, count("select count(*) from Item where status is null and id <= 20"));
+    assertEquals(4, count("select count(*) from Item where status = 'ACTIVE' and id > 20"));
+    assertEquals(0, count("select count(*) from " + ChunkedUpdateChange.PROGRESS_TABLE));
+  }
+
+  @Test
+  public void rollbackMustOnlyUpdateRowsMatchingRollbackWhere() throws Exception {
+    facade.apply(1, 0, 0);
+    execute("update Item set status = 'LOCKED' where id = 89");
+    ChunkedUpdateChange change = new ChunkedUpdateChange();
+    change.setTableName("Item");
+    change.setKeyColumn("id");
+    change.setSet("status = 'ACTIVE'");
+    change.setWhere("status is null");
+    change.setRollbackSet("status = null");
+    change.setRollbackWhere("status = 'ACTIVE'");
+    change.setChunkSize(10);
+    Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+
+    change.execute(database);
+    assertEquals(9, count("select count(*) from Item where status = 'ACTIVE'"));
+    change.rollback(database);
+    assertEquals(9, count("select count(*) from Item where status is null"));
+    assertEquals(1, count("select count(*) from Item where status = 'LOCKED'"));
+  }
+
+  @Test
+  public void progressMustBeDeletedWhenNothingIsLeftToUpdate() throws Exception {
+    facade.apply(1, 0, 0);
+    ChunkedUpdateChange change = new ChunkedUpdateChange();
+    change.setTableName("Item");
+    change.setKeyColumn("id");
+    change.setSet("status = 'ACTIVE'");
+    ChunkedUpdateChange.ensureProgressTable(connection);
+    Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+
+    //interrupted after its last range
+    ChunkedUpdateChange.saveProgress(connection, change.getProgressId(), 89, false);
+    change.execute(database);
+    assertEquals(0, count("select count(*) from " + ChunkedUpdateChange.PROGRESS_TABLE));
+
+    //interrupted before rows stopped matching the predicate
+    change.setWhere("id > 100");
+    ChunkedUpdateChange.saveProgress(connection, change.getProgressId(), 20, false);
+    change.execute(database);
+    assertEquals(0, count("select count(*) from " + ChunkedUpdateChange.PROGRESS_TABLE));
+  }
+
+  @Test
+  public void validationMustRequireTableKeyAndSet() throws Exception {
+    assertTrue(new ChunkedUpdateChange().validate(null).hasErrors());
+  }
+
+  private void execute(String sql) throws SQLException {
+    try(Statement stmt = connection.createStatement()){
+      stmt.execute(sql);
+    }
+  }
+
+  private int count(String sql) throws SQLException {
+    try(PreparedStatement stmt = connection.prepareStatement(sql);
+            ResultSet r = stmt.executeQuery()){
+      r.next();
+      return r.getInt(1);
+    }
+  }
+}
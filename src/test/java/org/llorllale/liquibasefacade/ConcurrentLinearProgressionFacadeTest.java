@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class ConcurrentLinearProgressionFacadeTest {
+  private static final String DB_URL = "jdbc:hsqldb:mem:concurrent";
+
+  private static final List<Version> versions = Arrays.asList(new Version(1,0,0), new Version(1,1,0), new Version(2,0,0));
+
+  private static final Function<Version, String> changeLogFileGenerator = v -> String.format("test/Version-%s.xml", v.string());
+
+  private static final Function<Version, ResourceAccessor> resourceAccessorGenerator = v -> new ClassLoaderResourceAccessor();
+
+  private Connection connection;
+
+  private JDBCDataSource readConnections;
+
+  private LinearProgressionFacade facade;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection(DB_URL);
+    readConnections = new JDBCDataSource();
+    readConnections.setUrl(DB_URL);
+    facade = new LinearProgressionFacade(connection, versions, changeLogFileGenerator, resourceAccessorGenerator);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.createStatement().execute("SHUTDOWN");
+    connection.close();
+  }
+
+  @Test
+  public void readsMustNotWaitForMigrations() throws Exception {
+    ConcurrentLinearProgressionFacade concurrent = new ConcurrentLinearProgressionFacade(facade, readConnections, Duration.ZERO);
+    concurrent.apply(Version.of(1, 0, 0));
+    ReentrantLock liquibase = new ReentrantLock();
+    facade.setLiquibaseMutex(liquibase);
+    liquibase.lock();
+    CompletableFuture<Integer> migration;
+
+    try{
+      migration = CompletableFuture.supplyAsync(() -> {
+        try{
+          return concurrent.apply(Version.of(2, 0, 0));
+        }catch(LiquibaseException e){
+          throw new RuntimeException(e);
+        }
+      });
+
+      while(!liquibase.hasQueuedThreads()){
+        Thread.sleep(10);
+      }
+
+      assertTrue(concurrent.isMigrating());
+      assertEquals(Version.of(1, 0, 0), CompletableFuture.supplyAsync(() -> {
+        try{
+          return concurrent.getCurrentVersion();
+        }catch(LiquibaseException e){
+          throw new RuntimeException(e);
+        }
+      }).get(5, TimeUnit.SECONDS));
+      assertTrue(concurrent.isUpgrade(Version.of(2, 0, 0)));
+    }finally{
+      liquibase.unlock();
+    }
+
+    assertEquals(Integer.valueOf(4), migration.get(30, TimeUnit.SECONDS));
+    assertFalse(concurrent.isMigrating());
+    assertEquals(Version.of(2, 0, 0), concurrent.getCurrentVersion());
+  }
+
+  @Test
+  public void migrationsMustPublishTheVersionReached() throws Exception {
+    ConcurrentLinearProgressionFacade concurrent = new ConcurrentLinearProgressionFacade(facade, readConnections, Duration.ofHours(1));
+    assertFalse(concurrent.isVersioned());
+    concurrent.apply(Version.of(1, 1, 0));
+    assertEquals(Version.of(1, 1, 0), concurrent.getCurrentVersion());
+    concurrent.rollbackAll();
+    assertEquals(new NullVersion(), concurrent.getCurrentVersion());
+  }
+
+  @Test
+  public void versionMustBeCachedForMaxStaleness() throws Exception {
+    ConcurrentLinearProgressionFacade cached = new ConcurrentLinearProgressionFacade(facade, readConnections, Duration.ofHours(1));
+    ConcurrentLinearProgressionFacade uncached = new ConcurrentLinearProgressionFacade(facade, readConnections, Duration.ZERO);
+    cached.apply(Version.of(1, 0, 0));
+    assertEquals(Version.of(1, 0, 0), uncached.getCurrentVersion());
+
+    //migrated behind the cached facade's back
+    facade.apply(Version.of(1, 1, 0));
+    assertEquals(Version.of(1, 0, 0), cached.getCurrentVersion());
+    assertEquals(Version.of(1, 1, 0), uncached.getCurrentVersion());
+  }
+
+  @Test
+  public void concurrentMigrationsMustRunOneAtATime() throws Exception {
+    ConcurrentLinearProgressionFacade concurrent = new ConcurrentLinearProgressionFacade(facade, readConnections, Duration.ZERO);
+    List<CompletableFuture<MigrationResult>> migrations = Arrays.asList(
+            CompletableFuture.supplyAsync(() -> migrate(concurrent, Version.of(2, 0, 0))),
+            CompletableFuture.supplyAsync(() -> migrate(concurrent, Version.of(1, 0, 0))),
+            CompletableFuture.supplyAsync(() -> migrate(concurrent, Version.of(1, 1, 0)))
+    );
+
+    for(CompletableFuture<MigrationResult> migration : migrations){
+      assertTrue(migration.get(60, TimeUnit.SECONDS).isComplete());
+    }
+
+    assertTrue(versions.contains(concurrent.getCurrentVersion()));
+    assertEquals(facade.getCurrentVersion(), concurrent.getCurrentVersion());
+  }
+
+  @Test
+  public void failedMigrationMustPublishTheVersionReached() throws Exception {
+    facade = new LinearProgressionFacade(
+            connection, 
+            versions, 
+            v -> String.format(v.getMajor() == 2 ? "test/broken/Version-%s.xml" : "test/Version-%s.xml", v.string()), 
+            resourceAccessorGenerator
+    );
+    ConcurrentLinearProgressionFacade concurrent = new ConcurrentLinearProgressionFacade(facade, readConnections, Duration.ofHours(1));
+
+    try{
+      concurrent.apply(Version.of(2, 0, 0));
+      fail("broken changelog was applied");
+    }catch(LiquibaseException e){
+      assertEquals(Version.of(1, 1, 0), concurrent.getCurrentVersion());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownVersionMustBeRejected() throws Exception {
+    new ConcurrentLinearProgressionFacade(facade, readConnections, Duration.ZERO).isUpgrade(Version.of(3, 0, 0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeStalenessMustBeRejected() throws Exception {
+    new ConcurrentLinearProgressionFacade(facade, readConnections, Duration.ofMillis(-1));
+  }
+
+  private static MigrationResult migrate(ConcurrentLinearProgressionFacade facade, Version version) {
+    try{
+      return facade.applyWithResult(version);
+    }catch(LiquibaseException e){
+      throw new RuntimeException(e);
+    }
+  }
+}
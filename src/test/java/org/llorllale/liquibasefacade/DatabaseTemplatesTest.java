@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class DatabaseTemplatesTest {
+  private static final List<Version> versions = Arrays.asList(new Version(1,0,0), new Version(1,1,0), new Version(2,0,0));
+
+  private static final Function<Version, String> changesetFileLocator = v -> String.format("test/Version-%d.%d.%d.xml", v.getMajor(), v.getMinor(), v.getRelease());
+
+  private static final Function<Version, ResourceAccessor> resourceAccessorGenerator = v -> new ClassLoaderResourceAccessor();
+
+  private final AtomicInteger migrations = new AtomicInteger();
+
+  private DatabaseTemplates templates;
+
+  @Before
+  public void setUp() {
+    templates = new DatabaseTemplates(connection -> {
+      migrations.incrementAndGet();
+      return facade(connection);
+    });
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    templates.close();
+  }
+
+  @Test
+  public void copyMustBeAtTemplateVersion() throws Exception {
+    try(Connection copy = templates.copyOf(Version.of(1, 1, 0))){
+      LinearProgressionFacade facade = facade(copy);
+      assertTrue(facade.isVersioned());
+      assertEquals(Version.of(1, 1, 0), facade.getCurrentVersion());
+      assertEquals(0, facade.apply(Version.of(1, 1, 0)));
+      assertEquals(1, facade.applyAll());
+      assertEquals(Version.of(2, 0, 0), facade.getCurrentVersion());
+      assertEquals(5, facade.rollbackAll());
+    }
+  }
+
+  @Test
+  public void templateMustBeMigratedOncePerVersion() throws Exception {
+    for(int i = 0; i < 3; i++){
+      templates.copyOf(Version.of(2, 0, 0)).close();
+    }
+
+    templates.copyOf(Version.of(1, 0, 0)).close();
+    assertEquals(2, migrations.get());
+    assertEquals(2, templates.size());
+  }
+
+  @Test
+  public void copiesMustBeIndependent() throws Exception {
+    try(Connection first = templates.copyOf(Version.of(2, 0, 0));
+            Connection second = templates.copyOf(Version.of(2, 0, 0))){
+      facade(first).rollbackAll();
+      assertEquals(new NullVersion(), facade(first).getCurrentVersion());
+      assertEquals(Version.of(2, 0, 0), facade(second).getCurrentVersion());
+      assertEquals(5, count(second, "DATABASECHANGELOG"));
+    }
+  }
+
+  @Test
+  public void copyMustKeepConstraints() throws Exception {
+    try(Connection copy = templates.copyOf(Version.of(1, 1, 0));
+            Statement stmt = copy.createStatement()){
+      try{
+        stmt.execute("insert into Customer (id, address_id) values (1, 42)");
+        fail("foreign key to Address was not copied");
+      }catch(SQLException e){
+        //expected
+      }
+    }
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void nullVersionMustFail() throws Exception {
+    templates.copyOf(null);
+  }
+
+  private static LinearProgressionFacade facade(Connection connection) throws LiquibaseException {
+    return new LinearProgressionFacade(connection, versions, changesetFileLocator, resourceAccessorGenerator);
+  }
+
+  private static int count(Connection connection, String table) throws Exception {
+    try(Statement stmt = connection.createStatement();
+            ResultSet result = stmt.executeQuery("select count(*) from " + table)){
+      result.next();
+      return result.getInt(1);
+    }
+  }
+}
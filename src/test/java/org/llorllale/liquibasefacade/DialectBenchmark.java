@@ -0,0 +1,255 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import liquibase.resource.FileSystemResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the same synthetic versions of a {@link MigrationReplayHarness} through {@link LinearProgressionFacade} on
+ * every embedded database available, and reports for each:
+ * <ul>
+ * <li>the facade's overhead: the time of its apply-all and rollback-all over that of raw liquibase</li>
+ * <li>the cost of scanning the history: {@link LinearProgressionFacade#isVersioned()} and
+ * {@link LinearProgressionFacade#getCurrentVersion()} on a fully migrated database, each from a new facade</li>
+ * <li>the latency of each changeSet, and the part of it spent on the facade's bookkeeping</li>
+ * </ul>
+ * A database on which a part of the benchmark fails, eg. because liquibase cannot roll back some of the changes on
+ * it, is reported with the error instead of that part's figures.<br>
+ * Databases whose driver is not on the classpath are skipped; the {@code benchmark} profile adds H2, Derby and
+ * SQLite to HSQLDB, and runs this class alone:
+ * <pre>
+ * mvn test -Pbenchmark [-Dbenchmark.versions=10] [-Dbenchmark.changeSets=20] [-Dbenchmark.cycles=3] [-Dbenchmark.scans=50]
+ * </pre>
+ * The results are printed, and written as CSV to {@code target/benchmark/dialects.csv}.
+ * @author George Aristy
+ */
+public class DialectBenchmark {
+  private static final AtomicInteger DATABASES = new AtomicInteger();
+
+  static {
+    //embedded Derby writes its log to the working directory once its driver is loaded, which DriverManager may do first
+    if(System.getProperty("derby.stream.error.file") == null){
+      System.setProperty("derby.stream.error.file", "target/derby.log");
+    }
+  }
+
+  private static final List<Dialect> DIALECTS = Arrays.asList(
+          new Dialect("hsqldb-mem", "org.hsqldb.jdbc.JDBCDriver", (dir, n) -> "jdbc:hsqldb:mem:bench" + n + ";shutdown=true"),
+          new Dialect("hsqldb-file", "org.hsqldb.jdbc.JDBCDriver", (dir, n) -> "jdbc:hsqldb:file:" + dir.resolve("hsqldb" + n) + ";shutdown=true"),
+          new Dialect("h2", "org.h2.Driver", (dir, n) -> "jdbc:h2:mem:bench" + n),
+          new Dialect("derby", "org.apache.derby.jdbc.EmbeddedDriver", (dir, n) -> "jdbc:derby:memory:bench" + n + ";create=true"),
+          new Dialect("sqlite", "org.sqlite.JDBC", (dir, n) -> "jdbc:sqlite:" + dir.resolve("sqlite" + n + ".db"))
+  );
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void everyDialect() throws Exception {
+    MigrationReplayHarness harness = new MigrationReplayHarness();
+    harness.setVersionCount(Integer.getInteger("benchmark.versions", 10));
+    harness.setChangeSetsPerVersion(Integer.getInteger("benchmark.changeSets", 20));
+    harness.setCycles(Integer.getInteger("benchmark.cycles", 3));
+    final int scans = Integer.getInteger("benchmark.scans", 50);
+    final Path changeLogs = folder.newFolder("changelogs").toPath();
+    final Path databases = folder.newFolder("databases").toPath();
+    harness.generate(changeLogs);
+    List<Result> results = new ArrayList<>();
+    //warms up the JVM, so that the first dialect is not measured on cold code
+    measure("warm-up", harness, () -> DriverManager.getConnection("jdbc:hsqldb:mem:warmup" + DATABASES.incrementAndGet() + ";shutdown=true"), changeLogs, scans);
+
+    for(Dialect dialect : DIALECTS){
+      if(dialect.isAvailable()){
+        final MigrationReplayHarness.ConnectionSource source = () -> DriverManager.getConnection(dialect.url.apply(databases, DATABASES.incrementAndGet()));
+        harness.setConnectionSource(source);
+        results.add(measure(dialect.name, harness, source, changeLogs, scans));
+      }else{
+        System.out.println("Skipping " + dialect.name + ": " + dialect.driver + " not found");
+      }
+    }
+
+    report(results);
+    assertNull(results.get(0).error, results.get(0).error);
+  }
+
+  private static Result measure(String dialect, MigrationReplayHarness harness, MigrationReplayHarness.ConnectionSource source, 
+          Path changeLogs, int scans) {
+    Result result = new Result(dialect);
+
+    try{
+      List<MigrationReplayHarness.Sample> samples = harness.run(changeLogs);
+      result.applyOverhead = MigrationReplayHarness.overhead(samples, "facade-apply-all", "raw-apply-all");
+      result.rollbackOverhead = MigrationReplayHarness.overhead(samples, "facade-rollback-all", "raw-rollback-all");
+    }catch(Exception e){
+      result.fail(e);
+    }
+
+    try{
+      scan(result, harness, source, changeLogs, scans);
+    }catch(Exception e){
+      result.fail(e);
+    }
+
+    return result;
+  }
+
+  private static void scan(Result result, MigrationReplayHarness harness, MigrationReplayHarness.ConnectionSource source, 
+          Path changeLogs, int scans) throws Exception {
+    final Function<Version, ResourceAccessor> accessor = v -> new FileSystemResourceAccessor(changeLogs.toString());
+
+    try(Connection connection = source.open()){
+      MigrationResult migration = new LinearProgressionFacade(connection, harness.getVersions(), MigrationReplayHarness::fileName, accessor).applyAllWithResult();
+      List<Long> latencies = new ArrayList<>();
+      List<Long> bookkeeping = new ArrayList<>();
+      migration.getChangeSets().forEach(c -> {
+        latencies.add(c.getDuration().toNanos());
+        bookkeeping.add(c.getBookkeepingTime().toNanos());
+      });
+      result.changeSetP50 = percentile(latencies, 50);
+      result.changeSetP95 = percentile(latencies, 95);
+      result.bookkeepingP50 = percentile(bookkeeping, 50);
+
+      long isVersioned = 0;
+      long currentVersion = 0;
+
+      for(int scan = 0; scan < scans; scan++){
+        long start = System.nanoTime();
+        assertTrue(new LinearProgressionFacade(connection, harness.getVersions(), MigrationReplayHarness::fileName, accessor).isVersioned());
+        isVersioned += System.nanoTime() - start;
+
+        start = System.nanoTime();
+        assertEquals(migration.getToVersion(), new LinearProgressionFacade(connection, harness.getVersions(), MigrationReplayHarness::fileName, accessor).getCurrentVersion());
+        currentVersion += System.nanoTime() - start;
+      }
+
+      result.isVersioned = (double) isVersioned / Math.max(1, scans);
+      result.currentVersion = (double) currentVersion / Math.max(1, scans);
+
+      //the scans' reads leave a transaction open, and derby refuses to close connections in one
+      if(!connection.getAutoCommit()){
+        connection.rollback();
+      }
+    }
+  }
+
+  private static long percentile(List<Long> values, int percentile) {
+    if(values.isEmpty()){
+      return 0;
+    }
+
+    List<Long> sorted = new ArrayList<>(values);
+    Collections.sort(sorted);
+    return sorted.get(Math.min(sorted.size() - 1, (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1));
+  }
+
+  private static void report(List<Result> results) throws Exception {
+    final String header = "dialect,apply_overhead,rollback_overhead,is_versioned_us,current_version_us,changeset_p50_ms,changeset_p95_ms,bookkeeping_p50_ms,error";
+    final Path output = Paths.get(System.getProperty("benchmark.output", "target/benchmark"));
+    Files.createDirectories(output);
+    System.out.println(String.format("%-12s %8s %8s %12s %12s %10s %10s %10s", "dialect", "apply", "rollback", "versioned", "current", "cs p50", "cs p95", "book p50") + "  error");
+
+    try(Writer csv = Files.newBufferedWriter(output.resolve("dialects.csv"), StandardCharsets.UTF_8)){
+      csv.write(header + "\n");
+
+      for(Result r : results){
+        System.out.println(String.format(
+                "%-12s %7.2fx %7.2fx %10.1fus %10.1fus %8.3fms %8.3fms %8.3fms  %s",
+                r.dialect, r.applyOverhead, r.rollbackOverhead, r.isVersioned / 1e3, r.currentVersion / 1e3, r.changeSetP50 / 1e6, r.changeSetP95 / 1e6, r.bookkeepingP50 / 1e6, 
+                r.error == null ? "" : r.error
+        ));
+        csv.write(String.format(
+                "%s,%.3f,%.3f,%.1f,%.1f,%.3f,%.3f,%.3f,\"%s\"%n",
+                r.dialect, r.applyOverhead, r.rollbackOverhead, r.isVersioned / 1e3, r.currentVersion / 1e3, r.changeSetP50 / 1e6, r.changeSetP95 / 1e6, r.bookkeepingP50 / 1e6, 
+                r.error == null ? "" : r.error.replace("\"", "\"\"")
+        ));
+      }
+    }
+  }
+
+  @FunctionalInterface
+  private interface Url {
+    String apply(Path directory, int database);
+  }
+
+  private static final class Dialect {
+    private final String name;
+    private final String driver;
+    private final Url url;
+
+    Dialect(String name, String driver, Url url) {
+      this.name = name;
+      this.driver = driver;
+      this.url = url;
+    }
+
+    boolean isAvailable() {
+      try{
+        Class.forName(driver);
+        return true;
+      }catch(ClassNotFoundException e){
+        return false;
+      }
+    }
+  }
+
+  private static final class Result {
+    private final String dialect;
+    private double applyOverhead = Double.NaN;
+    private double rollbackOverhead = Double.NaN;
+    private double isVersioned = Double.NaN;
+    private double currentVersion = Double.NaN;
+    private double changeSetP50 = Double.NaN;
+    private double changeSetP95 = Double.NaN;
+    private double bookkeepingP50 = Double.NaN;
+    private String error;
+
+    Result(String dialect) {
+      this.dialect = dialect;
+    }
+
+    /**
+     * Records the deepest cause of {@code e}, after any recorded before it.
+     */
+    void fail(Exception e) {
+      Throwable cause = e;
+
+      while(cause.getCause() != null){
+        cause = cause.getCause();
+      }
+
+      final String message = cause.getClass().getSimpleName() + ": " + cause.getMessage();
+      error = error == null ? message : error + "; " + message;
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class DriftDetectorTest {
+  private static final String DB_URL = "jdbc:hsqldb:mem:drift;shutdown=true";
+
+  private static final List<Version> versions = Arrays.asList(new Version(1,0,0), new Version(1,1,0), new Version(2,0,0));
+
+  private static final Function<Version, String> changesetFileLocator = v -> String.format("test/Version-%d.%d.%d.xml", v.getMajor(), v.getMinor(), v.getRelease());
+
+  private static final Function<Version, ResourceAccessor> resourceAccessorGenerator = v -> new ClassLoaderResourceAccessor();
+
+  private Connection connection;
+
+  private LinearProgressionFacade facade;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection(DB_URL);
+    facade = new LinearProgressionFacade(connection, versions, changesetFileLocator, resourceAccessorGenerator);
+    facade.setDriftDetector(new DriftDetector());
+    facade.applyAll();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  @Test
+  public void noDriftMustBeFoundRightAfterApply() throws Exception {
+    assertTrue(facade.getDriftDetector().detect(connection).isEmpty());
+  }
+
+  @Test
+  public void manualChangesMustBeDetected() throws Exception {
+    try(Statement stmt = connection.createStatement()){
+      stmt.execute("alter table Customer add column hotfix int");
+      stmt.execute("create table Hotfix (id int)");
+      stmt.execute("drop table Product");
+    }
+
+    Map<String, DriftDetector.Drift> drift = facade.getDriftDetector().detect(connection);
+    assertEquals(3, drift.size());
+    assertEquals(DriftDetector.Drift.CHANGED, drift.get("CUSTOMER"));
+    assertEquals(DriftDetector.Drift.ADDED, drift.get("HOTFIX"));
+    assertEquals(DriftDetector.Drift.REMOVED, drift.get("PRODUCT"));
+  }
+
+  @Test
+  public void migrationsMustRefreshTheSnapshot() throws Exception {
+    facade.apply(1, 0, 0);
+    assertTrue(facade.getDriftDetector().detect(connection).isEmpty());
+  }
+
+  @Test
+  public void newIndexMustBeDetected() throws Exception {
+    try(Statement stmt = connection.createStatement()){
+      stmt.execute("create index customer_email on Customer (email)");
+    }
+
+    assertEquals(DriftDetector.Drift.CHANGED, facade.getDriftDetector().detect(connection).get("CUSTOMER"));
+  }
+}
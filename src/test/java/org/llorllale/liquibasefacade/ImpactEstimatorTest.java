@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import liquibase.Liquibase;
+import liquibase.changelog.ChangeSet;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class ImpactEstimatorTest {
+  private static final String DB_URL = "jdbc:hsqldb:mem:impact;shutdown=true";
+
+  private static final List<Version> versions = Arrays.asList(new Version(1,0,0), new Version(1,1,0), new Version(2,0,0));
+
+  private static final Function<Version, String> changeLogFileGenerator = v -> String.format("test/Version-%s.xml", v.string());
+
+  private static final Function<Version, ResourceAccessor> resourceAccessorGenerator = v -> new ClassLoaderResourceAccessor();
+
+  private Connection connection;
+
+  private LinearProgressionFacade facade;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection(DB_URL);
+    facade = new LinearProgressionFacade(connection, versions, changeLogFileGenerator, resourceAccessorGenerator);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  @Test
+  public void upgradeMustBeEstimatedPerVersion() throws Exception {
+    facade.apply(Version.of(1, 0, 0));
+    customers(5000);
+    List<VersionEstimate> estimates = facade.estimate(Version.of(2, 0, 0));
+    assertEquals(2, estimates.size());
+    assertEquals(Version.of(1, 1, 0), estimates.get(0).getVersion());
+    assertEquals(3, estimates.get(0).getChangeCount());
+    assertEquals(0, estimates.get(0).getMeasuredChangeCount());
+    //the foreign key is validated against every customer
+    assertEquals(Collections.singletonMap("Customer", 5000L), estimates.get(0).getTableRows());
+    assertTrue(estimates.get(0).getUnsizedTables().isEmpty());
+    assertEquals(Duration.ofNanos(3 * ImpactEstimator.CHANGE_NANOS + 5000 * ImpactEstimator.INDEX_ROW_NANOS), estimates.get(0).getEstimate());
+    assertEquals(Version.of(2, 0, 0), estimates.get(1).getVersion());
+    assertTrue(estimates.get(1).getTableRows().isEmpty());
+    assertEquals(Duration.ofNanos(ImpactEstimator.CHANGE_NANOS), estimates.get(1).getEstimate());
+  }
+
+  @Test
+  public void estimateMustGrowWithRows() throws Exception {
+    facade.apply(Version.of(1, 0, 0));
+    final Duration empty = facade.estimate(Version.of(1, 1, 0)).get(0).getEstimate();
+    customers(1000);
+    final Duration full = facade.estimate(Version.of(1, 1, 0)).get(0).getEstimate();
+    assertTrue(full.compareTo(empty) > 0);
+  }
+
+  @Test
+  public void tablesOfUnknownSizeMustNotBeCounted() throws Exception {
+    facade.apply(Version.of(1, 0, 0));
+    customers(1000);
+    final Version version = Version.of(1, 1, 0);
+    Liquibase liquibase = new Liquibase(
+            changeLogFileGenerator.apply(version), 
+            resourceAccessorGenerator.apply(version), 
+            DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection))
+    );
+    Map<Version, List<ChangeSet>> plan = Collections.singletonMap(version, liquibase.getDatabaseChangeLog().getChangeSets());
+
+    //without a query for the row count the catalog maintains
+    VersionEstimate estimate = new ImpactEstimator(connection, new TimingHistory(connection).read(false), null).estimate(plan).get(0);
+    assertTrue(estimate.getTableRows().isEmpty());
+    assertEquals(Collections.singleton("Customer"), estimate.getUnsizedTables());
+    assertEquals(Duration.ofNanos(3 * ImpactEstimator.CHANGE_NANOS), estimate.getEstimate());
+  }
+
+  @Test
+  public void recordedTimingsMustBeUsed() throws Exception {
+    facade.setRecordTimings(true);
+    facade.apply(Version.of(1, 0, 0));
+    MigrationResult result = facade.applyWithResult(Version.of(1, 1, 0));
+    facade.apply(Version.of(1, 0, 0));
+    VersionEstimate estimate = facade.estimate(Version.of(1, 1, 0)).get(0);
+    assertEquals(3, estimate.getMeasuredChangeCount());
+    assertEquals(
+            result.getVersions().get(0).getChangeSets().stream().map(ChangeSetResult::getDuration).reduce(Duration.ZERO, Duration::plus), 
+            estimate.getEstimate()
+    );
+  }
+
+  @Test
+  public void downgradeMustBeEstimatedInRollbackOrder() throws Exception {
+    facade.applyAll();
+    List<VersionEstimate> estimates = facade.estimate(Version.of(1, 0, 0));
+    assertEquals(2, estimates.size());
+    assertEquals(Version.of(2, 0, 0), estimates.get(0).getVersion());
+    assertEquals(Version.of(1, 1, 0), estimates.get(1).getVersion());
+  }
+
+  @Test
+  public void currentVersionMustNeedNoMigration() throws Exception {
+    facade.apply(Version.of(1, 1, 0));
+    assertTrue(facade.estimate(Version.of(1, 1, 0)).isEmpty());
+  }
+
+  @Test
+  public void estimateMustNotChangeTheSchema() throws Exception {
+    facade.apply(Version.of(1, 0, 0));
+    facade.estimate(Version.of(2, 0, 0));
+    assertEquals(Version.of(1, 0, 0), facade.getCurrentVersion());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownVersionMustBeRejected() throws LiquibaseException {
+    facade.estimate(Version.of(3, 0, 0));
+  }
+
+  private void customers(int count) throws Exception {
+    try(PreparedStatement stmt = connection.prepareStatement("insert into Customer (id, first_name) values (?, ?)")){
+      for(int i = 0; i < count; i++){
+        stmt.setInt(1, i);
+        stmt.setString(2, "c" + i);
+        stmt.addBatch();
+      }
+
+      stmt.executeBatch();
+    }
+  }
+}
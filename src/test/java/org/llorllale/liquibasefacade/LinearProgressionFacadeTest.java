@@ -26,6 +26,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.function.Function;
+import liquibase.Liquibase;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
 import liquibase.resource.ClassLoaderResourceAccessor;
 import liquibase.resource.ResourceAccessor;
 import org.junit.After;
@@ -340,6 +343,174 @@ public class LinearProgressionFacadeTest {
     f.apply(versions.get(1));
   }
 
+  @Test
+  public void unparsableTagMustFailAsAnInconsistency() throws Exception {
+    LinearProgressionFacade f = new LinearProgressionFacade(
+            connection, 
+            versions,
+            changesetFileLocator,
+            resourceAccessorGenerator
+    );
+
+    f.applyAll();
+    insertTag("release-3");
+
+    try{
+      f.getCurrentVersion();
+      fail("unparsable tag was accepted");
+    }catch(IllegalStateException e){
+      assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+
+    try{
+      new LinearProgressionFacade(connection, versions, changesetFileLocator, resourceAccessorGenerator);
+      fail("unparsable tag was accepted");
+    }catch(IllegalStateException e){
+      //expected
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void getCurrentVersionMustFailIfVersionWasAppliedTwice() throws Exception {
+    LinearProgressionFacade f = new LinearProgressionFacade(
+            connection, 
+            versions,
+            changesetFileLocator,
+            resourceAccessorGenerator
+    );
+
+    f.apply(1, 1, 0);
+    insertVersion(Version.of(1, 0, 0));
+    f.getCurrentVersion();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void getCurrentVersionMustFailIfAppliedVersionsAreNotContiguous() throws Exception {
+    LinearProgressionFacade f = new LinearProgressionFacade(
+            connection, 
+            versions,
+            changesetFileLocator,
+            resourceAccessorGenerator
+    );
+
+    f.apply(1, 0, 0);
+    insertVersion(Version.of(2, 0, 0));
+    f.getCurrentVersion();
+  }
+
+  /**
+   * A resumable upgrade interrupted after the first changeSet of 1.1.0 must resume with the remaining
+   * changeSets of that version only, and drop its checkpoints once the version is tagged.
+   */
+  @Test
+  public void resumableUpgradeMustSkipCheckpointedChangesets() throws Exception {
+    LinearProgressionFacade f = new LinearProgressionFacade(
+            connection, 
+            versions,
+            changesetFileLocator,
+            resourceAccessorGenerator
+    );
+    f.setResumable(true);
+    f.apply(1, 0, 0);
+
+    //simulate an upgrade to 1.1.0 that died right after its first changeSet
+    Version interrupted = Version.of(1, 1, 0);
+    Liquibase liquibase = new Liquibase(
+            changesetFileLocator.apply(interrupted), 
+            resourceAccessorGenerator.apply(interrupted), 
+            DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection))
+    );
+    liquibase.update(1, (String) null);
+    new CheckpointLog(connection, null).record(interrupted, 0, liquibase.getDatabaseChangeLog().getChangeSets().get(0));
+
+    assertEquals(2, f.apply(interrupted));
+    assertEquals(interrupted, f.getCurrentVersion());
+    assertTrue(tableExists("Address", connection));
+    assertTrue(columnExists("Customer", "address_id", connection));
+    assertEquals(0, rowCount(CheckpointLog.CHECKPOINT_TABLE));
+  }
+
+  /**
+   * A resumed upgrade must hand liquibase only the changeSets past the last checkpoint: a checkpointed changeSet
+   * must not be run again, even if liquibase's history has no row for it.
+   */
+  @Test
+  public void resumableUpgradeMustNotRunCheckpointedChangesets() throws Exception {
+    LinearProgressionFacade f = new LinearProgressionFacade(
+            connection, 
+            versions,
+            changesetFileLocator,
+            resourceAccessorGenerator
+    );
+    f.setResumable(true);
+    f.apply(1, 0, 0);
+
+    Version interrupted = Version.of(1, 1, 0);
+    Liquibase liquibase = new Liquibase(
+            changesetFileLocator.apply(interrupted), 
+            resourceAccessorGenerator.apply(interrupted), 
+            DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection))
+    );
+    liquibase.update(1, (String) null);
+    new CheckpointLog(connection, null).record(interrupted, 0, liquibase.getDatabaseChangeLog().getChangeSets().get(0));
+
+    try(PreparedStatement stmt = connection.prepareStatement("delete from databasechangelog where filename = ?")){
+      stmt.setString(1, changesetFileLocator.apply(interrupted));
+      stmt.execute();
+    }
+
+    assertEquals(2, f.apply(interrupted));
+    assertEquals(interrupted, f.getCurrentVersion());
+    assertTrue(columnExists("Customer", "address_id", connection));
+  }
+
+  /**
+   * A jump must leave the same history as walking through the versions: every version tagged on its own last
+   * changeSet, so that the versions can be rolled back one at a time afterwards.
+   */
+  @Test
+  public void jumpUpgradeMustTagEveryVersion() throws Exception {
+    LinearProgressionFacade f = new LinearProgressionFacade(
+            connection, 
+            versions,
+            changesetFileLocator,
+            resourceAccessorGenerator
+    );
+    f.setJumpUpgrades(true);
+    MigrationResult result = f.applyAllWithResult();
+
+    assertEquals(5, result.getChangeCount());
+    assertEquals(3, result.getVersions().size());
+    assertEquals(Arrays.asList(1, 3, 1), Arrays.asList(
+            result.getVersions().get(0).getChangeCount(), 
+            result.getVersions().get(1).getChangeCount(), 
+            result.getVersions().get(2).getChangeCount()
+    ));
+    assertEquals(Version.of(2, 0, 0), f.getCurrentVersion());
+    assertEquals(Arrays.asList("2.0.0", "1.1.0", "1.0.0"), tags());
+
+    assertEquals(4, f.apply(1, 0, 0));
+    assertEquals(Version.of(1, 0, 0), f.getCurrentVersion());
+    assertFalse(tableExists("Address", connection));
+    assertTrue(tableExists("Customer", connection));
+
+    assertEquals(4, f.apply(2, 0, 0));
+    assertEquals(Arrays.asList("2.0.0", "1.1.0", "1.0.0"), tags());
+  }
+
+  private List<String> tags() throws SQLException {
+    List<String> tags = new ArrayList<>();
+
+    try(PreparedStatement stmt = connection.prepareStatement("select tag from DATABASECHANGELOG where tag is not null order by orderexecuted desc");
+            ResultSet r = stmt.executeQuery()){
+      while(r.next()){
+        tags.add(r.getString(1));
+      }
+    }
+
+    return tags;
+  }
+
   private boolean tableExists(String table, Connection conn) throws SQLException {
     DatabaseMetaData meta = conn.getMetaData();
 
@@ -356,7 +527,19 @@ public class LinearProgressionFacadeTest {
     }
   }
 
+  private int rowCount(String table) throws SQLException {
+    try(PreparedStatement stmt = connection.prepareStatement("select count(*) from " + table);
+            ResultSet r = stmt.executeQuery()){
+      r.next();
+      return r.getInt(1);
+    }
+  }
+
   private void insertVersion(Version version) throws SQLException {
+    insertTag(version.string());
+  }
+
+  private void insertTag(String tag) throws SQLException {
     try(PreparedStatement stmt = connection.prepareStatement("insert into DATABASECHANGELOG values (?,?,?,?,?,?,?,?,?,?,?)")){
       stmt.setString(1, "");  //ID
       stmt.setString(2, "test");  //author
@@ -367,7 +550,7 @@ public class LinearProgressionFacadeTest {
       stmt.setString(7, "q345lkjl");  //md5 hash
       stmt.setString(8, "test");  //description
       stmt.setString(9, "comment"); //comments
-      stmt.setString(10, version.string()); //tag <-- this is the offending version
+      stmt.setString(10, tag); //tag <-- this is the offending version
       stmt.setString(11, "3.2.0"); //liquibase
       stmt.execute();
     }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.time.Duration;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class LockWaitStrategyTest {
+  private static final long MS = 1_000_000L;
+
+  @Test
+  public void delayMustDoubleUpToMaxDelay() {
+    LockWaitStrategy strategy = LockWaitStrategy.exponentialBackoff(Duration.ofMillis(10), Duration.ofMillis(50), 0, Duration.ofMinutes(1));
+    Random random = new Random(1);
+    assertEquals(10 * MS, strategy.delayNanos(0, random));
+    assertEquals(20 * MS, strategy.delayNanos(1, random));
+    assertEquals(40 * MS, strategy.delayNanos(2, random));
+    assertEquals(50 * MS, strategy.delayNanos(3, random));
+    assertEquals(50 * MS, strategy.delayNanos(Integer.MAX_VALUE, random));
+  }
+
+  @Test
+  public void jitterMustShortenDelayByUpToItsFraction() {
+    LockWaitStrategy strategy = LockWaitStrategy.exponentialBackoff(Duration.ofMillis(100), Duration.ofMillis(100), 0.25, Duration.ofMinutes(1));
+    Random random = new Random(1);
+    boolean shortened = false;
+
+    for(int i = 0; i < 100; i++){
+      final long delay = strategy.delayNanos(i, random);
+      assertTrue(delay > 75 * MS && delay <= 100 * MS);
+      shortened |= delay < 100 * MS;
+    }
+
+    assertTrue(shortened);
+  }
+
+  @Test
+  public void fixedDelayMustNotVary() {
+    LockWaitStrategy strategy = LockWaitStrategy.fixedDelay(Duration.ofMillis(30), Duration.ofSeconds(1));
+    Random random = new Random(1);
+
+    for(int i = 0; i < 10; i++){
+      assertEquals(30 * MS, strategy.delayNanos(i, random));
+    }
+  }
+
+  @Test
+  public void defaultsMustGiveUpAfterFiveMinutes() {
+    assertEquals(Duration.ofMinutes(5), LockWaitStrategy.defaults().getMaxWait());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void maxDelayMustNotBeLessThanInitialDelay() {
+    LockWaitStrategy.exponentialBackoff(Duration.ofSeconds(2), Duration.ofSeconds(1), 0, Duration.ofMinutes(1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void jitterMustNotExceedOne() {
+    LockWaitStrategy.exponentialBackoff(Duration.ofSeconds(1), Duration.ofSeconds(1), 1.5, Duration.ofMinutes(1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void maxWaitMustNotBeNegative() {
+    LockWaitStrategy.fixedDelay(Duration.ofSeconds(1), Duration.ofSeconds(-1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void zeroDelayMustBeRejected() {
+    LockWaitStrategy.fixedDelay(Duration.ZERO, Duration.ofSeconds(1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void zeroInitialDelayMustBeRejected() {
+    LockWaitStrategy.exponentialBackoff(Duration.ZERO, Duration.ofSeconds(1), 0, Duration.ofSeconds(1));
+  }
+}
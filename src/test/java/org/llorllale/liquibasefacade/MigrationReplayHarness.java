@@ -0,0 +1,358 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.FileSystemResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * Replays synthetic migrations against fresh databases, in-memory HSQLDB ones unless another
+ * {@link #setConnectionSource(org.llorllale.liquibasefacade.MigrationReplayHarness.ConnectionSource) source} is set,
+ * to measure the facade's overhead.<br>
+ * {@link #generate(java.nio.file.Path) Generates} one changelog per version, each creating a table followed by a
+ * configurable mix of changeSets, then {@link #run(java.nio.file.Path) runs} a number of cycles of:
+ * <ul>
+ * <li>{@code facade-apply-all}: {@link LinearProgressionFacade#applyAll()} on an empty database</li>
+ * <li>{@code facade-rollback-all}: {@link LinearProgressionFacade#rollbackAll()}</li>
+ * <li>{@code facade-random-walk}: {@link LinearProgressionFacade#apply(org.llorllale.liquibasefacade.Version)} to random versions</li>
+ * <li>{@code raw-apply-all}: liquibase, one update and tag per version, on an empty database</li>
+ * <li>{@code raw-rollback-all}: liquibase, one rollback per version</li>
+ * </ul>
+ * Each phase's timing is reported as a {@link Sample} and can be {@link #writeCsv(java.util.List, java.io.Writer) written} as CSV.
+ * @author George Aristy
+ */
+public class MigrationReplayHarness {
+  /**
+   * The kinds of changeSets generated after each version's initial {@code createTable}.
+   */
+  public enum ChangeKind {
+    ADD_COLUMN,
+    CREATE_INDEX,
+    INSERT_ROW
+  }
+
+  /**
+   * Opens a connection to a new, empty database.
+   */
+  @FunctionalInterface
+  public interface ConnectionSource {
+    Connection open() throws Exception;
+  }
+
+  private static final AtomicInteger DATABASES = new AtomicInteger();
+
+  private int versionCount = 5;
+  private int changeSetsPerVersion = 10;
+  private int cycles = 3;
+  private int randomWalkSteps = 10;
+  private long seed = 42;
+  private ConnectionSource connectionSource = MigrationReplayHarness::newDatabase;
+  private final Map<ChangeKind, Integer> mix = new EnumMap<>(ChangeKind.class);
+
+  public MigrationReplayHarness() {
+    mix.put(ChangeKind.ADD_COLUMN, 5);
+    mix.put(ChangeKind.CREATE_INDEX, 2);
+    mix.put(ChangeKind.INSERT_ROW, 3);
+  }
+
+  public void setVersionCount(int versionCount) {
+    this.versionCount = versionCount;
+  }
+
+  /**
+   *
+   * @param changeSetsPerVersion the number of changeSets of each version, including its {@code createTable}
+   */
+  public void setChangeSetsPerVersion(int changeSetsPerVersion) {
+    this.changeSetsPerVersion = changeSetsPerVersion;
+  }
+
+  public void setCycles(int cycles) {
+    this.cycles = cycles;
+  }
+
+  public void setRandomWalkSteps(int randomWalkSteps) {
+    this.randomWalkSteps = randomWalkSteps;
+  }
+
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  /**
+   *
+   * @param connectionSource opens a connection to a new, empty database for each cycle and each of its facade and
+   * raw liquibase parts
+   */
+  public void setConnectionSource(ConnectionSource connectionSource) {
+    this.connectionSource = Objects.requireNonNull(connectionSource, "null connectionSource.");
+  }
+
+  /**
+   *
+   * @param kind the kind of changeSet
+   * @param weight the relative frequency of {@code kind}; {@code 0} to never generate it
+   */
+  public void setWeight(ChangeKind kind, int weight) {
+    mix.put(kind, weight);
+  }
+
+  /**
+   *
+   * @return the versions generated, in order
+   */
+  public List<Version> getVersions() {
+    List<Version> versions = new ArrayList<>();
+
+    for(int v = 1; v <= versionCount; v++){
+      versions.add(Version.of(1, v, 0));
+    }
+
+    return versions;
+  }
+
+  /**
+   * Writes one changelog per version to {@code directory}.
+   * @param directory the directory to write the changelogs to
+   * @throws IOException if the changelogs cannot be written
+   */
+  public void generate(Path directory) throws IOException {
+    Random random = new Random(seed);
+    int totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+
+    for(Version version : getVersions()){
+      final String table = "T" + version.getMinor();
+      StringBuilder xml = new StringBuilder()
+              .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+              .append("<databaseChangeLog xmlns=\"http://www.liquibase.org/xml/ns/dbchangelog\"")
+              .append(" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"")
+              .append(" xsi:schemaLocation=\"http://www.liquibase.org/xml/ns/dbchangelog http://www.liquibase.org/xml/ns/dbchangelog/dbchangelog-3.0.xsd\">\n")
+              .append(String.format("  <changeSet id=\"1\" author=\"harness\">%n    <createTable tableName=\"%s\">%n", table))
+              .append("      <column name=\"id\" type=\"int\"><constraints primaryKey=\"true\" nullable=\"false\"/></column>\n")
+              .append("    </createTable>\n  </changeSet>\n");
+      List<String> unindexed = new ArrayList<>();
+      int rows = 0;
+
+      for(int id = 2; id <= changeSetsPerVersion; id++){
+        ChangeKind kind = pick(random, totalWeight);
+
+        if(kind == ChangeKind.CREATE_INDEX && unindexed.isEmpty()){
+          kind = ChangeKind.ADD_COLUMN;
+        }
+
+        xml.append(String.format("  <changeSet id=\"%d\" author=\"harness\">%n", id));
+
+        switch(kind){
+          case ADD_COLUMN:
+            final String column = "c" + id;
+            unindexed.add(column);
+            xml.append(String.format("    <addColumn tableName=\"%s\"><column name=\"%s\" type=\"varchar(50)\"/></addColumn>%n", table, column));
+            break;
+          case CREATE_INDEX:
+            final String indexed = unindexed.remove(0);
+            xml.append(String.format("    <createIndex tableName=\"%s\" indexName=\"%s_%s\"><column name=\"%s\"/></createIndex>%n", table, table, indexed, indexed));
+            break;
+          default:
+            rows++;
+            xml.append(String.format("    <insert tableName=\"%s\"><column name=\"id\" valueNumeric=\"%d\"/></insert>%n", table, rows))
+                    .append(String.format("    <rollback><delete tableName=\"%s\"><where>id = %d</where></delete></rollback>%n", table, rows));
+        }
+
+        xml.append("  </changeSet>\n");
+      }
+
+      xml.append("</databaseChangeLog>\n");
+      Files.write(directory.resolve(fileName(version)), xml.toString().getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Runs the configured number of cycles over the changelogs {@link #generate(java.nio.file.Path) generated} in {@code directory}.
+   * @param directory the directory holding the changelogs
+   * @return the timings of every phase of every cycle
+   * @throws Exception if any migration fails
+   */
+  public List<Sample> run(Path directory) throws Exception {
+    final List<Version> versions = getVersions();
+    final Function<Version, String> locator = MigrationReplayHarness::fileName;
+    final Function<Version, ResourceAccessor> accessor = v -> new FileSystemResourceAccessor(directory.toString());
+    Random random = new Random(seed);
+    List<Sample> samples = new ArrayList<>();
+
+    for(int cycle = 1; cycle <= cycles; cycle++){
+      try(Connection connection = connectionSource.open()){
+        LinearProgressionFacade facade = new LinearProgressionFacade(connection, versions, locator, accessor);
+        long start = System.nanoTime();
+        int changes = facade.applyAll();
+        samples.add(new Sample("facade-apply-all", cycle, System.nanoTime() - start, changes));
+
+        start = System.nanoTime();
+        changes = facade.rollbackAll();
+        samples.add(new Sample("facade-rollback-all", cycle, System.nanoTime() - start, changes));
+
+        start = System.nanoTime();
+        changes = 0;
+
+        for(int step = 0; step < randomWalkSteps; step++){
+          changes += facade.apply(versions.get(random.nextInt(versions.size())));
+        }
+
+        samples.add(new Sample("facade-random-walk", cycle, System.nanoTime() - start, changes));
+      }
+
+      try(Connection connection = connectionSource.open()){
+        List<Version> reversed = new ArrayList<>(versions);
+        Collections.reverse(reversed);
+        long start = System.nanoTime();
+        int changes = 0;
+
+        for(Version version : versions){
+          Liquibase liquibase = new Liquibase(fileName(version), accessor.apply(version), database(connection));
+          liquibase.update((String) null);
+          liquibase.tag(version.string());
+          changes += changeSetsPerVersion;
+        }
+
+        samples.add(new Sample("raw-apply-all", cycle, System.nanoTime() - start, changes));
+
+        start = System.nanoTime();
+        changes = 0;
+
+        for(Version version : reversed){
+          Liquibase liquibase = new Liquibase(fileName(version), accessor.apply(version), database(connection));
+          liquibase.rollback(changeSetsPerVersion, (String) null);
+          changes += changeSetsPerVersion;
+        }
+
+        samples.add(new Sample("raw-rollback-all", cycle, System.nanoTime() - start, changes));
+      }
+    }
+
+    return samples;
+  }
+
+  /**
+   * Writes {@code samples} as CSV with a {@code phase,cycle,millis,changes} header.
+   * @param samples the samples to write
+   * @param out the writer to write to
+   * @throws IOException if the samples cannot be written
+   */
+  public static void writeCsv(List<Sample> samples, Writer out) throws IOException {
+    out.write("phase,cycle,millis,changes\n");
+
+    for(Sample sample : samples){
+      out.write(String.format("%s,%d,%.3f,%d%n", sample.getPhase(), sample.getCycle(), sample.getNanos() / 1e6, sample.getChanges()));
+    }
+
+    out.flush();
+  }
+
+  /**
+   * Returns the ratio of the total time of {@code phase} to that of {@code baseline}, eg. the facade's overhead over
+   * raw liquibase as {@code overhead(samples, "facade-apply-all", "raw-apply-all")}.
+   * @param samples the samples of a {@link #run(java.nio.file.Path) run}
+   * @param phase the phase measured
+   * @param baseline the phase measured against
+   * @return the ratio of the total time of {@code phase} to that of {@code baseline}
+   */
+  public static double overhead(List<Sample> samples, String phase, String baseline) {
+    return (double) total(samples, phase) / total(samples, baseline);
+  }
+
+  private static long total(List<Sample> samples, String phase) {
+    return samples.stream().filter(s -> s.getPhase().equals(phase)).mapToLong(Sample::getNanos).sum();
+  }
+
+  private ChangeKind pick(Random random, int totalWeight) {
+    int r = random.nextInt(Math.max(1, totalWeight));
+
+    for(Map.Entry<ChangeKind, Integer> entry : mix.entrySet()){
+      r -= entry.getValue();
+
+      if(r < 0){
+        return entry.getKey();
+      }
+    }
+
+    return ChangeKind.ADD_COLUMN;
+  }
+
+  static String fileName(Version version) {
+    return String.format("Version-%s.xml", version.string());
+  }
+
+  private static Connection newDatabase() throws Exception {
+    return DriverManager.getConnection("jdbc:hsqldb:mem:replay" + DATABASES.incrementAndGet() + ";shutdown=true");
+  }
+
+  private static Database database(Connection connection) throws LiquibaseException {
+    return DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+  }
+
+  /**
+   * The timing of one phase of one cycle.
+   */
+  public static final class Sample {
+    private final String phase;
+    private final int cycle;
+    private final long nanos;
+    private final int changes;
+
+    Sample(String phase, int cycle, long nanos, int changes) {
+      this.phase = phase;
+      this.cycle = cycle;
+      this.nanos = nanos;
+      this.changes = changes;
+    }
+
+    public String getPhase() {
+      return phase;
+    }
+
+    public int getCycle() {
+      return cycle;
+    }
+
+    public long getNanos() {
+      return nanos;
+    }
+
+    public int getChanges() {
+      return changes;
+    }
+  }
+}
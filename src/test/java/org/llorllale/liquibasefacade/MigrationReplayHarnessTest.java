@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class MigrationReplayHarnessTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void harnessMustReplayEveryPhaseOfEveryCycle() throws Exception {
+    MigrationReplayHarness harness = new MigrationReplayHarness();
+    harness.setVersionCount(3);
+    harness.setChangeSetsPerVersion(4);
+    harness.setCycles(2);
+    harness.setRandomWalkSteps(4);
+    Path directory = folder.getRoot().toPath();
+    harness.generate(directory);
+
+    List<MigrationReplayHarness.Sample> samples = harness.run(directory);
+    assertEquals(10, samples.size());
+
+    for(MigrationReplayHarness.Sample sample : samples){
+      if(sample.getPhase().endsWith("-all")){
+        assertEquals(sample.getPhase(), 12, sample.getChanges());
+      }
+
+      assertTrue(sample.getNanos() > 0);
+    }
+
+    double overhead = MigrationReplayHarness.overhead(samples, "facade-apply-all", "raw-apply-all");
+    assertTrue(overhead > 0 && !Double.isInfinite(overhead));
+
+    StringWriter csv = new StringWriter();
+    MigrationReplayHarness.writeCsv(samples, csv);
+    String[] lines = csv.toString().split("\\R");
+    assertEquals(11, lines.length);
+    assertEquals("phase,cycle,millis,changes", lines[0]);
+    assertTrue(lines[1].startsWith("facade-apply-all,1,"));
+  }
+
+  @Test
+  public void indexesOnlyMixMustStillGenerateValidChangeLogs() throws Exception {
+    MigrationReplayHarness harness = new MigrationReplayHarness();
+    harness.setVersionCount(2);
+    harness.setChangeSetsPerVersion(5);
+    harness.setCycles(1);
+    harness.setRandomWalkSteps(0);
+    harness.setWeight(MigrationReplayHarness.ChangeKind.ADD_COLUMN, 0);
+    harness.setWeight(MigrationReplayHarness.ChangeKind.INSERT_ROW, 0);
+    Path directory = folder.getRoot().toPath();
+    harness.generate(directory);
+
+    assertEquals(10, harness.run(directory).get(0).getChanges());
+  }
+
+  @Test
+  public void everyDatabaseMustBeOpenedFromTheConnectionSource() throws Exception {
+    MigrationReplayHarness harness = new MigrationReplayHarness();
+    harness.setVersionCount(2);
+    harness.setChangeSetsPerVersion(3);
+    harness.setCycles(2);
+    harness.setRandomWalkSteps(0);
+    AtomicInteger opened = new AtomicInteger();
+    harness.setConnectionSource(() -> DriverManager.getConnection("jdbc:hsqldb:mem:source" + opened.incrementAndGet() + ";shutdown=true"));
+    Path directory = folder.getRoot().toPath();
+    harness.generate(directory);
+
+    assertEquals(10, harness.run(directory).size());
+    assertEquals(4, opened.get());
+  }
+}
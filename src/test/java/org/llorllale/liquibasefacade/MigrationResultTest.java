@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class MigrationResultTest {
+  private static final String DB_URL = "jdbc:hsqldb:mem:result;shutdown=true";
+
+  private static final List<Version> versions = Arrays.asList(new Version(1,0,0), new Version(1,1,0));
+
+  private static final Function<Version, String> changesetFileLocator = v -> String.format("test/chunked/Version-%d.%d.%d.xml", v.getMajor(), v.getMinor(), v.getRelease());
+
+  private static final Function<Version, ResourceAccessor> resourceAccessorGenerator = v -> new ClassLoaderResourceAccessor();
+
+  private Connection connection;
+
+  private LinearProgressionFacade facade;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection(DB_URL);
+    facade = new LinearProgressionFacade(connection, versions, changesetFileLocator, resourceAccessorGenerator);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  @Test
+  public void upgradeMustReportEveryVersionAndChangeSet() throws Exception {
+    MigrationResult result = facade.applyAllWithResult();
+    assertEquals(new UndefinedVersion(), result.getFromVersion());
+    assertEquals(Version.of(1, 1, 0), result.getToVersion());
+    assertEquals(2, result.getVersions().size());
+    assertEquals(Version.of(1, 0, 0), result.getVersions().get(0).getVersion());
+    assertEquals(3, result.getChangeCount());
+
+    List<ChangeSetResult> changeSets = result.getChangeSets();
+    assertEquals(Arrays.asList("1", "2", "3"), Arrays.asList(changeSets.get(0).getId(), changeSets.get(1).getId(), changeSets.get(2).getId()));
+    assertEquals(10, changeSets.get(1).getRowsAffected());
+    assertEquals(10, changeSets.get(1).getStatementsExecuted());
+    assertTrue(changeSets.get(2).getRowsAffected() >= 10);
+
+    for(ChangeSetResult changeSet : changeSets){
+      assertEquals("test/chunked/Version-" + (changeSet.getId().equals("3") ? "1.1.0" : "1.0.0") + ".xml", changeSet.getFilePath());
+      assertTrue(changeSet.getStatementsExecuted() > 0);
+      assertFalse(changeSet.getExecutionTime().isNegative());
+      assertFalse(changeSet.getBookkeepingTime().isNegative());
+    }
+  }
+
+  @Test
+  public void downgradeMustReportChangeSetsInRollbackOrder() throws Exception {
+    facade.applyAll();
+    MigrationResult result = facade.rollbackAllWithResult();
+    assertEquals(Version.of(1, 1, 0), result.getFromVersion());
+    assertEquals(new NullVersion(), result.getToVersion());
+    assertEquals(3, result.getChangeCount());
+
+    List<ChangeSetResult> changeSets = result.getChangeSets();
+    assertEquals(Arrays.asList("3", "2", "1"), Arrays.asList(changeSets.get(0).getId(), changeSets.get(1).getId(), changeSets.get(2).getId()));
+    assertTrue(changeSets.get(0).getRowsAffected() >= 10);
+    assertTrue(changeSets.get(1).getRowsAffected() >= 10);
+  }
+
+  @Test
+  public void intApiMustMatchResultChangeCount() throws Exception {
+    assertEquals(2, facade.apply(1, 0, 0));
+    assertEquals(0, facade.applyWithResult(Version.of(1, 0, 0)).getChangeCount());
+    assertTrue(facade.applyWithResult(Version.of(1, 0, 0)).getVersions().isEmpty());
+  }
+}
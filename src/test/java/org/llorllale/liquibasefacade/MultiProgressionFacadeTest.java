@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class MultiProgressionFacadeTest {
+  private static final String DB_URL = "jdbc:hsqldb:mem:modules;shutdown=true";
+
+  private static final Function<Version, ResourceAccessor> resourceAccessorGenerator = v -> new ClassLoaderResourceAccessor();
+
+  //keeps the in-memory database alive between the facade's connections
+  private Connection connection;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection(DB_URL);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  @Test
+  public void applyAllMustMigrateEveryProgression() throws Exception {
+    Map<String, MigrationResult> results = facade("customers").applyAll();
+    assertEquals(Arrays.asList("customers", "orders", "billing"), new ArrayList<>(results.keySet()));
+    assertEquals(Version.of(1, 1, 0), results.get("customers").getToVersion());
+    assertEquals(Version.of(1, 0, 0), results.get("orders").getToVersion());
+    assertEquals(Version.of(2, 0, 0), results.get("billing").getToVersion());
+    assertEquals(Arrays.asList("billing:1.0.0", "billing:2.0.0", "customers:1.0.0", "customers:1.1.0", "orders:1.0.0"), tags());
+  }
+
+  @Test
+  public void progressionsMustBeVersionedIndependently() throws Exception {
+    MultiProgressionFacade facade = facade("customers");
+    facade.apply("customers", Version.of(1, 1, 0));
+    facade.apply("billing", Version.of(2, 0, 0));
+    assertEquals(Version.of(1, 1, 0), facade.getCurrentVersion("customers"));
+    assertEquals(Version.of(2, 0, 0), facade.getCurrentVersion("billing"));
+    assertEquals(new NullVersion(), facade.getCurrentVersion("orders"));
+
+    //billing's changeSets were applied last, yet only customers' are rolled back
+    facade.apply("customers", Version.of(1, 0, 0));
+    assertEquals(Version.of(1, 0, 0), facade.getCurrentVersion("customers"));
+    assertEquals(Version.of(2, 0, 0), facade.getCurrentVersion("billing"));
+    assertTrue(hasTable("PAYMENT"));
+    assertFalse(hasColumn("CLIENT", "EMAIL"));
+  }
+
+  @Test
+  public void failedProgressionMustNotMigrateItsDependents() throws Exception {
+    MultiProgressionFacade facade = facade("missing");
+
+    try{
+      facade.applyAll();
+      fail("progression with missing changelogs was migrated");
+    }catch(LiquibaseException e){
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Progressions [customers] failed; [orders] were not migrated; [billing] were migrated."));
+    }
+
+    assertEquals(Version.of(2, 0, 0), facade.getCurrentVersion("billing"));
+    assertFalse(hasTable("PURCHASE"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void dependenciesMustBeAddedFirst() {
+    new MultiProgressionFacade(p -> DriverManager.getConnection(DB_URL), 1)
+            .addProgression("orders", Arrays.asList(Version.of(1, 0, 0)), locator("orders"), resourceAccessorGenerator, "customers");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void namesMustBeUnique() {
+    MultiProgressionFacade facade = new MultiProgressionFacade(p -> DriverManager.getConnection(DB_URL), 1);
+    facade.addProgression("billing", Arrays.asList(Version.of(1, 0, 0)), locator("billing"), resourceAccessorGenerator);
+    facade.addProgression("billing", Arrays.asList(Version.of(1, 0, 0)), locator("billing"), resourceAccessorGenerator);
+  }
+
+  /**
+   * Orders depend on customers; billing is independent.
+   */
+  private MultiProgressionFacade facade(String customers) {
+    MultiProgressionFacade facade = new MultiProgressionFacade(p -> DriverManager.getConnection(DB_URL), 3);
+    facade.addProgression("customers", Arrays.asList(Version.of(1, 0, 0), Version.of(1, 1, 0)), locator(customers), resourceAccessorGenerator);
+    facade.addProgression("orders", Arrays.asList(Version.of(1, 0, 0)), locator("orders"), resourceAccessorGenerator, "customers");
+    facade.addProgression("billing", Arrays.asList(Version.of(1, 0, 0), Version.of(2, 0, 0)), locator("billing"), resourceAccessorGenerator);
+    return facade;
+  }
+
+  private static Function<Version, String> locator(String module) {
+    return v -> String.format("test/modules/%s/Version-%s.xml", module, v.string());
+  }
+
+  private List<String> tags() throws Exception {
+    List<String> tags = new ArrayList<>();
+
+    try(Statement stmt = connection.createStatement();
+            ResultSet result = stmt.executeQuery("select tag from DATABASECHANGELOG where tag is not null")){
+      while(result.next()){
+        tags.add(result.getString(1));
+      }
+    }
+
+    Collections.sort(tags);
+    return tags;
+  }
+
+  private boolean hasTable(String table) throws Exception {
+    try(ResultSet result = connection.getMetaData().getTables(null, null, table, new String[]{"TABLE"})){
+      return result.next();
+    }
+  }
+
+  private boolean hasColumn(String table, String column) throws Exception {
+    try(ResultSet result = connection.getMetaData().getColumns(null, null, table, column)){
+      return result.next();
+    }
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.core.H2Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class OnlineAlterTableChangeTest {
+  private static final String DB_URL = "jdbc:hsqldb:mem:online;shutdown=true";
+
+  private static final List<Version> versions = Arrays.asList(new Version(1,0,0), new Version(1,1,0));
+
+  private static final Function<Version, String> changesetFileLocator = v -> String.format("test/online/Version-%d.%d.%d.xml", v.getMajor(), v.getMinor(), v.getRelease());
+
+  private static final Function<Version, ResourceAccessor> resourceAccessorGenerator = v -> new ClassLoaderResourceAccessor();
+
+  private Connection connection;
+
+  private LinearProgressionFacade facade;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection(DB_URL);
+    facade = new LinearProgressionFacade(connection, versions, changesetFileLocator, resourceAccessorGenerator);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  @Test
+  public void applyMustAlterTableAndCopyRows() throws Exception {
+    facade.applyAll();
+    assertEquals(10, count("select count(*) from Item where status = 'NEW'"));
+    assertEquals(1, count("select count(*) from Item where id = 89 and name = 'eighty-nine'"));
+    assertFalse(exists("ITEM_OSC"));
+    assertFalse(exists("ITEM_OSC_OLD"));
+    assertEquals(0, count("select count(*) from " + ChunkedUpdateChange.PROGRESS_TABLE));
+    assertEquals(Version.of(1, 1, 0), facade.getCurrentVersion());
+  }
+
+  @Test
+  public void rollbackMustApplyRollbackAlter() throws Exception {
+    facade.applyAll();
+    facade.apply(1, 0, 0);
+    assertFalse(hasColumn("ITEM", "STATUS"));
+    assertEquals(10, count("select count(*) from Item"));
+    assertFalse(exists("ITEM_OSC"));
+  }
+
+  @Test
+  public void interruptedAlterationMustResumeWithWritesInSync() throws Exception {
+    facade.apply(1, 0, 0);
+    OnlineAlterTableChange change = new OnlineAlterTableChange();
+    change.setTableName("Item");
+    change.setKeyColumn("id");
+    change.setAlter("add column status varchar(10) default 'NEW' not null; add constraint item_small check (id < 50)");
+    change.setChunkSize(10);
+    Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+
+    try{
+      change.execute(database);
+      fail("rows 55 and 89 cannot be copied");
+    }catch(CustomChangeException e){
+      //the copy stops at the range holding 55
+    }
+
+    assertEquals(8, count("select count(*) from Item_OSC"));
+    execute("insert into Item (id, name) values (4, 'four')");
+    execute("update Item set name = 'TWO' where id = 2");
+    execute("delete from Item where id = 3");
+    assertEquals(1, count("select count(*) from Item_OSC where id = 4 and status = 'NEW'"));
+    assertEquals(1, count("select count(*) from Item_OSC where id = 2 and name = 'TWO'"));
+    assertEquals(0, count("select count(*) from Item_OSC where id = 3"));
+
+    execute("delete from Item where id > 50");
+    change.execute(database);
+    assertEquals(8, count("select count(*) from Item where status = 'NEW'"));
+    assertEquals(1, count("select count(*) from Item where id = 2 and name = 'TWO'"));
+    assertFalse(exists("ITEM_OSC"));
+    assertEquals(0, count("select count(*) from " + ChunkedUpdateChange.PROGRESS_TABLE));
+  }
+
+  @Test
+  public void interruptedSwapMustBeCompleted() throws Exception {
+    facade.apply(1, 0, 0);
+    OnlineAlterTableChange change = new OnlineAlterTableChange();
+    change.setTableName("Item");
+    change.setKeyColumn("id");
+    change.setAlter("add column status varchar(10) default 'NEW' not null");
+    Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+    change.execute(database);
+
+    //as if the swap had stopped right after renaming the table
+    ChunkedUpdateChange.ensureProgressTable(connection);
+    ChunkedUpdateChange.saveProgress(connection, "online:Item", 89, false);
+    execute("alter table Item rename to Item_OSC_OLD");
+    execute("create table Item_OSC as (select * from Item_OSC_OLD) with data");
+    change.execute(database);
+    assertEquals(10, count("select count(*) from Item where status = 'NEW'"));
+    assertFalse(exists("ITEM_OSC"));
+    assertFalse(exists("ITEM_OSC_OLD"));
+  }
+
+  @Test(expected = CustomChangeException.class)
+  public void referencedTableMustNotBeAlteredOnline() throws Exception {
+    facade.apply(1, 0, 0);
+    execute("create table Part (id int primary key, item_id numeric references Item (id))");
+    OnlineAlterTableChange change = new OnlineAlterTableChange();
+    change.setTableName("Item");
+    change.setKeyColumn("id");
+    change.setAlter("add column status varchar(10)");
+    change.execute(DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection)));
+  }
+
+  @Test
+  public void changeSetInTransactionMustBeRefused() throws Exception {
+    facade = new LinearProgressionFacade(
+            connection, 
+            versions, 
+            v -> v.equals(Version.of(1, 1, 0)) ? "test/online/Transactional-1.1.0.xml" : changesetFileLocator.apply(v), 
+            resourceAccessorGenerator
+    );
+    facade.apply(1, 0, 0);
+
+    try{
+      facade.apply(1, 1, 0);
+      fail("online alteration ran in a transaction");
+    }catch(LiquibaseException e){
+      assertEquals(Version.of(1, 0, 0), facade.getCurrentVersion());
+      assertFalse(hasColumn("ITEM", "STATUS"));
+    }
+  }
+
+  @Test
+  public void columnsMustKeepTheirDefaultsAndNullability() throws Exception {
+    facade.apply(1, 0, 0);
+    execute("alter table Item add column kind varchar(10) default 'x' not null");
+    OnlineAlterTableChange change = new OnlineAlterTableChange();
+    change.setTableName("Item");
+    change.setKeyColumn("id");
+    change.setAlter("add column status varchar(10)");
+    change.execute(DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection)));
+
+    try(ResultSet r = connection.getMetaData().getColumns(null, null, "ITEM", "KIND")){
+      assertTrue(r.next());
+      assertEquals("NO", r.getString("IS_NULLABLE"));
+      assertEquals("'x'", r.getString("COLUMN_DEF"));
+    }
+
+    execute("insert into Item (id, name) values (100, 'hundred')");
+    assertEquals(11, count("select count(*) from Item where kind = 'x'"));
+  }
+
+  @Test
+  public void validationMustRequireTableKeyAndAlter() throws Exception {
+    assertTrue(new OnlineAlterTableChange().validate(null).hasErrors());
+  }
+
+  @Test
+  public void validationMustRejectOtherDatabases() throws Exception {
+    OnlineAlterTableChange change = new OnlineAlterTableChange();
+    change.setTableName("Item");
+    change.setKeyColumn("id");
+    change.setAlter("add column status varchar(10)");
+    assertTrue(change.validate(new H2Database()).hasErrors());
+  }
+
+  private void execute(String sql) throws SQLException {
+    try(Statement stmt = connection.createStatement()){
+      stmt.execute(sql);
+    }
+  }
+
+  private boolean exists(String table) throws SQLException {
+    try(ResultSet r = connection.getMetaData().getTables(null, null, table, null)){
+      return r.next();
+    }
+  }
+
+  private boolean hasColumn(String table, String column) throws SQLException {
+    try(ResultSet r = connection.getMetaData().getColumns(null, null, table, column)){
+      return r.next();
+    }
+  }
+
+  private int count(String sql) throws SQLException {
+    try(PreparedStatement stmt = connection.prepareStatement(sql);
+            ResultSet r = stmt.executeQuery()){
+      r.next();
+      return r.getInt(1);
+    }
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import liquibase.exception.LiquibaseException;
+import liquibase.exception.LockException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class OperationLockTest {
+  private static final String DB_URL = "jdbc:hsqldb:mem:operationlock;shutdown=true";
+
+  private static final List<Version> versions = Arrays.asList(new Version(1,0,0), new Version(1,1,0), new Version(2,0,0));
+
+  private static final Function<Version, String> changeLogFileGenerator = v -> String.format("test/Version-%s.xml", v.string());
+
+  private static final Function<Version, ResourceAccessor> resourceAccessorGenerator = v -> new ClassLoaderResourceAccessor();
+
+  private Connection connection;
+
+  private Connection other;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection(DB_URL);
+    other = DriverManager.getConnection(DB_URL);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    other.close();
+    connection.close();
+  }
+
+  @Test
+  public void uncontendedMigrationMustNotWait() throws Exception {
+    MigrationResult result = facade().applyAllWithResult();
+    assertTrue(result.getLockWaitTime().compareTo(Duration.ofMillis(100)) < 0);
+    assertFalse(isLocked());
+  }
+
+  @Test
+  public void migrationMustWaitForLockHolder() throws Exception {
+    holdLock();
+    CompletableFuture<Void> release = CompletableFuture.runAsync(() -> {
+      try{
+        Thread.sleep(300);
+        new OperationLock(other, null).release();
+      }catch(InterruptedException | LiquibaseException e){
+        throw new IllegalStateException(e);
+      }
+    });
+
+    LinearProgressionFacade facade = facade();
+    facade.setLockWaitStrategy(LockWaitStrategy.exponentialBackoff(Duration.ofMillis(10), Duration.ofMillis(50), 0.5, Duration.ofSeconds(10)));
+    MigrationResult result = facade.applyAllWithResult();
+    release.get();
+    assertTrue(result.getLockWaitTime().compareTo(Duration.ofMillis(250)) >= 0);
+    assertEquals(Version.of(2, 0, 0), result.getToVersion());
+    assertFalse(isLocked());
+  }
+
+  @Test
+  public void migrationMustFailIfLockIsNotReleasedInTime() throws Exception {
+    holdLock();
+    LinearProgressionFacade facade = facade();
+    facade.setLockWaitStrategy(LockWaitStrategy.fixedDelay(Duration.ofMillis(10), Duration.ofMillis(200)));
+
+    try{
+      facade.applyAll();
+      fail("migration ran while another facade held the lock");
+    }catch(LockException e){
+      assertTrue(e.getMessage().contains("held by"));
+    }
+
+    assertFalse(facade.isVersioned());
+    assertTrue(isLocked());
+  }
+
+  @Test
+  public void lockMustBeReleasedIfMigrationFails() throws Exception {
+    LinearProgressionFacade facade = new LinearProgressionFacade(
+            connection, 
+            versions, 
+            v -> String.format(v.getMajor() == 2 ? "test/broken/Version-%s.xml" : "test/Version-%s.xml", v.string()), 
+            resourceAccessorGenerator
+    );
+
+    try{
+      facade.applyAll();
+      fail("broken changelog was applied");
+    }catch(LiquibaseException e){
+      //expected
+    }
+
+    assertFalse(isLocked());
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void lockWaitStrategyMustNotBeNull() throws Exception {
+    facade().setLockWaitStrategy(null);
+  }
+
+  private LinearProgressionFacade facade() throws LiquibaseException {
+    return new LinearProgressionFacade(connection, versions, changeLogFileGenerator, resourceAccessorGenerator);
+  }
+
+  private void holdLock() throws LiquibaseException {
+    new OperationLock(other, null).acquire(LockWaitStrategy.defaults());
+  }
+
+  private boolean isLocked() throws Exception {
+    try(Statement stmt = other.createStatement();
+            ResultSet result = stmt.executeQuery("select count(*) from " + OperationLock.LOCK_TABLE)){
+      result.next();
+      return result.getInt(1) > 0;
+    }
+  }
+}
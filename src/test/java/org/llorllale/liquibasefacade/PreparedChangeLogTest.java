@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.FileSystemResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class PreparedChangeLogTest {
+  private static final String DB_URL = "jdbc:hsqldb:mem:prepare;shutdown=true";
+
+  private static final List<Version> versions = Arrays.asList(new Version(1,0,0), new Version(1,1,0), new Version(2,0,0));
+
+  private static final Function<Version, ResourceAccessor> resourceAccessorGenerator = v -> new ClassLoaderResourceAccessor();
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Connection connection;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection(DB_URL);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  @Test
+  public void preparedChangeLogsMustBeApplied() throws Exception {
+    LinearProgressionFacade facade = new LinearProgressionFacade(connection, versions, locator("test"), resourceAccessorGenerator);
+    assertFalse(facade.isPrepared());
+    facade.prepare();
+    assertTrue(facade.isPrepared());
+    assertEquals(5, facade.applyAll());
+    assertEquals(5, facade.rollbackAll());
+    assertEquals(5, facade.applyAll());
+  }
+
+  @Test
+  public void invalidChangeLogMustFailBeforeAnyChange() throws Exception {
+    Function<Version, String> locator = v -> v.getMajor() == 2 ? "test/broken/Version-2.0.0.xml" : locator("test").apply(v);
+    LinearProgressionFacade facade = new LinearProgressionFacade(connection, versions, locator, resourceAccessorGenerator);
+
+    try{
+      facade.prepare();
+      fail("invalid changelog not detected");
+    }catch(LiquibaseException e){
+      assertTrue(e.getMessage().contains("test/broken/Version-2.0.0.xml"));
+    }
+
+    assertFalse(facade.isVersioned());
+    assertFalse(facade.isPrepared());
+  }
+
+  @Test
+  public void missingChangeLogsMustAllBeReported() throws Exception {
+    LinearProgressionFacade facade = new LinearProgressionFacade(connection, versions, locator("missing"), resourceAccessorGenerator);
+
+    try{
+      facade.prepare();
+      fail("missing changelogs not detected");
+    }catch(LiquibaseException e){
+      assertEquals(2, e.getSuppressed().length);
+    }
+  }
+
+  @Test
+  public void modifiedChangeLogMustBeDetected() throws Exception {
+    File base = folder.getRoot();
+    Files.write(Paths.get(base.getPath(), "Version-1.0.0.xml"), Files.readAllBytes(Paths.get(getClass().getResource("/test/Version-1.0.0.xml").toURI())));
+    List<Version> single = Arrays.asList(new Version(1,0,0));
+    Function<Version, ResourceAccessor> generator = v -> new FileSystemResourceAccessor(base.getPath());
+    new LinearProgressionFacade(connection, single, v -> "Version-1.0.0.xml", generator).applyAll();
+
+    String modified = new String(Files.readAllBytes(Paths.get(base.getPath(), "Version-1.0.0.xml")), StandardCharsets.UTF_8)
+            .replace("varchar(20)", "varchar(40)");
+    Files.write(Paths.get(base.getPath(), "Version-1.0.0.xml"), modified.getBytes(StandardCharsets.UTF_8));
+
+    try{
+      new LinearProgressionFacade(connection, single, v -> "Version-1.0.0.xml", generator).prepare();
+      fail("modified changelog not detected");
+    }catch(LiquibaseException e){
+      assertTrue(e.getMessage().contains("Checksum"));
+    }
+  }
+
+  private static Function<Version, String> locator(String folder) {
+    return v -> String.format("%s/Version-%d.%d.%d.xml", folder, v.getMajor(), v.getMinor(), v.getRelease());
+  }
+}
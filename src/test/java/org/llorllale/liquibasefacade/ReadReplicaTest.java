@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class ReadReplicaTest {
+  private static final String PRIMARY_URL = "jdbc:hsqldb:mem:primary;shutdown=true";
+  private static final String REPLICA_URL = "jdbc:hsqldb:mem:replica;shutdown=true";
+
+  private static final List<Version> versions = Arrays.asList(new Version(1,0,0), new Version(1,1,0));
+
+  private static final Function<Version, String> changesetFileLocator = v -> String.format("test/chunked/Version-%d.%d.%d.xml", v.getMajor(), v.getMinor(), v.getRelease());
+
+  private static final Function<Version, ResourceAccessor> resourceAccessorGenerator = v -> new ClassLoaderResourceAccessor();
+
+  private Connection primary;
+
+  private Connection replica;
+
+  private LinearProgressionFacade facade;
+
+  private LinearProgressionFacade replicaFacade;
+
+  @Before
+  public void setUp() throws Exception {
+    primary = DriverManager.getConnection(PRIMARY_URL);
+    replica = DriverManager.getConnection(REPLICA_URL);
+    facade = new LinearProgressionFacade(primary, versions, changesetFileLocator, resourceAccessorGenerator);
+    replicaFacade = new LinearProgressionFacade(replica, versions, changesetFileLocator, resourceAccessorGenerator);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    primary.close();
+    replica.close();
+  }
+
+  @Test
+  public void replicaThatDoesNotLagMustBeRead() throws Exception {
+    facade.apply(Version.of(1, 0, 0));
+    replicaFacade.applyAll();
+    facade.setReadReplica(replica, Duration.ofHours(1));
+    assertTrue(facade.hasReadReplica());
+    assertEquals(Version.of(1, 1, 0), facade.getCurrentVersion());
+    assertTrue(facade.isDowngrade(Version.of(1, 0, 0)));
+  }
+
+  @Test
+  public void laggingReplicaMustFallBackToPrimary() throws Exception {
+    facade.setReadReplica(replica, Duration.ofHours(1));
+    facade.applyAll();
+    assertFalse(replicaFacade.isVersioned());
+    assertTrue(facade.isVersioned());
+    assertEquals(Version.of(1, 1, 0), facade.getCurrentVersion());
+    assertFalse(facade.isUpgrade(Version.of(1, 1, 0)));
+
+    replicaFacade.apply(Version.of(1, 0, 0));
+    assertEquals(Version.of(1, 1, 0), facade.getCurrentVersion());
+  }
+
+  @Test
+  public void observationOfPrimaryMustBeReusedUntilStale() throws Exception {
+    facade.apply(Version.of(1, 0, 0));
+    replicaFacade.apply(Version.of(1, 0, 0));
+    LinearProgressionFacade other = new LinearProgressionFacade(primary, versions, changesetFileLocator, resourceAccessorGenerator);
+
+    facade.setReadReplica(replica, Duration.ofHours(1));
+    assertEquals(Version.of(1, 0, 0), facade.getCurrentVersion());
+    other.apply(Version.of(1, 1, 0));
+    assertEquals(Version.of(1, 0, 0), facade.getCurrentVersion());
+
+    facade.setReadReplica(replica, Duration.ZERO);
+    assertEquals(Version.of(1, 1, 0), facade.getCurrentVersion());
+  }
+
+  @Test
+  public void dataSourceMustBeSupported() throws Exception {
+    facade.apply(Version.of(1, 0, 0));
+    replicaFacade.applyAll();
+    JDBCDataSource dataSource = new JDBCDataSource();
+    dataSource.setUrl(REPLICA_URL);
+    facade.setReadReplica(dataSource, Duration.ofHours(1));
+    assertEquals(Version.of(1, 1, 0), facade.getCurrentVersion());
+    assertEquals(Version.of(1, 1, 0), facade.getCurrentVersion());
+  }
+
+  @Test
+  public void clearedReplicaMustNotBeRead() throws Exception {
+    facade.apply(Version.of(1, 0, 0));
+    replicaFacade.applyAll();
+    facade.setReadReplica(replica, Duration.ofHours(1));
+    facade.clearReadReplica();
+    assertFalse(facade.hasReadReplica());
+    assertEquals(Version.of(1, 0, 0), facade.getCurrentVersion());
+  }
+
+  @Test
+  public void migrationsMustUsePrimary() throws Exception {
+    replicaFacade.applyAll();
+    facade.setReadReplica(replica, Duration.ofHours(1));
+    assertEquals(3, facade.apply(Version.of(1, 1, 0)));
+    assertEquals(Version.of(1, 1, 0), facade.getCurrentVersion());
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void nullReplicaMustThrowNPE() {
+    facade.setReadReplica((Connection) null, Duration.ofHours(1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeStalenessMustThrowIAE() {
+    facade.setReadReplica(replica, Duration.ofSeconds(-1));
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import liquibase.configuration.GlobalConfiguration;
+import liquibase.configuration.LiquibaseConfiguration;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class RollbackPlansTest {
+  private static final String DB_URL = "jdbc:hsqldb:mem:plans;shutdown=true";
+
+  private static final List<Version> versions = Arrays.asList(new Version(1,0,0), new Version(1,1,0), new Version(2,0,0));
+
+  private static final Function<Version, String> changeLogFileGenerator = v -> String.format("test/Version-%s.xml", v.string());
+
+  //only the first version's changelog can be found
+  private static final Function<Version, String> missingChangeLogs = v -> v.equals(Version.of(1, 0, 0)) ? changeLogFileGenerator.apply(v) : "test/missing/Version-" + v.string() + ".xml";
+
+  private static final Function<Version, ResourceAccessor> resourceAccessorGenerator = v -> new ClassLoaderResourceAccessor();
+
+  private Connection connection;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection(DB_URL);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  @Test
+  public void upgradeMustStoreThePlanOfEachVersion() throws Exception {
+    facade(changeLogFileGenerator, true).applyAll();
+    assertEquals(3, count("select count(distinct tag) from " + RollbackPlans.PLAN_TABLE));
+    //a statement and the end of each of its three changeSets
+    assertEquals(6, count("select count(*) from " + RollbackPlans.PLAN_TABLE + " where tag = '1.1.0'"));
+  }
+
+  @Test
+  public void jumpUpgradeMustStoreThePlanOfEachVersion() throws Exception {
+    LinearProgressionFacade facade = facade(changeLogFileGenerator, true);
+    facade.setJumpUpgrades(true);
+    facade.applyAll();
+    assertEquals(3, count("select count(distinct tag) from " + RollbackPlans.PLAN_TABLE));
+  }
+
+  @Test
+  public void plansMustNotBeStoredByDefault() throws Exception {
+    facade(changeLogFileGenerator, false).applyAll();
+    assertFalse(exists(RollbackPlans.PLAN_TABLE));
+  }
+
+  @Test
+  public void downgradeMustRunThePlanWithoutChangelogs() throws Exception {
+    facade(changeLogFileGenerator, true).applyAll();
+    MigrationResult result = facade(missingChangeLogs, true).applyWithResult(Version.of(1, 0, 0));
+    assertEquals(4, result.getChangeCount());
+    assertEquals(Version.of(1, 0, 0), result.getToVersion());
+    assertFalse(exists("PRODUCT"));
+    assertFalse(exists("ADDRESS"));
+    assertTrue(exists("CUSTOMER"));
+    assertEquals(0, count("select count(*) from Information_Schema.Columns where table_name = 'CUSTOMER' and column_name = 'ADDRESS_ID'"));
+    assertEquals(0, count("select count(*) from " + RollbackPlans.PLAN_TABLE + " where tag <> '1.0.0'"));
+    assertEquals(Version.of(1, 0, 0), facade(changeLogFileGenerator, false).getCurrentVersion());
+  }
+
+  @Test
+  public void changedChangeSetMustBeRolledBackFromItsChangelog() throws Exception {
+    facade(changeLogFileGenerator, true).applyAll();
+    execute("update databasechangelog set md5sum = null where id = '5'");
+
+    try{
+      facade(missingChangeLogs, true).apply(Version.of(1, 1, 0));
+      fail("stale plan was run");
+    }catch(LiquibaseException e){
+      assertTrue(exists("PRODUCT"));
+    }
+
+    facade(changeLogFileGenerator, true).apply(Version.of(1, 1, 0));
+    assertFalse(exists("PRODUCT"));
+  }
+
+  @Test
+  public void customChangesMustBeRolledBackFromTheirChangelog() throws Exception {
+    LinearProgressionFacade facade = new LinearProgressionFacade(
+            connection, 
+            versions.subList(0, 2), 
+            v -> String.format("test/chunked/Version-%s.xml", v.string()), 
+            resourceAccessorGenerator
+    );
+    facade.setPrecomputeRollbacks(true);
+    facade.applyAll();
+    assertEquals(1, count("select count(distinct tag) from " + RollbackPlans.PLAN_TABLE));
+    facade.rollbackAll();
+    assertFalse(exists("ITEM"));
+  }
+
+  /**
+   * A step that fails partway must leave neither its earlier statements nor the removal of its changeSet from
+   * liquibase's history behind, and must leave the connection in auto-commit mode.
+   */
+  @Test
+  public void failedStepMustBeRolledBackAsAWhole() throws Exception {
+    facade(changeLogFileGenerator, true).applyAll();
+    execute("create table Marker (id int)");
+    execute("update " + RollbackPlans.PLAN_TABLE + " set ordinal = ordinal + 10 where tag = '2.0.0'");
+    execute("insert into " + RollbackPlans.PLAN_TABLE + " (tag, ordinal, id, author, filename, md5sum, statement) select tag, 0, id, author, filename, md5sum, 'insert into Marker values (1)' from " + RollbackPlans.PLAN_TABLE + " where tag = '2.0.0' and ordinal = 10");
+    execute("update " + RollbackPlans.PLAN_TABLE + " set statement = 'delete from NoSuchTable' where tag = '2.0.0' and ordinal = 10");
+
+    try{
+      facade(missingChangeLogs, true).apply(Version.of(1, 1, 0));
+      fail("failing plan was run");
+    }catch(LiquibaseException e){
+      assertEquals(0, count("select count(*) from Marker"));
+      assertEquals(1, count("select count(*) from databasechangelog where id = '5'"));
+      assertTrue(connection.getAutoCommit());
+    }
+  }
+
+  /**
+   * A plan must not run while another liquibase instance holds liquibase's changelog lock.
+   */
+  @Test
+  public void planMustRunUnderTheChangeLogLock() throws Exception {
+    GlobalConfiguration configuration = LiquibaseConfiguration.getInstance().getConfiguration(GlobalConfiguration.class);
+    final Long pollRate = configuration.getDatabaseChangeLogLockPollRate();
+    configuration.setDatabaseChangeLogLockPollRate(1L);
+
+    try{
+      facade(changeLogFileGenerator, true).applyAll();
+      execute("update databasechangeloglock set locked = true, lockgranted = now(), lockedby = 'test' where id = 1");
+      Thread releaser = new Thread(() -> {
+        try(Connection other = DriverManager.getConnection(DB_URL)){
+          Thread.sleep(1500);
+
+          try(Statement stmt = other.createStatement()){
+            stmt.execute("update databasechangeloglock set locked = false, lockgranted = null, lockedby = null where id = 1");
+          }
+        }catch(SQLException | InterruptedException e){
+          throw new IllegalStateException(e);
+        }
+      });
+      final long start = System.nanoTime();
+      releaser.start();
+      facade(missingChangeLogs, true).apply(Version.of(1, 1, 0));
+      final long elapsed = System.nanoTime() - start;
+      releaser.join();
+      assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(1500));
+      assertFalse(exists("PRODUCT"));
+      assertEquals(0, count("select count(*) from databasechangeloglock where locked = true"));
+    }finally{
+      configuration.setDatabaseChangeLogLockPollRate(pollRate);
+    }
+  }
+
+  private LinearProgressionFacade facade(Function<Version, String> locator, boolean precomputeRollbacks) throws LiquibaseException {
+    LinearProgressionFacade facade = new LinearProgressionFacade(
+            connection, 
+            versions, 
+            locator, 
+            resourceAccessorGenerator
+    );
+    facade.setPrecomputeRollbacks(precomputeRollbacks);
+    return facade;
+  }
+
+  private void execute(String sql) throws SQLException {
+    try(Statement stmt = connection.createStatement()){
+      stmt.execute(sql);
+    }
+  }
+
+  private boolean exists(String table) throws SQLException {
+    try(ResultSet r = connection.getMetaData().getTables(null, null, table, null)){
+      return r.next();
+    }
+  }
+
+  private int count(String sql) throws SQLException {
+    try(PreparedStatement stmt = connection.prepareStatement(sql);
+            ResultSet r = stmt.executeQuery()){
+      r.next();
+      return r.getInt(1);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class TenantMigrationExecutorTest {
+  private static final List<Version> versions = Arrays.asList(new Version(1,0,0), new Version(1,1,0), new Version(2,0,0));
+
+  private static final Function<Version, String> changesetFileLocator = v -> String.format("test/Version-%d.%d.%d.xml", v.getMajor(), v.getMinor(), v.getRelease());
+
+  private static final Function<Version, ResourceAccessor> resourceAccessorGenerator = v -> new ClassLoaderResourceAccessor();
+
+  private final TenantMigrationExecutor executor = new TenantMigrationExecutor(versions, changesetFileLocator, resourceAccessorGenerator, 2);
+
+  @Test
+  public void applyAllMustMigrateEveryTenant() throws Exception {
+    Map<String, TenantMigrationResult> results = executor.applyAll(
+            Arrays.asList("a", "b", "c", "d"),
+            tenant -> DriverManager.getConnection("jdbc:hsqldb:mem:tenant-all-" + tenant + ";shutdown=true")
+    );
+
+    assertEquals(Arrays.asList("a", "b", "c", "d"), Arrays.asList(results.keySet().toArray()));
+
+    for(TenantMigrationResult result : results.values()){
+      assertTrue(result.toString(), result.isSuccess());
+      assertEquals(5, result.getChanges());
+    }
+  }
+
+  @Test
+  public void applyMustMigrateToTargetVersion() throws Exception {
+    Map<String, TenantMigrationResult> results = executor.apply(
+            Arrays.asList("a", "b"),
+            tenant -> DriverManager.getConnection("jdbc:hsqldb:mem:tenant-target-" + tenant + ";shutdown=true"),
+            Version.of(1, 1, 0)
+    );
+
+    assertEquals(4, results.get("a").getChanges());
+    assertEquals(4, results.get("b").getChanges());
+  }
+
+  @Test
+  public void failedTenantMustNotAffectOthers() throws Exception {
+    Map<String, TenantMigrationResult> results = executor.applyAll(
+            Arrays.asList("ok", "broken"),
+            tenant -> {
+              if("broken".equals(tenant)){
+                throw new SQLException("unreachable tenant");
+              }
+
+              return DriverManager.getConnection("jdbc:hsqldb:mem:tenant-failure-" + tenant + ";shutdown=true");
+            }
+    );
+
+    assertTrue(results.get("ok").isSuccess());
+    assertFalse(results.get("broken").isSuccess());
+    assertTrue(results.get("broken").getError().get() instanceof SQLException);
+  }
+
+  @Test
+  public void tenantFacadesMustShareOneLiquibaseMutex() throws Exception {
+    try(Connection a = DriverManager.getConnection("jdbc:hsqldb:mem:tenant-mutex-a;shutdown=true");
+            Connection b = DriverManager.getConnection("jdbc:hsqldb:mem:tenant-mutex-b;shutdown=true")){
+      final Lock mutex = executor.newFacade(a).getLiquibaseMutex();
+      assertNotNull(mutex);
+      assertSame(mutex, executor.newFacade(b).getLiquibaseMutex());
+    }
+  }
+
+  @Test
+  public void concurrentTenantsMustAllBeMigrated() throws Exception {
+    List<String> tenants = new ArrayList<>();
+
+    for(int i = 0; i < 12; i++){
+      tenants.add("t" + i);
+    }
+
+    Map<String, TenantMigrationResult> results = new TenantMigrationExecutor(versions, changesetFileLocator, resourceAccessorGenerator, tenants.size()).applyAll(
+            tenants,
+            tenant -> DriverManager.getConnection("jdbc:hsqldb:mem:tenant-concurrent-" + tenant + ";shutdown=true")
+    );
+
+    for(TenantMigrationResult result : results.values()){
+      assertTrue(result.toString(), result.isSuccess());
+      assertEquals(5, result.getChanges());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void constructorMustFailIfConcurrencyIsLessThanOne() {
+    new TenantMigrationExecutor(versions, changesetFileLocator, resourceAccessorGenerator, 0);
+  }
+}
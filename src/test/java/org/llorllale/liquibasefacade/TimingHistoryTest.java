@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class TimingHistoryTest {
+  private static final String DB_URL = "jdbc:hsqldb:mem:timing;shutdown=true";
+
+  private static final List<Version> versions = Arrays.asList(new Version(1,0,0), new Version(1,1,0), new Version(2,0,0));
+
+  private static final Function<Version, String> changesetFileLocator = v -> String.format("test/Version-%d.%d.%d.xml", v.getMajor(), v.getMinor(), v.getRelease());
+
+  private static final Function<Version, ResourceAccessor> resourceAccessorGenerator = v -> new ClassLoaderResourceAccessor();
+
+  private Connection connection;
+
+  private LinearProgressionFacade facade;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection(DB_URL);
+    facade = new LinearProgressionFacade(connection, versions, changesetFileLocator, resourceAccessorGenerator);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  @Test
+  public void timingsMustBeRecordedWhenEnabled() throws Exception {
+    facade.applyAll();
+    try(ResultSet r = connection.getMetaData().getTables(null, null, TimingHistory.TIMING_TABLE, new String[]{"TABLE"})){
+      assertFalse(r.next());
+    }
+
+    facade.rollbackAll();
+
+    facade.setRecordTimings(true);
+    facade.applyAll();
+    facade.rollbackAll();
+    facade.applyAll();
+    assertEquals(10, rowCount(TimingHistory.TIMING_TABLE));
+  }
+
+  @Test
+  public void upgradeMustStopAtLastVersionWithinBudget() throws Exception {
+    facade.apply(1, 0, 0);
+    facade.rollbackAll();
+    recordTimings(false, Duration.ofHours(1), "5");
+
+    MigrationResult result = facade.apply(Version.of(2, 0, 0), Duration.ofMinutes(1));
+    assertFalse(result.isComplete());
+    assertEquals(Version.of(1, 1, 0), result.getToVersion());
+    assertEquals(Arrays.asList(Version.of(2, 0, 0)), result.getRemainingVersions());
+    assertEquals(4, result.getChangeCount());
+    assertEquals(Version.of(1, 1, 0), facade.getCurrentVersion());
+  }
+
+  @Test
+  public void jumpUpgradeMustStopAtLastVersionWithinBudget() throws Exception {
+    facade.apply(1, 0, 0);
+    facade.rollbackAll();
+    recordTimings(false, Duration.ofHours(1), "5");
+    facade.setJumpUpgrades(true);
+
+    MigrationResult result = facade.apply(Version.of(2, 0, 0), Duration.ofMinutes(1));
+    assertEquals(Version.of(1, 1, 0), result.getToVersion());
+    assertEquals(Arrays.asList(Version.of(2, 0, 0)), result.getRemainingVersions());
+    assertEquals(Version.of(1, 1, 0), facade.getCurrentVersion());
+
+    result = facade.apply(Version.of(2, 0, 0), Duration.ofHours(2));
+    assertTrue(result.isComplete());
+    assertEquals(Version.of(2, 0, 0), facade.getCurrentVersion());
+  }
+
+  @Test
+  public void downgradeMustStopAtLastVersionWithinBudget() throws Exception {
+    facade.applyAll();
+    recordTimings(true, Duration.ofHours(1), "2", "3", "4");
+
+    MigrationResult result = facade.apply(Version.of(1, 0, 0), Duration.ofMinutes(1));
+    assertEquals(Version.of(1, 1, 0), result.getToVersion());
+    assertEquals(Arrays.asList(Version.of(1, 1, 0)), result.getRemainingVersions());
+    assertEquals(1, result.getChangeCount());
+    assertEquals(Version.of(1, 1, 0), facade.getCurrentVersion());
+  }
+
+  @Test
+  public void exhaustedBudgetMustApplyNothing() throws Exception {
+    MigrationResult result = facade.apply(Version.of(2, 0, 0), Duration.ZERO);
+    assertEquals(0, result.getChangeCount());
+    assertEquals(new UndefinedVersion(), result.getToVersion());
+    assertEquals(versions, result.getRemainingVersions());
+  }
+
+  @Test
+  public void sufficientBudgetMustComplete() throws Exception {
+    MigrationResult result = facade.apply(Version.of(2, 0, 0), Duration.ofHours(1));
+    assertTrue(result.isComplete());
+    assertEquals(5, result.getChangeCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeBudgetMustThrowIAE() throws Exception {
+    facade.apply(Version.of(2, 0, 0), Duration.ofSeconds(-1));
+  }
+
+  /**
+   * Records a timing of {@code slow} for the changeSets of the test changelogs with the given ids, and of one 
+   * millisecond for the rest.
+   */
+  private void recordTimings(boolean rollback, Duration slow, String... slowIds) throws Exception {
+    List<ChangeSetResult> changeSets = new ArrayList<>();
+
+    for(int id = 1; id <= 5; id++){
+      final String file = changesetFileLocator.apply(id == 1 ? Version.of(1, 0, 0) : id == 5 ? Version.of(2, 0, 0) : Version.of(1, 1, 0));
+      final Duration duration = Arrays.asList(slowIds).contains(String.valueOf(id)) ? slow : Duration.ofMillis(1);
+      changeSets.add(new ChangeSetResult(String.valueOf(id), "George Aristy", file, duration, Duration.ZERO, 0, 0, 0));
+    }
+
+    new TimingHistory(connection).record(changeSets, rollback);
+  }
+
+  private int rowCount(String table) throws Exception {
+    try(PreparedStatement stmt = connection.prepareStatement("select count(*) from " + table);
+            ResultSet r = stmt.executeQuery()){
+      r.next();
+      return r.getInt(1);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class TracingTest {
+  private static final String PREFIX = "org.llorllale.liquibasefacade.";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void jfrMustBeAvailable() {
+    assertTrue(Tracing.isJfrAvailable());
+  }
+
+  @Test
+  public void migrationsMustEmitEvents() throws Exception {
+    List<Version> versions = Arrays.asList(new Version(1,0,0), new Version(1,1,0), new Version(2,0,0));
+    Path dump = folder.getRoot().toPath().resolve("facade.jfr");
+
+    try(Recording recording = new Recording();
+            Connection connection = DriverManager.getConnection("jdbc:hsqldb:mem:tracing;shutdown=true")){
+      for(String event : Arrays.asList("Migration", "ChangeSet", "HistoryQuery", "ConsistencyValidation", "LockAcquisition")){
+        recording.enable(PREFIX + event);
+      }
+
+      recording.start();
+      LinearProgressionFacade facade = new LinearProgressionFacade(
+              connection, 
+              versions, 
+              v -> String.format("test/Version-%s.xml", v.string()), 
+              v -> new ClassLoaderResourceAccessor()
+      );
+      facade.applyAll();
+      facade.apply(1, 0, 0);
+      recording.stop();
+      recording.dump(dump);
+    }
+
+    List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+    List<RecordedEvent> changeSets = named(events, "ChangeSet");
+    assertEquals(9, changeSets.size());
+    assertEquals("1", changeSets.get(0).getString("id"));
+    assertEquals("1.0.0", changeSets.get(0).getString("version"));
+    assertFalse(changeSets.get(0).getBoolean("rollback"));
+    assertTrue(changeSets.get(8).getBoolean("rollback"));
+
+    List<RecordedEvent> migrations = named(events, "Migration");
+    assertEquals(5, migrations.size());
+    assertEquals(3, migrations.stream().filter(e -> e.getBoolean("upgrade")).count());
+    assertFalse(named(events, "HistoryQuery").isEmpty());
+    assertFalse(named(events, "ConsistencyValidation").isEmpty());
+    assertEquals(2, named(events, "LockAcquisition").size());
+  }
+
+  private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+    return events.stream()
+            .filter(e -> e.getEventType().getName().equals(PREFIX + name))
+            .sorted((e1, e2) -> e1.getStartTime().compareTo(e2.getStartTime()))
+            .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 George Aristy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.llorllale.liquibasefacade;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author George Aristy
+ */
+public class VersionSchemeTest {
+  @Test
+  public void dottedKeysMustFollowVersionOrder() {
+    VersionScheme scheme = VersionScheme.dotted();
+    assertTrue(scheme.key(Version.of(1, 2, 3)) < scheme.key(Version.of(1, 10, 0)));
+    assertTrue(scheme.key(Version.of(1, 10, 0)) < scheme.key(Version.of(2, 0, 0)));
+    assertEquals(scheme.key(Version.of(1, 2, 3)), scheme.parseKey("1.2.3"));
+    assertEquals("1.2.3", scheme.format(Version.of(1, 2, 3)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void dottedMustRejectMissingNumbers() {
+    VersionScheme.dotted().parseKey("1.2");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void dottedMustRejectTrailingSeparator() {
+    VersionScheme.dotted().parseKey("1.2.3.");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void dottedMustRejectOversizedNumbers() {
+    VersionScheme.dotted().parseKey("1.2.3000000");
+  }
+
+  @Test
+  public void buildNumberMustUseTheMajorNumber() {
+    VersionScheme scheme = VersionScheme.buildNumber();
+    assertEquals("1234", scheme.format(Version.of(1234, 0, 0)));
+    assertEquals(scheme.key(Version.of(1234, 0, 0)), scheme.parseKey("1234"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void buildNumberMustRejectMinorNumbers() {
+    VersionScheme.buildNumber().format(Version.of(1, 1, 0));
+  }
+
+  @Test
+  public void dateMustBeZeroPadded() {
+    VersionScheme scheme = VersionScheme.date();
+    assertEquals("2015-06-03", scheme.format(Version.of(2015, 6, 3)));
+    assertEquals(scheme.key(Version.of(2015, 6, 3)), scheme.parseKey("2015-06-03"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void dateMustRejectInvalidMonths() {
+    VersionScheme.date().parseKey("2015-13-01");
+  }
+
+  @Test
+  public void facadeMustTagAndReadVersionsWithItsScheme() throws Exception {
+    List<Version> versions = Arrays.asList(Version.of(100, 0, 0), Version.of(101, 0, 0), Version.of(102, 0, 0));
+
+    try(Connection connection = DriverManager.getConnection("jdbc:hsqldb:mem:scheme;shutdown=true")){
+      LinearProgressionFacade facade = new LinearProgressionFacade(
+              connection,
+              versions,
+              v -> String.format("test/Version-%s.xml", v.getMajor() == 100 ? "1.0.0" : v.getMajor() == 101 ? "1.1.0" : "2.0.0"),
+              v -> new ClassLoaderResourceAccessor(),
+              VersionScheme.buildNumber()
+      );
+      facade.apply(Version.of(101, 0, 0));
+      assertEquals(Version.of(101, 0, 0), facade.getCurrentVersion());
+
+      try(Statement stmt = connection.createStatement();
+              ResultSet result = stmt.executeQuery("select tag from DATABASECHANGELOG where tag is not null order by orderexecuted")){
+        assertTrue(result.next());
+        assertEquals("100", result.getString(1));
+        assertTrue(result.next());
+        assertEquals("101", result.getString(1));
+      }
+
+      facade.applyAll();
+      facade.apply(Version.of(100, 0, 0));
+      assertEquals(Version.of(100, 0, 0), facade.getCurrentVersion());
+    }
+  }
+
+  @Test
+  public void namespacedMustPrefixTagsOfItsScheme() {
+    VersionScheme scheme = VersionScheme.namespaced("billing", VersionScheme.dotted());
+    assertEquals("billing:1.2.3", scheme.format(Version.of(1, 2, 3)));
+    assertEquals(scheme.key(Version.of(1, 2, 3)), scheme.parseKey("billing:1.2.3"));
+    assertTrue(scheme.owns("billing:1.2.3"));
+    assertFalse(scheme.owns("billing-v2:1.2.3"));
+    assertFalse(scheme.owns("1.2.3"));
+    assertTrue(VersionScheme.dotted().owns("billing:1.2.3"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void namespacedMustRejectTagsOfOtherNamespaces() {
+    VersionScheme.namespaced("billing", VersionScheme.dotted()).parseKey("orders:1.2.3");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void namespacedMustRejectSeparatorInNamespace() {
+    VersionScheme.namespaced("billing:v2", VersionScheme.dotted());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void facadeMustRejectVersionsSharingATag() throws Exception {
+    try(Connection connection = DriverManager.getConnection("jdbc:hsqldb:mem:scheme;shutdown=true")){
+      new LinearProgressionFacade(
+              connection,
+              Arrays.asList(Version.of(1, 0, 0), Version.of(1, 0, 0)),
+              v -> "test/Version-1.0.0.xml",
+              v -> new ClassLoaderResourceAccessor()
+      );
+    }
+  }
+}